@@ -14,16 +14,15 @@
  * limitations under the License.
  */
 
+
 package org.parboiled.examples.java;
 
-public class JavaLetterMatcher extends AbstractJavaCharacterMatcher {
+import org.parboiled.matchers.CodePointMatcher;
+import org.parboiled.support.CodePointClass;
 
-    public JavaLetterMatcher() {
-        super("Letter");
-    }
+public class JavaLetterMatcher extends CodePointMatcher {
 
-    @Override
-    protected boolean acceptChar(char c) {
-        return Character.isJavaIdentifierStart(c);
+    public JavaLetterMatcher() {
+        super(CodePointClass.javaIdentifierStart(), "Letter");
     }
 }
@@ -14,16 +14,15 @@
  * limitations under the License.
  */
 
+
 package org.parboiled.examples.java;
 
-public class JavaLetterOrDigitMatcher extends AbstractJavaCharacterMatcher {
+import org.parboiled.matchers.CodePointMatcher;
+import org.parboiled.support.CodePointClass;
 
-    public JavaLetterOrDigitMatcher() {
-        super("LetterOrDigit");
-    }
+public class JavaLetterOrDigitMatcher extends CodePointMatcher {
 
-    @Override
-    protected boolean acceptChar(char c) {
-        return Character.isJavaIdentifierPart(c);
+    public JavaLetterOrDigitMatcher() {
+        super(CodePointClass.javaIdentifierPart(), "LetterOrDigit");
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.examples.calculators;
+
+import org.parboiled.Parboiled;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.common.StringBuilderSink;
+import org.parboiled.parserunners.BinaryTracingParseRunner;
+import org.parboiled.parserunners.TracingParseRunner;
+import org.parboiled.support.BinaryTrace;
+import org.parboiled.support.MatcherIds;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class BinaryTracingParseRunnerTest {
+
+    @Test
+    public void testDecodedTraceEqualsTracingParseRunnerLog() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+
+        StringBuilderSink log = new StringBuilderSink();
+        new TracingParseRunner<Integer>(parser.InputLine()).withLog(log).run("2*(4+5");
+
+        BinaryTracingParseRunner<Integer> runner = new BinaryTracingParseRunner<Integer>(parser.InputLine());
+        runner.run("2*(4+5");
+        StringBuilderSink decoded = new StringBuilderSink();
+        runner.decodeTrace(decoded);
+
+        assertEquals(decoded.toString(), log.toString());
+    }
+
+    @Test
+    public void testRingBufferWrapAround() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        BinaryTracingParseRunner<Integer> runner =
+                new BinaryTracingParseRunner<Integer>(parser.InputLine(), new BinaryTrace(4));
+        runner.run("1+2");
+        assertTrue(runner.getTrace().getEventCount() > 4);
+
+        StringBuilderSink decoded = new StringBuilderSink();
+        runner.decodeTrace(decoded);
+        assertEquals(decoded.toString(), "" +
+                "InputLine/Expression/ZeroOrMore, matched, cursor at 1:4 after \"1+2\"\n" +
+                "..(1)../Expression, matched, cursor at 1:4 after \"1+2\"\n" +
+                "InputLine/EOI, matched, cursor at 1:5 after \"1+2\"\n" +
+                "InputLine, matched, cursor at 1:5 after \"1+2\"\n");
+    }
+
+    @Test
+    public void testMemoryMappedTrace() throws Exception {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        File file = File.createTempFile("parboiled", ".trace");
+        file.deleteOnExit();
+
+        BinaryTracingParseRunner<Integer> runner =
+                new BinaryTracingParseRunner<Integer>(parser.InputLine(), BinaryTrace.map(file, 1000));
+        runner.run("2*(4+5");
+        StringBuilderSink decoded = new StringBuilderSink();
+        runner.decodeTrace(decoded);
+
+        // decode "offline" with freshly created matcher ids
+        StringBuilderSink offline = new StringBuilderSink();
+        BinaryTrace.open(file).decode(new MatcherIds(parser.InputLine()),
+                new DefaultInputBuffer("2*(4+5".toCharArray()), offline);
+        assertEquals(offline.toString(), decoded.toString());
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.examples.calculators;
+
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.buffers.StreamingInputBuffer;
+import org.parboiled.common.Factory;
+import org.parboiled.common.Sink;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.ParseRunMetrics;
+import org.parboiled.parserunners.ParseRunnerMetrics;
+import org.parboiled.parserunners.ParseTimeHistograms;
+import org.parboiled.parserunners.RecoveringParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ParseRunMetricsTest {
+
+    @Test
+    public void testParseRunMetrics() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        Rule rule = parser.InputLine();
+        final List<ParseRunMetrics> collected = new ArrayList<ParseRunMetrics>();
+        Sink<ParseRunMetrics> sink = new Sink<ParseRunMetrics>() {
+            public void receive(ParseRunMetrics value) {
+                collected.add(value);
+            }
+        };
+
+        new ReportingParseRunner<Integer>(rule).withMetricsSink(sink).run("1+2*(3-4)");
+        new ReportingParseRunner<Integer>(rule).withMetricsSink(sink).run("1+2*(3-4");
+        new RecoveringParseRunner<Integer>(rule).withMetricsSink(sink).run("1+2*(3-4");
+        assertEquals(collected.size(), 3);
+
+        ParseRunMetrics valid = collected.get(0);
+        assertEquals(valid.getRunnerType(), "ReportingParseRunner");
+        assertEquals(valid.getRuleLabel(), "InputLine");
+        assertTrue(valid.isMatched());
+        assertEquals(valid.getInputLength(), 9);
+        assertEquals(valid.getPasses(), 1);
+        assertEquals(valid.getInvocations(), 89);
+        assertEquals(valid.getBacktracks(), 39);
+        assertEquals(valid.getValueStackHighWater(), 4);
+        assertEquals(valid.getMaxDepth(), 19);
+        assertEquals(valid.getErrorCount(), 0);
+
+        ParseRunMetrics invalid = collected.get(1);
+        assertFalse(invalid.isMatched());
+        assertEquals(invalid.getInputLength(), 8);
+        assertEquals(invalid.getPasses(), 3);
+        assertEquals(invalid.getErrorCount(), 1);
+        assertEquals(invalid.getRecoveryAttempts(), 0);
+
+        ParseRunMetrics recovered = collected.get(2);
+        assertTrue(recovered.isMatched());
+        assertEquals(recovered.getErrorCount(), 1);
+        assertTrue(recovered.getRecoveryAttempts() > 0);
+        assertTrue(recovered.getPasses() > recovered.getRecoveryAttempts());
+    }
+
+    @Test
+    public void testMetricsOnStreamingInput() {
+        // the input is larger than the backtracking window of the StreamingInputBuffer, so collecting the metrics
+        // must not read ahead to the end of the input before the parser gets to it
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) sb.append("1+");
+        sb.append('1');
+        final String input = sb.toString();
+        StreamingInputBuffer buffer = new StreamingInputBuffer(new Factory<Reader>() {
+            private boolean opened;
+
+            public Reader create() {
+                assertFalse(opened, "input reopened");
+                opened = true;
+                return new StringReader(input);
+            }
+        }, 256, 4);
+
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        final List<ParseRunMetrics> collected = new ArrayList<ParseRunMetrics>();
+        ParsingResult<Integer> result = new BasicParseRunner<Integer>(parser.InputLine())
+                .withMetricsSink(new Sink<ParseRunMetrics>() {
+                    public void receive(ParseRunMetrics value) {
+                        collected.add(value);
+                    }
+                })
+                .run(buffer);
+        assertTrue(result.matched);
+        assertEquals(result.resultValue, Integer.valueOf(5001));
+        assertEquals(collected.size(), 1);
+        assertEquals(collected.get(0).getInputLength(), input.length());
+
+        // a run failing early never gets to the end of the input, so its length is unknown
+        result = new BasicParseRunner<Integer>(parser.InputLine())
+                .withMetricsSink(new Sink<ParseRunMetrics>() {
+                    public void receive(ParseRunMetrics value) {
+                        collected.add(value);
+                    }
+                })
+                .run(new StreamingInputBuffer(new Factory<Reader>() {
+                    public Reader create() {
+                        return new StringReader('x' + input);
+                    }
+                }, 256, 4));
+        assertFalse(result.matched);
+        assertEquals(collected.size(), 2);
+        assertEquals(collected.get(1).getInputLength(), -1);
+    }
+
+    @Test
+    public void testParseTimeHistogramsUseInputLength() {
+        // the run fails at the very first char, but is still recorded in the size class of its complete input
+        StringBuilder sb = new StringBuilder("x");
+        for (int i = 0; i < 200; i++) sb.append("1+");
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        ParseTimeHistograms histograms = new ParseTimeHistograms();
+        new ReportingParseRunner<Integer>(parser.InputLine()).withMetricsSink(histograms).run(sb.toString());
+        ParseTimeHistograms.Snapshot snapshot = histograms.snapshot();
+        assertEquals(snapshot.entries.size(), 1);
+        assertEquals(snapshot.entries.get(0).getSizeClass(), "256-4095");
+    }
+
+    @Test
+    public void testParseRunnerMetricsMBean() throws Exception {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        ParseRunnerMetrics metrics = new ParseRunnerMetrics().register("ParseRunMetricsTest");
+        ReportingParseRunner<Integer> runner = new ReportingParseRunner<Integer>(parser.InputLine());
+        runner.withMetricsSink(metrics);
+        runner.run("1+2*(3-4)");
+        runner.run("1+2*(3-4");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = ParseRunnerMetrics.getObjectName("ParseRunMetricsTest");
+        try {
+            assertEquals(server.getAttribute(name, "RunCount"), 2L);
+            assertEquals(server.getAttribute(name, "FailedRunCount"), 1L);
+            assertEquals(server.getAttribute(name, "TotalInputLength"), 17L);
+            assertEquals(server.getAttribute(name, "ErrorCount"), 1L);
+            server.invoke(name, "reset", null, null);
+            assertEquals(metrics.getRunCount(), 0L);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+}
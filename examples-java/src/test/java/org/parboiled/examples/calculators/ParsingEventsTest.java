@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.examples.calculators;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.buffers.StreamingInputBuffer;
+import org.parboiled.common.Factory;
+import org.parboiled.common.StringBuilderSink;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.BinaryTracingParseRunner;
+import org.parboiled.parserunners.ParseRunner;
+import org.parboiled.parserunners.RecoveringParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.parserunners.TracingParseRunner;
+import org.parboiled.support.ParsingEventAdapter;
+import org.parboiled.support.ParsingEvents;
+import org.testng.annotations.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ParsingEventsTest {
+
+    public static class SimpleParser extends BaseParser<Object> {
+        public Rule Digits() {
+            return OneOrMore(CharRange('0', '9'));
+        }
+    }
+
+    private static class CollectingListener extends ParsingEventAdapter {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void runStarted(ParseRunner<?> runner, Rule rule, int inputLength) {
+            events.add("start " + runner.getClass().getSimpleName() + ' ' + rule + ' ' + inputLength);
+        }
+
+        @Override
+        public void runFinished(ParseRunner<?> runner, Rule rule, int inputLength, boolean matched, int errorCount,
+                                long nanoTime) {
+            events.add("finish " + runner.getClass().getSimpleName() + ' ' + matched + ' ' + errorCount);
+        }
+
+        @Override
+        public void recoveryPhaseFinished(ParseRunner<?> runner, RecoveryPhase phase, int errorIndex, long nanoTime) {
+            events.add(phase + " " + errorIndex);
+        }
+
+        @Override
+        public void slowRuleInvocation(ParseRunner<?> runner, Matcher matcher, int startIndex, int endIndex,
+                                       boolean matched, long nanoTime) {
+            events.add("slow " + matcher + ' ' + startIndex + '-' + endIndex + ' ' + matched);
+        }
+
+        @Override
+        public void parserClassTransformed(Class<?> parserClass, long nanoTime) {
+            events.add("transformed " + parserClass.getSimpleName());
+        }
+    }
+
+    @Test
+    public void testParsingEvents() {
+        CollectingListener listener = new CollectingListener();
+        ParsingEvents.setListener(listener);
+        try {
+            SimpleParser parser = Parboiled.createParser(SimpleParser.class);
+            new BasicParseRunner<Object>(parser.Digits()).run("42");
+            assertEquals(listener.events.toString(), "[" +
+                    "transformed SimpleParser, " +
+                    "start BasicParseRunner Digits 2, " +
+                    "finish BasicParseRunner true 0]");
+
+            listener.events.clear();
+            ParsingEvents.setSlowRuleThreshold(1);
+            new BasicParseRunner<Object>(parser.Digits()).run("4");
+            assertEquals(listener.events.toString(), "[" +
+                    "start BasicParseRunner Digits 1, " +
+                    "slow 0..9 0-1 true, " +
+                    "slow 0..9 1-1 false, " +
+                    "slow Digits 0-1 true, " +
+                    "finish BasicParseRunner true 0]");
+        } finally {
+            ParsingEvents.setListener(null);
+            ParsingEvents.setSlowRuleThreshold(0);
+        }
+    }
+
+    @Test
+    public void testRecoveryPhaseEvents() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        CollectingListener listener = new CollectingListener();
+        ParsingEvents.setListener(listener);
+        try {
+            new RecoveringParseRunner<Integer>(parser.InputLine()).run("1+2*(3-4");
+        } finally {
+            ParsingEvents.setListener(null);
+        }
+        List<String> events = listener.events;
+        assertEquals(events.get(0), "start RecoveringParseRunner InputLine 8");
+        assertEquals(events.get(events.size() - 1), "finish RecoveringParseRunner true 1");
+        // the inner runs of the recovery are not signalled separately
+        assertEquals(count(events, "start "), 1);
+        assertEquals(count(events, "finish "), 1);
+        assertTrue(events.contains("LOCATING 8"));
+        assertTrue(events.contains("REPORTING 8"));
+        assertTrue(events.contains("FIXING 8"));
+        assertTrue(events.contains("FINAL_RUN -1"));
+    }
+
+    @Test
+    public void testDelegatingRunnersSignalOneRun() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        CollectingListener listener = new CollectingListener();
+        ParsingEvents.setListener(listener);
+        try {
+            new ReportingParseRunner<Integer>(parser.InputLine()).run("1+2*(3-4");
+            new TracingParseRunner<Integer>(parser.InputLine()).withLog(new StringBuilderSink()).run("1+2*(3-4");
+            new BinaryTracingParseRunner<Integer>(parser.InputLine()).run("1+2");
+        } finally {
+            ParsingEvents.setListener(null);
+        }
+        assertEquals(listener.events.toString(), "[" +
+                "start ReportingParseRunner InputLine 8, " +
+                "finish ReportingParseRunner false 1, " +
+                "start TracingParseRunner InputLine 8, " +
+                "finish TracingParseRunner false 1, " +
+                "start BinaryTracingParseRunner InputLine 3, " +
+                "finish BinaryTracingParseRunner true 0]");
+    }
+
+    @Test
+    public void testRunEventsOnStreamingInput() {
+        // the input is larger than the backtracking window of the StreamingInputBuffer, so signalling the run must
+        // not read ahead to the end of the input before the parser gets to it
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) sb.append("1+");
+        sb.append('1');
+        final String input = sb.toString();
+        StreamingInputBuffer buffer = new StreamingInputBuffer(new Factory<Reader>() {
+            private boolean opened;
+
+            public Reader create() {
+                assertFalse(opened, "input reopened");
+                opened = true;
+                return new StringReader(input);
+            }
+        }, 256, 4);
+
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        final List<Integer> lengths = new ArrayList<Integer>();
+        ParsingEvents.setListener(new ParsingEventAdapter() {
+            @Override
+            public void runStarted(ParseRunner<?> runner, Rule rule, int inputLength) {
+                lengths.add(inputLength);
+            }
+
+            @Override
+            public void runFinished(ParseRunner<?> runner, Rule rule, int inputLength, boolean matched,
+                                    int errorCount, long nanoTime) {
+                lengths.add(inputLength);
+            }
+        });
+        try {
+            assertTrue(new BasicParseRunner<Integer>(parser.InputLine()).run(buffer).matched);
+        } finally {
+            ParsingEvents.setListener(null);
+        }
+        assertEquals(lengths.toString(), "[-1, " + input.length() + ']');
+    }
+
+    private static int count(List<String> events, String prefix) {
+        int count = 0;
+        for (String event : events) {
+            if (event.startsWith(prefix)) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.examples.calculators;
+
+import org.parboiled.Parboiled;
+import org.parboiled.examples.TestNgParboiledTest;
+import org.parboiled.support.PerformanceBudget;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class PerformanceBudgetTest extends TestNgParboiledTest<Integer> {
+
+    @Test
+    public void testBudgetMet() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        testPerformance(parser.InputLine(), "1+2*(3-4)")
+                .matched()
+                .hasAtMostInvocations(89)
+                .hasAtMostBacktracks(39)
+                .hasAtMostReinvocations(0)
+                .allocatesAtMost(3768)
+                .hasResult(-1);
+    }
+
+    @Test
+    public void testBudgetExceeded() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        try {
+            testPerformance(parser.InputLine(), "1+2*(3-4)").hasAtMostInvocations(88);
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage().startsWith(
+                    "Performance budget exceeded: 89 rule invocations, budget is 88\n"), e.getMessage());
+            assertTrue(e.getMessage().contains("Top 10 rules by invocations:\n"));
+            return;
+        }
+        fail("budget violation not detected");
+    }
+
+    @Test
+    public void testPerformanceBudget() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        PerformanceBudget budget = new PerformanceBudget().maxBacktracks(40).maxAllocatedBytes(4000);
+        assertEquals(budget.toString(), "PerformanceBudget[backtracks <= 40, allocated bytes <= 4000]");
+        assertNull(budget.check(PerformanceBudget.measure(parser.InputLine(), "1+2*(3-4)")));
+
+        String violations = budget.check(PerformanceBudget.measure(parser.InputLine(), "1+2*(3-4)+5*(6-7)"));
+        assertTrue(violations.startsWith("" +
+                "Performance budget exceeded: 67 backtracks, budget is 40\n" +
+                "Performance budget exceeded: 6,720 allocated bytes, budget is 4,000\n"), violations);
+    }
+}
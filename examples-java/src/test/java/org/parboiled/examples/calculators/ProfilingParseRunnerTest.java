@@ -20,9 +20,11 @@ import org.parboiled.Parboiled;
 import org.parboiled.examples.TestNgParboiledTest;
 import org.parboiled.parserunners.ProfilingParseRunner;
 import org.parboiled.test.ParboiledTest;
+import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class ProfilingParseRunnerTest extends TestNgParboiledTest<Integer> {
 
@@ -68,4 +70,30 @@ public class ProfilingParseRunnerTest extends TestNgParboiledTest<Integer> {
                 "Term_Action2: Action           |      0 ms |     0  /     0  |     0  /     0  |     0  /     0  |          NaN ns |    NaN% |     0  /     0  |     0  /     0  |     0  /     0  |    NaN% /    NaN%\n");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testAllocationAccounting() {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        ProfilingParseRunner<Integer> runner = new ProfilingParseRunner<Integer>(parser.InputLine());
+        assertFalse(runner.run("1+2*(3-4)").hasErrors());
+        ProfilingParseRunner.Report report = runner.getReport();
+        ProfilingParseRunner.Allocations total = report.totalAllocations;
+        assertEquals(total.getNodes(), 39L);
+        assertEquals(total.getNodeListCells(), 76L);
+        assertEquals(total.getValueStackElements(), 8L);
+        assertEquals(total.getMatcherPaths(), 0L);
+        assertEquals(total.getStrings(), 4L);
+        assertEquals(total.getEstimatedBytes(), 3768L);
+
+        // the value stack elements and match strings are attributed to the action creating them
+        ProfilingParseRunner.RuleReport top = report.sortByAllocations().ruleReports.get(0);
+        assertEquals(top.getMatcher().getLabel(), "Term");
+        for (ProfilingParseRunner.RuleReport rep : report.ruleReports) {
+            if (rep.getMatcher().getLabel().equals("Number_Action1")) {
+                assertEquals(rep.getAllocations().getStrings(), 4L);
+                assertEquals(rep.getAllocations().getValueStackElements(), 4L);
+                assertEquals(rep.getAllocations().getNodes(), 0L);
+            }
+        }
+        assertTrue(report.print().contains("Top 20 rules by allocations:\n"));
+    }
+}
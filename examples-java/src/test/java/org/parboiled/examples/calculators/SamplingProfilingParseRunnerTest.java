@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.examples.calculators;
+
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.parserunners.SamplingProfilingParseRunner;
+import org.parboiled.parserunners.SamplingProfilingParseRunner.Profile;
+import org.parboiled.parserunners.SamplingProfilingParseRunner.Report;
+import org.parboiled.parserunners.SamplingProfilingParseRunner.RuleReport;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class SamplingProfilingParseRunnerTest {
+
+    @Test
+    public void testSamplingProfiling() throws Exception {
+        CalculatorParser1 parser = Parboiled.createParser(CalculatorParser1.class);
+        final Rule rule = parser.InputLine();
+        final Profile profile = new Profile(rule);
+
+        assertFalse(new SamplingProfilingParseRunner<Integer>(rule, profile, 4).run("1+2*(3-4)").hasErrors());
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                new SamplingProfilingParseRunner<Integer>(rule, profile, 4).run("1+2*(3-4)");
+            }
+        };
+        thread.start();
+        thread.join();
+
+        Report report = profile.getReport();
+        assertEquals(report.totalRuns, 2);
+        assertEquals(report.totalInvocations, 178);
+        assertEquals(report.totalMatches, 100);
+        assertEquals(report.totalMismatches, 78);
+        assertEquals(report.rematches + report.remismatches, 0);
+
+        RuleReport top = report.sortByInvocations().ruleReports.get(0);
+        assertEquals(top.getMatcher().getLabel(), "Digit");
+        assertEquals(top.getInvocations(), 18);
+        assertEquals(top.getMatches(), 8);
+
+        String[] table = report.printTopRules(2, Report.namedRules).split("\n");
+        assertEquals(table.length, 4);
+        assertEquals(table[0], "" +
+                "Rule                           | Est. Time |   Invocations   |     Matches     |   Mismatches    |   Re-Matches    |  Re-Mismatches  ");
+        assertEquals(table[1], "" +
+                "-------------------------------|-----------|-----------------|-----------------|-----------------|-----------------|-----------------");
+        assertEquals(table[2].substring(0, 31), "Digit: CharRange               ");
+        assertEquals(table[2].substring(43), "" +
+                "|             18  |              8  |             10  |              0  |              0 ");
+
+        profile.reset();
+        assertEquals(profile.getReport().totalInvocations, 0);
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.examples.java;
+
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.parserunners.HeatmapParseRunner;
+import org.parboiled.parserunners.HeatmapParseRunner.Bucket;
+import org.parboiled.parserunners.HeatmapParseRunner.Heatmap;
+import org.parboiled.parserunners.SamplingProfilingParseRunner;
+import org.parboiled.parserunners.SamplingProfilingParseRunner.Report;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HeatmapParseRunnerTest {
+
+    @Test
+    public void testHeatmap() {
+        String source = "package org.parboiled.examples;\n" +
+                "public class JavaTestSource {\n" +
+                "    public int method(int param) {\n" +
+                "        return param * (param + 1) - method(param - 1);\n" +
+                "    }\n" +
+                "}";
+
+        JavaParser parser = Parboiled.createParser(JavaParser.class);
+        Rule rule = parser.CompilationUnit();
+        HeatmapParseRunner<Object> runner = new HeatmapParseRunner<Object>(rule, 16);
+        assertTrue(runner.run(source).matched);
+        Heatmap heatmap = runner.getHeatmap();
+
+        SamplingProfilingParseRunner<Object> profilingRunner = new SamplingProfilingParseRunner<Object>(rule);
+        profilingRunner.run(source);
+        Report report = profilingRunner.getProfile().getReport();
+
+        // the heatmap distributes the same totals over the input
+        long invocations = 0, reinvocations = 0;
+        for (Bucket bucket : heatmap.buckets) {
+            invocations += bucket.invocations;
+            reinvocations += bucket.getReinvocations();
+            int rescans = 0;
+            for (HeatmapParseRunner.RuleCount ruleCount : bucket.rescanningRules) rescans += ruleCount.count;
+            assertEquals(rescans, bucket.getReinvocations());
+        }
+        assertEquals(invocations, report.totalInvocations);
+        assertEquals(reinvocations, report.rematches + report.remismatches);
+        assertTrue(reinvocations > 0);
+        assertEquals(heatmap.buckets.size(), source.length() / 16 + 1);
+
+        // the expression line is where the grammar backtracks most
+        Bucket hottest = heatmap.getHottestBuckets().get(0);
+        assertEquals(heatmap.inputBuffer.getPosition(hottest.startIndex).line, 4);
+
+        String csv = heatmap.printCsv();
+        assertTrue(csv.startsWith("start,end,line,column,invocations,rematches,remismatches,rescanning_rules\n" +
+                "0,16,1,1,"));
+        assertEquals(csv.split("\n").length, heatmap.buckets.size() + 1);
+        assertTrue(heatmap.print(5).startsWith("Heatmap Report\n"));
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.examples.java;
+
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.parserunners.MemoizationAdvisor;
+import org.parboiled.parserunners.MemoizationAdvisor.Recommendation;
+import org.parboiled.parserunners.ProfilingParseRunner;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertTrue;
+
+public class MemoizationAdvisorTest {
+
+    @Test
+    public void testMemoizationAdvisor() {
+        String source = "package org.parboiled.examples;\n" +
+                "public class JavaTestSource {\n" +
+                "    public int method(int param) {\n" +
+                "        return param * (param + 1) - method(param - 1);\n" +
+                "    }\n" +
+                "}";
+
+        JavaParser parser = Parboiled.createParser(JavaParser.class);
+        Rule rule = parser.CompilationUnit();
+        ProfilingParseRunner<Object> runner = new ProfilingParseRunner<Object>(rule);
+        assertTrue(runner.run(source).matched);
+        ProfilingParseRunner.Report before = runner.getReport();
+
+        // on this small input nothing pays off with the default lookup cost, so we assume cheaper lookups
+        assertTrue(new MemoizationAdvisor(before).getRecommendations().isEmpty());
+        MemoizationAdvisor advisor = new MemoizationAdvisor(before).withLookupCost(0.25);
+        List<Recommendation> recommendations = advisor.getRecommendations();
+        assertTrue(recommendations.size() > 0);
+        for (int i = 1; i < recommendations.size(); i++) {
+            assertTrue(recommendations.get(i - 1).savedInvocations >= recommendations.get(i).savedInvocations);
+        }
+        assertTrue(advisor.print(10).startsWith("Memoization Recommendations\n"));
+
+        // the rewritten grammar still parses the input, with fewer rule invocations
+        Rule memoized = advisor.apply(rule);
+        ProfilingParseRunner<Object> memoizedRunner = new ProfilingParseRunner<Object>(memoized);
+        assertTrue(memoizedRunner.run(source).matched);
+        ProfilingParseRunner.Report after = memoizedRunner.getReport();
+        assertTrue(after.totalInvocations < before.totalInvocations);
+        assertTrue(after.remismatches < before.remismatches);
+    }
+
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled;
+
+import org.parboiled.matchers.*;
+import org.parboiled.matchervisitors.DoWithMatcherVisitor;
+import org.parboiled.matchervisitors.GetFirstCharsVisitor;
+import org.parboiled.support.Characters;
+
+import java.util.*;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * <p>A static analyzer detecting constructs in a grammar that are likely to hurt parsing performance (or are
+ * outright bugs), without running the parser. Like the {@link ParserStatistics} it works on the matcher graph
+ * underneath a root rule, e.g. <code>GrammarAnalyzer.analyze(parser.Compilation())</code>.</p>
+ * <p>The following hazards are detected:</p>
+ * <ul>
+ * <li>Loops ({@link ZeroOrMoreMatcher}, {@link OneOrMoreMatcher}) over rules that can match empty</li>
+ * <li>{@link FirstOfMatcher} alternatives that can never match, since an earlier alternative always matches
+ * (because it can match empty) or matches a prefix of everything the later alternative matches</li>
+ * <li>{@link FirstOfMatcher} alternatives with overlapping first sets, which force the parser to backtrack and
+ * try the later alternative after the earlier one failed</li>
+ * <li>Loops directly nested in loops or over {@link OptionalMatcher}s</li>
+ * <li>Syntactic predicates ({@link TestMatcher}, {@link TestNotMatcher}) over rules that can consume an unbounded
+ * amount of input, which is scanned again once the predicate succeeds</li>
+ * <li>Consecutive {@link FirstOfMatcher} alternatives starting with the same sub rules, which are matched again
+ * for every alternative and can be factored out</li>
+ * </ul>
+ * <p>The estimated cost attached to each hazard is the number of distinct rules potentially re-run because of it
+ * (the size of the respective sub graphs), which is only meant for ranking the hazards against each other.</p>
+ */
+public class GrammarAnalyzer {
+
+    public enum HazardType {
+        NULLABLE_LOOP,
+        SHADOWED_ALTERNATIVE,
+        OVERLAPPING_ALTERNATIVES,
+        NESTED_LOOP,
+        PREDICATE_RESCAN,
+        LEFT_FACTORING
+    }
+
+    public static class Hazard {
+        public final HazardType type;
+        public final Matcher matcher;
+        public final String description;
+        public final int estimatedCost;
+
+        public Hazard(HazardType type, Matcher matcher, String description, int estimatedCost) {
+            this.type = type;
+            this.matcher = matcher;
+            this.description = description;
+            this.estimatedCost = estimatedCost;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s cost %,7d  %s: %s", type, estimatedCost, matcher, description);
+        }
+    }
+
+    private static final int MAX_COST = 1000000;
+
+    private final Matcher root;
+    private final GetFirstCharsVisitor firstCharsVisitor = new GetFirstCharsVisitor();
+    private final Map<Matcher, Map<Matcher, Boolean>> reachables =
+            new IdentityHashMap<Matcher, Map<Matcher, Boolean>>();
+    private final List<Hazard> hazards = new ArrayList<Hazard>();
+
+    public static GrammarAnalyzer analyze(Rule rule) {
+        checkArgNotNull(rule, "rule");
+        return new GrammarAnalyzer((Matcher) rule);
+    }
+
+    private GrammarAnalyzer(Matcher root) {
+        this.root = root;
+        final Map<Matcher, Boolean> matchers = new IdentityHashMap<Matcher, Boolean>();
+        root.accept(new DoWithMatcherVisitor(new DoWithMatcherVisitor.Action() {
+            public void process(Matcher matcher) {
+                matchers.put(MatcherUtils.unwrap(matcher), Boolean.TRUE);
+            }
+        }));
+        for (Matcher matcher : matchers.keySet()) {
+            if (matcher instanceof FirstOfMatcher) {
+                analyzeFirstOf((FirstOfMatcher) matcher);
+            } else if (matcher instanceof ZeroOrMoreMatcher || matcher instanceof OneOrMoreMatcher) {
+                analyzeLoop(matcher, matcher.getChildren().get(0));
+            } else if (matcher instanceof TestMatcher || matcher instanceof TestNotMatcher) {
+                analyzePredicate(matcher, matcher.getChildren().get(0));
+            }
+        }
+        Collections.sort(hazards, new Comparator<Hazard>() {
+            public int compare(Hazard a, Hazard b) {
+                int diff = a.type.compareTo(b.type);
+                return diff != 0 ? diff : b.estimatedCost - a.estimatedCost;
+            }
+        });
+    }
+
+    public Rule getRootRule() {
+        return root;
+    }
+
+    /**
+     * @return all detected hazards, ordered by type and (within each type) by decreasing estimated cost
+     */
+    public List<Hazard> getHazards() {
+        return Collections.unmodifiableList(hazards);
+    }
+
+    public List<Hazard> getHazards(HazardType type) {
+        List<Hazard> list = new ArrayList<Hazard>();
+        for (Hazard hazard : hazards) {
+            if (hazard.type == type) list.add(hazard);
+        }
+        return list;
+    }
+
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Grammar hazards for rule '").append(root).append("'\n");
+        for (HazardType type : HazardType.values()) {
+            sb.append(String.format("    %-24s: %,7d\n", type, getHazards(type).size()));
+        }
+        sb.append('\n');
+        for (Hazard hazard : hazards) {
+            sb.append(hazard).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return print();
+    }
+
+    private void analyzeFirstOf(FirstOfMatcher matcher) {
+        if (matcher instanceof FirstOfStringsMatcher) return; // is fast and fully determined by its strings
+        List<Matcher> alternatives = matcher.getChildren();
+        int count = alternatives.size();
+        boolean[] shadowed = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+            Matcher alternative = alternatives.get(i);
+            // a nullable alternative only shadows the later ones if no predicate or action on its empty path can fail
+            if (i < count - 1 && alwaysMatches(alternative, new IdentityHashMap<Matcher, Boolean>())) {
+                int cost = 0;
+                for (int j = i + 1; j < count; j++) {
+                    shadowed[j] = true;
+                    cost = addCost(cost, getCost(alternatives.get(j)));
+                }
+                addHazard(HazardType.SHADOWED_ALTERNATIVE, matcher, String.format(
+                        "alternative %d (%s) can match empty, so the alternatives after it never match",
+                        i + 1, alternative), cost);
+                break;
+            }
+        }
+
+        for (int j = 1; j < count; j++) {
+            if (shadowed[j]) continue;
+            Matcher later = alternatives.get(j);
+            for (int i = 0; i < j; i++) {
+                Matcher earlier = alternatives.get(i);
+                if (shadows(earlier, later)) {
+                    shadowed[j] = true;
+                    addHazard(HazardType.SHADOWED_ALTERNATIVE, matcher, String.format(
+                            "alternative %d (%s) never matches, since alternative %d (%s) matches a prefix of its input",
+                            j + 1, later, i + 1, earlier), getCost(later));
+                    break;
+                }
+            }
+        }
+
+        StringBuilder overlaps = new StringBuilder();
+        int overlapCost = 0;
+        for (int i = 0; i < count; i++) {
+            Matcher earlier = alternatives.get(i);
+            // single character alternatives fail immediately, so the parser does not have to backtrack over them
+            if (shadowed[i] || isSingleChar(earlier)) continue;
+            Characters earlierChars = firstCharsVisitor.getFirstChars(earlier);
+            for (int j = i + 1; j < count; j++) {
+                if (shadowed[j]) continue;
+                Characters common = intersection(earlierChars, firstCharsVisitor.getFirstChars(alternatives.get(j)));
+                if (common.equals(Characters.NONE)) continue;
+                if (overlaps.length() > 0) overlaps.append(", ");
+                overlaps.append(i + 1).append('/').append(j + 1).append(" on ").append(common);
+                overlapCost = addCost(overlapCost, getCost(earlier));
+            }
+        }
+        if (overlaps.length() > 0) {
+            addHazard(HazardType.OVERLAPPING_ALTERNATIVES, matcher,
+                    "alternatives with overlapping first characters: " + overlaps, overlapCost);
+        }
+
+        for (int i = 0; i < count - 1; ) {
+            List<Matcher> prefix = getSequenceChildren(alternatives.get(i));
+            int end = i + 1;
+            int prefixLength = prefix.size();
+            while (end < count && prefixLength > 0) {
+                int common = commonPrefixLength(prefix, getSequenceChildren(alternatives.get(end)), prefixLength);
+                if (common == 0) break;
+                prefixLength = common;
+                end++;
+            }
+            if (end - i > 1) {
+                int cost = 0;
+                for (Matcher prefixMatcher : prefix.subList(0, prefixLength)) {
+                    cost = addCost(cost, getCost(prefixMatcher));
+                }
+                addHazard(HazardType.LEFT_FACTORING, matcher, String.format(
+                        "alternatives %d to %d start with the same %d sub rule(s) (%s), which could be factored out",
+                        i + 1, end, prefixLength, prefix.get(0)), cost * (end - i - 1));
+            }
+            i = end;
+        }
+    }
+
+    private void analyzeLoop(Matcher loop, Matcher sub) {
+        if (firstCharsVisitor.canMatchEmpty(sub)) {
+            addHazard(HazardType.NULLABLE_LOOP, loop, String.format(
+                    "loops over rule '%s', which can match empty", sub), MAX_COST);
+            return;
+        }
+        Matcher unwrapped = MatcherUtils.unwrap(sub);
+        if (unwrapped instanceof ZeroOrMoreMatcher || unwrapped instanceof OneOrMoreMatcher) {
+            addHazard(HazardType.NESTED_LOOP, loop, String.format(
+                    "directly loops over loop '%s', which causes the inner loop to be re-entered after each of its " +
+                            "iterations", sub), getCost(sub));
+        }
+    }
+
+    private void analyzePredicate(Matcher predicate, Matcher sub) {
+        Map<Matcher, Boolean> reachable = getReachable(sub);
+        boolean unbounded = reachable.containsKey(MatcherUtils.unwrap(sub)); // recursive
+        for (Matcher matcher : reachable.keySet()) {
+            if (unbounded) break;
+            unbounded = matcher instanceof ZeroOrMoreMatcher || matcher instanceof OneOrMoreMatcher;
+        }
+        if (unbounded) {
+            addHazard(HazardType.PREDICATE_RESCAN, predicate, String.format(
+                    "the predicate rule '%s' can consume an unbounded amount of input, which is scanned again after " +
+                            "the predicate", sub), getCost(sub));
+        }
+    }
+
+    private void addHazard(HazardType type, Matcher matcher, String description, int cost) {
+        hazards.add(new Hazard(type, matcher, description, cost));
+    }
+
+    // determines whether the given matcher succeeds on any input, i.e. can match empty without depending on the
+    // outcome of a predicate, action or other non-empty match
+    private static boolean alwaysMatches(Matcher matcher, Map<Matcher, Boolean> visiting) {
+        matcher = MatcherUtils.unwrap(matcher);
+        if (matcher instanceof EmptyMatcher || matcher instanceof OptionalMatcher ||
+                matcher instanceof ZeroOrMoreMatcher) return true;
+        if (visiting.put(matcher, Boolean.TRUE) != null) return false; // recursion
+        try {
+            if (matcher instanceof OneOrMoreMatcher) return alwaysMatches(matcher.getChildren().get(0), visiting);
+            if (matcher instanceof SequenceMatcher) {
+                for (Matcher child : matcher.getChildren()) {
+                    if (!alwaysMatches(child, visiting)) return false;
+                }
+                return true;
+            }
+            if (matcher instanceof FirstOfMatcher) {
+                for (Matcher child : matcher.getChildren()) {
+                    if (alwaysMatches(child, visiting)) return true;
+                }
+            }
+            return false;
+        } finally {
+            visiting.remove(matcher);
+        }
+    }
+
+    // determines whether the earlier alternative always matches when the later one would (and is not empty)
+    private boolean shadows(Matcher earlier, Matcher later) {
+        char[] earlierLiteral = getLiteral(earlier);
+        char[] laterLiteral = getLiteral(later);
+        if (earlierLiteral != null && laterLiteral != null) {
+            if (earlierLiteral.length > laterLiteral.length) return false;
+            for (int i = 0; i < earlierLiteral.length; i++) {
+                if (earlierLiteral[i] != laterLiteral[i]) return false;
+            }
+            return true;
+        }
+        // the starter chars of custom matchers over-approximate the chars they match, so they can only be used
+        // for the later alternative
+        if (isSingleChar(earlier) && !(MatcherUtils.unwrap(earlier) instanceof CustomMatcher) &&
+                (isSingleChar(later) || laterLiteral != null)) {
+            Characters earlierChars = firstCharsVisitor.getFirstChars(earlier);
+            return firstCharsVisitor.getFirstChars(later).remove(earlierChars).equals(Characters.NONE);
+        }
+        return false;
+    }
+
+    private static char[] getLiteral(Matcher matcher) {
+        matcher = MatcherUtils.unwrap(matcher);
+        if (matcher instanceof StringMatcher) return ((StringMatcher) matcher).characters;
+        if (matcher instanceof CharMatcher) return new char[] {((CharMatcher) matcher).character};
+        return null;
+    }
+
+    private static boolean isSingleChar(Matcher matcher) {
+        matcher = MatcherUtils.unwrap(matcher);
+        return matcher instanceof CharMatcher || matcher instanceof CharIgnoreCaseMatcher ||
+                matcher instanceof CharRangeMatcher || matcher instanceof AnyOfMatcher ||
+                matcher instanceof AnyMatcher ||
+                matcher instanceof CustomMatcher && ((CustomMatcher) matcher).isSingleCharMatcher();
+    }
+
+    private static Characters intersection(Characters a, Characters b) {
+        if (a.isSubtractive() && b.isSubtractive()) {
+            // for subtractive sets getChars() returns the excluded characters
+            return Characters.ALL.remove(Characters.of(a.getChars())).remove(Characters.of(b.getChars()));
+        }
+        if (a.isSubtractive()) return intersection(b, a);
+        Characters common = Characters.NONE;
+        for (char c : a.getChars()) {
+            if (b.contains(c)) common = common.add(c);
+        }
+        return common;
+    }
+
+    private static List<Matcher> getSequenceChildren(Matcher matcher) {
+        Matcher unwrapped = MatcherUtils.unwrap(matcher);
+        if (unwrapped instanceof SequenceMatcher && !(unwrapped instanceof StringMatcher)) {
+            return unwrapped.getChildren();
+        }
+        return Collections.singletonList(matcher);
+    }
+
+    private static int commonPrefixLength(List<Matcher> a, List<Matcher> b, int max) {
+        int length = 0;
+        while (length < max && length < b.size() &&
+                MatcherUtils.unwrap(a.get(length)) == MatcherUtils.unwrap(b.get(length)) &&
+                !(MatcherUtils.unwrap(a.get(length)) instanceof ActionMatcher)) {
+            length++;
+        }
+        return length;
+    }
+
+    private int getCost(Matcher matcher) {
+        Map<Matcher, Boolean> reachable = getReachable(matcher);
+        int size = reachable.containsKey(MatcherUtils.unwrap(matcher)) ? reachable.size() : reachable.size() + 1;
+        return Math.min(size, MAX_COST);
+    }
+
+    private static int addCost(int a, int b) {
+        return (int) Math.min((long) a + b, MAX_COST);
+    }
+
+    // the distinct (unwrapped) matchers reachable from the given one, including itself only if it is recursive
+    private Map<Matcher, Boolean> getReachable(Matcher matcher) {
+        Matcher start = MatcherUtils.unwrap(matcher);
+        Map<Matcher, Boolean> reachable = reachables.get(start);
+        if (reachable == null) {
+            reachable = new IdentityHashMap<Matcher, Boolean>();
+            LinkedList<Matcher> pending = new LinkedList<Matcher>(start.getChildren());
+            while (!pending.isEmpty()) {
+                Matcher next = MatcherUtils.unwrap(pending.removeLast());
+                if (reachable.put(next, Boolean.TRUE) == null) pending.addAll(next.getChildren());
+            }
+            reachables.put(start, reachable);
+        }
+        return reachable;
+    }
+}
@@ -77,6 +77,7 @@ public class MatcherContext<V> implements Context<V> {
     private boolean hasError;
     private boolean nodeSuppressed;
     private boolean inErrorRecovery;
+    private AllocationTracker allocationTracker;
 
     /**
      * Initializes a new root MatcherContext.
@@ -101,7 +102,7 @@ public class MatcherContext<V> implements Context<V> {
                 checkArgNotNull(parseErrors, "parseErrors"), checkArgNotNull(matchHandler, "matchHandler"),
                 null, 0, fastStringMatching,  new HashSet<MatcherPosition>());
         this.currentChar = inputBuffer.charAt(0);
-        this.matcher = ProxyMatcher.unwrap(checkArgNotNull(matcher, "matcher"));
+        this.matcher = ProxyMatcher.unwrap(LazyMatcher.unwrap(checkArgNotNull(matcher, "matcher")));
         this.nodeSuppressed = matcher.isNodeSuppressed();
     }
 
@@ -157,6 +158,7 @@ public class MatcherContext<V> implements Context<V> {
         if (path == null) {
             path = new MatcherPath(new MatcherPath.Element(matcher, startIndex, level),
                     parent != null ? parent.getPath() : null);
+            if (allocationTracker != null) allocationTracker.matcherPathCreated();
         }
         return path;
     }
@@ -207,11 +209,15 @@ public class MatcherContext<V> implements Context<V> {
     public String getMatch() {
         checkActionContext();
         MatcherContext prevContext = subContext;
+        String match;
         if (hasError) {
             Node prevNode = prevContext.node;
-            return prevNode != null ? ParseTreeUtils.getNodeText(prevNode, inputBuffer) : "";
+            match = prevNode != null ? ParseTreeUtils.getNodeText(prevNode, inputBuffer) : "";
+        } else {
+            match = inputBuffer.extract(prevContext.startIndex, prevContext.currentIndex);
         }
-        return inputBuffer.extract(prevContext.startIndex, prevContext.currentIndex);
+        if (allocationTracker != null) allocationTracker.stringCreated(match.length());
+        return match;
     }
 
     public char getFirstMatchChar() {
@@ -259,6 +265,10 @@ public class MatcherContext<V> implements Context<V> {
         return valueStack;
     }
 
+    public AllocationTracker getAllocationTracker() {
+        return allocationTracker;
+    }
+
     //////////////////////////////// PUBLIC ////////////////////////////////////
 
     public void setMatcher(Matcher matcher) {
@@ -280,6 +290,16 @@ public class MatcherContext<V> implements Context<V> {
         inErrorRecovery = flag;
     }
 
+    /**
+     * Attaches the given tracker to this context and all sub contexts created from now on.
+     * Must be called on the root context before the parsing run is started.
+     *
+     * @param allocationTracker the tracker or null, to disable allocation accounting
+     */
+    public void setAllocationTracker(AllocationTracker allocationTracker) {
+        this.allocationTracker = allocationTracker;
+    }
+
     public void advanceIndex(int delta) {
         currentIndex += delta;
         currentChar = inputBuffer.charAt(currentIndex);
@@ -315,11 +335,17 @@ public class MatcherContext<V> implements Context<V> {
     @SuppressWarnings({"ConstantConditions"})
     public void createNode() {
         if (!nodeSuppressed) {
-            node = new NodeImpl<V>(matcher, getSubNodes(), startIndex, currentIndex,
+            ImmutableLinkedList<Node<V>> children = getSubNodes();
+            node = new NodeImpl<V>(matcher, children, startIndex, currentIndex,
                     valueStack.isEmpty() ? null : valueStack.peek(), hasError);
             if (parent != null) {
                 parent.subNodes = parent.subNodes.prepend(node);
             }
+            if (allocationTracker != null) {
+                // unless our matcher is node-skipped getSubNodes() has created a new list of all the children
+                allocationTracker.nodeCreated((parent != null ? 1 : 0) +
+                        (matcher.isNodeSkipped() ? 0 : children.size()));
+            }
         }
     }
 
@@ -328,6 +354,7 @@ public class MatcherContext<V> implements Context<V> {
             // init new level
             subContext = new MatcherContext<V>(inputBuffer, valueStack, parseErrors, matchHandler, this, level + 1,
                         fastStringMatching, memoizedMismatches);
+            subContext.allocationTracker = allocationTracker;
         } else {
             subContext.path = null; // we always need to reset the MatcherPath, even for actions
         }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.parboiled.support.IndexRange;
+import org.parboiled.support.Position;
+
+import java.nio.ByteBuffer;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>Immutable InputBuffer implementation over raw bytes, e.g. network or file data of binary or ASCII-based
+ * protocols. No character decoding takes place, each byte is presented to the parser as one character with the
+ * (unsigned) byte value, i.e. in the range 0x00 to 0xFF. Therefore all ASCII characters (and, more generally, all
+ * ISO-8859-1 characters) in rules match their single-byte encoding directly and the byte-level rule primitives
+ * (like <code>BaseParser.Byte(int)</code> or <code>BaseParser.ByteRange(int, int)</code>) can be used for
+ * everything else. Strings extracted from the buffer map the bytes to chars in the same fashion.</p>
+ * <p>The buffer works directly on the given byte array or ByteBuffer (including direct ByteBuffers), without copying
+ * or decoding the input.</p>
+ */
+public class ByteInputBuffer implements InputBuffer {
+    private final ByteBuffer buffer;
+    private final int length;
+
+    // built lazily, since the line information is normally only needed in the case of parse errors when
+    // error messages need to be generated
+    private LineIndex lineIndex;
+
+    /**
+     * Constructs a new ByteInputBuffer wrapping the given byte array.
+     * CAUTION: For performance reasons the given byte array is not defensively copied.
+     *
+     * @param bytes the bytes
+     */
+    public ByteInputBuffer(byte[] bytes) {
+        this(ByteBuffer.wrap(checkArgNotNull(bytes, "bytes")));
+    }
+
+    /**
+     * Constructs a new ByteInputBuffer wrapping the given range of the given byte array.
+     * CAUTION: For performance reasons the given byte array is not defensively copied.
+     *
+     * @param bytes  the bytes
+     * @param offset the index of the first input byte
+     * @param length the number of input bytes
+     */
+    public ByteInputBuffer(byte[] bytes, int offset, int length) {
+        this(ByteBuffer.wrap(checkArgNotNull(bytes, "bytes"), offset, length));
+    }
+
+    /**
+     * Constructs a new ByteInputBuffer wrapping the remaining bytes of the given ByteBuffer, i.e. the bytes between
+     * its current position and its limit. The position of the given buffer is not changed, neither by this
+     * constructor nor by the parsing process.
+     * CAUTION: For performance reasons the content of the given buffer is not copied.
+     *
+     * @param buffer the buffer
+     */
+    public ByteInputBuffer(ByteBuffer buffer) {
+        checkArgNotNull(buffer, "buffer");
+        this.buffer = buffer.slice();
+        this.length = this.buffer.remaining();
+    }
+
+    /**
+     * Constructs a new ByteInputBuffer wrapping the remaining bytes of the given ByteBuffer and using the given,
+     * previously built {@link LineIndex}, e.g. one shared with other buffers over the same input.
+     * CAUTION: For performance reasons the content of the given buffer is not copied.
+     *
+     * @param buffer    the buffer
+     * @param lineIndex the line index of the remaining bytes of the buffer
+     */
+    public ByteInputBuffer(ByteBuffer buffer, LineIndex lineIndex) {
+        this(buffer);
+        checkArgNotNull(lineIndex, "lineIndex");
+        checkArgument(lineIndex.getLength() == length, "lineIndex was built for a different input");
+        this.lineIndex = lineIndex;
+    }
+
+    /**
+     * Converts the given byte value into the character representing it in a ByteInputBuffer.
+     *
+     * @param b the byte value, either signed (-128 to 127) or unsigned (0 to 255)
+     * @return the character
+     */
+    public static char toChar(int b) {
+        checkArgument(-128 <= b && b <= 255, "Illegal byte value: " + b);
+        return (char) (b & 0xFF);
+    }
+
+    /**
+     * Converts the given byte values into the characters representing them in a ByteInputBuffer.
+     *
+     * @param bytes the byte values, either signed (-128 to 127) or unsigned (0 to 255)
+     * @return the characters
+     */
+    public static char[] toChars(int... bytes) {
+        checkArgNotNull(bytes, "bytes");
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = toChar(bytes[i]);
+        }
+        return chars;
+    }
+
+    /**
+     * Converts the given bytes into the characters representing them in a ByteInputBuffer.
+     *
+     * @param bytes the bytes
+     * @return the characters
+     */
+    public static char[] toChars(byte[] bytes) {
+        checkArgNotNull(bytes, "bytes");
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return chars;
+    }
+
+    public char charAt(int index) {
+        return 0 <= index && index < length ? (char) (buffer.get(index) & 0xFF) :
+                index - length > 100000 ? throwParsingException() : Chars.EOI;
+    }
+
+    private char throwParsingException() {
+        throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                "verify that your grammar does not consume EOI indefinitely!");
+    }
+
+    public boolean test(int index, char[] characters) {
+        int len = characters.length;
+        if (index < 0 || index > length - len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if ((buffer.get(index + i) & 0xFF) != characters[i]) return false;
+        }
+        return true;
+    }
+
+    public String extract(int start, int end) {
+        if (start < 0) start = 0;
+        if (end >= length) end = length;
+        if (end <= start) return "";
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (buffer.get(start + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    public String extract(IndexRange range) {
+        return extract(range.start, range.end);
+    }
+
+    /**
+     * Returns a copy of the bytes between the given indices.
+     * Invalid indices are automatically adjusted to their respective boundary.
+     *
+     * @param start the start index (inclusively)
+     * @param end   the end index (exclusively)
+     * @return a new byte array
+     */
+    public byte[] extractBytes(int start, int end) {
+        if (start < 0) start = 0;
+        if (end >= length) end = length;
+        if (end <= start) return new byte[0];
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return bytes;
+    }
+
+    public Position getPosition(int index) {
+        return getLineIndex().getPosition(index);
+    }
+
+    public int getOriginalIndex(int index) {
+        return index;
+    }
+
+    public String extractLine(int lineNumber) {
+        LineIndex lineIndex = getLineIndex();
+        int start = lineIndex.getLineStart(lineNumber);
+        int end = lineIndex.getLineEnd(lineNumber);
+        if (charAt(end - 1) == '\r') end--;
+        return extract(start, end);
+    }
+
+    public int getLineCount() {
+        return getLineIndex().getLineCount();
+    }
+
+    /**
+     * Returns the {@link LineIndex} of this buffer, building it on the first call if it was not passed in
+     * at construction time.
+     *
+     * @return the line index
+     */
+    public LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            lineIndex = LineIndex.of(buffer);
+        }
+        return lineIndex;
+    }
+}
@@ -16,14 +16,11 @@
 
 package org.parboiled.buffers;
 
-import org.parboiled.common.IntArrayStack;
 import org.parboiled.errors.ParserRuntimeException;
 import org.parboiled.support.Chars;
 import org.parboiled.support.IndexRange;
 import org.parboiled.support.Position;
 
-import java.util.Arrays;
-
 import static org.parboiled.common.Preconditions.checkArgNotNull;
 import static org.parboiled.common.Preconditions.checkArgument;
 
@@ -34,10 +31,9 @@ public class DefaultInputBuffer implements InputBuffer {
     private final int length;
     private final char[] buffer;
 
-    // the indices of the newline characters in the buffer
-    // built lazily, since the newline information is normally only needed in the case of parse errors when
+    // built lazily, since the line information is normally only needed in the case of parse errors when
     // error messages need to be generated
-    private int[] newlines;
+    private LineIndex lineIndex;
 
     /**
      * Constructs a new DefaultInputBuffer wrapping the given char array.
@@ -51,6 +47,21 @@ public class DefaultInputBuffer implements InputBuffer {
         this.length = buffer.length;
     }
 
+    /**
+     * Constructs a new DefaultInputBuffer wrapping the given char array and using the given, previously built
+     * {@link LineIndex}, e.g. one shared with other buffers over the same input.
+     * CAUTION: For performance reasons the given char array is not defensively copied.
+     *
+     * @param buffer    the chars
+     * @param lineIndex the line index of the chars
+     */
+    public DefaultInputBuffer(char[] buffer, LineIndex lineIndex) {
+        this(buffer);
+        checkArgNotNull(lineIndex, "lineIndex");
+        checkArgument(lineIndex.getLength() == length, "lineIndex was built for a different input");
+        this.lineIndex = lineIndex;
+    }
+
     public char charAt(int index) {
         return 0 <= index && index < length ? buffer[index] :
                 index - length > 100000 ? throwParsingException() : Chars.EOI;
@@ -84,47 +95,36 @@ public class DefaultInputBuffer implements InputBuffer {
     }
 
     public Position getPosition(int index) {
-        buildNewlines();
-        int line = getLine0(newlines, index);
-        int column = index - (line > 0 ? newlines[line - 1] : -1);
-        return new Position(line + 1, column);
+        return getLineIndex().getPosition(index);
     }
 
     public int getOriginalIndex(int index) {
         return index;
     }
 
-    // returns the zero based input line number the character with the given index is found in
-    private static int getLine0(int[] newlines, int index) {
-        int j = Arrays.binarySearch(newlines, index);
-        return j >= 0 ? j : -(j + 1);
-    }
-
     public String extractLine(int lineNumber) {
-        buildNewlines();
-        checkArgument(0 < lineNumber && lineNumber <= newlines.length + 1);
-        int start = lineNumber > 1 ? newlines[lineNumber - 2] + 1 : 0;
-        int end = lineNumber <= newlines.length ? newlines[lineNumber - 1] : length;
+        LineIndex lineIndex = getLineIndex();
+        int start = lineIndex.getLineStart(lineNumber);
+        int end = lineIndex.getLineEnd(lineNumber);
         if (charAt(end - 1) == '\r') end--;
         return extract(start, end);
     }
 
     public int getLineCount() {
-        buildNewlines();
-        return newlines.length + 1;
+        return getLineIndex().getLineCount();
     }
 
-    private void buildNewlines() {
-        if (newlines == null) {
-            IntArrayStack newlines = new IntArrayStack();
-            for (int i = 0; i < length; i++) {
-                if (buffer[i] == '\n') {
-                    newlines.push(i);
-                }
-            }
-            this.newlines = new int[newlines.size()];
-            newlines.getElements(this.newlines, 0);
+    /**
+     * Returns the {@link LineIndex} of this buffer, building it on the first call if it was not passed in
+     * at construction time.
+     *
+     * @return the line index
+     */
+    public LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            lineIndex = LineIndex.of(buffer);
         }
+        return lineIndex;
     }
 }
 
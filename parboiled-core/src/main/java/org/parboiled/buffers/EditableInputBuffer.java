@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.parboiled.support.IndexRange;
+import org.parboiled.support.Position;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>An InputBuffer supporting editor-style changes of its content, e.g. for re-parsing a document after each
+ * change made in an editor. In contrast to the {@link MutableInputBuffer} (used internally by the error recovery)
+ * all changes are real: they appear in extracted text and positions refer to the current content.</p>
+ * <p>The content is kept as a piece table, i.e. a sequence of pieces referencing either the (never copied)
+ * original chars or an append-only buffer holding all inserted text. Therefore a change only costs time
+ * proportional to the number of pieces and the length of the inserted text, independently of the input size.
+ * Sequential reads are served from the current piece without a lookup.</p>
+ * <p>The line index required for positions and line extraction is rebuilt lazily after a change, i.e. only if
+ * positions are actually requested (normally only for error reporting).</p>
+ * <p>Instances are not thread-safe, since even reading a char moves the piece cursor, so a buffer must only be
+ * accessed by one thread at a time.</p>
+ */
+public class EditableInputBuffer implements InputBuffer {
+    private final char[] original;
+    private char[] added = new char[64];
+    private int addedLength;
+
+    // the pieces, each referencing the chars [start, start + length) of either the original or the added chars
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private boolean[] fromAdded = new boolean[16];
+    private int pieceCount;
+    private int length;
+
+    // the piece last read from and the buffer index of its first char
+    private int cursorPiece;
+    private int cursorStart;
+
+    // the current content and its line index, built lazily after changes
+    private DefaultInputBuffer snapshot;
+
+    /**
+     * Constructs a new EditableInputBuffer with the given initial content.
+     * CAUTION: For performance reasons the given char array is not defensively copied and must not be modified
+     * afterwards.
+     *
+     * @param chars the initial content
+     */
+    public EditableInputBuffer(char[] chars) {
+        checkArgNotNull(chars, "chars");
+        this.original = chars;
+        this.length = chars.length;
+        if (length > 0) {
+            lengths[0] = length;
+            pieceCount = 1;
+        }
+    }
+
+    /**
+     * @return the number of chars currently in the buffer
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Inserts the given text at the given index.
+     *
+     * @param index the index, between 0 and the current length (inclusively)
+     * @param text  the text to insert
+     */
+    public void insert(int index, CharSequence text) {
+        replace(index, index, text);
+    }
+
+    /**
+     * Deletes the chars between the given indices.
+     *
+     * @param start the start index (inclusively)
+     * @param end   the end index (exclusively)
+     */
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
+    /**
+     * Replaces the chars between the given indices with the given text, which corresponds to the typical
+     * incremental change notification of an editor (range plus new text).
+     *
+     * @param start the start index (inclusively)
+     * @param end   the end index (exclusively)
+     * @param text  the replacement text
+     */
+    public void replace(int start, int end, CharSequence text) {
+        checkArgNotNull(text, "text");
+        checkArgument(0 <= start && start <= end && end <= length, "Illegal range [" + start + ", " + end + ')');
+        int first = split(start);
+        int last = split(end);
+        int textLength = text.length();
+        int removed = last - first;
+        int insertedPieces = textLength > 0 ? 1 : 0;
+        ensurePieceCapacity(pieceCount - removed + insertedPieces);
+        int tail = pieceCount - last;
+        int target = first + insertedPieces;
+        System.arraycopy(starts, last, starts, target, tail);
+        System.arraycopy(lengths, last, lengths, target, tail);
+        System.arraycopy(fromAdded, last, fromAdded, target, tail);
+        pieceCount = target + tail;
+        if (textLength > 0) {
+            starts[first] = append(text);
+            lengths[first] = textLength;
+            fromAdded[first] = true;
+        }
+        length += textLength - (end - start);
+        cursorPiece = 0;
+        cursorStart = 0;
+        snapshot = null;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            return index - length > 100000 ? throwParsingException() : Chars.EOI;
+        }
+        int piece = cursorPiece;
+        int pieceStart = cursorStart;
+        if (index < pieceStart) {
+            do {
+                pieceStart -= lengths[--piece];
+            } while (index < pieceStart);
+        } else {
+            while (index >= pieceStart + lengths[piece]) {
+                pieceStart += lengths[piece++];
+            }
+        }
+        cursorPiece = piece;
+        cursorStart = pieceStart;
+        int ix = starts[piece] + index - pieceStart;
+        return fromAdded[piece] ? added[ix] : original[ix];
+    }
+
+    private char throwParsingException() {
+        throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                "verify that your grammar does not consume EOI indefinitely!");
+    }
+
+    public boolean test(int index, char[] characters) {
+        int len = characters.length;
+        if (index < 0 || index > length - len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (charAt(index + i) != characters[i]) return false;
+        }
+        return true;
+    }
+
+    public String extract(int start, int end) {
+        if (start < 0) start = 0;
+        if (end >= length) end = length;
+        if (end <= start) return "";
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = charAt(start + i);
+        }
+        return new String(chars);
+    }
+
+    public String extract(IndexRange range) {
+        return extract(range.start, range.end);
+    }
+
+    public Position getPosition(int index) {
+        return getSnapshot().getPosition(index);
+    }
+
+    public int getOriginalIndex(int index) {
+        return index;
+    }
+
+    public String extractLine(int lineNumber) {
+        return getSnapshot().extractLine(lineNumber);
+    }
+
+    public int getLineCount() {
+        return getSnapshot().getLineCount();
+    }
+
+    @Override
+    public String toString() {
+        return extract(0, length);
+    }
+
+    private DefaultInputBuffer getSnapshot() {
+        if (snapshot == null) {
+            snapshot = new DefaultInputBuffer(extract(0, length).toCharArray());
+        }
+        return snapshot;
+    }
+
+    // makes sure that a piece starts at the given index and returns the number of that piece
+    // (or the number of pieces if the index is the length of the buffer)
+    private int split(int index) {
+        int piece = 0;
+        int pieceStart = 0;
+        while (piece < pieceCount && pieceStart + lengths[piece] <= index) {
+            pieceStart += lengths[piece++];
+        }
+        if (piece == pieceCount || pieceStart == index) return piece;
+
+        ensurePieceCapacity(pieceCount + 1);
+        int tail = pieceCount - piece;
+        System.arraycopy(starts, piece, starts, piece + 1, tail);
+        System.arraycopy(lengths, piece, lengths, piece + 1, tail);
+        System.arraycopy(fromAdded, piece, fromAdded, piece + 1, tail);
+        pieceCount++;
+        int headLength = index - pieceStart;
+        lengths[piece] = headLength;
+        starts[piece + 1] += headLength;
+        lengths[piece + 1] -= headLength;
+        return piece + 1;
+    }
+
+    private void ensurePieceCapacity(int capacity) {
+        if (capacity > starts.length) {
+            int newCapacity = Math.max(capacity, starts.length * 2);
+            int[] newStarts = new int[newCapacity];
+            int[] newLengths = new int[newCapacity];
+            boolean[] newFromAdded = new boolean[newCapacity];
+            System.arraycopy(starts, 0, newStarts, 0, pieceCount);
+            System.arraycopy(lengths, 0, newLengths, 0, pieceCount);
+            System.arraycopy(fromAdded, 0, newFromAdded, 0, pieceCount);
+            starts = newStarts;
+            lengths = newLengths;
+            fromAdded = newFromAdded;
+        }
+    }
+
+    // appends the given text to the added chars and returns its start index therein
+    private int append(CharSequence text) {
+        int textLength = text.length();
+        if (addedLength + textLength > added.length) {
+            char[] newAdded = new char[Math.max(addedLength + textLength, added.length * 2)];
+            System.arraycopy(added, 0, newAdded, 0, addedLength);
+            added = newAdded;
+        }
+        int start = addedLength;
+        for (int i = 0; i < textLength; i++) {
+            added[addedLength++] = text.charAt(i);
+        }
+        return start;
+    }
+}
@@ -50,4 +50,72 @@ public final class InputBufferUtils {
         }
         return sb.toString();
     }
+
+    /**
+     * Determines the number of characters the given input buffer provides before the first EOI character.
+     * Since the InputBuffer interface does not expose the length of the underlying input this method determines it
+     * by probing, which requires only a logarithmic number of {@link InputBuffer#charAt(int)} calls.
+     * @param buf the input buffer
+     * @return the index of the first EOI character in the buffer
+     */
+    public static int getLength(InputBuffer buf) {
+        // gallop forward with doubling (but bounded) steps, so as to never read too far beyond EOI
+        int lo = 0;
+        int step = 1;
+        while (buf.charAt(lo + step - 1) != EOI) {
+            lo += step;
+            if (step < 0x10000) step <<= 1;
+        }
+        // now the EOI lies somewhere in [lo, lo + step - 1], binary search for it
+        int hi = lo + step - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (buf.charAt(mid) != EOI) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Determines the number of characters the given input buffer provides before the first EOI character, if this
+     * is possible without reading ahead in the input. Streaming and lazily converting input buffers (and buffers
+     * wrapping these) only know their length once they have reached the end of their input.
+     *
+     * @param buf the input buffer
+     * @return the index of the first EOI character in the buffer or -1, if it is not known yet
+     */
+    public static int getKnownLength(InputBuffer buf) {
+        if (buf instanceof StreamingInputBuffer) return ((StreamingInputBuffer) buf).getLength();
+        if (buf instanceof LazyIndentDedentInputBuffer) return -1;
+        if (buf instanceof SubInputBuffer) {
+            SubInputBuffer sub = (SubInputBuffer) buf;
+            if (sub.getLength() >= 0) return sub.getLength();
+            int length = getKnownLength(sub.getBuffer());
+            return length < 0 ? -1 : Math.max(length - sub.getStart(), 0);
+        }
+        if (buf instanceof MutableInputBuffer && getKnownLength(((MutableInputBuffer) buf).getBuffer()) < 0) return -1;
+        return getLength(buf);
+    }
+
+    /**
+     * Determines whether the given input buffer presents raw bytes to the parser, i.e. whether it is a
+     * {@link ByteInputBuffer} or a {@link MutableInputBuffer} or {@link SubInputBuffer} wrapping one.
+     *
+     * @param buf the input buffer
+     * @return true if the chars of the buffer are the bytes of the underlying input
+     */
+    public static boolean isByteInput(InputBuffer buf) {
+        while (true) {
+            if (buf instanceof MutableInputBuffer) {
+                buf = ((MutableInputBuffer) buf).getBuffer();
+            } else if (buf instanceof SubInputBuffer) {
+                buf = ((SubInputBuffer) buf).getBuffer();
+            } else {
+                return buf instanceof ByteInputBuffer;
+            }
+        }
+    }
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.common.IntArrayStack;
+import org.parboiled.errors.IllegalIndentationException;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.parboiled.support.IndexRange;
+import org.parboiled.support.Position;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+import static org.parboiled.common.Utils.copyOf;
+
+/**
+ * <p>Lazy variant of the {@link IndentDedentInputBuffer} for large inputs, presenting exactly the same content to
+ * the parser. Instead of converting the whole input during construction, this buffer converts the input line by line
+ * as the parser reads forward and keeps no copy of the converted text.</p>
+ * <p>The converted text is represented by a run-length index: a list of segments, each of which is either a run of
+ * characters copied from the original input or a run of generated characters ({@link Chars#INDENT},
+ * {@link Chars#DEDENT} or the newline replacing a line comment) mapping to one original index. Since a text line
+ * normally creates no more than two segments, the memory overhead is proportional to the number of lines rather
+ * than the number of characters.</p>
+ * <p>In strict mode an {@link IllegalIndentationException} is thrown when the parser (or any other client of the
+ * buffer) first reads beyond the line containing the illegal indentation rather than during construction.</p>
+ */
+public class LazyIndentDedentInputBuffer implements InputBuffer {
+    private static final int COPY = -1;
+
+    private final char[] input;
+    private final DefaultInputBuffer origBuffer;
+    private final Converter converter;
+
+    // the segments of the converted text: the converted index of their first char, the original index of their first
+    // char and either COPY or the generated char
+    private int[] segConvStarts = new int[64];
+    private int[] segOrigStarts = new int[64];
+    private int[] segChars = new int[64];
+    private int segCount;
+    private int convLength; // the length of the converted text generated so far
+
+    // the segment last read from
+    private int cursorSeg;
+
+    /**
+     * Creates a new LazyIndentDedentInputBuffer around the given char array. Note that for performance reasons the
+     * given char array is not defensively copied.
+     *
+     * @param input            the input text.
+     * @param tabStop          the number of characters in a tab stop.
+     * @param lineCommentStart the string starting a line comment or null, if line comments are not defined
+     * @param strict           signals whether the buffer should throw an {@link IllegalIndentationException} on
+     * "semi-dedents", if false the buffer silently accepts these
+     * @param skipEmptyLines   signals whether the buffer should swallow empty lines
+     */
+    public LazyIndentDedentInputBuffer(char[] input, int tabStop, String lineCommentStart, boolean strict,
+                                       boolean skipEmptyLines) {
+        checkArgNotNull(input, "input");
+        checkArgument(tabStop > 0, "tabStop must be > 0");
+        checkArgument(lineCommentStart == null || lineCommentStart.indexOf('\n') == -1,
+                "lineCommentStart must not contain newlines");
+        this.input = input;
+        this.origBuffer = new DefaultInputBuffer(input);
+        this.converter = new Converter(tabStop, lineCommentStart != null ? lineCommentStart.toCharArray() : null,
+                strict, skipEmptyLines);
+    }
+
+    public char charAt(int index) {
+        if (index < 0) return Chars.EOI;
+        if (index >= convLength && !convertUpTo(index)) {
+            if (index - convLength > 100000) {
+                throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                        "verify that your grammar does not consume EOI indefinitely!");
+            }
+            return Chars.EOI;
+        }
+        int seg = findSegment(index);
+        int c = segChars[seg];
+        return c == COPY ? input[segOrigStarts[seg] + index - segConvStarts[seg]] : (char) c;
+    }
+
+    public boolean test(int index, char[] characters) {
+        for (int i = 0; i < characters.length; i++) {
+            if (charAt(index + i) != characters[i]) return false;
+        }
+        return true;
+    }
+
+    public String extract(int start, int end) {
+        return origBuffer.extract(map(start), map(end));
+    }
+
+    public String extract(IndexRange range) {
+        return origBuffer.extract(map(range.start), map(range.end));
+    }
+
+    public Position getPosition(int index) {
+        return origBuffer.getPosition(map(index));
+    }
+
+    public int getOriginalIndex(int index) {
+        return map(index);
+    }
+
+    public String extractLine(int lineNumber) {
+        return origBuffer.extractLine(lineNumber);
+    }
+
+    public int getLineCount() {
+        return origBuffer.getLineCount();
+    }
+
+    /**
+     * @return the number of segments of the run-length index created so far
+     */
+    public int getSegmentCount() {
+        return segCount;
+    }
+
+    private int map(int convIndex) {
+        if (convIndex < 0) {
+            convertUpTo(0);
+            return segCount > 0 ? segOrigStarts[0] : 0;
+        }
+        if (convIndex < convLength || convertUpTo(convIndex)) {
+            int seg = findSegment(convIndex);
+            return segChars[seg] == COPY ? segOrigStarts[seg] + convIndex - segConvStarts[seg] : segOrigStarts[seg];
+        }
+        if (convLength == 0) return 1;
+        return map(convLength - 1) + 1;
+    }
+
+    // converts the input until the converted text contains the given index or the input is exhausted,
+    // returns true if the converted text contains the index
+    private boolean convertUpTo(int convIndex) {
+        while (convLength <= convIndex) {
+            if (!converter.step()) return false;
+        }
+        return true;
+    }
+
+    // returns the segment containing the given index, which must be smaller than convLength
+    private int findSegment(int convIndex) {
+        int seg = cursorSeg;
+        if (segConvStarts[seg] <= convIndex) {
+            // sequential reads stay in the current segment or move to one of the next ones
+            for (int i = 0; i < 4; i++, seg++) {
+                if (seg + 1 == segCount || convIndex < segConvStarts[seg + 1]) {
+                    return cursorSeg = seg;
+                }
+            }
+        }
+        int low = 0;
+        int high = segCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segConvStarts[mid] <= convIndex) low = mid;
+            else high = mid - 1;
+        }
+        return cursorSeg = low;
+    }
+
+    private void appendCopy(int origStart, int count) {
+        int last = segCount - 1;
+        if (last < 0 || segChars[last] != COPY ||
+                segOrigStarts[last] + convLength - segConvStarts[last] != origStart) {
+            addSegment(origStart, COPY);
+        }
+        convLength += count;
+    }
+
+    private void appendGenerated(int origIndex, char c) {
+        int last = segCount - 1;
+        if (last < 0 || segChars[last] != c || segOrigStarts[last] != origIndex) {
+            addSegment(origIndex, c);
+        }
+        convLength++;
+    }
+
+    private void addSegment(int origStart, int c) {
+        if (segCount == segConvStarts.length) {
+            int capacity = segCount * 2;
+            segConvStarts = copyOf(segConvStarts, capacity);
+            segOrigStarts = copyOf(segOrigStarts, capacity);
+            segChars = copyOf(segChars, capacity);
+        }
+        segConvStarts[segCount] = convLength;
+        segOrigStarts[segCount] = origStart;
+        segChars[segCount] = c;
+        segCount++;
+    }
+
+    // converts the input line by line, following the same rules as the IndentDedentInputBuffer
+    private class Converter {
+        private final int tabStop;
+        private final char[] lineCommentStart;
+        private final boolean strict;
+        private final boolean skipEmptyLines;
+        private final IntArrayStack previousLevels = new IntArrayStack();
+        private int currentLevel;
+        private int cursor = 0;
+        private char currentChar;
+        private boolean started;
+        private boolean finished;
+
+        private Converter(int tabStop, char[] lineCommentStart, boolean strict, boolean skipEmptyLines) {
+            this.tabStop = tabStop;
+            this.lineCommentStart = lineCommentStart;
+            this.strict = strict;
+            this.skipEmptyLines = skipEmptyLines;
+            this.currentChar = origBuffer.charAt(0);
+        }
+
+        // converts the next part of the input (at most one line), returns false if the input is exhausted
+        private boolean step() {
+            if (finished) return false;
+            if (!started) {
+                started = true;
+                previousLevels.push(0);
+                currentLevel = skipIndent(); // consume inital indent
+                return true;
+            }
+            if (currentChar == Chars.EOI) {
+                finish();
+                return true;
+            }
+
+            int commentChars = skipLineComment();
+            if (currentChar != '\n' && currentChar != Chars.EOI) {
+                copyRun();
+                return true;
+            }
+
+            // register newline
+            appendNewline(commentChars);
+            advance();
+
+            // consume line indent
+            int indent = skipIndent();
+
+            // generate INDENTS/DEDENTS
+            if (indent > currentLevel) {
+                previousLevels.push(currentLevel);
+                currentLevel = indent;
+                appendGenerated(cursor, Chars.INDENT);
+            } else {
+                while (indent < currentLevel && indent <= previousLevels.peek()) {
+                    currentLevel = previousLevels.pop();
+                    appendGenerated(cursor, Chars.DEDENT);
+                }
+                if (strict && indent < currentLevel) {
+                    finished = true;
+                    throw new IllegalIndentationException(origBuffer, origBuffer.getPosition(cursor));
+                }
+            }
+            return true;
+        }
+
+        // make sure to close all remaining indentation scopes
+        private void finish() {
+            finished = true;
+            if (previousLevels.size() > 1) {
+                appendGenerated(cursor, '\n');
+                while (previousLevels.size() > 1) {
+                    previousLevels.pop();
+                    appendGenerated(cursor, Chars.DEDENT);
+                }
+            }
+        }
+
+        // copies the chars up to the end of the line or the start of a line comment
+        private void copyRun() {
+            int start = cursor;
+            int end = cursor + 1;
+            while (end < input.length && input[end] != '\n' &&
+                    (lineCommentStart == null || !origBuffer.test(end, lineCommentStart))) {
+                end++;
+            }
+            appendCopy(start, end - start);
+            cursor = end - 1;
+            advance();
+        }
+
+        private void appendNewline(int commentChars) {
+            if (commentChars == 0) appendCopy(cursor, 1);
+            else appendGenerated(cursor - commentChars, '\n');
+        }
+
+        private int skipIndent() {
+            int indent = 0;
+            loop:
+            while (true) {
+                switch (currentChar) {
+                    case ' ':
+                        indent++;
+                        advance();
+                        continue;
+                    case '\t':
+                        indent = ((indent / tabStop) + 1) * tabStop;
+                        advance();
+                        continue;
+                    case '\n':
+                        if (!skipEmptyLines) appendNewline(0);
+                        indent = 0;
+                        advance();
+                        continue;
+                    case Chars.EOI:
+                        indent = 0;
+                        break loop;
+                    default:
+                        if (skipLineComment() == 0) break loop;
+                }
+            }
+            return indent;
+        }
+
+        private void advance() {
+            currentChar = origBuffer.charAt(++cursor);
+        }
+
+        private int skipLineComment() {
+            if (lineCommentStart != null && origBuffer.test(cursor, lineCommentStart)) {
+                int start = cursor;
+                while (currentChar != '\n' && currentChar != Chars.EOI) {
+                    advance();
+                }
+                return cursor - start;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.common.IntArrayStack;
+import org.parboiled.support.Position;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>Immutable index of the line starts in an input text, used by {@link InputBuffer} implementations for mapping
+ * input indices to {@link Position}s and for extracting input lines.</p>
+ * <p>Since a LineIndex only depends on the input text it can be built once and shared across any number of
+ * InputBuffers (and therefore parsing runs) over the same input, also concurrently. Inputs of at least
+ * {@link #PARALLEL_THRESHOLD} characters are scanned in parallel chunks, one per available processor.</p>
+ * <p>Position lookups remember the line of the last lookup, so that the typical sequence of monotonically
+ * increasing queries (as created e.g. by error formatting or tracing) is resolved with a short forward scan
+ * instead of a binary search over all lines.</p>
+ */
+public final class LineIndex {
+
+    /**
+     * The minimum number of input characters for which {@link #of(char[])} and {@link #of(ByteBuffer)} build the
+     * index in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+    // the maximum number of lines a lookup scans forward from the last looked up line before falling back
+    // to a binary search
+    private static final int MAX_FORWARD_SCAN = 8;
+
+    private final int length;
+
+    // the indices of the newline characters in the input
+    private final int[] newlines;
+
+    // the zero based line number of the last lookup, racy but benign since every value is a valid start line
+    private int lastLine;
+
+    private LineIndex(int length, int[] newlines) {
+        this.length = length;
+        this.newlines = newlines;
+    }
+
+    /**
+     * Builds the LineIndex for the given characters.
+     *
+     * @param chars the input characters
+     * @return the LineIndex
+     */
+    public static LineIndex of(char[] chars) {
+        checkArgNotNull(chars, "chars");
+        return of(chars, defaultParallelism(chars.length));
+    }
+
+    /**
+     * Builds the LineIndex for the given characters by scanning the given number of chunks in parallel.
+     *
+     * @param chars       the input characters
+     * @param parallelism the number of chunks to scan concurrently, 1 for a sequential scan
+     * @return the LineIndex
+     */
+    public static LineIndex of(final char[] chars, int parallelism) {
+        checkArgNotNull(chars, "chars");
+        return build(new Source(chars.length) {
+            void scan(int start, int end, IntArrayStack newlines) {
+                for (int i = start; i < end; i++) {
+                    if (chars[i] == '\n') newlines.push(i);
+                }
+            }
+        }, parallelism);
+    }
+
+    /**
+     * Builds the LineIndex for the remaining bytes of the given buffer, i.e. the bytes between its current position
+     * and its limit. Indices are relative to the current position of the buffer, which is not changed.
+     *
+     * @param bytes the input bytes
+     * @return the LineIndex
+     */
+    public static LineIndex of(ByteBuffer bytes) {
+        checkArgNotNull(bytes, "bytes");
+        return of(bytes, defaultParallelism(bytes.remaining()));
+    }
+
+    /**
+     * Builds the LineIndex for the remaining bytes of the given buffer by scanning the given number of chunks in
+     * parallel. Indices are relative to the current position of the buffer, which is not changed.
+     *
+     * @param bytes       the input bytes
+     * @param parallelism the number of chunks to scan concurrently, 1 for a sequential scan
+     * @return the LineIndex
+     */
+    public static LineIndex of(ByteBuffer bytes, int parallelism) {
+        checkArgNotNull(bytes, "bytes");
+        final ByteBuffer buffer = bytes.slice();
+        return build(new Source(buffer.remaining()) {
+            void scan(int start, int end, IntArrayStack newlines) {
+                for (int i = start; i < end; i++) {
+                    if (buffer.get(i) == '\n') newlines.push(i);
+                }
+            }
+        }, parallelism);
+    }
+
+    private static int defaultParallelism(int length) {
+        return length < PARALLEL_THRESHOLD ? 1 : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static LineIndex build(final Source source, int parallelism) {
+        checkArgument(parallelism > 0, "parallelism must be positive");
+        int chunks = Math.max(1, Math.min(parallelism, source.length));
+        final IntArrayStack[] results = new IntArrayStack[chunks];
+        Thread[] threads = new Thread[chunks];
+        for (int i = 0; i < chunks; i++) {
+            final int chunk = i;
+            final int start = (int) ((long) source.length * i / chunks);
+            final int end = (int) ((long) source.length * (i + 1) / chunks);
+            results[i] = new IntArrayStack();
+            Runnable scan = new Runnable() {
+                public void run() {
+                    source.scan(start, end, results[chunk]);
+                }
+            };
+            if (i < chunks - 1) {
+                threads[i] = new Thread(scan, "parboiled-line-index-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            } else {
+                scan.run(); // the last chunk is scanned by the calling thread
+            }
+        }
+        join(threads);
+
+        int count = 0;
+        for (IntArrayStack result : results) count += result.size();
+        int[] newlines = new int[count];
+        count = 0;
+        for (IntArrayStack result : results) {
+            result.getElements(newlines, count);
+            count += result.size();
+        }
+        return new LineIndex(source.length, newlines);
+    }
+
+    private static void join(Thread[] threads) {
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread != null) {
+                try {
+                    thread.join();
+                    thread = null;
+                } catch (InterruptedException e) {
+                    interrupted = true; // we cannot return an incomplete index, so finish and restore the flag
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @return the number of input characters this index was built for
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of lines in the input, which is one more than the number of newline characters
+     */
+    public int getLineCount() {
+        return newlines.length + 1;
+    }
+
+    /**
+     * Returns the position of the character with the given index.
+     *
+     * @param index the index
+     * @return the position
+     */
+    public Position getPosition(int index) {
+        int line = getLine0(index);
+        return new Position(line + 1, index - (line > 0 ? newlines[line - 1] : -1));
+    }
+
+    /**
+     * Returns the one based number of the line the character with the given index is found in.
+     * Newline characters belong to the line they terminate.
+     *
+     * @param index the index
+     * @return the line number
+     */
+    public int getLine(int index) {
+        return getLine0(index) + 1;
+    }
+
+    /**
+     * Returns the index of the first character of the given line.
+     *
+     * @param lineNumber the one based line number
+     * @return the index
+     */
+    public int getLineStart(int lineNumber) {
+        checkArgument(0 < lineNumber && lineNumber <= newlines.length + 1);
+        return lineNumber > 1 ? newlines[lineNumber - 2] + 1 : 0;
+    }
+
+    /**
+     * Returns the index of the newline character terminating the given line or the input length for the last line.
+     *
+     * @param lineNumber the one based line number
+     * @return the index
+     */
+    public int getLineEnd(int lineNumber) {
+        checkArgument(0 < lineNumber && lineNumber <= newlines.length + 1);
+        return lineNumber <= newlines.length ? newlines[lineNumber - 1] : length;
+    }
+
+    // returns the zero based input line number the character with the given index is found in
+    private int getLine0(int index) {
+        int[] newlines = this.newlines;
+        int line = lastLine;
+        if (line == 0 || newlines[line - 1] < index) {
+            // the line of the last lookup does not lie behind the index, so try a short forward scan first
+            for (int i = 0; i < MAX_FORWARD_SCAN; i++, line++) {
+                if (line == newlines.length || index <= newlines[line]) {
+                    lastLine = line;
+                    return line;
+                }
+            }
+        }
+        int j = Arrays.binarySearch(newlines, index);
+        line = j >= 0 ? j : -(j + 1);
+        lastLine = line;
+        return line;
+    }
+
+    private abstract static class Source {
+        final int length;
+
+        Source(int length) {
+            this.length = length;
+        }
+
+        // pushes the indices of all newline characters between start (inclusively) and end (exclusively)
+        abstract void scan(int start, int end, IntArrayStack newlines);
+    }
+}
@@ -14,34 +14,56 @@
  * limitations under the License.
  */
 
+
 package org.parboiled.buffers;
 
 import org.parboiled.support.IndexRange;
 import org.parboiled.support.Position;
 
-import java.util.Arrays;
 import static org.parboiled.common.Preconditions.*;
 
 /**
  * An InputBuffer wrapping another InputBuffer and providing for the ability to insert (and undo) characters at
  * certain index positions. Inserted chars do not appear in extracted text and have the same positions as the
  * original chars at their indices.
- * Note that this implementation is optimized for a rather small number of insertions and will perform badly with
- * a large number of insertions.
+ * The inserted chars are kept in a gap buffer, so that insertions and undos close to the previous edit (as performed
+ * by the error recovery) take amortized constant time. Reads of chars between two insertions hit a cached index
+ * shift and therefore do not require a search. Since reads only replace this cache as a whole, the buffer can be read
+ * concurrently (provided the wrapped buffer can), but must not be changed while it is being read.
  */
 public class MutableInputBuffer implements InputBuffer {
     private final InputBuffer buffer;
-    private int[] inserts = new int[0];
-    private char[] chars = new char[0];
+
+    // the inserted chars in index order, together with the index of the wrapped buffer char they are inserted before,
+    // which, in contrast to the index in this buffer, does not change with insertions or undos before the char
+    // both arrays have a gap between gapStart (inclusively) and gapEnd (exclusively) located at the last edit
+    private int[] positions = new int[8];
+    private char[] chars = new char[8];
+    private int gapStart = 0;
+    private int gapEnd = 8;
+
+    // cached range of indices not containing an inserted char, kept in a single immutable object so that concurrent
+    // reads (which replace the cached segment) always see a consistent one
+    private Segment segment = Segment.EMPTY;
 
     public MutableInputBuffer(InputBuffer buffer) {
         this.buffer = buffer;
     }
 
+    /**
+     * @return the wrapped buffer
+     */
+    public InputBuffer getBuffer() {
+        return buffer;
+    }
+
     public char charAt(int index) {
-        int j = Arrays.binarySearch(inserts, index);
-        if (j >= 0) return chars[j];
-        return buffer.charAt(index + (j + 1));
+        Segment seg = segment;
+        if (seg.start <= index && index < seg.end) return buffer.charAt(index - seg.shift);
+        int k = find(index);
+        if (k < getInsertionCount() && indexOf(k) == index) return chars[physical(k)];
+        cacheSegment(k);
+        return buffer.charAt(index - k);
     }
 
     public boolean test(int index, char[] characters) {
@@ -72,53 +94,132 @@ public class MutableInputBuffer implements InputBuffer {
         return buffer.getLineCount();
     }
 
+    /**
+     * @return the number of currently inserted chars
+     */
+    public int getInsertionCount() {
+        return positions.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * Maps an index into this buffer to the respective index into the wrapped buffer.
+     *
+     * @param index the index into this buffer
+     * @return the index of the char in the wrapped buffer or, for an inserted char, the index of the wrapped buffer
+     *         char it is inserted before
+     */
+    public int getWrappedIndex(int index) {
+        return map(index);
+    }
+
     private int map(int index) {
-        int j = Arrays.binarySearch(inserts, index);
-        if (j < 0) j = -(j + 1);
-        return index - j;
+        Segment seg = segment;
+        if (seg.start <= index && index < seg.end) return index - seg.shift;
+        return index - find(index);
     }
 
     public void insertChar(int index, char c) {
-        int j = Arrays.binarySearch(inserts, index);
-        if (j < 0) j = -(j + 1);
+        int k = find(index);
+        moveGap(k);
+        if (gapStart == gapEnd) grow();
+        positions[gapStart] = index - k;
+        chars[gapStart] = c;
+        gapStart++;
+        invalidateSegment();
+    }
 
-        char[] newChars = new char[chars.length + 1];
-        System.arraycopy(chars, 0, newChars, 0, j);
-        newChars[j] = c;
-        System.arraycopy(chars, j, newChars, j + 1, chars.length - j);
-        chars = newChars;
+    public char undoCharInsertion(int index) {
+        int k = find(index);
+        checkArgument(k < getInsertionCount() && indexOf(k) == index, "Cannot undo a non-existing insertion");
+        moveGap(k + 1);
+        gapStart--;
+        invalidateSegment();
+        return chars[gapStart];
+    }
+
+    public void replaceInsertedChar(int index, char c) {
+        int k = find(index);
+        checkArgument(k < getInsertionCount() && indexOf(k) == index,
+                "Can only replace chars that were previously inserted");
+        chars[physical(k)] = c;
+    }
 
-        int[] newInserts = new int[inserts.length + 1];
-        System.arraycopy(inserts, 0, newInserts, 0, j);
-        newInserts[j] = index;
-        for (int i = j; i < inserts.length; i++) {
-            newInserts[i + 1] = inserts[i] + 1;
+    // returns the number of inserted chars before the given index,
+    // which is also the rank of the inserted char at the index, if there is one
+    private int find(int index) {
+        int low = 0;
+        int high = getInsertionCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (indexOf(mid) < index) low = mid + 1;
+            else high = mid;
         }
-        inserts = newInserts;
+        return low;
     }
 
-    public char undoCharInsertion(int index) {
-        int j = Arrays.binarySearch(inserts, index);
-        checkArgument(j >= 0, "Cannot undo a non-existing insertion");
-        char removedChar = chars[j];
+    // returns the index of the inserted char with the given rank in this buffer
+    private int indexOf(int k) {
+        return positions[physical(k)] + k;
+    }
 
-        char[] newChars = new char[chars.length - 1];
-        System.arraycopy(chars, 0, newChars, 0, j);
-        System.arraycopy(chars, j + 1, newChars, j, newChars.length - j);
-        chars = newChars;
+    private int physical(int k) {
+        return k < gapStart ? k : k + gapEnd - gapStart;
+    }
+
+    // caches the range of indices between the inserted chars with rank k - 1 and k
+    private void cacheSegment(int k) {
+        segment = new Segment(k > 0 ? indexOf(k - 1) + 1 : Integer.MIN_VALUE,
+                k < getInsertionCount() ? indexOf(k) : Integer.MAX_VALUE, k);
+    }
+
+    private void invalidateSegment() {
+        segment = Segment.EMPTY;
+    }
 
-        int[] newInserts = new int[inserts.length - 1];
-        System.arraycopy(inserts, 0, newInserts, 0, j);
-        for (int i = j + 1; i < inserts.length; i++) {
-            newInserts[i - 1] = inserts[i] - 1;
+    private void moveGap(int k) {
+        if (k < gapStart) {
+            int count = gapStart - k;
+            int target = gapEnd - count;
+            System.arraycopy(positions, k, positions, target, count);
+            System.arraycopy(chars, k, chars, target, count);
+            gapStart = k;
+            gapEnd = target;
+        } else if (k > gapStart) {
+            int count = k - gapStart;
+            System.arraycopy(positions, gapEnd, positions, gapStart, count);
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart = k;
+            gapEnd += count;
         }
-        inserts = newInserts;
-        return removedChar;
     }
-    
-    public void replaceInsertedChar(int index, char c) {
-        int j = Arrays.binarySearch(inserts, index);
-        checkArgument(j >= 0, "Can only replace chars that were previously inserted");
-        chars[j] = c;
+
+    private void grow() {
+        int capacity = positions.length * 2;
+        int tail = positions.length - gapEnd;
+        int[] newPositions = new int[capacity];
+        char[] newChars = new char[capacity];
+        System.arraycopy(positions, 0, newPositions, 0, gapStart);
+        System.arraycopy(chars, 0, newChars, 0, gapStart);
+        System.arraycopy(positions, gapEnd, newPositions, capacity - tail, tail);
+        System.arraycopy(chars, gapEnd, newChars, capacity - tail, tail);
+        positions = newPositions;
+        chars = newChars;
+        gapEnd = capacity - tail;
+    }
+
+    // a range of indices (start inclusively, end exclusively), the wrapped buffer index of which is the index minus
+    // the shift
+    private static final class Segment {
+        static final Segment EMPTY = new Segment(0, 0, 0);
+
+        final int start;
+        final int end;
+        final int shift;
+
+        Segment(int start, int end, int shift) {
+            this.start = start;
+            this.end = end;
+            this.shift = shift;
+        }
     }
 }
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.common.Factory;
+import org.parboiled.common.Utils;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.parboiled.support.IndexRange;
+import org.parboiled.support.Position;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>An InputBuffer decoding its input lazily from a {@link Reader}, e.g. one reading a gzip compressed file,
+ * without ever holding the complete input text in memory.</p>
+ * <p>The input is decoded in chunks of a fixed number of characters as the parser reads forward. Only a bounded
+ * number of the most recently used chunks is kept, which gives the parser a window for backtracking (and the actions
+ * for extracting matched text) of at least (maxChunks - 1) * chunkSize characters. Accessing a character behind
+ * this window requires decoding the input again from its start, which is only possible if the buffer was created
+ * with a factory for (re)opening the input, otherwise a {@link ParserRuntimeException} is thrown.</p>
+ * <p>The newline positions are recorded as the input is decoded, so that positions and lines can be determined for
+ * all decoded characters. Determining the line count requires decoding the whole input.</p>
+ * <p>The underlying reader is closed as soon as the end of the input has been reached or by {@link #close()}.</p>
+ * <p>Instances are not thread-safe, since even reading a character updates the chunk cache, so a buffer must only be
+ * read by one thread at a time.</p>
+ */
+public class StreamingInputBuffer implements InputBuffer, Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CHUNKS = 16;
+
+    private final Factory<Reader> readerFactory;
+    private final int chunkSize;
+    private final Map<Integer, char[]> chunks;
+
+    private Reader reader;
+    private int decodedChunks; // the number of chunks decoded from the reader so far
+    private int length = -1; // the input length, -1 as long as the end of the input has not been reached
+
+    // the indices of the newline characters in the decoded part of the input
+    private int[] newlines = new int[256];
+    private int newlineCount;
+
+    // the chunk last read from
+    private int currentChunkIndex = -1;
+    private char[] currentChunk;
+
+    /**
+     * Creates a new StreamingInputBuffer reading from the given reader, using the default chunk size and count.
+     * Since the reader cannot be reopened, accessing characters behind the backtracking window causes an exception.
+     *
+     * @param reader the reader
+     */
+    public StreamingInputBuffer(final Reader reader) {
+        this(new Factory<Reader>() {
+            private boolean opened;
+
+            public Reader create() {
+                if (opened) {
+                    throw new ParserRuntimeException("Cannot access input behind the window of the " +
+                            "StreamingInputBuffer, since it was created for a Reader that cannot be reopened");
+                }
+                opened = true;
+                return reader;
+            }
+        }, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+        checkArgNotNull(reader, "reader");
+    }
+
+    /**
+     * Creates a new StreamingInputBuffer reading from the readers created by the given factory, which is called once
+     * initially and again whenever characters behind the backtracking window are accessed.
+     *
+     * @param readerFactory the factory opening the input
+     * @param chunkSize     the number of characters per chunk
+     * @param maxChunks     the maximum number of chunks kept in memory, must be at least 2
+     */
+    public StreamingInputBuffer(Factory<Reader> readerFactory, int chunkSize, final int maxChunks) {
+        checkArgNotNull(readerFactory, "readerFactory");
+        checkArgument(chunkSize > 0, "chunkSize must be positive");
+        checkArgument(maxChunks > 1, "maxChunks must be at least 2");
+        this.readerFactory = readerFactory;
+        this.chunkSize = chunkSize;
+        this.chunks = new LinkedHashMap<Integer, char[]>(maxChunks * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+                return size() > maxChunks;
+            }
+        };
+    }
+
+    /**
+     * Creates a new StreamingInputBuffer for the given gzip compressed file, using the default chunk size and count.
+     *
+     * @param file    the file
+     * @param charset the charset of the uncompressed text
+     * @return a new StreamingInputBuffer
+     */
+    public static StreamingInputBuffer forGzipFile(final File file, final Charset charset) {
+        checkArgNotNull(file, "file");
+        checkArgNotNull(charset, "charset");
+        return new StreamingInputBuffer(new Factory<Reader>() {
+            public Reader create() {
+                FileInputStream in = null;
+                try {
+                    in = new FileInputStream(file);
+                    return new InputStreamReader(new GZIPInputStream(in, 8192), charset);
+                } catch (IOException e) {
+                    if (in != null) {
+                        try {
+                            in.close();
+                        } catch (IOException ignored) {
+                            // we are already reporting the original problem
+                        }
+                    }
+                    throw new ParserRuntimeException(e, "Could not open gzip file '%s'", file);
+                }
+            }
+        }, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    public char charAt(int index) {
+        if (index < 0) return Chars.EOI;
+        int chunkIndex = index / chunkSize;
+        if (chunkIndex != currentChunkIndex) {
+            char[] chunk = getChunk(chunkIndex);
+            if (chunk == null) {
+                if (index - length > 100000) {
+                    throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                            "verify that your grammar does not consume EOI indefinitely!");
+                }
+                return Chars.EOI;
+            }
+            currentChunkIndex = chunkIndex;
+            currentChunk = chunk;
+        }
+        int offset = index - chunkIndex * chunkSize;
+        return offset < currentChunk.length ? currentChunk[offset] : Chars.EOI;
+    }
+
+    public boolean test(int index, char[] characters) {
+        for (int i = 0; i < characters.length; i++) {
+            char c = charAt(index + i);
+            if (c != characters[i] || c == Chars.EOI) return false;
+        }
+        return true;
+    }
+
+    public String extract(int start, int end) {
+        if (start < 0) start = 0;
+        StringBuilder sb = new StringBuilder(Math.max(0, Math.min(end - start, chunkSize)));
+        for (int i = start; i < end; i++) {
+            char c = charAt(i);
+            if (c == Chars.EOI && length >= 0 && i >= length) break;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    public String extract(IndexRange range) {
+        return extract(range.start, range.end);
+    }
+
+    public Position getPosition(int index) {
+        charAt(index); // make sure the input has been decoded up to the index
+        int line = getLine0(index);
+        return new Position(line + 1, index - (line > 0 ? newlines[line - 1] : -1));
+    }
+
+    public int getOriginalIndex(int index) {
+        return index;
+    }
+
+    public String extractLine(int lineNumber) {
+        checkArgument(lineNumber > 0);
+        while (newlineCount < lineNumber && length < 0) {
+            getChunk(decodedChunks); // decode further until we know the end of the line
+        }
+        checkArgument(lineNumber <= newlineCount + 1);
+        int start = lineNumber > 1 ? newlines[lineNumber - 2] + 1 : 0;
+        int end = lineNumber <= newlineCount ? newlines[lineNumber - 1] : length;
+        if (end > start && charAt(end - 1) == '\r') end--;
+        return extract(start, end);
+    }
+
+    public int getLineCount() {
+        while (length < 0) {
+            getChunk(decodedChunks);
+        }
+        return newlineCount + 1;
+    }
+
+    /**
+     * @return the number of input characters or -1, if the end of the input has not been reached yet
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of characters decoded so far
+     */
+    public int getDecodedLength() {
+        return length >= 0 ? length : decodedChunks * chunkSize;
+    }
+
+    /**
+     * Closes the underlying reader, if it is still open.
+     */
+    public void close() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new ParserRuntimeException(e, "Could not close input reader");
+            } finally {
+                reader = null;
+            }
+        }
+    }
+
+    // returns the zero based input line number the character with the given index is found in
+    private int getLine0(int index) {
+        // binary search for the number of newlines before the index (a newline belongs to the line it terminates)
+        int lo = 0;
+        int hi = newlineCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (newlines[mid] < index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // returns the chunk with the given index or null, if it lies behind the end of the input
+    private char[] getChunk(int chunkIndex) {
+        char[] chunk = chunks.get(chunkIndex);
+        if (chunk != null) return chunk;
+        if (length >= 0 && (long) chunkIndex * chunkSize >= length) return null;
+
+        try {
+            if (chunkIndex < decodedChunks) {
+                // the chunk has been evicted, so we have to decode the input again from its start,
+                // with a separate reader so as to not disturb the position of the main one
+                Reader rereader = readerFactory.create();
+                try {
+                    skipFully(rereader, (long) chunkIndex * chunkSize);
+                    chunk = readChunk(rereader);
+                } finally {
+                    rereader.close();
+                }
+                chunks.put(chunkIndex, chunk);
+                return chunk;
+            }
+            if (reader == null) {
+                reader = readerFactory.create();
+                skipFully(reader, (long) decodedChunks * chunkSize);
+            }
+            while (decodedChunks <= chunkIndex) {
+                if (length >= 0) return null;
+                chunk = readChunk(reader);
+                int start = decodedChunks * chunkSize;
+                recordNewlines(chunk, start);
+                if (chunk.length < chunkSize) {
+                    length = start + chunk.length;
+                    close();
+                }
+                if (chunk.length == 0) return null;
+                chunks.put(decodedChunks++, chunk);
+            }
+            return chunk;
+        } catch (IOException e) {
+            throw new ParserRuntimeException(e, "Could not read input");
+        }
+    }
+
+    private char[] readChunk(Reader in) throws IOException {
+        char[] chunk = new char[chunkSize];
+        int count = 0;
+        while (count < chunkSize) {
+            int read = in.read(chunk, count, chunkSize - count);
+            if (read < 0) break;
+            count += read;
+        }
+        return count < chunkSize ? Utils.copyOf(chunk, count) : chunk;
+    }
+
+    private static void skipFully(Reader in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) throw new IOException("Unexpected end of input while seeking");
+            count -= skipped;
+        }
+    }
+
+    private void recordNewlines(char[] chunk, int start) {
+        for (int i = 0; i < chunk.length; i++) {
+            if (chunk[i] == '\n') {
+                if (newlineCount == newlines.length) newlines = Utils.copyOf(newlines, newlineCount * 2);
+                newlines[newlineCount++] = start + i;
+            }
+        }
+    }
+}
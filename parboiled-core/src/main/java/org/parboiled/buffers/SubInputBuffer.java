@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.parboiled.support.IndexRange;
+import org.parboiled.support.Position;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * An InputBuffer presenting a range of another InputBuffer as a complete input, i.e. with index 0 being the first
+ * char of the range and {@link Chars#EOI} being returned behind its end.
+ * The range can also extend to the end of the wrapped buffer, without having to determine its length up front.
+ * Positions, lines and original indices refer to the wrapped buffer, so that errors reported for the range show
+ * their location in the complete input.
+ */
+public class SubInputBuffer implements InputBuffer {
+    private final InputBuffer buffer;
+    private final int start;
+    private final int length;
+
+    /**
+     * Creates a new SubInputBuffer for the given range of the given buffer.
+     *
+     * @param buffer the wrapped buffer
+     * @param start  the index of the first char of the range in the wrapped buffer
+     * @param end    the index behind the last char of the range in the wrapped buffer
+     */
+    public SubInputBuffer(InputBuffer buffer, int start, int end) {
+        checkArgNotNull(buffer, "buffer");
+        checkArgument(0 <= start && start <= end, "Illegal range [" + start + ", " + end + ')');
+        this.buffer = buffer;
+        this.start = start;
+        this.length = end - start;
+    }
+
+    /**
+     * Creates a new SubInputBuffer for the range of the given buffer starting at the given index and extending to
+     * the end of the wrapped buffer. The length of such a buffer is unknown.
+     *
+     * @param buffer the wrapped buffer
+     * @param start  the index of the first char of the range in the wrapped buffer
+     */
+    public SubInputBuffer(InputBuffer buffer, int start) {
+        checkArgNotNull(buffer, "buffer");
+        checkArgument(0 <= start, "Illegal start index " + start);
+        this.buffer = buffer;
+        this.start = start;
+        this.length = -1;
+    }
+
+    /**
+     * @return the wrapped buffer
+     */
+    public InputBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the index of the first char of this buffer in the wrapped buffer
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the number of chars in this buffer or -1, if the range extends to the (not determined) end of the
+     *         wrapped buffer
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0) return Chars.EOI;
+        if (length < 0 || index < length) return buffer.charAt(start + index);
+        return index - length > 100000 ? throwParsingException() : Chars.EOI;
+    }
+
+    private char throwParsingException() {
+        throw new ParserRuntimeException("Parser read more than 100K chars beyond EOI, " +
+                "verify that your grammar does not consume EOI indefinitely!");
+    }
+
+    public boolean test(int index, char[] characters) {
+        return 0 <= index && (length < 0 || index <= length - characters.length) &&
+                buffer.test(start + index, characters);
+    }
+
+    public String extract(int start, int end) {
+        if (start < 0) start = 0;
+        if (length >= 0 && end >= length) end = length;
+        if (end <= start) return "";
+        return buffer.extract(this.start + start, this.start + end);
+    }
+
+    public String extract(IndexRange range) {
+        return extract(range.start, range.end);
+    }
+
+    public Position getPosition(int index) {
+        return buffer.getPosition(start + index);
+    }
+
+    public int getOriginalIndex(int index) {
+        return buffer.getOriginalIndex(start + index);
+    }
+
+    public String extractLine(int lineNumber) {
+        return buffer.extractLine(lineNumber);
+    }
+
+    public int getLineCount() {
+        return buffer.getLineCount();
+    }
+}
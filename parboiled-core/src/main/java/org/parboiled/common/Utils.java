@@ -155,6 +155,63 @@ public final class Utils {
         return array;
     }
 
+    /**
+     * Copies the given array into a new array of the given length, truncating or padding with zeros as necessary.
+     * Equivalent to the <code>java.util.Arrays.copyOf(...)</code> method of Java 6.
+     *
+     * @param array  the array to copy
+     * @param length the length of the new array
+     * @return the new array
+     */
+    public static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /**
+     * Copies the given array into a new array of the given length, truncating or padding with zeros as necessary.
+     * Equivalent to the <code>java.util.Arrays.copyOf(...)</code> method of Java 6.
+     *
+     * @param array  the array to copy
+     * @param length the length of the new array
+     * @return the new array
+     */
+    public static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /**
+     * Copies the given array into a new array of the given length, truncating or padding with zeros as necessary.
+     * Equivalent to the <code>java.util.Arrays.copyOf(...)</code> method of Java 6.
+     *
+     * @param array  the array to copy
+     * @param length the length of the new array
+     * @return the new array
+     */
+    public static char[] copyOf(char[] array, int length) {
+        char[] copy = new char[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /**
+     * Copies the given array into a new array of the same component type and the given length, truncating or padding
+     * with nulls as necessary. Equivalent to the <code>java.util.Arrays.copyOf(...)</code> method of Java 6.
+     *
+     * @param array  the array to copy
+     * @param length the length of the new array
+     * @return the new array
+     */
+    @SuppressWarnings({"unchecked"})
+    public static <T> T[] copyOf(T[] array, int length) {
+        T[] copy = (T[]) Array.newInstance(array.getClass().getComponentType(), length);
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
     /**
      * Null enabled toString().
      *
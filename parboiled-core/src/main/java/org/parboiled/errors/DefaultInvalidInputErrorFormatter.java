@@ -24,7 +24,9 @@ import org.parboiled.support.Chars;
 import org.parboiled.support.MatcherPath;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A {@link Formatter} for {@link InvalidInputError}s that automatically creates the correct "expected" text
@@ -66,18 +68,15 @@ public class DefaultInvalidInputErrorFormatter implements Formatter<InvalidInput
         // "original" indices we need to unapply the IndexDelta in order to be able to compare with them.
         int pathStartIndex = error.getStartIndex() - error.getIndexDelta();
 
-        List<String> labelList = new ArrayList<String>();
+        Set<String> labels = new LinkedHashSet<String>();
         for (MatcherPath path : error.getFailedMatchers()) {
             Matcher labelMatcher = ErrorUtils.findProperLabelMatcher(path, pathStartIndex);
             if (labelMatcher == null) continue;
-            String[] labels = getLabels(labelMatcher);
-            for (String label : labels) {
-                if (label != null && !labelList.contains(label)) {
-                    labelList.add(label);
-                }
+            for (String label : getLabels(labelMatcher)) {
+                if (label != null) labels.add(label);
             }
         }
-        return join(labelList);
+        return join(new ArrayList<String>(labels));
     }
 
     /**
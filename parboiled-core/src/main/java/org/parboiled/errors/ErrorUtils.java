@@ -20,6 +20,7 @@ import static org.parboiled.common.Preconditions.*;
 
 import org.parboiled.buffers.InputBuffer;
 import org.parboiled.common.Formatter;
+import org.parboiled.common.Sink;
 import org.parboiled.common.StringUtils;
 import org.parboiled.matchers.Matcher;
 import org.parboiled.matchers.TestNotMatcher;
@@ -27,6 +28,7 @@ import org.parboiled.support.MatcherPath;
 import org.parboiled.support.ParsingResult;
 import org.parboiled.support.Position;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -83,14 +85,69 @@ public final class ErrorUtils {
      */
     public static String printParseErrors(List<ParseError> errors) {
         checkArgNotNull(errors, "errors");
-        StringBuilder sb = new StringBuilder();
-        for (ParseError error : errors) {
-            if (sb.length() > 0) sb.append("---\n");
-            sb.append(printParseError(error));
-        }
+        final StringBuilder sb = new StringBuilder();
+        printParseErrors(errors, new DefaultInvalidInputErrorFormatter(), new Sink<String>() {
+            public void receive(String value) {
+                if (sb.length() > 0) sb.append("---\n");
+                sb.append(value);
+            }
+        });
         return sb.toString();
     }
 
+    /**
+     * Pretty prints the given parse errors showing their location in the given input buffer and streams the
+     * resulting texts (one per error, in the order of the given list) to the given sink.
+     * In contrast to calling {@link #printParseError(ParseError, Formatter)} for each error this method resolves
+     * the error positions and input lines in one sweep over the errors sorted by their start index, which keeps the
+     * rendering of large error lists linear.
+     *
+     * @param errors    the parse errors
+     * @param formatter the formatter for InvalidInputErrors
+     * @param sink      the sink receiving the pretty print text of each error
+     */
+    public static void printParseErrors(List<ParseError> errors, Formatter<InvalidInputError> formatter,
+                                        Sink<String> sink) {
+        checkArgNotNull(errors, "errors");
+        checkArgNotNull(formatter, "formatter");
+        checkArgNotNull(sink, "sink");
+        ParseError[] errorArray = errors.toArray(new ParseError[errors.size()]);
+
+        // sort the error numbers by start index, the key holds the start index in the upper and the number in the
+        // lower 32 bits
+        long[] keys = new long[errorArray.length];
+        for (int i = 0; i < errorArray.length; i++) {
+            keys[i] = ((long) errorArray[i].getStartIndex() << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        Position[] positions = new Position[errorArray.length];
+        String[] lines = new String[errorArray.length];
+        InputBuffer lastBuffer = null;
+        int lastLineNumber = 0;
+        String lastLine = null;
+        for (long key : keys) {
+            int i = (int) key;
+            ParseError error = errorArray[i];
+            InputBuffer inputBuffer = error.getInputBuffer();
+            Position pos = inputBuffer.getPosition(error.getStartIndex());
+            if (inputBuffer != lastBuffer || pos.line != lastLineNumber) {
+                lastBuffer = inputBuffer;
+                lastLineNumber = pos.line;
+                lastLine = inputBuffer.extractLine(pos.line);
+            }
+            positions[i] = pos;
+            lines[i] = lastLine;
+        }
+
+        for (int i = 0; i < errorArray.length; i++) {
+            ParseError error = errorArray[i];
+            sink.receive(printErrorMessage("%s (line %s, pos %s):", getMessage(error, formatter),
+                    error.getStartIndex(), error.getEndIndex(), positions[i], lines[i]));
+            errorArray[i] = null; // allow for rendered errors to be garbage collected early
+        }
+    }
+
     /**
      * Pretty prints the given parse error showing its location in the given input buffer.
      *
@@ -112,11 +169,14 @@ public final class ErrorUtils {
     public static String printParseError(ParseError error, Formatter<InvalidInputError> formatter) {
         checkArgNotNull(error, "error");
         checkArgNotNull(formatter, "formatter");
-        String message = error.getErrorMessage() != null ? error.getErrorMessage() :
+        return printErrorMessage("%s (line %s, pos %s):", getMessage(error, formatter),
+                error.getStartIndex(), error.getEndIndex(), error.getInputBuffer());
+    }
+
+    private static String getMessage(ParseError error, Formatter<InvalidInputError> formatter) {
+        return error.getErrorMessage() != null ? error.getErrorMessage() :
                 error instanceof InvalidInputError ?
                         formatter.format((InvalidInputError) error) : error.getClass().getSimpleName();
-        return printErrorMessage("%s (line %s, pos %s):", message,
-                error.getStartIndex(), error.getEndIndex(), error.getInputBuffer());
     }
 
     /**
@@ -151,10 +211,14 @@ public final class ErrorUtils {
         checkArgNotNull(inputBuffer, "inputBuffer");
         checkArgument(startIndex <= endIndex);
         Position pos = inputBuffer.getPosition(startIndex);
+        return printErrorMessage(format, errorMessage, startIndex, endIndex, pos, inputBuffer.extractLine(pos.line));
+    }
+
+    private static String printErrorMessage(String format, String errorMessage, int startIndex, int endIndex,
+                                            Position pos, String line) {
         StringBuilder sb = new StringBuilder(String.format(format, errorMessage, pos.line, pos.column));
         sb.append('\n');
 
-        String line = inputBuffer.extractLine(pos.line);
         sb.append(line);
         sb.append('\n');
 
@@ -21,12 +21,14 @@ import org.parboiled.MatcherContext;
 import org.parboiled.Rule;
 import org.parboiled.common.ImmutableList;
 import org.parboiled.common.Utils;
-import org.parboiled.trees.ImmutableGraphNode;
+
+import java.util.List;
 
 /**
  * Abstract base class of most regular {@link Matcher}s.
  */
-public abstract class AbstractMatcher extends ImmutableGraphNode<Matcher> implements Matcher, Cloneable {
+public abstract class AbstractMatcher implements Matcher, Cloneable {
+    private ImmutableList<Matcher> children;
     private String label;
     private boolean nodeSuppressed;
     private boolean subnodesSuppressed;
@@ -42,7 +44,7 @@ public abstract class AbstractMatcher extends ImmutableGraphNode<Matcher> implem
     }
 
     public AbstractMatcher(Rule[] subRules, String label) {
-        super(ImmutableList.<Matcher>of(toMatchers(checkArgNotNull(subRules, "subRules"))));
+        this.children = ImmutableList.of(toMatchers(checkArgNotNull(subRules, "subRules")));
         this.label = label;
     }
 
@@ -54,6 +56,15 @@ public abstract class AbstractMatcher extends ImmutableGraphNode<Matcher> implem
         return matchers;
     }
 
+    public List<Matcher> getChildren() {
+        return children;
+    }
+
+    // replaces the child matchers, only used by MatcherUtils.removeProxies(...) before the matcher is used
+    void replaceChildren(Matcher[] children) {
+        this.children = ImmutableList.of(children);
+    }
+
     public boolean isNodeSuppressed() {
         return nodeSuppressed;
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.matchers;
+
+import static org.parboiled.common.Preconditions.*;
+import org.parboiled.MatcherContext;
+import org.parboiled.buffers.ByteInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.support.Chars;
+import org.parboiled.support.CodePointClass;
+
+/**
+ * <p>A {@link Matcher} matching a single Unicode code point out of a given {@link CodePointClass}.</p>
+ * <p>On regular (UTF-16 based) input buffers a valid surrogate pair is matched as one code point. On a
+ * {@link ByteInputBuffer} (or a buffer wrapping one, like the {@link org.parboiled.buffers.MutableInputBuffer} used
+ * for error recovery) the input is treated as UTF-8, i.e. a code point is decoded from its (up to four) bytes
+ * directly, without decoding the input to UTF-16 first. Invalid or overlong UTF-8 sequences never match.
+ * Chars beyond the byte range (like the ones inserted by the error recovery) are treated as UTF-16 code units.
+ * In both cases ASCII characters are matched with a single table lookup.</p>
+ * <p>Since a code point outside of the ASCII range can be represented by more than one input character (a surrogate
+ * pair or a UTF-8 sequence) the matcher only counts as a single character matcher (for the purpose of error reporting
+ * and recovery) if its class consists of ASCII characters only.</p>
+ */
+public class CodePointMatcher extends CustomMatcher {
+    private final CodePointClass codePoints;
+
+    public CodePointMatcher(CodePointClass codePoints) {
+        this(codePoints, checkArgNotNull(codePoints, "codePoints").toString());
+    }
+
+    public CodePointMatcher(CodePointClass codePoints, String label) {
+        super(label);
+        this.codePoints = checkArgNotNull(codePoints, "codePoints");
+    }
+
+    public CodePointClass getCodePoints() {
+        return codePoints;
+    }
+
+    public <V> boolean match(MatcherContext<V> context) {
+        char c = context.getCurrentChar();
+        if (c < 0x80) { // ASCII fast path, identical for UTF-16 and UTF-8
+            if (!codePoints.contains(c)) return false;
+            context.advanceIndex(1);
+            context.createNode();
+            return true;
+        }
+        if (c == Chars.EOI) return false;
+
+        InputBuffer buffer = context.getInputBuffer();
+        int index = context.getCurrentIndex();
+        int codePoint;
+        int length;
+        if (c <= 0xFF && InputBufferUtils.isByteInput(buffer)) {
+            if (c < 0xC2 || c > 0xF4) return false; // continuation bytes and illegal lead bytes
+            length = c < 0xE0 ? 2 : c < 0xF0 ? 3 : 4;
+            codePoint = c & (0x7F >> length);
+            for (int i = 1; i < length; i++) {
+                char cont = buffer.charAt(index + i);
+                if ((cont & 0xC0) != 0x80 || cont > 0xFF) return false;
+                codePoint = (codePoint << 6) | (cont & 0x3F);
+            }
+            if (length == 3 && (codePoint < 0x800 || Character.MIN_SURROGATE <= codePoint &&
+                    codePoint <= Character.MAX_SURROGATE)) return false;
+            if (length == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT)) return false;
+        } else if (Character.isHighSurrogate(c) && Character.isLowSurrogate(buffer.charAt(index + 1))) {
+            codePoint = Character.toCodePoint(c, buffer.charAt(index + 1));
+            length = 2;
+        } else {
+            codePoint = c;
+            length = 1;
+        }
+
+        if (!codePoints.contains(codePoint)) return false;
+        context.advanceIndex(length);
+        context.createNode();
+        return true;
+    }
+
+    @Override
+    public boolean isSingleCharMatcher() {
+        return !codePoints.hasNonAscii();
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+        return false;
+    }
+
+    @Override
+    public boolean isStarterChar(char c) {
+        // besides the BMP members a match can start with a high surrogate or a UTF-8 lead byte
+        return codePoints.contains(c) ||
+                Character.isHighSurrogate(c) && codePoints.hasSupplementary() ||
+                0xC2 <= c && c <= 0xF4 && codePoints.hasNonAscii();
+    }
+
+    @Override
+    public char getStarterChar() {
+        // prefer members that are represented by a single char in both UTF-16 and UTF-8 input (where chars beyond
+        // the byte range are taken as UTF-16 code units), a class without BMP members has no single char member,
+        // in which case we return EOI, which the error recovery never inserts
+        int c = codePoints.getFirst(0, 0x7F);
+        if (c < 0) c = codePoints.getFirst(0x100, Character.MIN_SURROGATE - 1);
+        if (c < 0) c = codePoints.getFirst(Character.MAX_SURROGATE + 1, 0xFFFE);
+        if (c < 0) c = codePoints.getFirst(0x80, 0xFF);
+        return c >= 0 ? (char) c : Chars.EOI;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.common.Factory;
+import org.parboiled.matchervisitors.MatcherVisitor;
+
+import java.util.List;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * <p>A {@link Matcher} standing in for a rule that has not been constructed yet. The underlying rule is created
+ * through the given {@link Factory} the first time any of the {@link Matcher} methods is called (usually on the first
+ * match attempt), all calls after that are delegated to it directly.</p>
+ * <p>Rule creation is synchronized on a lock object that can be shared by all LazyMatchers of a grammar, so that
+ * rule construction code, which is normally not thread-safe, is never run concurrently. Once a LazyMatcher has been
+ * resolved it can be used from any number of threads without further synchronization.</p>
+ * <p>Label and flag changes applied before the underlying rule has been created do not trigger its creation but
+ * return a new LazyMatcher, which applies them after creation.</p>
+ */
+public class LazyMatcher implements Matcher {
+    private final Factory<Rule> factory;
+    private final Object lock;
+    private volatile Matcher target;
+
+    /**
+     * Creates a new LazyMatcher, synchronizing rule creation on the matcher instance itself.
+     *
+     * @param factory the factory creating the underlying rule
+     */
+    public LazyMatcher(Factory<Rule> factory) {
+        this(factory, null);
+    }
+
+    /**
+     * Creates a new LazyMatcher.
+     *
+     * @param factory the factory creating the underlying rule
+     * @param lock    the object to synchronize rule creation on, if null the matcher instance itself is used
+     */
+    public LazyMatcher(Factory<Rule> factory, Object lock) {
+        this.factory = checkArgNotNull(factory, "factory");
+        this.lock = lock != null ? lock : this;
+    }
+
+    /**
+     * @return true if the underlying rule has already been created
+     */
+    public boolean isResolved() {
+        return target != null;
+    }
+
+    /**
+     * Returns the underlying Matcher, creating it if this has not happened yet.
+     *
+     * @return the underlying Matcher
+     */
+    public Matcher resolve() {
+        Matcher matcher = target;
+        if (matcher == null) {
+            synchronized (lock) {
+                matcher = target;
+                if (matcher == null) {
+                    Rule rule = factory.create();
+                    if (rule == null) throw new IllegalStateException("Lazy rule factory must not return null");
+                    target = matcher = (Matcher) rule;
+                }
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Retrieves the underlying Matcher of the given matcher if it is a LazyMatcher, creating it if necessary.
+     *
+     * @param matcher the matcher to unwrap
+     * @return the given instance if it is not a LazyMatcher, otherwise the underlying Matcher
+     */
+    public static Matcher unwrap(Matcher matcher) {
+        return matcher instanceof LazyMatcher ? ((LazyMatcher) matcher).resolve() : matcher;
+    }
+
+    public List<Matcher> getChildren() {
+        return resolve().getChildren();
+    }
+
+    public <V> boolean match(MatcherContext<V> context) {
+        return resolve().match(context);
+    }
+
+    public MatcherContext getSubContext(MatcherContext context) {
+        return resolve().getSubContext(context);
+    }
+
+    public String getLabel() {
+        return resolve().getLabel();
+    }
+
+    public boolean hasCustomLabel() {
+        return resolve().hasCustomLabel();
+    }
+
+    public boolean isNodeSuppressed() {
+        return resolve().isNodeSuppressed();
+    }
+
+    public boolean areSubnodesSuppressed() {
+        return resolve().areSubnodesSuppressed();
+    }
+
+    public boolean isNodeSkipped() {
+        return resolve().isNodeSkipped();
+    }
+
+    public boolean areMismatchesMemoed() {
+        return resolve().areMismatchesMemoed();
+    }
+
+    public void setTag(Object tagObject) {
+        resolve().setTag(tagObject);
+    }
+
+    public Object getTag() {
+        return resolve().getTag();
+    }
+
+    public <R> R accept(MatcherVisitor<R> visitor) {
+        checkArgNotNull(visitor, "visitor");
+        return resolve().accept(visitor);
+    }
+
+    public Rule label(final String label) {
+        Matcher matcher = target;
+        if (matcher != null) return matcher.label(label);
+        return new LazyMatcher(new Factory<Rule>() {
+            public Rule create() {
+                return resolve().label(label);
+            }
+        }, lock);
+    }
+
+    public Rule suppressNode() {
+        Matcher matcher = target;
+        if (matcher != null) return matcher.suppressNode();
+        return new LazyMatcher(new Factory<Rule>() {
+            public Rule create() {
+                return resolve().suppressNode();
+            }
+        }, lock);
+    }
+
+    public Rule suppressSubnodes() {
+        Matcher matcher = target;
+        if (matcher != null) return matcher.suppressSubnodes();
+        return new LazyMatcher(new Factory<Rule>() {
+            public Rule create() {
+                return resolve().suppressSubnodes();
+            }
+        }, lock);
+    }
+
+    public Rule skipNode() {
+        Matcher matcher = target;
+        if (matcher != null) return matcher.skipNode();
+        return new LazyMatcher(new Factory<Rule>() {
+            public Rule create() {
+                return resolve().skipNode();
+            }
+        }, lock);
+    }
+
+    public Rule memoMismatches() {
+        Matcher matcher = target;
+        if (matcher != null) return matcher.memoMismatches();
+        return new LazyMatcher(new Factory<Rule>() {
+            public Rule create() {
+                return resolve().memoMismatches();
+            }
+        }, lock);
+    }
+
+    @Override
+    public String toString() {
+        Matcher matcher = target;
+        return matcher != null ? matcher.toString() : super.toString();
+    }
+
+}
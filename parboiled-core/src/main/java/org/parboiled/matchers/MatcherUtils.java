@@ -16,14 +16,173 @@
 
 package org.parboiled.matchers;
 
+import org.parboiled.Rule;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
 public final class MatcherUtils {
     
     private MatcherUtils() {}
     
     public static Matcher unwrap(Matcher matcher) {
         if (matcher instanceof ProxyMatcher) return unwrap(ProxyMatcher.unwrap(matcher));
+        if (matcher instanceof LazyMatcher) return unwrap(LazyMatcher.unwrap(matcher));
         if (matcher instanceof VarFramingMatcher) return unwrap(VarFramingMatcher.unwrap(matcher));
         if (matcher instanceof MemoMismatchesMatcher) return unwrap(MemoMismatchesMatcher.unwrap(matcher));
         return matcher; 
     }
+
+    /**
+     * Determines whether the given matcher is a {@link CustomMatcher} without sub matchers, i.e. one that consumes
+     * its input itself, even if it is no single character matcher (like a {@link CodePointMatcher} matching a surrogate
+     * pair). The error reporting and recovery treat such matchers as terminals, just like single character matchers.
+     *
+     * @param matcher the matcher
+     * @return true if the (unwrapped) matcher is a custom matcher without sub matchers
+     */
+    public static boolean isTerminalCustomMatcher(Matcher matcher) {
+        matcher = unwrap(matcher);
+        return matcher instanceof CustomMatcher && matcher.getChildren().isEmpty();
+    }
+
+    /**
+     * <p>Finalizes the matcher graph underneath the given rule by rewriting all references to {@link ProxyMatcher}s
+     * and already resolved {@link LazyMatcher}s so that they point directly to the respective target matchers.
+     * Labels and flags still pending on proxies are applied in the process.</p>
+     * <p>Proxies are required during rule construction for recursive rules, afterwards they only add an extra
+     * indirection to every match of the rule they stand in for. This method should therefore be called once the
+     * grammar has been fully constructed and before the rule is used for parsing.
+     * Note that it modifies the matchers of the graph in place. The public <code>subMatcher</code> fields of the
+     * single child matchers (like {@link OneOrMoreMatcher#subMatcher}) are final and therefore keep referring to the
+     * sub rule originally given, which remains functional, whereas {@link Matcher#getChildren()} and the actual
+     * matching use the target matchers. Code walking the matcher graph should therefore always use
+     * {@link Matcher#getChildren()}.</p>
+     *
+     * @param rule the root rule of the grammar
+     * @return the root rule without any proxy
+     */
+    public static Rule removeProxies(Rule rule) {
+        Matcher root = unwrapProxies((Matcher) checkArgNotNull(rule, "rule"));
+        Map<Matcher, Boolean> visited = new IdentityHashMap<Matcher, Boolean>();
+        LinkedList<Matcher> pending = new LinkedList<Matcher>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Matcher matcher = pending.removeLast();
+            if (visited.put(matcher, Boolean.TRUE) != null) continue;
+
+            if (matcher instanceof MemoMismatchesMatcher || matcher instanceof VarFramingMatcher) {
+                Matcher inner = matcher instanceof MemoMismatchesMatcher ?
+                        ((MemoMismatchesMatcher) matcher).getInner() : ((VarFramingMatcher) matcher).getInner();
+                Matcher unwrapped = unwrapProxies(inner);
+                if (unwrapped != inner) {
+                    if (matcher instanceof MemoMismatchesMatcher) {
+                        ((MemoMismatchesMatcher) matcher).replaceInner(unwrapped);
+                    } else {
+                        ((VarFramingMatcher) matcher).replaceInner(unwrapped);
+                    }
+                }
+                pending.add(unwrapped);
+                continue;
+            }
+
+            List<Matcher> children = matcher.getChildren();
+            Matcher[] unwrapped = new Matcher[children.size()];
+            boolean changed = false;
+            for (int i = 0; i < unwrapped.length; i++) {
+                unwrapped[i] = unwrapProxies(children.get(i));
+                changed |= unwrapped[i] != children.get(i);
+                pending.add(unwrapped[i]);
+            }
+            if (changed && matcher instanceof AbstractMatcher) {
+                ((AbstractMatcher) matcher).replaceChildren(unwrapped);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * <p>Enables the memoization of mismatches for the given rules of the matcher graph underneath the given root
+     * rule, as if they had been marked with {@link Rule#memoMismatches()} during grammar construction. All references
+     * to the given rules are rewritten to point to a shared {@link MemoMismatchesMatcher} wrapping the respective
+     * rule. Rules that already memoize their mismatches are left untouched.</p>
+     * <p>This method first calls {@link #removeProxies(Rule)} and, like it, modifies the matchers of the graph in
+     * place, so it must not be called while the graph is in use by a parsing run.</p>
+     *
+     * @param rule  the root rule of the grammar
+     * @param rules the rules of the graph whose mismatches are to be memoized
+     * @return the (potentially wrapped) root rule
+     */
+    public static Rule memoMismatches(Rule rule, Collection<? extends Rule> rules) {
+        checkArgNotNull(rules, "rules");
+        Map<Matcher, Boolean> targets = new IdentityHashMap<Matcher, Boolean>();
+        for (Rule target : rules) {
+            targets.put(unwrap((Matcher) checkArgNotNull(target, "rule")), Boolean.TRUE);
+        }
+
+        Map<Matcher, Matcher> wrappers = new IdentityHashMap<Matcher, Matcher>();
+        Matcher root = (Matcher) removeProxies(rule);
+        Map<Matcher, Boolean> visited = new IdentityHashMap<Matcher, Boolean>();
+        LinkedList<Matcher> pending = new LinkedList<Matcher>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Matcher matcher = pending.removeLast();
+            if (visited.put(matcher, Boolean.TRUE) != null) continue;
+
+            if (matcher instanceof MemoMismatchesMatcher) {
+                pending.add(((MemoMismatchesMatcher) matcher).getInner());
+                continue;
+            }
+            if (matcher instanceof VarFramingMatcher) {
+                // we cannot wrap the inner matcher since the VarFramingMatcher would cut out the wrapper
+                pending.add(((VarFramingMatcher) matcher).getInner());
+                continue;
+            }
+
+            List<Matcher> children = matcher.getChildren();
+            Matcher[] wrapped = new Matcher[children.size()];
+            boolean changed = false;
+            for (int i = 0; i < wrapped.length; i++) {
+                Matcher child = children.get(i);
+                wrapped[i] = memoMismatchesWrapper(child, targets, wrappers);
+                changed |= wrapped[i] != child;
+                pending.add(child);
+            }
+            if (changed && matcher instanceof AbstractMatcher) {
+                ((AbstractMatcher) matcher).replaceChildren(wrapped);
+            }
+        }
+        return memoMismatchesWrapper(root, targets, wrappers);
+    }
+
+    private static Matcher memoMismatchesWrapper(Matcher matcher, Map<Matcher, Boolean> targets,
+                                                 Map<Matcher, Matcher> wrappers) {
+        if (matcher.areMismatchesMemoed() || !targets.containsKey(unwrap(matcher))) return matcher;
+        Matcher wrapper = wrappers.get(matcher);
+        if (wrapper == null) {
+            wrapper = new MemoMismatchesMatcher(matcher);
+            wrappers.put(matcher, wrapper);
+        }
+        return wrapper;
+    }
+
+    // unwraps armed ProxyMatchers and resolved LazyMatchers, leaves all other matchers untouched
+    private static Matcher unwrapProxies(Matcher matcher) {
+        while (true) {
+            if (matcher instanceof ProxyMatcher) {
+                Matcher target = ProxyMatcher.unwrap(matcher);
+                if (target == null) return matcher; // not armed (yet)
+                matcher = target;
+            } else if (matcher instanceof LazyMatcher && ((LazyMatcher) matcher).isResolved()) {
+                matcher = ((LazyMatcher) matcher).resolve();
+            } else {
+                return matcher;
+            }
+        }
+    }
 }
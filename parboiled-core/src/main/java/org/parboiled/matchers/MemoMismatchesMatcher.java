@@ -27,12 +27,21 @@ import java.util.List;
  * Special wrapping matcher that performs memoization of the last mismatch of the wrapped sub rule.
  */
 public class MemoMismatchesMatcher implements Matcher {
-    private final Matcher inner;
+    private Matcher inner;
 
     public MemoMismatchesMatcher(Rule inner) {
         this.inner = checkArgNotNull((Matcher) inner, "inner");
     }
 
+    Matcher getInner() {
+        return inner;
+    }
+
+    // replaces the wrapped matcher, only used by MatcherUtils.removeProxies(...) before the matcher is used
+    void replaceInner(Matcher inner) {
+        this.inner = inner;
+    }
+
     @SuppressWarnings({"unchecked"})
     public <V> boolean match(MatcherContext<V> context) {
         if (context.hasMismatched()) {
@@ -29,18 +29,28 @@ import org.parboiled.matchervisitors.MatcherVisitor;
 public class OneOrMoreMatcher extends CustomDefaultLabelMatcher<OneOrMoreMatcher> {
     public final Matcher subMatcher;
 
+    // the sub matcher actually run, which MatcherUtils.removeProxies(...) may replace with the target of a proxy
+    private Matcher inner;
+
     public OneOrMoreMatcher(Rule subRule) {
         super(checkArgNotNull(subRule, "subRule"), "OneOrMore");
         this.subMatcher = getChildren().get(0);
+        this.inner = subMatcher;
+    }
+
+    @Override
+    void replaceChildren(Matcher[] children) {
+        super.replaceChildren(children);
+        this.inner = children[0];
     }
 
     public boolean match(MatcherContext context) {
-        boolean matched = subMatcher.getSubContext(context).runMatcher();
+        boolean matched = inner.getSubContext(context).runMatcher();
         if (!matched) return false;
 
         // collect all further matches as well
         int lastIndex = context.getCurrentIndex();
-        while (subMatcher.getSubContext(context).runMatcher()) {
+        while (inner.getSubContext(context).runMatcher()) {
             int currentIndex = context.getCurrentIndex();
             if (currentIndex == lastIndex) {
                 throw new GrammarException("The inner rule of OneOrMore rule '%s' must not allow empty matches",
@@ -27,13 +27,23 @@ import org.parboiled.matchervisitors.MatcherVisitor;
 public class OptionalMatcher extends CustomDefaultLabelMatcher<OptionalMatcher> {
     public final Matcher subMatcher;
 
+    // the sub matcher actually run, which MatcherUtils.removeProxies(...) may replace with the target of a proxy
+    private Matcher inner;
+
     public OptionalMatcher(Rule subRule) {
         super(checkArgNotNull(subRule, "subRule"), "Optional");
         this.subMatcher = getChildren().get(0);
+        this.inner = subMatcher;
+    }
+
+    @Override
+    void replaceChildren(Matcher[] children) {
+        super.replaceChildren(children);
+        this.inner = children[0];
     }
 
     public boolean match(MatcherContext context) {
-        subMatcher.getSubContext(context).runMatcher();
+        inner.getSubContext(context).runMatcher();
         context.createNode();
         return true;
     }
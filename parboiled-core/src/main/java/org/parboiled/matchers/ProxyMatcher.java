@@ -133,6 +133,7 @@ public class ProxyMatcher implements Matcher, Cloneable {
         if (nodeSuppressed) suppressNode();
         if (subnodesSuppressed) suppressSubnodes();
         if (nodeSkipped) skipNode();
+        if (memoMismatches) memoMismatches();
     }
 
     public Rule label(String label) {
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.matchers;
+
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.ByteInputBuffer;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.errors.ParseError;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.matchervisitors.DoWithMatcherVisitor;
+import org.parboiled.support.Chars;
+import org.parboiled.support.DefaultValueStack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>A {@link FirstOfMatcher} that speculatively tries its alternatives concurrently, for choices between expensive
+ * alternatives that rarely share a prefix (like the top-level statement kinds of a large document).</p>
+ * <p>While the calling thread runs the alternatives in order (as a regular FirstOfMatcher does) all later
+ * alternatives are probed on background threads, each on its own context chain and value stack. An alternative whose
+ * probe has already failed when the calling thread gets to it is skipped, an alternative whose probe is not yet
+ * finished is run regularly. The matching alternative is always run regularly on the calling thread, so that the
+ * first success in alternative order is committed with all of its actions, values and parse tree nodes exactly as
+ * with a FirstOfMatcher.</p>
+ * <p>Speculation is only applied where it cannot change the outcome and is worth its overhead:</p>
+ * <ul>
+ * <li>only alternatives consisting solely of the basic, side-effect free matchers (no actions, action variables,
+ * lazy or custom matchers and no mismatch memoization) are probed,</li>
+ * <li>only in basic parsing runs (with fast string matching enabled, i.e. not in the error reporting and recovery
+ * runs, which observe each single matcher invocation),</li>
+ * <li>only over the thread-safe {@link DefaultInputBuffer} and {@link ByteInputBuffer} and</li>
+ * <li>only if at least the configured number of input characters remain at the current index.</li>
+ * </ul>
+ */
+public class SpeculativeFirstOfMatcher extends FirstOfMatcher {
+    private static ExecutorService threadPool;
+    private static Executor executor; // replaces the thread pool in tests
+
+    private final int minRemainingInput;
+    private boolean[] probeable; // determined on first use, once the rule graph is complete
+
+    /**
+     * Creates a new SpeculativeFirstOfMatcher.
+     *
+     * @param subRules          the alternatives
+     * @param minRemainingInput the minimum number of input characters remaining at the current index for the
+     *                          alternatives to be tried concurrently
+     */
+    public SpeculativeFirstOfMatcher(Rule[] subRules, int minRemainingInput) {
+        super(subRules);
+        checkArgument(minRemainingInput >= 0, "minRemainingInput must not be negative");
+        this.minRemainingInput = minRemainingInput;
+    }
+
+    public int getMinRemainingInput() {
+        return minRemainingInput;
+    }
+
+    @Override
+    public boolean match(MatcherContext context) {
+        if (!shouldSpeculate(context)) return super.match(context);
+
+        List<Matcher> children = getChildren();
+        int size = children.size();
+        boolean[] probeable = getProbeable();
+        Probe[] probes = new Probe[size];
+        Executor executor = getExecutor();
+        for (int i = 1; i < size; i++) {
+            if (probeable[i]) {
+                probes[i] = new Probe(children.get(i), context.getInputBuffer(), context.getCurrentIndex());
+                executor.execute(probes[i]);
+            }
+        }
+        try {
+            for (int i = 0; i < size; i++) {
+                Probe probe = probes[i];
+                if (probe != null) {
+                    if (probe.state == Probe.MISMATCHED) continue;
+                    probe.cancelled = true; // still running or matched, either way we run the alternative ourselves
+                }
+                if (children.get(i).getSubContext(context).runMatcher()) {
+                    context.createNode();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            for (Probe probe : probes) {
+                if (probe != null) probe.cancelled = true;
+            }
+        }
+    }
+
+    private boolean shouldSpeculate(MatcherContext context) {
+        if (!context.fastStringMatching() || Thread.currentThread() instanceof ProbeThread) return false;
+        InputBuffer buffer = context.getInputBuffer();
+        return (buffer instanceof DefaultInputBuffer || buffer instanceof ByteInputBuffer) &&
+                (minRemainingInput == 0 ||
+                        buffer.charAt(context.getCurrentIndex() + minRemainingInput - 1) != Chars.EOI);
+    }
+
+    private boolean[] getProbeable() {
+        if (probeable == null) {
+            List<Matcher> children = getChildren();
+            boolean[] array = new boolean[children.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = isSideEffectFree(children.get(i));
+            }
+            probeable = array;
+        }
+        return probeable;
+    }
+
+    private static boolean isSideEffectFree(Matcher matcher) {
+        final boolean[] sideEffectFree = new boolean[] {true};
+        matcher.accept(new DoWithMatcherVisitor(new DoWithMatcherVisitor.Action() {
+            public void process(Matcher m) {
+                if (!(m instanceof FirstOfMatcher || m instanceof SequenceMatcher ||
+                        m instanceof OneOrMoreMatcher || m instanceof ZeroOrMoreMatcher ||
+                        m instanceof OptionalMatcher || m instanceof TestMatcher || m instanceof TestNotMatcher ||
+                        m instanceof CharMatcher || m instanceof CharIgnoreCaseMatcher ||
+                        m instanceof CharRangeMatcher || m instanceof AnyOfMatcher || m instanceof AnyMatcher ||
+                        m instanceof EmptyMatcher || m instanceof NothingMatcher)) {
+                    sideEffectFree[0] = false;
+                }
+            }
+        }));
+        return sideEffectFree[0];
+    }
+
+    /**
+     * Replaces the thread pool running the probes with the given executor, for testing.
+     *
+     * @param executor the executor or null for restoring the thread pool
+     */
+    static synchronized void setExecutor(Executor executor) {
+        SpeculativeFirstOfMatcher.executor = executor;
+    }
+
+    private static synchronized Executor getExecutor() {
+        if (executor != null) return executor;
+        if (threadPool == null) {
+            threadPool = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            return new ProbeThread(runnable);
+                        }
+                    });
+        }
+        return threadPool;
+    }
+
+    private static class ProbeThread extends Thread {
+        private ProbeThread(Runnable runnable) {
+            super(runnable, "parboiled-speculative-first-of");
+            setDaemon(true);
+        }
+    }
+
+    // tries one alternative on its own context chain
+    private static class Probe implements Runnable, MatchHandler {
+        static final int PENDING = 0;
+        static final int MATCHED = 1;
+        static final int MISMATCHED = 2;
+        static final int FAILED = 3;
+
+        private static final ParserRuntimeException CANCELLED = new ParserRuntimeException() {
+            @Override
+            public synchronized Throwable fillInStackTrace() {
+                return this;
+            }
+        };
+
+        private final Matcher matcher;
+        private final InputBuffer inputBuffer;
+        private final int index;
+        volatile int state = PENDING;
+        volatile boolean cancelled;
+
+        private Probe(Matcher matcher, InputBuffer inputBuffer, int index) {
+            this.matcher = matcher;
+            this.inputBuffer = inputBuffer;
+            this.index = index;
+        }
+
+        public void run() {
+            if (cancelled) return;
+            try {
+                MatcherContext<Object> context = new MatcherContext<Object>(inputBuffer,
+                        new DefaultValueStack<Object>(), new ArrayList<ParseError>(), this, matcher, true);
+                context.setCurrentIndex(index);
+                context.setStartIndex(index);
+                state = context.runMatcher() ? MATCHED : MISMATCHED;
+            } catch (RuntimeException e) {
+                state = FAILED; // cancelled or failed, in the latter case the regular run will report the problem
+            }
+        }
+
+        public boolean match(MatcherContext<?> context) {
+            if (cancelled) throw CANCELLED;
+            return context.getMatcher().match(context);
+        }
+    }
+}
@@ -28,16 +28,26 @@ import org.parboiled.matchervisitors.MatcherVisitor;
 public class TestMatcher extends CustomDefaultLabelMatcher<TestMatcher> {
     public final Matcher subMatcher;
 
+    // the sub matcher actually run, which MatcherUtils.removeProxies(...) may replace with the target of a proxy
+    private Matcher inner;
+
     public TestMatcher(Rule subRule) {
         super(checkArgNotNull(subRule, "subRule"), "Test");
         this.subMatcher = getChildren().get(0);
+        this.inner = subMatcher;
+    }
+
+    @Override
+    void replaceChildren(Matcher[] children) {
+        super.replaceChildren(children);
+        this.inner = children[0];
     }
 
     public boolean match(MatcherContext context) {
         int lastIndex = context.getCurrentIndex();
         Object valueStackSnapshot = context.getValueStack().takeSnapshot();
 
-        if (!subMatcher.getSubContext(context).runMatcher()) return false;
+        if (!inner.getSubContext(context).runMatcher()) return false;
 
         // reset location, Test matchers never advance
         context.setCurrentIndex(lastIndex);
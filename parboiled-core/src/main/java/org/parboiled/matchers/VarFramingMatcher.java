@@ -28,7 +28,7 @@ import java.util.List;
  * Special wrapping matcher that manages the creation and destruction of execution frames for a number of action vars.
  */
 public class VarFramingMatcher implements Matcher {
-    private final Matcher inner;
+    private Matcher inner;
     private final Var[] variables;
 
     public VarFramingMatcher(Rule inner, Var[] variables) {
@@ -36,6 +36,15 @@ public class VarFramingMatcher implements Matcher {
         this.variables = checkArgNotNull(variables, "variables");
     }
 
+    Matcher getInner() {
+        return inner;
+    }
+
+    // replaces the wrapped matcher, only used by MatcherUtils.removeProxies(...) before the matcher is used
+    void replaceInner(Matcher inner) {
+        this.inner = inner;
+    }
+
     public <V> boolean match(MatcherContext<V> context) {
         for (Var var : variables) {
             var.enterFrame();
@@ -28,15 +28,25 @@ import org.parboiled.matchervisitors.MatcherVisitor;
 public class ZeroOrMoreMatcher extends CustomDefaultLabelMatcher<ZeroOrMoreMatcher> {
     public final Matcher subMatcher;
 
+    // the sub matcher actually run, which MatcherUtils.removeProxies(...) may replace with the target of a proxy
+    private Matcher inner;
+
     public ZeroOrMoreMatcher(Rule subRule) {
         super(checkArgNotNull(subRule, "subRule"), "ZeroOrMore");
         this.subMatcher = getChildren().get(0);
+        this.inner = subMatcher;
+    }
+
+    @Override
+    void replaceChildren(Matcher[] children) {
+        super.replaceChildren(children);
+        this.inner = children[0];
     }
 
     public boolean match(MatcherContext context) {
         checkArgNotNull(context, "context");
         int lastIndex = context.getCurrentIndex();
-        while (subMatcher.getSubContext(context).runMatcher()) {
+        while (inner.getSubContext(context).runMatcher()) {
             int currentLocation = context.getCurrentIndex();
             if (currentLocation == lastIndex) {
                 throw new GrammarException("The inner rule of ZeroOrMore rule '%s' must not allow empty matches",
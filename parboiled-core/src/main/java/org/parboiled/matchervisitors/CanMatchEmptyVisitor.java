@@ -69,8 +69,9 @@ public class CanMatchEmptyVisitor implements MatcherVisitor<Boolean> {
     }
 
     public Boolean visit(OneOrMoreMatcher matcher) {
-        Checks.ensure(!matcher.subMatcher.accept(this),
-                "Rule '%s' must not allow empty matches as sub-rule of an OneOrMore-rule", matcher.subMatcher);
+        Matcher subMatcher = matcher.getChildren().get(0);
+        Checks.ensure(!subMatcher.accept(this),
+                "Rule '%s' must not allow empty matches as sub-rule of an OneOrMore-rule", subMatcher);
         return false;
     }
 
@@ -94,8 +95,9 @@ public class CanMatchEmptyVisitor implements MatcherVisitor<Boolean> {
     }
 
     public Boolean visit(ZeroOrMoreMatcher matcher) {
-        Checks.ensure(!matcher.subMatcher.accept(this),
-                "Rule '%s' must not allow empty matches as sub-rule of an ZeroOrMore-rule", matcher.subMatcher);
+        Matcher subMatcher = matcher.getChildren().get(0);
+        Checks.ensure(!subMatcher.accept(this),
+                "Rule '%s' must not allow empty matches as sub-rule of an ZeroOrMore-rule", subMatcher);
         return true;
     }
 
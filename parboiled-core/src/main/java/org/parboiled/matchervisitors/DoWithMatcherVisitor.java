@@ -73,7 +73,7 @@ public class DoWithMatcherVisitor extends DefaultMatcherVisitor<Void> {
     public Void visit(OneOrMoreMatcher matcher) {
         if (!visited.contains(matcher)) {
             visited.add(matcher);
-            matcher.subMatcher.accept(this);
+            matcher.getChildren().get(0).accept(this);
             action.process(matcher);
         }
         return null;
@@ -83,7 +83,7 @@ public class DoWithMatcherVisitor extends DefaultMatcherVisitor<Void> {
     public Void visit(OptionalMatcher matcher) {
         if (!visited.contains(matcher)) {
             visited.add(matcher);
-            matcher.subMatcher.accept(this);
+            matcher.getChildren().get(0).accept(this);
             action.process(matcher);
         }
         return null;
@@ -93,7 +93,7 @@ public class DoWithMatcherVisitor extends DefaultMatcherVisitor<Void> {
     public Void visit(TestMatcher matcher) {
         if (!visited.contains(matcher)) {
             visited.add(matcher);
-            matcher.subMatcher.accept(this);
+            matcher.getChildren().get(0).accept(this);
             action.process(matcher);
         }
         return null;
@@ -103,7 +103,7 @@ public class DoWithMatcherVisitor extends DefaultMatcherVisitor<Void> {
     public Void visit(TestNotMatcher matcher) {
         if (!visited.contains(matcher)) {
             visited.add(matcher);
-            matcher.subMatcher.accept(this);
+            matcher.getChildren().get(0).accept(this);
             action.process(matcher);
         }
         return null;
@@ -113,7 +113,7 @@ public class DoWithMatcherVisitor extends DefaultMatcherVisitor<Void> {
     public Void visit(ZeroOrMoreMatcher matcher) {
         if (!visited.contains(matcher)) {
             visited.add(matcher);
-            matcher.subMatcher.accept(this);
+            matcher.getChildren().get(0).accept(this);
             action.process(matcher);
         }
         return null;
@@ -47,7 +47,7 @@ public class FollowMatchersVisitor extends DefaultMatcherVisitor<Boolean> {
 
     @Override
     public Boolean visit(OneOrMoreMatcher matcher) {
-        followMatchers.add(matcher.subMatcher);
+        followMatchers.add(matcher.getChildren().get(0));
         return false;
     }
 
@@ -63,7 +63,7 @@ public class FollowMatchersVisitor extends DefaultMatcherVisitor<Boolean> {
 
     @Override
     public Boolean visit(ZeroOrMoreMatcher matcher) {
-        followMatchers.add(matcher.subMatcher);
+        followMatchers.add(matcher.getChildren().get(0));
         return false;
     }
 
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.matchervisitors;
+
+import org.parboiled.errors.GrammarException;
+import org.parboiled.matchers.*;
+import org.parboiled.support.Characters;
+import org.parboiled.support.Chars;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Determines the set of characters a given matcher can start a (non-empty) match with, i.e. its "first set".
+ * Character ranges spanning more than 1024 characters and custom matchers that are not single character matchers (or
+ * have more than 1024 starter chars) are approximated with {@link Characters#ALL}. Syntactic predicates do not restrict the first set of the rules
+ * containing them. Results are cached, so an instance should only be used for one grammar. Recursive references
+ * back to a rule whose first set is currently being determined contribute nothing.
+ */
+public class GetFirstCharsVisitor implements MatcherVisitor<Characters> {
+    private static final int MAX_RANGE = 1024;
+
+    private final CanMatchEmptyVisitor canMatchEmptyVisitor = new CanMatchEmptyVisitor();
+    private final Map<Matcher, Characters> firstChars = new IdentityHashMap<Matcher, Characters>();
+    private final Map<Matcher, Boolean> canMatchEmpty = new IdentityHashMap<Matcher, Boolean>();
+
+    /**
+     * Returns the first set of the given matcher.
+     *
+     * @param matcher the matcher
+     * @return the set of characters the matcher can start a match with
+     */
+    public Characters getFirstChars(Matcher matcher) {
+        Matcher key = MatcherUtils.unwrap(matcher);
+        Characters chars = firstChars.get(key);
+        if (chars == null) {
+            firstChars.put(key, Characters.NONE); // guard against infinite recursion
+            chars = key.accept(this);
+            firstChars.put(key, chars);
+        }
+        return chars;
+    }
+
+    /**
+     * Determines whether the given matcher can succeed with an empty match (using a {@link CanMatchEmptyVisitor}).
+     * Loops over rules that can match empty, which the CanMatchEmptyVisitor rejects, count as matching empty.
+     *
+     * @param matcher the matcher
+     * @return true if the matcher can match empty
+     */
+    public boolean canMatchEmpty(Matcher matcher) {
+        Matcher key = MatcherUtils.unwrap(matcher);
+        Boolean result = canMatchEmpty.get(key);
+        if (result == null) {
+            try {
+                result = key.accept(canMatchEmptyVisitor);
+            } catch (GrammarException e) {
+                result = true;
+            }
+            canMatchEmpty.put(key, result);
+        }
+        return result;
+    }
+
+    public Characters visit(ActionMatcher matcher) {
+        return Characters.NONE;
+    }
+
+    public Characters visit(AnyMatcher matcher) {
+        return Characters.ALL;
+    }
+
+    public Characters visit(CharIgnoreCaseMatcher matcher) {
+        return Characters.of(matcher.charLow, matcher.charUp);
+    }
+
+    public Characters visit(CharMatcher matcher) {
+        return Characters.of(matcher.character);
+    }
+
+    public Characters visit(CustomMatcher matcher) {
+        if (!matcher.isSingleCharMatcher()) return Characters.ALL;
+        // the starter char is only one example, so we have to probe all chars
+        StringBuilder chars = new StringBuilder();
+        for (char c = 0; c < Chars.EOI; c++) {
+            if (!matcher.isStarterChar(c)) continue;
+            if (chars.length() == MAX_RANGE) return Characters.ALL;
+            chars.append(c);
+        }
+        return Characters.of(chars.toString());
+    }
+
+    public Characters visit(CharRangeMatcher matcher) {
+        if (matcher.cHigh - matcher.cLow >= MAX_RANGE) return Characters.ALL;
+        char[] chars = new char[matcher.cHigh - matcher.cLow + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (matcher.cLow + i);
+        }
+        return Characters.of(chars);
+    }
+
+    public Characters visit(AnyOfMatcher matcher) {
+        return matcher.characters;
+    }
+
+    public Characters visit(EmptyMatcher matcher) {
+        return Characters.NONE;
+    }
+
+    public Characters visit(FirstOfMatcher matcher) {
+        Characters chars = Characters.NONE;
+        for (Matcher child : matcher.getChildren()) {
+            chars = chars.add(getFirstChars(child));
+        }
+        return chars;
+    }
+
+    public Characters visit(NothingMatcher matcher) {
+        return Characters.NONE;
+    }
+
+    public Characters visit(OneOrMoreMatcher matcher) {
+        return getFirstChars(matcher.getChildren().get(0));
+    }
+
+    public Characters visit(OptionalMatcher matcher) {
+        return getFirstChars(matcher.getChildren().get(0));
+    }
+
+    public Characters visit(SequenceMatcher matcher) {
+        Characters chars = Characters.NONE;
+        for (Matcher child : matcher.getChildren()) {
+            chars = chars.add(getFirstChars(child));
+            if (!canMatchEmpty(child)) break;
+        }
+        return chars;
+    }
+
+    public Characters visit(TestMatcher matcher) {
+        return Characters.NONE;
+    }
+
+    public Characters visit(TestNotMatcher matcher) {
+        return Characters.NONE;
+    }
+
+    public Characters visit(ZeroOrMoreMatcher matcher) {
+        return getFirstChars(matcher.getChildren().get(0));
+    }
+}
@@ -76,11 +76,11 @@ public class IsStarterCharVisitor implements MatcherVisitor<Boolean> {
     }
 
     public Boolean visit(OneOrMoreMatcher matcher) {
-        return matcher.subMatcher.accept(this);
+        return matcher.getChildren().get(0).accept(this);
     }
 
     public Boolean visit(OptionalMatcher matcher) {
-        return matcher.subMatcher.accept(this);
+        return matcher.getChildren().get(0).accept(this);
     }
 
     public Boolean visit(SequenceMatcher matcher) {
@@ -92,7 +92,7 @@ public class IsStarterCharVisitor implements MatcherVisitor<Boolean> {
     }
 
     public Boolean visit(TestMatcher matcher) {
-        return matcher.subMatcher.accept(this);
+        return matcher.getChildren().get(0).accept(this);
     }
 
     public Boolean visit(TestNotMatcher matcher) {
@@ -100,7 +100,7 @@ public class IsStarterCharVisitor implements MatcherVisitor<Boolean> {
     }
 
     public Boolean visit(ZeroOrMoreMatcher matcher) {
-        return matcher.subMatcher.accept(this);
+        return matcher.getChildren().get(0).accept(this);
     }
 
 }
@@ -21,9 +21,14 @@ import org.parboiled.MatcherContext;
 import org.parboiled.Rule;
 import org.parboiled.buffers.DefaultInputBuffer;
 import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.common.Sink;
 import org.parboiled.errors.ParseError;
+import org.parboiled.matchers.ActionMatcher;
 import org.parboiled.matchers.Matcher;
 import org.parboiled.support.DefaultValueStack;
+import org.parboiled.support.ParsingEventListener;
+import org.parboiled.support.ParsingEvents;
 import org.parboiled.support.ParsingResult;
 import org.parboiled.support.ValueStack;
 
@@ -37,6 +42,13 @@ public abstract class AbstractParseRunner<V> implements ParseRunner<V> {
     private List<ParseError> parseErrors;
     private ValueStack<V> valueStack;
     private Object initialValueStackSnapshot;
+    private Sink<ParseRunMetrics> metricsSink;
+    private ParseRunMetrics metrics;
+    private boolean delegate;
+    private ParsingEventListener eventListener;
+    private InputBuffer eventInputBuffer;
+    private int eventInputLength;
+    private long eventStartNanos;
 
     public AbstractParseRunner(Rule rule) {
         this.rootMatcher = checkArgNotNull((Matcher) rule, "rule");
@@ -71,6 +83,44 @@ public abstract class AbstractParseRunner<V> implements ParseRunner<V> {
         return valueStack;
     }    
 
+    /**
+     * Enables metrics collection for this runner. After each parsing run a {@link ParseRunMetrics} instance
+     * describing the run is handed to the given sink. Pass null to disable metrics collection again.
+     *
+     * @param metricsSink the sink receiving the metrics of each run
+     * @return this instance
+     */
+    public AbstractParseRunner<V> withMetricsSink(Sink<ParseRunMetrics> metricsSink) {
+        this.metricsSink = metricsSink;
+        return this;
+    }
+
+    public Sink<ParseRunMetrics> getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Makes this runner contribute its counters to the given (already started) metrics instance.
+     * Used by parse runners that delegate to other runners for some of their passes. Since the delegating runner
+     * signals the complete run to the {@link ParsingEventListener} the runs of this runner are not signalled
+     * separately.
+     *
+     * @param metrics the metrics of the currently active run, null if no metrics are being collected
+     * @return this instance
+     */
+    public AbstractParseRunner<V> withMetrics(ParseRunMetrics metrics) {
+        this.metrics = metrics;
+        this.delegate = true;
+        return this;
+    }
+
+    /**
+     * @return the metrics of the currently active run or null, if no metrics are being collected
+     */
+    public ParseRunMetrics getMetrics() {
+        return metrics;
+    }
+
     public ParsingResult<V> run(String input) {
         checkArgNotNull(input, "input");
         return run(input.toCharArray());
@@ -85,8 +135,72 @@ public abstract class AbstractParseRunner<V> implements ParseRunner<V> {
         getValueStack().restoreSnapshot(initialValueStackSnapshot);
     }
 
+    /**
+     * Starts the collection of metrics for a new parsing run, if a metrics sink is set, and signals the start of
+     * the run to the registered {@link ParsingEventListener}, if any (and if this runner is no delegate of another
+     * runner, see {@link #withMetrics(ParseRunMetrics)}).
+     *
+     * @param inputBuffer the input of the run
+     */
+    protected void startRun(InputBuffer inputBuffer) {
+        if (metricsSink != null) {
+            metrics = new ParseRunMetrics(this, inputBuffer);
+        }
+        eventListener = ParsingEvents.getListener();
+        if (eventListener != null && !delegate) {
+            eventInputBuffer = inputBuffer;
+            eventInputLength = InputBufferUtils.getKnownLength(inputBuffer);
+            eventListener.runStarted(this, (Rule) rootMatcher, eventInputLength);
+            eventStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Completes the metrics of the current run and hands them to the metrics sink, if metrics are being collected.
+     * Also signals the end of the run to the {@link ParsingEventListener} the run was started with, if any.
+     *
+     * @param result the result of the run
+     * @return the given result
+     */
+    protected ParsingResult<V> finishRun(ParsingResult<V> result) {
+        if (metricsSink != null && metrics != null) {
+            ParseRunMetrics finished = metrics;
+            metrics = null;
+            finished.finish(result);
+            metricsSink.receive(finished);
+        }
+        if (eventListener != null) {
+            ParsingEventListener listener = eventListener;
+            eventListener = null;
+            if (!delegate) {
+                if (eventInputLength < 0) eventInputLength = InputBufferUtils.getKnownLength(eventInputBuffer);
+                eventInputBuffer = null;
+                listener.runFinished(this, (Rule) rootMatcher, eventInputLength, result.matched,
+                        result.parseErrors.size(), System.nanoTime() - eventStartNanos);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the listener the current run was started with or null, if parsing events are disabled
+     */
+    protected ParsingEventListener getEventListener() {
+        return eventListener;
+    }
+
     protected MatcherContext<V> createRootContext(InputBuffer inputBuffer, MatchHandler matchHandler,
                                                      boolean fastStringMatching) {
+        if (metrics != null) {
+            metrics.passes++;
+            matchHandler = new MetricsMatchHandler(matchHandler, metrics, getValueStack());
+        }
+        if (eventListener != null) {
+            long threshold = ParsingEvents.getSlowRuleThreshold();
+            if (threshold > 0) {
+                matchHandler = new SlowRuleMatchHandler(matchHandler, eventListener, this, threshold);
+            }
+        }
         return new MatcherContext<V>(inputBuffer, getValueStack(), getParseErrors(), matchHandler, rootMatcher,
                 fastStringMatching);
     }
@@ -95,4 +209,73 @@ public abstract class AbstractParseRunner<V> implements ParseRunner<V> {
         return new ParsingResult<V>(matched, rootContext.getNode(), getValueStack(), getParseErrors(),
                 rootContext.getInputBuffer());
     }
+
+    /**
+     * A MatchHandler wrapping the actual handler of the runner, which updates the counters of a ParseRunMetrics
+     * instance on each rule invocation.
+     */
+    private static class MetricsMatchHandler implements MatchHandler {
+        private final MatchHandler inner;
+        private final ParseRunMetrics metrics;
+        private final ValueStack<?> valueStack;
+
+        private MetricsMatchHandler(MatchHandler inner, ParseRunMetrics metrics, ValueStack<?> valueStack) {
+            this.inner = inner;
+            this.metrics = metrics;
+            this.valueStack = valueStack;
+        }
+
+        public boolean match(MatcherContext<?> context) {
+            ParseRunMetrics metrics = this.metrics;
+            Matcher matcher = context.getMatcher();
+            metrics.invocations++;
+            if (context.getLevel() > metrics.maxDepth) metrics.maxDepth = context.getLevel();
+            if (matcher.areMismatchesMemoed()) {
+                if (context.hasMismatched()) metrics.memoHits++;
+                else metrics.memoMisses++;
+            }
+            boolean matched = inner.match(context);
+            if (!matched) {
+                metrics.backtracks++;
+                return false;
+            }
+            if (matcher instanceof ActionMatcher) {
+                // only actions can change the value stack, so this is where we check its size
+                int size = valueStack.size();
+                if (size > metrics.valueStackHighWater) metrics.valueStackHighWater = size;
+            }
+            return matched;
+        }
+    }
+
+    /**
+     * A MatchHandler wrapping the actual handler of the runner, which times each rule invocation and reports the
+     * ones exceeding the slow rule threshold to the ParsingEventListener.
+     */
+    private static class SlowRuleMatchHandler implements MatchHandler {
+        private final MatchHandler inner;
+        private final ParsingEventListener listener;
+        private final ParseRunner<?> runner;
+        private final long threshold;
+
+        private SlowRuleMatchHandler(MatchHandler inner, ParsingEventListener listener, ParseRunner<?> runner,
+                                     long threshold) {
+            this.inner = inner;
+            this.listener = listener;
+            this.runner = runner;
+            this.threshold = threshold;
+        }
+
+        public boolean match(MatcherContext<?> context) {
+            int startIndex = context.getCurrentIndex();
+            long start = System.nanoTime();
+            boolean matched = inner.match(context);
+            long time = System.nanoTime() - start;
+            if (time >= threshold) {
+                listener.slowRuleInvocation(runner, context.getMatcher(), startIndex, context.getCurrentIndex(),
+                        matched, time);
+            }
+            return matched;
+        }
+    }
 }
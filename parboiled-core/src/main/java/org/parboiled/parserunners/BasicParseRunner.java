@@ -67,10 +67,11 @@ public class BasicParseRunner<V> extends AbstractParseRunner<V> implements Match
     public ParsingResult<V> run(InputBuffer inputBuffer) {
         checkArgNotNull(inputBuffer, "inputBuffer");
         resetValueStack();
-        
+        startRun(inputBuffer);
+
         MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
         boolean matched = rootContext.runMatcher();
-        return createParsingResult(matched, rootContext);
+        return finishRun(createParsingResult(matched, rootContext));
     }
 
     public boolean match(MatcherContext<?> context) {
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.common.Sink;
+import org.parboiled.support.BinaryTrace;
+import org.parboiled.support.MatcherIds;
+import org.parboiled.support.ParsingResult;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkState;
+
+/**
+ * A {@link ParseRunner} implementation recording the same information as the {@link TracingParseRunner}, however,
+ * as fixed-size binary events into a {@link BinaryTrace} rather than as strings. Recording is cheap enough to be
+ * left enabled on production systems, where the trace of a failed parsing run can then be decoded after the fact
+ * (potentially offline, if the trace is backed by a memory mapped file) into the human readable format of the
+ * {@link TracingParseRunner}.
+ */
+public class BinaryTracingParseRunner<V> extends ReportingParseRunner<V> implements MatchHandler {
+    private final BinaryTrace trace;
+    private final MatcherIds matcherIds;
+    private InputBuffer lastInputBuffer;
+
+    /**
+     * Creates a new BinaryTracingParseRunner instance for the given rule keeping the last 65536 events in memory.
+     *
+     * @param rule the parser rule
+     */
+    public BinaryTracingParseRunner(Rule rule) {
+        this(rule, new BinaryTrace(0x10000));
+    }
+
+    /**
+     * Creates a new BinaryTracingParseRunner instance for the given rule recording into the given trace.
+     *
+     * @param rule  the parser rule
+     * @param trace the trace to record to
+     */
+    public BinaryTracingParseRunner(Rule rule, BinaryTrace trace) {
+        super(rule);
+        this.trace = checkArgNotNull(trace, "trace");
+        this.matcherIds = new MatcherIds(rule);
+    }
+
+    public BinaryTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return the matcher ids used for recording, required for decoding the trace
+     */
+    public MatcherIds getMatcherIds() {
+        return matcherIds;
+    }
+
+    /**
+     * Decodes the recorded trace of the last parsing run(s) into the given log.
+     *
+     * @param log the log to print to
+     */
+    public void decodeTrace(Sink<String> log) {
+        checkState(lastInputBuffer != null, "No parsing run has been performed yet");
+        trace.decode(matcherIds, lastInputBuffer, log);
+    }
+
+    @Override
+    protected ParsingResult<V> runBasicMatch(InputBuffer inputBuffer) {
+        trace.recordRunStart();
+        lastInputBuffer = inputBuffer;
+
+        MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
+        boolean matched = rootContext.runMatcher();
+        return createParsingResult(matched, rootContext);
+    }
+
+    public boolean match(MatcherContext<?> context) {
+        boolean matched = context.getMatcher().match(context);
+        trace.record(matcherIds.getId(context.getMatcher()), context.getStartIndex(), context.getCurrentIndex(),
+                context.getLevel(), matched);
+        return matched;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.ByteInputBuffer;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.buffers.MutableInputBuffer;
+import org.parboiled.buffers.SubInputBuffer;
+import org.parboiled.common.Factory;
+import org.parboiled.common.ImmutableList;
+import org.parboiled.common.Sink;
+import org.parboiled.errors.ActionError;
+import org.parboiled.errors.BasicParseError;
+import org.parboiled.errors.InvalidInputError;
+import org.parboiled.errors.ParseError;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.support.Chars;
+import org.parboiled.support.DefaultValueStack;
+import org.parboiled.support.ParsingEventListener;
+import org.parboiled.support.ParsingEvents;
+import org.parboiled.support.ParsingResult;
+import org.parboiled.support.ValueStack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>A {@link ParseRunner} for inputs consisting of independent records (like log lines, NDJSON documents or
+ * semicolon separated statements), which splits the input into chunks and parses them in parallel.</p>
+ * <p>The split points are determined in a cheap, sequential pass, either at every occurrence of a delimiter char
+ * (which does not become part of any chunk) or by repeatedly matching a splitter rule, each match of which
+ * (including its terminator, if any) becomes a chunk. If the splitter rule does not match (or matches nothing) the
+ * rest of the input becomes the last chunk, so that its errors are reported by the actual parsing run.</p>
+ * <p>Each chunk is parsed as a complete input of its own (a {@link SubInputBuffer}) by a parse runner created by the
+ * given factory. Since parser instances are not thread-safe (actions and action variables keep their state in the
+ * parser object) the factory has to create a new parser instance for each runner, it is called once per batch of
+ * chunks. Positions of parse errors refer to the complete input, as do the original indices of the chunk buffers.
+ * </p>
+ * <p>The chunks are only parsed concurrently if the input is a {@link DefaultInputBuffer} or a
+ * {@link ByteInputBuffer}, which can safely be read by several threads at once. All other input buffers (like the
+ * {@link org.parboiled.buffers.StreamingInputBuffer}, which updates its chunk cache on reads) are parsed chunk by
+ * chunk on the calling thread.</p>
+ * <p>The results are merged in input order: the overall result matched if all chunks matched, its parse errors are
+ * the concatenated errors of all chunks (translated to refer to the complete input) and its value stack holds the
+ * result value of every chunk, with the last chunk's on top. Parse trees are not merged but are available from the
+ * individual {@link Chunk}s.</p>
+ * <p>The complete run is signalled to the {@link ParsingEventListener} and measured (see
+ * {@link #withMetricsSink(Sink)}) as one run of the root rule of the chunk runners, the runs of the individual
+ * chunks are not signalled separately. This requires the factory to create {@link AbstractParseRunner}s, runs with
+ * other parse runners are neither signalled nor measured.</p>
+ */
+public class ChunkedParseRunner<V> implements ParseRunner<V> {
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private final Factory<? extends ParseRunner<V>> runnerFactory;
+    private final Matcher splitter;
+    private final char delimiter;
+    private List<ParseError> parseErrors;
+    private ValueStack<V> valueStack;
+    private Object initialValueStackSnapshot;
+    private ExecutorService executor;
+    private Sink<ParseRunMetrics> metricsSink;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a new ChunkedParseRunner splitting its input at every occurrence of the given delimiter.
+     * Empty chunks are skipped.
+     *
+     * @param runnerFactory the factory creating the runners for the chunks
+     * @param delimiter     the delimiter char
+     */
+    public ChunkedParseRunner(Factory<? extends ParseRunner<V>> runnerFactory, char delimiter) {
+        this.runnerFactory = checkArgNotNull(runnerFactory, "runnerFactory");
+        this.splitter = null;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Creates a new ChunkedParseRunner splitting its input into the consecutive matches of the given rule.
+     * The rule should only look for the end of a record (e.g. <code>Sequence(ZeroOrMore(NoneOf(";")), ';')</code>)
+     * rather than fully parse it and must not rely on actions.
+     *
+     * @param runnerFactory the factory creating the runners for the chunks
+     * @param splitter      the rule matching one chunk
+     */
+    public ChunkedParseRunner(Factory<? extends ParseRunner<V>> runnerFactory, Rule splitter) {
+        this.runnerFactory = checkArgNotNull(runnerFactory, "runnerFactory");
+        this.splitter = (Matcher) checkArgNotNull(splitter, "splitter");
+        this.delimiter = 0;
+    }
+
+    public ParseRunner<V> withParseErrors(List<ParseError> parseErrors) {
+        this.parseErrors = parseErrors;
+        return this;
+    }
+
+    public ParseRunner<V> withValueStack(ValueStack<V> valueStack) {
+        this.valueStack = checkArgNotNull(valueStack, "valueStack");
+        this.initialValueStackSnapshot = valueStack.takeSnapshot();
+        return this;
+    }
+
+    /**
+     * Makes this runner parse the chunks on the given executor rather than on threads started for each run.
+     *
+     * @param executor the executor
+     * @return this instance
+     */
+    public ChunkedParseRunner<V> withExecutor(ExecutorService executor) {
+        this.executor = checkArgNotNull(executor, "executor");
+        return this;
+    }
+
+    /**
+     * Sets the number of chunks parsed concurrently when no executor is given, defaults to the number of available
+     * processors. A parallelism of 1 parses all chunks on the calling thread, as does any input buffer other than a
+     * {@link DefaultInputBuffer} or {@link ByteInputBuffer}.
+     *
+     * @param parallelism the parallelism
+     * @return this instance
+     */
+    public ChunkedParseRunner<V> withParallelism(int parallelism) {
+        checkArgument(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Enables metrics collection for this runner. After each run a {@link ParseRunMetrics} instance covering the runs
+     * of all chunks is handed to the given sink. Pass null to disable metrics collection again.
+     *
+     * @param metricsSink the sink receiving the metrics of each run
+     * @return this instance
+     */
+    public ChunkedParseRunner<V> withMetricsSink(Sink<ParseRunMetrics> metricsSink) {
+        this.metricsSink = metricsSink;
+        return this;
+    }
+
+    public Result<V> run(String input) {
+        checkArgNotNull(input, "input");
+        return run(input.toCharArray());
+    }
+
+    public Result<V> run(char[] input) {
+        checkArgNotNull(input, "input");
+        return run(new DefaultInputBuffer(input));
+    }
+
+    public Result<V> run(InputBuffer inputBuffer) {
+        checkArgNotNull(inputBuffer, "inputBuffer");
+        // the first runner also determines the root rule the complete run is signalled and measured for
+        ParseRunner<V> firstRunner = runnerFactory.create();
+        Matcher rootMatcher = firstRunner instanceof AbstractParseRunner ?
+                ((AbstractParseRunner<V>) firstRunner).getRootMatcher() : null;
+        ParsingEventListener listener = rootMatcher != null ? ParsingEvents.getListener() : null;
+        int inputLength = -1;
+        long startNanos = System.nanoTime();
+        if (listener != null) {
+            inputLength = InputBufferUtils.getKnownLength(inputBuffer);
+            listener.runStarted(this, (Rule) rootMatcher, inputLength);
+        }
+        ParseRunMetrics metrics = rootMatcher != null && metricsSink != null ?
+                new ParseRunMetrics(rootMatcher.getLabel(), getClass().getSimpleName(), inputBuffer) : null;
+
+        List<SubInputBuffer> buffers = split(inputBuffer);
+        List<Chunk<V>> chunks = parse(buffers, inputBuffer, firstRunner, metrics);
+
+        if (parseErrors == null) parseErrors = new ArrayList<ParseError>();
+        if (valueStack == null) withValueStack(new DefaultValueStack<V>());
+        valueStack.restoreSnapshot(initialValueStackSnapshot);
+        boolean matched = true;
+        for (Chunk<V> chunk : chunks) {
+            matched &= chunk.result.matched;
+            for (ParseError error : chunk.result.parseErrors) {
+                parseErrors.add(translate(error, chunk.startIndex, inputBuffer));
+            }
+            valueStack.push(chunk.result.resultValue);
+        }
+        Result<V> result = new Result<V>(matched, valueStack, parseErrors, inputBuffer, chunks);
+
+        if (metrics != null) {
+            metrics.finish(result);
+            metricsSink.receive(metrics);
+        }
+        if (listener != null) {
+            if (inputLength < 0) inputLength = InputBufferUtils.getKnownLength(inputBuffer);
+            listener.runFinished(this, (Rule) rootMatcher, inputLength, matched, parseErrors.size(),
+                    System.nanoTime() - startNanos);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a copy of the given chunk error, which refers to the complete input rather than the chunk.
+     *
+     * @param error       the error of a chunk
+     * @param chunkStart  the index of the first chunk char in the complete input
+     * @param inputBuffer the complete input
+     * @return the translated error
+     */
+    protected ParseError translate(ParseError error, int chunkStart, InputBuffer inputBuffer) {
+        int startIndex = toInputIndex(error.getInputBuffer(), error.getStartIndex(), chunkStart);
+        int endIndex = toInputIndex(error.getInputBuffer(), error.getEndIndex(), chunkStart);
+        // the matcher paths of the errors carry chunk indices, so we keep the original start index of the error
+        // and express the translation as an index delta (which is unapplied when comparing with the paths)
+        int pathIndex = error.getStartIndex();
+        if (error instanceof BasicParseError) pathIndex -= ((BasicParseError) error).getIndexDelta();
+
+        BasicParseError translated;
+        if (error instanceof InvalidInputError) {
+            translated = new InvalidInputError(inputBuffer, pathIndex,
+                    ((InvalidInputError) error).getFailedMatchers(), error.getErrorMessage());
+        } else if (error instanceof ActionError) {
+            ActionError actionError = (ActionError) error;
+            translated = new ActionError(inputBuffer, pathIndex, error.getErrorMessage(),
+                    actionError.getErrorPath(), actionError.getActionException());
+        } else {
+            translated = new BasicParseError(inputBuffer, pathIndex, error.getErrorMessage());
+        }
+        translated.shiftIndexDeltaBy(startIndex - pathIndex);
+        translated.setEndIndex(endIndex);
+        return translated;
+    }
+
+    private static int toInputIndex(InputBuffer chunkBuffer, int index, int chunkStart) {
+        // errors of recovering runners refer to a MutableInputBuffer wrapping the chunk buffer
+        if (chunkBuffer instanceof MutableInputBuffer) {
+            index = ((MutableInputBuffer) chunkBuffer).getWrappedIndex(index);
+        }
+        return chunkStart + index;
+    }
+
+    /**
+     * Splits the given input into the chunks to be parsed.
+     *
+     * @param inputBuffer the input
+     * @return the chunk buffers in input order
+     */
+    protected List<SubInputBuffer> split(InputBuffer inputBuffer) {
+        List<SubInputBuffer> buffers = new ArrayList<SubInputBuffer>();
+        if (splitter == null) {
+            int start = 0;
+            int index = 0;
+            while (true) {
+                char c = inputBuffer.charAt(index);
+                if (c == delimiter || c == Chars.EOI) {
+                    if (index > start) buffers.add(new SubInputBuffer(inputBuffer, start, index));
+                    if (c != delimiter) break;
+                    start = index + 1;
+                }
+                index++;
+            }
+            return buffers;
+        }
+
+        MatchHandler handler = new MatchHandler() {
+            public boolean match(MatcherContext<?> context) {
+                return context.getMatcher().match(context);
+            }
+        };
+        int start = 0;
+        while (inputBuffer.charAt(start) != Chars.EOI) {
+            SubInputBuffer rest = new SubInputBuffer(inputBuffer, start);
+            MatcherContext<Object> context = new MatcherContext<Object>(rest, new DefaultValueStack<Object>(),
+                    new ArrayList<ParseError>(), handler, splitter, true);
+            int end = context.runMatcher() && context.getCurrentIndex() > 0 ? start + context.getCurrentIndex() : -1;
+            if (end < 0) {
+                buffers.add(new SubInputBuffer(inputBuffer, start, findEnd(inputBuffer, start)));
+                break;
+            }
+            buffers.add(new SubInputBuffer(inputBuffer, start, end));
+            start = end;
+        }
+        return buffers;
+    }
+
+    private static int findEnd(InputBuffer inputBuffer, int start) {
+        int end = start;
+        while (inputBuffer.charAt(end) != Chars.EOI) end++;
+        return end;
+    }
+
+    private List<Chunk<V>> parse(final List<SubInputBuffer> buffers, InputBuffer inputBuffer,
+                                 ParseRunner<V> firstRunner, ParseRunMetrics metrics) {
+        int batchCount = Math.min(buffers.size(), parallelism * BATCHES_PER_THREAD);
+        // only the immutable buffers can be read by several threads at once
+        boolean threadSafe = inputBuffer instanceof DefaultInputBuffer || inputBuffer instanceof ByteInputBuffer;
+        if (!threadSafe || executor == null && (parallelism == 1 || batchCount <= 1)) {
+            return parseBatch(buffers, firstRunner, metrics);
+        }
+
+        ExecutorService executorService = executor != null ? executor : createExecutor();
+        try {
+            List<Future<List<Chunk<V>>>> futures = new ArrayList<Future<List<Chunk<V>>>>(batchCount);
+            // the batches collect their metrics separately, since the counters are not thread-safe
+            List<ParseRunMetrics> batchMetrics = new ArrayList<ParseRunMetrics>(batchCount);
+            for (int i = 0; i < batchCount; i++) {
+                final List<SubInputBuffer> batch = buffers.subList(
+                        (int) ((long) buffers.size() * i / batchCount),
+                        (int) ((long) buffers.size() * (i + 1) / batchCount));
+                final ParseRunner<V> runner = i == 0 ? firstRunner : null;
+                final ParseRunMetrics metricsOfBatch = metrics != null ? new ParseRunMetrics() : null;
+                if (metricsOfBatch != null) batchMetrics.add(metricsOfBatch);
+                futures.add(executorService.submit(new Callable<List<Chunk<V>>>() {
+                    public List<Chunk<V>> call() {
+                        return parseBatch(batch, runner, metricsOfBatch);
+                    }
+                }));
+            }
+            List<Chunk<V>> chunks = new ArrayList<Chunk<V>>(buffers.size());
+            for (Future<List<Chunk<V>>> future : futures) {
+                chunks.addAll(getResult(future));
+            }
+            for (ParseRunMetrics metricsOfBatch : batchMetrics) {
+                metrics.add(metricsOfBatch);
+            }
+            return chunks;
+        } finally {
+            if (executorService != executor) executorService.shutdown();
+        }
+    }
+
+    private List<Chunk<V>> parseBatch(List<SubInputBuffer> batch, ParseRunner<V> runner, ParseRunMetrics metrics) {
+        if (runner == null) runner = runnerFactory.create();
+        if (runner instanceof AbstractParseRunner) {
+            // the chunk runs are part of the complete run, which is signalled and measured as a whole
+            ((AbstractParseRunner<V>) runner).withMetrics(metrics);
+        }
+        List<Chunk<V>> chunks = new ArrayList<Chunk<V>>(batch.size());
+        for (SubInputBuffer buffer : batch) {
+            runner.withParseErrors(new ArrayList<ParseError>());
+            runner.withValueStack(new DefaultValueStack<V>());
+            chunks.add(new Chunk<V>(buffer.getStart(), buffer.getStart() + buffer.getLength(), runner.run(buffer)));
+        }
+        return chunks;
+    }
+
+    private ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "parboiled-chunk-parser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ParserRuntimeException(e, "Interrupted while waiting for chunk parsing results");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ParserRuntimeException(cause);
+        }
+    }
+
+    /**
+     * A chunk of the input together with the result of its parsing run.
+     */
+    public static class Chunk<V> {
+        /**
+         * The index of the first chunk char in the complete input.
+         */
+        public final int startIndex;
+
+        /**
+         * The index behind the last chunk char in the complete input.
+         */
+        public final int endIndex;
+
+        /**
+         * The result of parsing the chunk, indices therein are relative to the startIndex.
+         */
+        public final ParsingResult<V> result;
+
+        public Chunk(int startIndex, int endIndex, ParsingResult<V> result) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.result = result;
+        }
+    }
+
+    /**
+     * The merged ParsingResult of a ChunkedParseRunner run, additionally providing the individual chunk results.
+     */
+    public static class Result<V> extends ParsingResult<V> {
+        /**
+         * The chunks in input order.
+         */
+        public final List<Chunk<V>> chunks;
+
+        public Result(boolean matched, ValueStack<V> valueStack, List<ParseError> parseErrors,
+                      InputBuffer inputBuffer, List<Chunk<V>> chunks) {
+            super(matched, null, valueStack, parseErrors, inputBuffer);
+            this.chunks = ImmutableList.copyOf(chunks);
+        }
+    }
+}
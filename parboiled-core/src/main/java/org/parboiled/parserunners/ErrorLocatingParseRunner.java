@@ -62,14 +62,15 @@ public class ErrorLocatingParseRunner<V> extends AbstractParseRunner<V> implemen
         checkArgNotNull(inputBuffer, "inputBuffer");
         resetValueStack();
         errorIndex = 0;
-        
+        startRun(inputBuffer);
+
         // run without fast string matching to properly get the error location
         MatcherContext<V> rootContext = createRootContext(inputBuffer, this, false);
         boolean matched = match(rootContext);
         if (!matched) {
             getParseErrors().add(new BasicParseError(inputBuffer, errorIndex, null));
         }
-        return createParsingResult(matched, rootContext);
+        return finishRun(createParsingResult(matched, rootContext));
     }
 
     public boolean match(MatcherContext<?> context) {
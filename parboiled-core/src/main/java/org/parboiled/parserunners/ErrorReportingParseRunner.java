@@ -22,13 +22,14 @@ import org.parboiled.Rule;
 import org.parboiled.buffers.InputBuffer;
 import org.parboiled.errors.InvalidInputError;
 import org.parboiled.matchervisitors.IsSingleCharMatcherVisitor;
-import org.parboiled.support.MatcherPath;
+import org.parboiled.support.CompactMatcherPath;
 import org.parboiled.support.ParsingResult;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.matchers.MatcherUtils.isTerminalCustomMatcher;
 
 /**
  * A {@link org.parboiled.parserunners.ParseRunner} implementation that creates an
@@ -40,7 +41,7 @@ public class ErrorReportingParseRunner<V> extends AbstractParseRunner<V> impleme
     private final IsSingleCharMatcherVisitor isSingleCharMatcherVisitor = new IsSingleCharMatcherVisitor();
     private final int errorIndex;
     private final MatchHandler inner;
-    private final List<MatcherPath> failedMatchers = new ArrayList<MatcherPath>();
+    private final List<CompactMatcherPath> failedMatchers = new ArrayList<CompactMatcherPath>();
     private boolean seeking;
 
     /**
@@ -72,14 +73,16 @@ public class ErrorReportingParseRunner<V> extends AbstractParseRunner<V> impleme
         resetValueStack();        
         failedMatchers.clear();
         seeking = errorIndex > 0;
+        startRun(inputBuffer);
 
         // run without fast string matching to properly get to the error location
         MatcherContext<V> rootContext = createRootContext(inputBuffer, this, false);
         boolean matched = match(rootContext);
         if (!matched) {
-            getParseErrors().add(new InvalidInputError(inputBuffer, errorIndex, failedMatchers, null));
+            getParseErrors().add(new InvalidInputError(inputBuffer, errorIndex,
+                    CompactMatcherPath.toMatcherPaths(failedMatchers), null));
         }
-        return createParsingResult(matched, rootContext);
+        return finishRun(createParsingResult(matched, rootContext));
     }
 
     public boolean match(MatcherContext<?> context) {
@@ -88,8 +91,9 @@ public class ErrorReportingParseRunner<V> extends AbstractParseRunner<V> impleme
             if (matched && seeking) {
                 seeking = false;
             }
-            if (!matched && !seeking && context.getMatcher().accept(isSingleCharMatcherVisitor)) {
-                failedMatchers.add(context.getPath());
+            if (!matched && !seeking && (context.getMatcher().accept(isSingleCharMatcherVisitor) ||
+                    isTerminalCustomMatcher(context.getMatcher()))) {
+                failedMatchers.add(CompactMatcherPath.capture(context));
             }
         }
         return matched;
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.common.Sink;
+import org.parboiled.common.StringBuilderSink;
+import org.parboiled.common.StringUtils;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.support.MatcherIds;
+import org.parboiled.support.ParsingResult;
+import org.parboiled.support.Position;
+
+import java.util.*;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+import static org.parboiled.common.Preconditions.checkState;
+import static org.parboiled.common.Utils.copyOf;
+
+/**
+ * <p>A {@link ParseRunner} implementation for analyzing where in the input the parser spends its effort.
+ * It exhibits the same behavior as the {@link BasicParseRunner} but divides the input into buckets of a fixed number
+ * of characters and counts, per bucket, the rule invocations starting in it as well as the re-invocations of rules
+ * at input locations they had already been run at (re-matches and re-mismatches), together with the rules responsible
+ * for these re-scans.</p>
+ * <p>The resulting {@link Heatmap} points at the constructs in the input that trigger excessive backtracking, which
+ * helps in deciding where to apply @MemoMismatches or to restructure the grammar.</p>
+ * <p>Re-invocations are detected with a hash set of (rule, location) pairs holding up to 2^18 entries, so for runs
+ * with more distinct rule invocations than that the re-invocation counts are lower bounds.</p>
+ *
+ * @param <V>
+ */
+public class HeatmapParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler {
+    private final int bucketSize;
+    private final MatcherIds matcherIds;
+    private InputBuffer inputBuffer;
+    private int bucketCount;
+    private int[] invocations = new int[16];
+    private int[] rematches = new int[16];
+    private int[] remismatches = new int[16];
+    private RuleCounts[] rescans = new RuleCounts[16];
+    private final InvocationSet invocationSet = new InvocationSet(1 << 18);
+
+    /**
+     * Creates a new HeatmapParseRunner instance for the given rule with a bucket size of 64 characters.
+     *
+     * @param rule the parser rule
+     */
+    public HeatmapParseRunner(Rule rule) {
+        this(rule, 64);
+    }
+
+    /**
+     * Creates a new HeatmapParseRunner instance for the given rule.
+     *
+     * @param rule       the parser rule
+     * @param bucketSize the number of input characters per bucket
+     */
+    public HeatmapParseRunner(Rule rule, int bucketSize) {
+        super(rule);
+        checkArgument(bucketSize > 0, "bucketSize must be positive");
+        this.bucketSize = bucketSize;
+        this.matcherIds = new MatcherIds(rule);
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    public ParsingResult<V> run(InputBuffer inputBuffer) {
+        checkArgNotNull(inputBuffer, "inputBuffer");
+        resetValueStack();
+        startRun(inputBuffer);
+        prepareRun(inputBuffer);
+
+        MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
+        boolean matched = rootContext.runMatcher();
+        return finishRun(createParsingResult(matched, rootContext));
+    }
+
+    private void prepareRun(InputBuffer inputBuffer) {
+        this.inputBuffer = inputBuffer;
+        Arrays.fill(invocations, 0, bucketCount, 0);
+        Arrays.fill(rematches, 0, bucketCount, 0);
+        Arrays.fill(remismatches, 0, bucketCount, 0);
+        Arrays.fill(rescans, 0, bucketCount, null);
+        bucketCount = 0;
+        invocationSet.clear();
+    }
+
+    public boolean match(MatcherContext<?> context) {
+        Matcher matcher = context.getMatcher();
+        boolean matched = matcher.match(context);
+
+        int index = context.getStartIndex();
+        int bucket = index / bucketSize;
+        if (bucket >= bucketCount) {
+            if (bucket >= invocations.length) growBuckets(bucket + 1);
+            bucketCount = bucket + 1;
+        }
+        invocations[bucket]++;
+
+        int id = matcherIds.getId(matcher);
+        if (invocationSet.add(id, index)) {
+            if (matched) rematches[bucket]++;
+            else remismatches[bucket]++;
+            if (rescans[bucket] == null) rescans[bucket] = new RuleCounts();
+            rescans[bucket].increment(id);
+        }
+        return matched;
+    }
+
+    private void growBuckets(int size) {
+        size = Math.max(size, invocations.length * 2);
+        invocations = copyOf(invocations, size);
+        rematches = copyOf(rematches, size);
+        remismatches = copyOf(remismatches, size);
+        rescans = copyOf(rescans, size);
+    }
+
+    /**
+     * Creates the heatmap of the last parsing run.
+     *
+     * @return the heatmap
+     */
+    public Heatmap getHeatmap() {
+        checkState(inputBuffer != null, "No parsing run has been performed yet");
+        List<Bucket> buckets = new ArrayList<Bucket>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            List<RuleCount> rules = new ArrayList<RuleCount>();
+            RuleCounts counts = rescans[i];
+            if (counts != null) {
+                for (int j = 0; j < counts.size; j++) {
+                    rules.add(new RuleCount(matcherIds.getMatcher(counts.ids[j]), counts.counts[j]));
+                }
+                Collections.sort(rules);
+            }
+            buckets.add(new Bucket(i * bucketSize, (i + 1) * bucketSize, invocations[i], rematches[i],
+                    remismatches[i], Collections.unmodifiableList(rules)));
+        }
+        return new Heatmap(inputBuffer, bucketSize, buckets);
+    }
+
+    // a small, insertion ordered id -> count map, buckets are typically re-scanned by only a few distinct rules
+    private static class RuleCounts {
+        private int[] ids = new int[4];
+        private int[] counts = new int[4];
+        private int size;
+
+        private void increment(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    counts[i]++;
+                    return;
+                }
+            }
+            if (size == ids.length) {
+                ids = copyOf(ids, size * 2);
+                counts = copyOf(counts, size * 2);
+            }
+            ids[size] = id;
+            counts[size++] = 1;
+        }
+    }
+
+    public static class Heatmap {
+        public final InputBuffer inputBuffer;
+        public final int bucketSize;
+        public final List<Bucket> buckets;
+
+        public Heatmap(InputBuffer inputBuffer, int bucketSize, List<Bucket> buckets) {
+            this.inputBuffer = checkArgNotNull(inputBuffer, "inputBuffer");
+            this.bucketSize = bucketSize;
+            this.buckets = checkArgNotNull(buckets, "buckets");
+        }
+
+        /**
+         * Returns the buckets sorted by the number of re-invocations, the most re-scanned first.
+         *
+         * @return a new list of buckets
+         */
+        public List<Bucket> getHottestBuckets() {
+            List<Bucket> sorted = new ArrayList<Bucket>(buckets);
+            Collections.sort(sorted, new Comparator<Bucket>() {
+                public int compare(Bucket a, Bucket b) {
+                    int diff = b.getReinvocations() - a.getReinvocations();
+                    return diff != 0 ? diff : b.invocations - a.invocations;
+                }
+            });
+            return sorted;
+        }
+
+        /**
+         * Prints the given number of most re-scanned buckets, including their input text and the rules responsible
+         * for most of the re-scans.
+         *
+         * @param count the maximum number of buckets to print
+         * @return the report
+         */
+        public String print(int count) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Heatmap Report\n");
+            sb.append("--------------\n");
+            sb.append(String.format("Bucket size: %d chars, buckets: %d\n\n", bucketSize, buckets.size()));
+            sb.append(
+                    "Location   |  Invocations  |  Re-Matches   | Re-Mismatches | Input                          | Top re-scanning rules\n");
+            sb.append(
+                    "-----------|---------------|---------------|---------------|--------------------------------|----------------------\n");
+            List<Bucket> hottest = getHottestBuckets();
+            for (int i = 0; i < Math.min(hottest.size(), count); i++) {
+                Bucket bucket = hottest.get(i);
+                Position pos = inputBuffer.getPosition(bucket.startIndex);
+                sb.append(String.format("%-10s | %13d | %13d | %13d | %-30s | %s\n",
+                        pos.line + ":" + pos.column, bucket.invocations, bucket.rematches, bucket.remismatches,
+                        '"' + StringUtils.left(StringUtils.escape(
+                                inputBuffer.extract(bucket.startIndex, bucket.endIndex)), 28) + '"',
+                        printRules(bucket, 3)));
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Prints all buckets in CSV format to the given sink, one line per call.
+         * The columns are: start index, end index, line, column, invocations, re-matches, re-mismatches and
+         * a semicolon separated list of the re-scanning rules with their re-invocation counts.
+         *
+         * @param sink the sink receiving the lines
+         */
+        public void printCsv(Sink<String> sink) {
+            checkArgNotNull(sink, "sink");
+            sink.receive("start,end,line,column,invocations,rematches,remismatches,rescanning_rules\n");
+            for (Bucket bucket : buckets) {
+                Position pos = inputBuffer.getPosition(bucket.startIndex);
+                sink.receive(String.format("%d,%d,%d,%d,%d,%d,%d,\"%s\"\n", bucket.startIndex, bucket.endIndex,
+                        pos.line, pos.column, bucket.invocations, bucket.rematches, bucket.remismatches,
+                        printRules(bucket, Integer.MAX_VALUE).replace("\"", "\"\"")));
+            }
+        }
+
+        public String printCsv() {
+            StringBuilderSink sink = new StringBuilderSink();
+            printCsv(sink);
+            return sink.toString();
+        }
+
+        private static String printRules(Bucket bucket, int count) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < Math.min(bucket.rescanningRules.size(), count); i++) {
+                RuleCount rule = bucket.rescanningRules.get(i);
+                if (i > 0) sb.append(';');
+                sb.append(rule.matcher).append(':').append(rule.count);
+            }
+            return sb.toString();
+        }
+    }
+
+    public static class Bucket {
+        public final int startIndex;
+        public final int endIndex;
+        public final int invocations;
+        public final int rematches;
+        public final int remismatches;
+        public final List<RuleCount> rescanningRules; // sorted by count, highest first
+
+        public Bucket(int startIndex, int endIndex, int invocations, int rematches, int remismatches,
+                      List<RuleCount> rescanningRules) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.invocations = invocations;
+            this.rematches = rematches;
+            this.remismatches = remismatches;
+            this.rescanningRules = rescanningRules;
+        }
+
+        public int getReinvocations() { return rematches + remismatches; }
+    }
+
+    public static class RuleCount implements Comparable<RuleCount> {
+        public final Matcher matcher;
+        public final int count;
+
+        public RuleCount(Matcher matcher, int count) {
+            this.matcher = matcher;
+            this.count = count;
+        }
+
+        public int compareTo(RuleCount other) {
+            return other.count - count;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import java.util.Arrays;
+
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>A bounded set of (rule id, input index) pairs used by the profiling parse runners for detecting re-invocations of
+ * rules at input locations they had already been run at.</p>
+ * <p>The pairs are kept in an open addressing hash table, which grows with the number of distinct invocations up to
+ * the given maximum capacity, so the memory required is independent of the input length and the number of rules.
+ * Once the table is full, newly recorded pairs replace older ones. Re-invocations of such forgotten pairs are not
+ * detected, i.e. the number of re-invocations can be underestimated for very large runs, but never overestimated.</p>
+ * <p>Clearing the set is an O(1) operation, since entries are stamped with a generation number.</p>
+ */
+final class InvocationSet {
+    private static final int MAX_PROBES = 8;
+
+    private final int maxCapacity;
+    private long[] keys;
+    private int[] generations;
+    private int generation = 1;
+    private int size;
+
+    /**
+     * @param maxCapacity the maximum number of entries, must be a power of two
+     */
+    InvocationSet(int maxCapacity) {
+        checkArgument(maxCapacity > 0 && (maxCapacity & (maxCapacity - 1)) == 0,
+                "maxCapacity must be a positive power of two");
+        this.maxCapacity = maxCapacity;
+        int capacity = Math.min(1024, maxCapacity);
+        keys = new long[capacity];
+        generations = new int[capacity];
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        size = 0;
+        if (++generation == 0) { // wrapped around after 2^32 runs, so we have to really clear
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Records the invocation of the rule with the given id at the given input index.
+     *
+     * @param id    the rule id
+     * @param index the input index
+     * @return true if the invocation had already been recorded since the last {@link #clear()}
+     */
+    boolean add(int id, int index) {
+        long key = ((long) id << 32) | (index & 0xFFFFFFFFL);
+        int mask = keys.length - 1;
+        int home = hash(key) & mask;
+        for (int i = 0, slot = home; i < MAX_PROBES; i++, slot = (slot + 1) & mask) {
+            if (generations[slot] != generation) {
+                if (size >= keys.length >> 1 && keys.length < maxCapacity) {
+                    grow();
+                    return add(id, index);
+                }
+                keys[slot] = key;
+                generations[slot] = generation;
+                size++;
+                return false;
+            }
+            if (keys[slot] == key) return true;
+        }
+        if (keys.length < maxCapacity) {
+            grow();
+            return add(id, index);
+        }
+        keys[home] = key; // the table is full, so we forget an older entry
+        return false;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldGenerations = generations;
+        keys = new long[oldKeys.length * 2];
+        generations = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGenerations[i] != generation) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (generations[slot] == generation) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            generations[slot] = generation;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>A lock-free histogram of (latency) values in the style of the HdrHistogram: the value range is divided into
+ * power-of-two magnitudes, each of which is split into 32 linear sub-buckets. Therefore all recorded values are
+ * represented with a relative error of at most 1/32 (about 3%), independently of their magnitude, and the
+ * histogram has a fixed footprint of about 15 KB.</p>
+ * <p>Recording a value is wait-free except for the min/max updates, which are CAS loops, so any number of threads
+ * can record into the same histogram concurrently.</p>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given value. Negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketIndex(value));
+        sum.addAndGet(value);
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) ;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) ;
+    }
+
+    /**
+     * @return an immutable copy of the current histogram state
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.get(), min.get(), max.get());
+    }
+
+    /**
+     * Returns an immutable copy of the current histogram state and resets the histogram.
+     * Values recorded concurrently are either contained in the snapshot or remain in the histogram, they are never
+     * lost (only the sum, min and max might be off with regard to these values).
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(copy, sum.getAndSet(0), min.getAndSet(Long.MAX_VALUE), max.getAndSet(0));
+    }
+
+    public void reset() {
+        snapshotAndReset();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowestValueInBucket(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        return ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << shift;
+    }
+
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        return lowestValueInBucket(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a {@link LatencyHistogram}.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long min, long max) {
+            long count = 0;
+            for (long c : counts) count += c;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = count > 0 ? min : 0;
+            this.max = max;
+        }
+
+        public long getCount() { return count; }
+
+        public long getSum() { return sum; }
+
+        public long getMin() { return min; }
+
+        public long getMax() { return max; }
+
+        public double getMean() {
+            return count > 0 ? sum / (double) count : 0.0;
+        }
+
+        /**
+         * Returns the value at the given percentile, i.e. the (highest value equivalent to the) smallest recorded
+         * value that is greater than or equal to the given percentage of all recorded values.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the value or 0, if no values have been recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            checkArgument(percentile >= 0.0 && percentile <= 100.0, "percentile must be between 0 and 100");
+            if (count == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.max(min, Math.min(max, highestValueInBucket(i)));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns a snapshot combining the values of this and the given snapshot.
+         *
+         * @param other the other snapshot
+         * @return a new snapshot
+         */
+        public Snapshot add(Snapshot other) {
+            long[] sumCounts = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                sumCounts[i] = counts[i] + other.counts[i];
+            }
+            long newMin = count == 0 ? other.min : other.count == 0 ? min : Math.min(min, other.min);
+            return new Snapshot(sumCounts, sum + other.sum, newMin, Math.max(max, other.max));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, min=%d, p50=%d, p90=%d, p99=%d, p99.9=%d, max=%d, mean=%.1f",
+                    count, min, getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                    getValueAtPercentile(99.9), max, getMean());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.parboiled.Rule;
+import org.parboiled.common.StringUtils;
+import org.parboiled.matchers.ActionMatcher;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.matchers.MatcherUtils;
+import org.parboiled.parserunners.ProfilingParseRunner.RuleReport;
+
+import java.util.*;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+import static org.parboiled.common.Utils.humanize;
+
+/**
+ * <p>Recommends the rules of a grammar whose mismatches should be memoized (i.e. marked with
+ * {@link Rule#memoMismatches()} or <code>@MemoMismatches</code>), based on the data a {@link ProfilingParseRunner}
+ * collected on representative inputs.</p>
+ * <p>When a rule fails again at an input location it already failed at, memoization would have saved the re-mismatch
+ * itself as well as all rule invocations underneath it (the "re-sub-mismatches"). On the other hand every invocation
+ * of a rule with memoized mismatches costs a memo lookup, which is accounted for with a configurable cost (in units of
+ * average rule invocations). Rules are recommended if the estimated savings exceed this overhead and are ranked by
+ * the net number of rule invocations saved. Since these are estimates the effect of applying the recommendations
+ * should always be verified by measurement.</p>
+ * <p>Note that parboiled only supports the memoization of mismatches, re-matches are therefore reported but do not
+ * contribute to the savings.</p>
+ */
+public class MemoizationAdvisor {
+    private final ProfilingParseRunner.Report report;
+    private double lookupCost = 2.0;
+
+    /**
+     * Creates a new MemoizationAdvisor for the given profiling report.
+     *
+     * @param report the report of a ProfilingParseRunner
+     */
+    public MemoizationAdvisor(ProfilingParseRunner.Report report) {
+        this.report = checkArgNotNull(report, "report");
+    }
+
+    /**
+     * Sets the cost of a memo lookup in units of average rule invocations. The default of 2.0 reflects that every
+     * lookup creates a MatcherPosition and probes a hash set, which typically costs more than running a simple rule.
+     *
+     * @param lookupCost the cost of one memo lookup
+     * @return this instance
+     */
+    public MemoizationAdvisor withLookupCost(double lookupCost) {
+        checkArgument(lookupCost >= 0, "lookupCost must not be negative");
+        this.lookupCost = lookupCost;
+        return this;
+    }
+
+    /**
+     * Determines the rules that profit from mismatch memoization, ranked by estimated net savings (highest first).
+     *
+     * @return the recommendations
+     */
+    public List<Recommendation> getRecommendations() {
+        double nanosPerInvocation = report.totalInvocations == 0 ? 0.0 :
+                report.totalNanoTime / (double) report.totalInvocations;
+        List<Recommendation> recommendations = new ArrayList<Recommendation>();
+        for (RuleReport rep : report.ruleReports) {
+            Matcher matcher = rep.getMatcher();
+            // actions must be run every time and terminals are cheaper to rerun than to look up in the memo
+            if (matcher instanceof ActionMatcher || matcher.getChildren().isEmpty()) continue;
+            if (matcher.areMismatchesMemoed() || rep.getRemismatches() == 0) continue;
+
+            double savedInvocations = rep.getRemismatches() + rep.getRemismatchSubs() -
+                    lookupCost * rep.getInvocations();
+            if (savedInvocations <= 0) continue;
+            recommendations.add(new Recommendation(matcher, rep.getInvocations(), rep.getRematches(),
+                    rep.getRemismatches(), rep.getRemismatchSubs(), savedInvocations,
+                    (long) (savedInvocations * nanosPerInvocation)));
+        }
+        Collections.sort(recommendations, new Comparator<Recommendation>() {
+            public int compare(Recommendation a, Recommendation b) {
+                return Double.compare(b.savedInvocations, a.savedInvocations);
+            }
+        });
+        return recommendations;
+    }
+
+    /**
+     * Applies all recommendations to the grammar underneath the given root rule, which must be the root of the
+     * matcher graph the profiling data was collected on.
+     * Note that this modifies the matcher graph in place (see {@link MatcherUtils#memoMismatches}).
+     *
+     * @param rule the root rule
+     * @return the root rule of the rewritten grammar
+     */
+    public Rule apply(Rule rule) {
+        checkArgNotNull(rule, "rule");
+        List<Rule> rules = new ArrayList<Rule>();
+        for (Recommendation recommendation : getRecommendations()) {
+            rules.add(recommendation.matcher);
+        }
+        return MatcherUtils.memoMismatches(rule, rules);
+    }
+
+    public String print() {
+        return print(Integer.MAX_VALUE);
+    }
+
+    public String print(int count) {
+        List<Recommendation> recommendations = getRecommendations();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Memoization Recommendations\n");
+        sb.append("---------------------------\n");
+        sb.append(String.format("Rules recommended for @MemoMismatches: %d of %d profiled\n\n",
+                recommendations.size(), report.ruleReports.size()));
+        sb.append(
+                "Rule                           |   Invocations   |   Re-Matches    |  Re-Mismatches  | Re-Sub-Mismatch | Saved Invocs. | Est. Saving\n");
+        sb.append(
+                "-------------------------------|-----------------|-----------------|-----------------|-----------------|---------------|------------\n");
+        for (int i = 0; i < Math.min(recommendations.size(), count); i++) {
+            Recommendation rec = recommendations.get(i);
+            sb.append(String.format("%-30s | %15s | %15s | %15s | %15s | %13s | %8.3f ms\n",
+                    StringUtils.left(rec.matcher.toString() + ": " + rec.matcher.getClass().getSimpleName()
+                            .replace("Matcher", ""), 30),
+                    humanize(rec.invocations), humanize(rec.rematches), humanize(rec.remismatches),
+                    humanize(rec.remismatchSubs), humanize((long) rec.savedInvocations),
+                    rec.estimatedNanoTimeSaved / 1000000.0));
+        }
+        return sb.toString();
+    }
+
+    public static class Recommendation {
+        public final Matcher matcher;
+        public final int invocations;
+        public final int rematches;
+        public final int remismatches;
+        public final int remismatchSubs;
+        public final double savedInvocations;
+        public final long estimatedNanoTimeSaved;
+
+        public Recommendation(Matcher matcher, int invocations, int rematches, int remismatches, int remismatchSubs,
+                              double savedInvocations, long estimatedNanoTimeSaved) {
+            this.matcher = matcher;
+            this.invocations = invocations;
+            this.rematches = rematches;
+            this.remismatches = remismatches;
+            this.remismatchSubs = remismatchSubs;
+            this.savedInvocations = savedInvocations;
+            this.estimatedNanoTimeSaved = estimatedNanoTimeSaved;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.0f invocations saved", matcher, savedInvocations);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.buffers.InputBufferUtils;
+import org.parboiled.support.ParsingResult;
+
+/**
+ * Holds the metrics collected for one parsing run of an {@link AbstractParseRunner} that has been equipped with a
+ * metrics sink via {@link AbstractParseRunner#withMetricsSink(org.parboiled.common.Sink)} (or of a
+ * {@link ChunkedParseRunner}, whose metrics cover the runs of all chunks).
+ * If the parse runner internally performs several passes over the input (like the {@link ReportingParseRunner} or
+ * the {@link RecoveringParseRunner} do for invalid input) the counters cover all of these passes.
+ */
+public class ParseRunMetrics {
+    private final String ruleLabel;
+    private final String runnerType;
+    private final long startNanos;
+    private InputBuffer inputBuffer;
+    private int inputLength;
+    private long durationNanos;
+    private boolean matched;
+    private int errorCount;
+    int passes;
+    long invocations;
+    long backtracks;
+    long memoHits;
+    long memoMisses;
+    int valueStackHighWater;
+    int maxDepth;
+    int recoveryAttempts;
+
+    ParseRunMetrics(AbstractParseRunner<?> runner, InputBuffer inputBuffer) {
+        this(runner.getRootMatcher().getLabel(), runner.getClass().getSimpleName(), inputBuffer);
+    }
+
+    // only collects the counters of a part of a run, which are then added to the metrics of the complete run
+    ParseRunMetrics() {
+        this.ruleLabel = null;
+        this.runnerType = null;
+        this.startNanos = 0L;
+    }
+
+    ParseRunMetrics(String ruleLabel, String runnerType, InputBuffer inputBuffer) {
+        this.ruleLabel = ruleLabel;
+        this.runnerType = runnerType;
+        this.inputBuffer = inputBuffer;
+        this.inputLength = InputBufferUtils.getKnownLength(inputBuffer);
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Adds the counters of the given metrics, which have been collected for a part of this run, to this instance.
+     *
+     * @param other the metrics of a part of this run
+     */
+    void add(ParseRunMetrics other) {
+        passes += other.passes;
+        invocations += other.invocations;
+        backtracks += other.backtracks;
+        memoHits += other.memoHits;
+        memoMisses += other.memoMisses;
+        valueStackHighWater = Math.max(valueStackHighWater, other.valueStackHighWater);
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+        recoveryAttempts += other.recoveryAttempts;
+    }
+
+    void finish(ParsingResult<?> result) {
+        durationNanos = System.nanoTime() - startNanos;
+        // streaming inputs might have been read to their end during the run
+        if (inputLength < 0) inputLength = InputBufferUtils.getKnownLength(inputBuffer);
+        inputBuffer = null;
+        matched = result.matched;
+        errorCount = result.parseErrors.size();
+        valueStackHighWater = Math.max(valueStackHighWater, result.valueStack.size());
+    }
+
+    /**
+     * @return the label of the root rule of the parse runner
+     */
+    public String getRuleLabel() {
+        return ruleLabel;
+    }
+
+    /**
+     * @return the simple class name of the parse runner having performed the run
+     */
+    public String getRunnerType() {
+        return runnerType;
+    }
+
+    /**
+     * Returns the number of input characters, as determined by {@link InputBufferUtils#getKnownLength(InputBuffer)}.
+     * Streaming and lazily converting input buffers are not forced to read ahead to the end of their input for this,
+     * so the length of such an input is only known if the run (or an earlier one) has reached its end.
+     *
+     * @return the number of input characters or -1, if not known without reading ahead in the input
+     */
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    /**
+     * @return the wall-clock duration of the complete run in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return true if the run produced a matched ParsingResult
+     */
+    public boolean isMatched() {
+        return matched;
+    }
+
+    /**
+     * @return the number of passes over the input the runner performed
+     */
+    public int getPasses() {
+        return passes;
+    }
+
+    /**
+     * @return the total number of rule invocations across all passes
+     */
+    public long getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * @return the number of rule invocations that failed and thereby caused the parser to backtrack
+     */
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    /**
+     * @return the number of invocations of mismatch-memoizing rules that were answered from the memo
+     */
+    public long getMemoHits() {
+        return memoHits;
+    }
+
+    /**
+     * @return the number of invocations of mismatch-memoizing rules that had to be actually run
+     */
+    public long getMemoMisses() {
+        return memoMisses;
+    }
+
+    /**
+     * @return the maximum number of elements observed on the value stack
+     */
+    public int getValueStackHighWater() {
+        return valueStackHighWater;
+    }
+
+    /**
+     * @return the maximum rule nesting level reached (the root rule has level 0)
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of parse errors in the ParsingResult
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the number of error recovery attempts (i.e. tentative single char fixes and resynchronizations)
+     */
+    public int getRecoveryAttempts() {
+        return recoveryAttempts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s on rule '%s': %s, %d chars, %.3f ms, %d passes, %d invocations, %d backtracks, " +
+                "%d memo hits, %d memo misses, value stack high-water %d, max depth %d, %d errors, " +
+                "%d recovery attempts", runnerType, ruleLabel, matched ? "matched" : "mismatched", inputLength,
+                durationNanos / 1000000.0, passes, invocations, backtracks, memoHits, memoMisses,
+                valueStackHighWater, maxDepth, errorCount, recoveryAttempts);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.parboiled.common.Sink;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * A {@link Sink} for {@link ParseRunMetrics} aggregating the metrics of all received runs and exposing the
+ * aggregates as a JMX MBean. One instance can be shared by any number of parse runners (also across threads):
+ * <pre>
+ * ParseRunnerMetrics metrics = new ParseRunnerMetrics().register("calculator");
+ * new ReportingParseRunner(parser.InputLine()).withMetricsSink(metrics).run(input);
+ * </pre>
+ */
+public class ParseRunnerMetrics implements ParseRunnerMetricsMBean, Sink<ParseRunMetrics> {
+    private long runCount;
+    private long failedRunCount;
+    private long totalDurationNanos;
+    private long maxDurationNanos;
+    private long totalInputLength;
+    private long invocations;
+    private long backtracks;
+    private long memoHits;
+    private long memoMisses;
+    private int maxValueStackHighWater;
+    private int maxDepth;
+    private long errorCount;
+    private long recoveryAttempts;
+
+    public synchronized void receive(ParseRunMetrics metrics) {
+        checkArgNotNull(metrics, "metrics");
+        runCount++;
+        if (!metrics.isMatched()) failedRunCount++;
+        totalDurationNanos += metrics.getDurationNanos();
+        maxDurationNanos = Math.max(maxDurationNanos, metrics.getDurationNanos());
+        if (metrics.getInputLength() > 0) totalInputLength += metrics.getInputLength();
+        invocations += metrics.getInvocations();
+        backtracks += metrics.getBacktracks();
+        memoHits += metrics.getMemoHits();
+        memoMisses += metrics.getMemoMisses();
+        maxValueStackHighWater = Math.max(maxValueStackHighWater, metrics.getValueStackHighWater());
+        maxDepth = Math.max(maxDepth, metrics.getMaxDepth());
+        errorCount += metrics.getErrorCount();
+        recoveryAttempts += metrics.getRecoveryAttempts();
+    }
+
+    /**
+     * Registers this instance with the platform MBeanServer under the object name
+     * "org.parboiled:type=ParseRunnerMetrics,name=&lt;name&gt;".
+     *
+     * @param name the value of the "name" key of the object name
+     * @return this instance
+     */
+    public ParseRunnerMetrics register(String name) {
+        return register(ManagementFactory.getPlatformMBeanServer(), getObjectName(name));
+    }
+
+    /**
+     * Registers this instance with the given MBeanServer under the given object name.
+     *
+     * @param server     the MBeanServer
+     * @param objectName the object name
+     * @return this instance
+     */
+    public ParseRunnerMetrics register(MBeanServer server, ObjectName objectName) {
+        checkArgNotNull(server, "server");
+        checkArgNotNull(objectName, "objectName");
+        try {
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not register ParseRunnerMetrics as '" + objectName + '\'', e);
+        }
+        return this;
+    }
+
+    /**
+     * Creates the object name used by {@link #register(String)}.
+     *
+     * @param name the value of the "name" key of the object name
+     * @return the object name
+     */
+    public static ObjectName getObjectName(String name) {
+        checkArgNotNull(name, "name");
+        try {
+            return new ObjectName("org.parboiled:type=ParseRunnerMetrics,name=" + ObjectName.quote(name));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Illegal ParseRunnerMetrics name '" + name + '\'', e);
+        }
+    }
+
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    public synchronized long getFailedRunCount() {
+        return failedRunCount;
+    }
+
+    public synchronized long getTotalDurationNanos() {
+        return totalDurationNanos;
+    }
+
+    public synchronized long getMaxDurationNanos() {
+        return maxDurationNanos;
+    }
+
+    public synchronized double getAverageDurationMillis() {
+        return runCount == 0 ? 0.0 : totalDurationNanos / 1000000.0 / runCount;
+    }
+
+    public synchronized long getTotalInputLength() {
+        return totalInputLength;
+    }
+
+    public synchronized long getInvocations() {
+        return invocations;
+    }
+
+    public synchronized long getBacktracks() {
+        return backtracks;
+    }
+
+    public synchronized long getMemoHits() {
+        return memoHits;
+    }
+
+    public synchronized long getMemoMisses() {
+        return memoMisses;
+    }
+
+    public synchronized int getMaxValueStackHighWater() {
+        return maxValueStackHighWater;
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public synchronized long getErrorCount() {
+        return errorCount;
+    }
+
+    public synchronized long getRecoveryAttempts() {
+        return recoveryAttempts;
+    }
+
+    public synchronized void reset() {
+        runCount = 0;
+        failedRunCount = 0;
+        totalDurationNanos = 0;
+        maxDurationNanos = 0;
+        totalInputLength = 0;
+        invocations = 0;
+        backtracks = 0;
+        memoHits = 0;
+        memoMisses = 0;
+        maxValueStackHighWater = 0;
+        maxDepth = 0;
+        errorCount = 0;
+        recoveryAttempts = 0;
+    }
+}
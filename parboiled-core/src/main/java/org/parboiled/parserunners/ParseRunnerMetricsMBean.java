@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+/**
+ * The JMX management interface of {@link ParseRunnerMetrics}.
+ */
+public interface ParseRunnerMetricsMBean {
+
+    long getRunCount();
+
+    long getFailedRunCount();
+
+    long getTotalDurationNanos();
+
+    long getMaxDurationNanos();
+
+    double getAverageDurationMillis();
+
+    long getTotalInputLength();
+
+    long getInvocations();
+
+    long getBacktracks();
+
+    long getMemoHits();
+
+    long getMemoMisses();
+
+    int getMaxValueStackHighWater();
+
+    int getMaxDepth();
+
+    long getErrorCount();
+
+    long getRecoveryAttempts();
+
+    /**
+     * Resets all aggregated values to zero.
+     */
+    void reset();
+}
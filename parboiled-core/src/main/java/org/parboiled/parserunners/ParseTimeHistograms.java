@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.parboiled.common.Sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>A {@link Sink} for {@link ParseRunMetrics} collecting the durations of parsing runs in
+ * {@link LatencyHistogram}s, one for each combination of root rule and input size class. Where the
+ * {@link ProfilingParseRunner} analyzes single runs rule by rule the collected histograms describe the latency
+ * distribution of a parsing service as a whole, e.g. for monitoring and alerting.</p>
+ * <p>Input size classes are defined by a list of ascending upper bounds (exclusive). The default bounds are
+ * 256, 4096, 65536 and 1048576 characters, which results in five size classes. Runs whose input length is not
+ * known (see {@link ParseRunMetrics#getInputLength()}) are collected in an additional size class of their own.</p>
+ * <p>One instance can be shared by any number of parse runners (also across threads), recording is lock-free:</p>
+ * <pre>
+ * ParseTimeHistograms histograms = new ParseTimeHistograms();
+ * new ReportingParseRunner(parser.InputLine()).withMetricsSink(histograms).run(input);
+ * ...
+ * System.out.println(histograms.snapshotAndReset().print());
+ * </pre>
+ */
+public class ParseTimeHistograms implements Sink<ParseRunMetrics> {
+    private static final int[] DEFAULT_BOUNDS = new int[] {256, 4096, 65536, 1048576};
+
+    private final int[] bounds;
+    private final ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> histograms =
+            new ConcurrentHashMap<String, AtomicReferenceArray<LatencyHistogram>>();
+
+    /**
+     * Creates a new instance with the default input size classes.
+     */
+    public ParseTimeHistograms() {
+        this(DEFAULT_BOUNDS);
+    }
+
+    /**
+     * Creates a new instance with the size classes defined by the given upper bounds.
+     *
+     * @param bounds the exclusive upper bounds of all but the last size class, in ascending order
+     */
+    public ParseTimeHistograms(int... bounds) {
+        checkArgNotNull(bounds, "bounds");
+        for (int i = 0; i < bounds.length; i++) {
+            checkArgument(bounds[i] > (i > 0 ? bounds[i - 1] : 0), "bounds must be positive and ascending");
+        }
+        this.bounds = bounds.clone();
+    }
+
+    public void receive(ParseRunMetrics metrics) {
+        checkArgNotNull(metrics, "metrics");
+        record(metrics.getRuleLabel(), metrics.getInputLength(), metrics.getDurationNanos());
+    }
+
+    /**
+     * Records the duration of a parsing run.
+     *
+     * @param rule        the label of the root rule
+     * @param inputLength the number of input characters or -1, if not known
+     * @param nanoTime    the duration of the run
+     */
+    public void record(String rule, int inputLength, long nanoTime) {
+        checkArgNotNull(rule, "rule");
+        AtomicReferenceArray<LatencyHistogram> sizeClasses = histograms.get(rule);
+        if (sizeClasses == null) {
+            sizeClasses = new AtomicReferenceArray<LatencyHistogram>(getSizeClassCount());
+            AtomicReferenceArray<LatencyHistogram> existing = histograms.putIfAbsent(rule, sizeClasses);
+            if (existing != null) sizeClasses = existing;
+        }
+        int sizeClass = getSizeClass(inputLength);
+        LatencyHistogram histogram = sizeClasses.get(sizeClass);
+        if (histogram == null) {
+            sizeClasses.compareAndSet(sizeClass, null, new LatencyHistogram());
+            histogram = sizeClasses.get(sizeClass);
+        }
+        histogram.record(nanoTime);
+    }
+
+    /**
+     * @param inputLength an input length or -1, if not known
+     * @return the index of the size class the given input length belongs to
+     */
+    public int getSizeClass(int inputLength) {
+        if (inputLength < 0) return bounds.length + 1;
+        int i = 0;
+        while (i < bounds.length && inputLength >= bounds[i]) i++;
+        return i;
+    }
+
+    /**
+     * @return the number of size classes, including the one for unknown input lengths
+     */
+    public int getSizeClassCount() {
+        return bounds.length + 2;
+    }
+
+    /**
+     * @param sizeClass the size class
+     * @return the smallest input length of the size class or -1 for the size class of unknown input lengths
+     */
+    public int getSizeClassMin(int sizeClass) {
+        return sizeClass == 0 ? 0 : sizeClass <= bounds.length ? bounds[sizeClass - 1] : -1;
+    }
+
+    /**
+     * @param sizeClass the size class
+     * @return the largest input length of the size class or -1 for the unbounded and the unknown size classes
+     */
+    public int getSizeClassMax(int sizeClass) {
+        return sizeClass < bounds.length ? bounds[sizeClass] - 1 : -1;
+    }
+
+    /**
+     * @return an immutable copy of all histograms
+     */
+    public Snapshot snapshot() {
+        return createSnapshot(false);
+    }
+
+    /**
+     * Returns an immutable copy of all histograms and resets them.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshotAndReset() {
+        return createSnapshot(true);
+    }
+
+    public void reset() {
+        createSnapshot(true);
+    }
+
+    private Snapshot createSnapshot(boolean reset) {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Map.Entry<String, AtomicReferenceArray<LatencyHistogram>> mapEntry : histograms.entrySet()) {
+            AtomicReferenceArray<LatencyHistogram> sizeClasses = mapEntry.getValue();
+            for (int i = 0; i < sizeClasses.length(); i++) {
+                LatencyHistogram histogram = sizeClasses.get(i);
+                if (histogram == null) continue;
+                LatencyHistogram.Snapshot snapshot = reset ? histogram.snapshotAndReset() : histogram.snapshot();
+                if (snapshot.getCount() > 0) {
+                    entries.add(new Entry(mapEntry.getKey(), getSizeClassMin(i), getSizeClassMax(i), snapshot));
+                }
+            }
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                int c = a.rule.compareTo(b.rule);
+                // the size class of unknown input lengths (with a minLength of -1) goes last
+                return c != 0 ? c : (a.minLength < 0 ? Integer.MAX_VALUE : a.minLength) -
+                        (b.minLength < 0 ? Integer.MAX_VALUE : b.minLength);
+            }
+        });
+        return new Snapshot(entries);
+    }
+
+    /**
+     * The latency histogram of one root rule and input size class.
+     */
+    public static class Entry {
+        public final String rule;
+        public final int minLength; // -1 for the size class of unknown input lengths
+        public final int maxLength; // -1 for the last, unbounded size class and the one of unknown input lengths
+        public final LatencyHistogram.Snapshot histogram;
+
+        public Entry(String rule, int minLength, int maxLength, LatencyHistogram.Snapshot histogram) {
+            this.rule = rule;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.histogram = histogram;
+        }
+
+        public String getSizeClass() {
+            return minLength < 0 ? "unknown" : maxLength >= 0 ? minLength + "-" + maxLength : minLength + "+";
+        }
+    }
+
+    /**
+     * An immutable copy of all (non-empty) histograms, sorted by rule and input size class.
+     */
+    public static class Snapshot {
+        public final List<Entry> entries;
+
+        public Snapshot(List<Entry> entries) {
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * @return a text table of all histograms with the durations given in microseconds
+         */
+        public String print() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-30s %-16s %10s %10s %10s %10s %10s %10s %10s %10s\n", "Rule", "Input size",
+                    "Count", "Min us", "p50 us", "p90 us", "p99 us", "p99.9 us", "Max us", "Mean us"));
+            for (Entry entry : entries) {
+                LatencyHistogram.Snapshot h = entry.histogram;
+                sb.append(String.format("%-30s %-16s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f\n",
+                        entry.rule, entry.getSizeClass(), h.getCount(), h.getMin() / 1000.0,
+                        h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                        h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                        h.getMax() / 1000.0, h.getMean() / 1000.0));
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return a JSON representation of all histograms with the durations given in nanoseconds, the size class of
+         *         unknown input lengths has neither a minLength nor a maxLength
+         */
+        public String toJson() {
+            StringBuilder sb = new StringBuilder("{\"histograms\":[");
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                LatencyHistogram.Snapshot h = entry.histogram;
+                if (i > 0) sb.append(',');
+                sb.append("{\"rule\":");
+                appendJsonString(sb, entry.rule);
+                if (entry.minLength >= 0) sb.append(",\"minLength\":").append(entry.minLength);
+                if (entry.maxLength >= 0) sb.append(",\"maxLength\":").append(entry.maxLength);
+                sb.append(",\"count\":").append(h.getCount());
+                sb.append(",\"min\":").append(h.getMin());
+                sb.append(",\"p50\":").append(h.getValueAtPercentile(50));
+                sb.append(",\"p90\":").append(h.getValueAtPercentile(90));
+                sb.append(",\"p99\":").append(h.getValueAtPercentile(99));
+                sb.append(",\"p999\":").append(h.getValueAtPercentile(99.9));
+                sb.append(",\"max\":").append(h.getMax());
+                sb.append(",\"mean\":").append(Math.round(h.getMean()));
+                sb.append('}');
+            }
+            return sb.append("]}").toString();
+        }
+
+        private static void appendJsonString(StringBuilder sb, String string) {
+            sb.append('"');
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    default:
+                        if (c < ' ') sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+
+        @Override
+        public String toString() {
+            return print();
+        }
+    }
+}
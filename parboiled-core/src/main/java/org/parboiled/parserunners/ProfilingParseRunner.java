@@ -20,22 +20,30 @@ import org.parboiled.MatchHandler;
 import org.parboiled.MatcherContext;
 import org.parboiled.Rule;
 import org.parboiled.buffers.InputBuffer;
+import org.parboiled.common.Formatter;
 import org.parboiled.common.Predicate;
-import org.parboiled.common.StringUtils;
 import org.parboiled.matchers.Matcher;
 import org.parboiled.matchervisitors.DoWithMatcherVisitor;
+import org.parboiled.support.AllocationTracker;
+import org.parboiled.support.DefaultValueStack;
 import org.parboiled.support.ParsingResult;
+import org.parboiled.support.ValueStack;
 
 import java.text.DecimalFormat;
 import java.util.*;
 
 import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.parserunners.ProfilingReportPrinter.*;
 import static org.parboiled.common.Utils.humanize;
 
 /**
  * <p>The ProfilingParseRunner is a special {@link ParseRunner} implementation that "watches" a parser digest a number
  * of inputs and collects all sorts of statistical data on the what rules have matched how many times, the number
  * of reincovations of rules at identical input locations, and so on.</p>
+ * <p>Additionally the runner attributes the objects allocated by the parsing engine (parse tree nodes, value stack
+ * elements, {@link org.parboiled.support.MatcherPath}s and match strings) to the rules causing them, since with
+ * larger inputs the resulting GC pressure often costs more than the matching itself. Value stack allocations are
+ * only tracked for {@link DefaultValueStack} instances.</p>
  * <p>The ProfilingParseRunner is typically used during parser debugging and optimization, not in production.</p>
  *
  * @param <V>
@@ -50,6 +58,36 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
     private int totalRemismatches;
     private long totalNanoTime;
     private long timeCorrection;
+    private RuleStats currentRuleStats;
+    private final Allocations totalAllocations = new Allocations();
+
+    private final AllocationTracker allocationTracker = new AllocationTracker() {
+        public void nodeCreated(int listCells) {
+            if (currentRuleStats != null) {
+                currentRuleStats.allocations.nodes++;
+                currentRuleStats.allocations.nodeListCells += listCells;
+            }
+        }
+
+        public void valueStackElementsCreated(int count) {
+            if (currentRuleStats != null) {
+                currentRuleStats.allocations.valueStackElements += count;
+            }
+        }
+
+        public void matcherPathCreated() {
+            if (currentRuleStats != null) {
+                currentRuleStats.allocations.matcherPaths++;
+            }
+        }
+
+        public void stringCreated(int length) {
+            if (currentRuleStats != null) {
+                currentRuleStats.allocations.strings++;
+                currentRuleStats.allocations.stringBytes += Allocations.estimateStringSize(length);
+            }
+        }
+    };
 
     private final DoWithMatcherVisitor.Action updateStatsAction = new DoWithMatcherVisitor.Action() {
         public void process(Matcher matcher) {
@@ -73,6 +111,8 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             }
             ruleReport.update(ruleStats.matches, ruleStats.matchSubs, ruleStats.mismatches, ruleStats.mismatchSubs,
                     rematches, ruleStats.rematchSubs, remismatches, ruleStats.remismatchSubs, ruleStats.nanoTime);
+            ruleReport.getAllocations().add(ruleStats.allocations);
+            totalAllocations.add(ruleStats.allocations);
         }
     };
 
@@ -89,6 +129,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         checkArgNotNull(inputBuffer, "inputBuffer");
         resetValueStack();
         totalRuns++;
+        startRun(inputBuffer);
 
         MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
         rootContext.getMatcher().accept(new DoWithMatcherVisitor(new DoWithMatcherVisitor.Action() {
@@ -103,18 +144,32 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             }
         }));
 
+        rootContext.setAllocationTracker(allocationTracker);
+        ValueStack<V> valueStack = getValueStack();
+        if (valueStack instanceof DefaultValueStack) {
+            ((DefaultValueStack<V>) valueStack).setAllocationTracker(allocationTracker);
+        }
+
         runMatches = 0;
+        currentRuleStats = null;
+        boolean matched;
         long timeStamp = System.nanoTime() - timeCorrection;
-        boolean matched = rootContext.runMatcher();
+        try {
+            matched = rootContext.runMatcher();
+        } finally {
+            if (valueStack instanceof DefaultValueStack) {
+                ((DefaultValueStack<V>) valueStack).setAllocationTracker(null);
+            }
+        }
         totalNanoTime += System.nanoTime() - timeCorrection - timeStamp;
 
         getRootMatcher().accept(new DoWithMatcherVisitor(updateStatsAction));
-        return createParsingResult(matched, rootContext);
+        return finishRun(createParsingResult(matched, rootContext));
     }
 
     public Report getReport() {
         return new Report(totalRuns, totalMatches, totalMismatches, totalRematches, totalRemismatches,
-                totalNanoTime, new ArrayList<RuleReport>(ruleReports.values()));
+                totalNanoTime, new Allocations(totalAllocations), new ArrayList<RuleReport>(ruleReports.values()));
     }
 
     public boolean match(MatcherContext<?> context) {
@@ -128,6 +183,8 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         int rematchSubs = ruleStats.rematchSubs;
         int mismatchSubs = ruleStats.mismatchSubs;
         int remismatchSubs = ruleStats.remismatchSubs;
+        RuleStats parentRuleStats = currentRuleStats;
+        currentRuleStats = ruleStats;
 
         long time = System.nanoTime();
         timeCorrection += time - timeStamp;
@@ -139,6 +196,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         ruleStats.nanoTime += time - timeCorrection - timeStamp;
         timeStamp = time;
 
+        currentRuleStats = parentRuleStats;
         subMatches += runMatches;
 
         Integer posMatches = ruleStats.positionMatches.get(pos);
@@ -178,6 +236,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         private int rematchSubs;
         private int remismatchSubs;
         private long nanoTime;
+        private final Allocations allocations = new Allocations();
 
         // map Index -> matches at that position
         // no entry for a position means that the rule was never tried for that position
@@ -195,6 +254,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             rematchSubs = 0;
             remismatchSubs = 0;
             nanoTime = 0;
+            allocations.clear();
             positionMatches.clear();
         }
     }
@@ -224,10 +284,17 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public final int remismatches;
         public final double reinvocationShare;
         public final long totalNanoTime;
+        public final Allocations totalAllocations;
         public final List<RuleReport> ruleReports;
 
         public Report(int totalRuns, int totalMatches, int totalMismatches, int rematches, int remismatches,
                       long totalNanoTime, List<RuleReport> ruleReports) {
+            this(totalRuns, totalMatches, totalMismatches, rematches, remismatches, totalNanoTime, new Allocations(),
+                    ruleReports);
+        }
+
+        public Report(int totalRuns, int totalMatches, int totalMismatches, int rematches, int remismatches,
+                      long totalNanoTime, Allocations totalAllocations, List<RuleReport> ruleReports) {
             this.totalRuns = totalRuns;
             this.totalInvocations = totalMatches + totalMismatches;
             this.totalMatches = totalMatches;
@@ -238,6 +305,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             this.remismatches = remismatches;
             this.reinvocationShare = ((double) reinvocations) / totalInvocations;
             this.totalNanoTime = totalNanoTime;
+            this.totalAllocations = checkArgNotNull(totalAllocations, "totalAllocations");
             this.ruleReports = ruleReports;
         }
 
@@ -246,6 +314,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             sb.append("Profiling Report\n");
             sb.append("----------------\n");
             sb.append(printBasics());
+            sb.append(printAllocations());
             sb.append("\n");
             sb.append("Top 20 named rules by invocations:\n");
             sb.append(sortByInvocations().printTopRules(20, namedRules));
@@ -264,6 +333,9 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             sb.append("\n");
             sb.append("Top 20 named rules by re-sub-mismatches:\n");
             sb.append(sortByResubmismatches().printTopRules(20, namedRules));
+            sb.append("\n");
+            sb.append("Top 20 rules by allocations:\n");
+            sb.append(sortByAllocations().printTopAllocatingRules(20, allRules));
             return sb.toString();
         }
 
@@ -283,43 +355,61 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             return sb.toString();
         }
 
-        public String printTopRules(int count, Predicate<RuleReport> filter) {
-            checkArgNotNull(filter, "filter");
+        public String printAllocations() {
             StringBuilder sb = new StringBuilder();
-            sb.append(
-                    "Rule                           | Net-Time  |   Invocations   |     Matches     |   Mismatches    |   Time/Invoc.   | Match % |    Re-Invocs    |   Re-Matches    |   Re-Mismatch   |     Re-Invoc %    \n");
-            sb.append(
-                    "-------------------------------|-----------|-----------------|-----------------|-----------------|-----------------|---------|-----------------|-----------------|-----------------|-------------------\n");
-            for (int i = 0; i < Math.min(ruleReports.size(), count); i++) {
-                RuleReport rep = ruleReports.get(i);
-                if (!filter.apply(rep)) {
-                    count++;
-                    continue;
-                }
-                sb.append(String.format(
-                        "%-30s | %6.0f ms | %6s / %6s | %6s / %6s | %6s / %6s | %,12.0f ns | %6.2f%% | %6s / %6s | %6s / %6s | %6s / %6s | %6.2f%% / %6.2f%%\n",
-                        StringUtils.left(
-                                rep.getMatcher().toString() + ": " + rep.getMatcher().getClass().getSimpleName()
-                                        .replace("Matcher", ""), 30),
-                        rep.getNanoTime() / 1000000.0,
-                        humanize(rep.getInvocations()), humanize(rep.getInvocationSubs()),
-                        humanize(rep.getMatches()), humanize(rep.getMatchSubs()),
-                        humanize(rep.getMismatches()), humanize(rep.getMismatchSubs()),
-                        rep.getNanoTime() / (double) rep.getInvocations(),
-                        rep.getMatchShare() * 100,
-                        humanize(rep.getReinvocations()), humanize(rep.getReinvocationSubs()),
-                        humanize(rep.getRematches()), humanize(rep.getRematchSubs()),
-                        humanize(rep.getRemismatches()), humanize(rep.getRemismatchSubs()),
-                        rep.getReinvocationShare() * 100, rep.getReinvocationShare2() * 100
-                ));
-            }
+            sb.append(String.format("Est. allocated bytes     : %,15d\n", totalAllocations.getEstimatedBytes()));
+            sb.append(String.format("Parse tree nodes         : %,15d\n", totalAllocations.getNodes()));
+            sb.append(String.format("Node list cells          : %,15d\n", totalAllocations.getNodeListCells()));
+            sb.append(String.format("Value stack elements     : %,15d\n", totalAllocations.getValueStackElements()));
+            sb.append(String.format("Matcher paths            : %,15d\n", totalAllocations.getMatcherPaths()));
+            sb.append(String.format("Match strings            : %,15d\n", totalAllocations.getStrings()));
             return sb.toString();
         }
 
+        public String printTopAllocatingRules(int count, Predicate<RuleReport> filter) {
+            return printTable(ruleReports, count, filter,
+                    "Rule                           |   Est. Bytes    |  Bytes/Invoc.   |     Nodes     |  List Cells   |  VS Elements  | Matcher Paths |    Strings    ",
+                    new Formatter<RuleReport>() {
+                        public String format(RuleReport rep) {
+                            Allocations allocs = rep.getAllocations();
+                            return String.format("%s | %,15d | %,15.1f | %13s | %13s | %13s | %13s | %13s",
+                                    printRule(rep.getMatcher()),
+                                    allocs.getEstimatedBytes(),
+                                    rep.getInvocations() > 0 ?
+                                            allocs.getEstimatedBytes() / (double) rep.getInvocations() : 0.0,
+                                    humanize(allocs.getNodes()), humanize(allocs.getNodeListCells()),
+                                    humanize(allocs.getValueStackElements()), humanize(allocs.getMatcherPaths()),
+                                    humanize(allocs.getStrings()));
+                        }
+                    });
+        }
+
+        public String printTopRules(int count, Predicate<RuleReport> filter) {
+            return printTable(ruleReports, count, filter,
+                    "Rule                           | Net-Time  |   Invocations   |     Matches     |   Mismatches    |   Time/Invoc.   | Match % |    Re-Invocs    |   Re-Matches    |   Re-Mismatch   |     Re-Invoc %    ",
+                    new Formatter<RuleReport>() {
+                        public String format(RuleReport rep) {
+                            return String.format(
+                                    "%s | %6.0f ms | %6s / %6s | %6s / %6s | %6s / %6s | %,12.0f ns | %6.2f%% | %6s / %6s | %6s / %6s | %6s / %6s | %6.2f%% / %6.2f%%",
+                                    printRule(rep.getMatcher()),
+                                    rep.getNanoTime() / 1000000.0,
+                                    humanize(rep.getInvocations()), humanize(rep.getInvocationSubs()),
+                                    humanize(rep.getMatches()), humanize(rep.getMatchSubs()),
+                                    humanize(rep.getMismatches()), humanize(rep.getMismatchSubs()),
+                                    rep.getNanoTime() / (double) rep.getInvocations(),
+                                    rep.getMatchShare() * 100,
+                                    humanize(rep.getReinvocations()), humanize(rep.getReinvocationSubs()),
+                                    humanize(rep.getRematches()), humanize(rep.getRematchSubs()),
+                                    humanize(rep.getRemismatches()), humanize(rep.getRemismatchSubs()),
+                                    rep.getReinvocationShare() * 100, rep.getReinvocationShare2() * 100);
+                        }
+                    });
+        }
+
         public Report sortByInvocations() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return intCompare(a.getInvocations(), b.getInvocations());
+                    return descending(a.getInvocations(), b.getInvocations());
                 }
             });
             return this;
@@ -328,7 +418,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortBySubInvocations() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return intCompare(a.getInvocationSubs(), b.getInvocationSubs());
+                    return descending(a.getInvocationSubs(), b.getInvocationSubs());
                 }
             });
             return this;
@@ -337,7 +427,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByTime() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return longCompare(a.getNanoTime(), b.getNanoTime());
+                    return descending(a.getNanoTime(), b.getNanoTime());
                 }
             });
             return this;
@@ -346,7 +436,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByTimePerInvocation() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return doubleCompare(a.getNanoTime() / (double) a.getInvocations(),
+                    return descending(a.getNanoTime() / (double) a.getInvocations(),
                             b.getNanoTime() / (double) b.getInvocations());
                 }
             });
@@ -356,7 +446,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByMatches() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return intCompare(a.getMatches(), b.getMatches());
+                    return descending(a.getMatches(), b.getMatches());
                 }
             });
             return this;
@@ -365,7 +455,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByMismatches() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return intCompare(a.getMismatches(), b.getMismatches());
+                    return descending(a.getMismatches(), b.getMismatches());
                 }
             });
             return this;
@@ -374,7 +464,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByReinvocations() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return intCompare(a.getReinvocations(), b.getReinvocations());
+                    return descending(a.getReinvocations(), b.getReinvocations());
                 }
             });
             return this;
@@ -383,7 +473,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByResubinvocations() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return doubleCompare(a.getReinvocationSubs(), b.getReinvocationSubs());
+                    return descending(a.getReinvocationSubs(), b.getReinvocationSubs());
                 }
             });
             return this;
@@ -392,7 +482,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByRematches() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return intCompare(a.getRematches(), b.getRematches());
+                    return descending(a.getRematches(), b.getRematches());
                 }
             });
             return this;
@@ -401,7 +491,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByRemismatches() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return intCompare(a.getRemismatches(), b.getRemismatches());
+                    return descending(a.getRemismatches(), b.getRemismatches());
                 }
             });
             return this;
@@ -410,22 +500,19 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         public Report sortByResubmismatches() {
             Collections.sort(ruleReports, new Comparator<RuleReport>() {
                 public int compare(RuleReport a, RuleReport b) {
-                    return doubleCompare(a.getRemismatchSubs(), b.getRemismatchSubs());
+                    return descending(a.getRemismatchSubs(), b.getRemismatchSubs());
                 }
             });
             return this;
         }
 
-        private int intCompare(int a, int b) {
-            return a < b ? 1 : a > b ? -1 : 0;
-        }
-
-        private int longCompare(long a, long b) {
-            return a < b ? 1 : a > b ? -1 : 0;
-        }
-
-        private int doubleCompare(double a, double b) {
-            return a < b ? 1 : a > b ? -1 : 0;
+        public Report sortByAllocations() {
+            Collections.sort(ruleReports, new Comparator<RuleReport>() {
+                public int compare(RuleReport a, RuleReport b) {
+                    return descending(a.getAllocations().getEstimatedBytes(), b.getAllocations().getEstimatedBytes());
+                }
+            });
+            return this;
         }
     }
 
@@ -440,6 +527,7 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
         private int remismatches;
         private int remismatchSubs;
         private long nanoTime;
+        private final Allocations allocations = new Allocations();
 
         public RuleReport(Matcher matcher) {
             this.matcher = matcher;
@@ -481,6 +569,8 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
 
         public long getNanoTime() { return nanoTime; }
 
+        public Allocations getAllocations() { return allocations; }
+
         public void update(int matchesDelta, int matchSubsDelta,
                            int mismatchesDelta, int mismatchSubsDelta,
                            int rematchesDelta, int rematchSubsDelta,
@@ -497,4 +587,83 @@ public class ProfilingParseRunner<V> extends AbstractParseRunner<V> implements M
             nanoTime += nanoTimeDelta;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The objects allocated by the parsing engine on behalf of a rule (or all rules).
+     * Since the JVM does not offer a portable way to determine object sizes the byte counts are estimates for a
+     * 64-bit JVM with compressed object references.
+     */
+    public static class Allocations {
+        public static final int NODE_SIZE = 40;
+        public static final int NODE_LIST_CELL_SIZE = 24;
+        public static final int VALUE_STACK_ELEMENT_SIZE = 24;
+        public static final int MATCHER_PATH_SIZE = 48; // the MatcherPath and its Element
+
+        private long nodes;
+        private long nodeListCells;
+        private long valueStackElements;
+        private long matcherPaths;
+        private long strings;
+        private long stringBytes;
+
+        public Allocations() {
+        }
+
+        public Allocations(Allocations other) {
+            add(other);
+        }
+
+        public long getNodes() { return nodes; }
+
+        public long getNodeListCells() { return nodeListCells; }
+
+        public long getValueStackElements() { return valueStackElements; }
+
+        public long getMatcherPaths() { return matcherPaths; }
+
+        public long getStrings() { return strings; }
+
+        public long getObjects() {
+            return nodes + nodeListCells + valueStackElements + 2 * matcherPaths + 2 * strings;
+        }
+
+        public long getEstimatedBytes() {
+            return nodes * NODE_SIZE + nodeListCells * NODE_LIST_CELL_SIZE +
+                    valueStackElements * VALUE_STACK_ELEMENT_SIZE + matcherPaths * MATCHER_PATH_SIZE + stringBytes;
+        }
+
+        public void add(Allocations other) {
+            checkArgNotNull(other, "other");
+            nodes += other.nodes;
+            nodeListCells += other.nodeListCells;
+            valueStackElements += other.valueStackElements;
+            matcherPaths += other.matcherPaths;
+            strings += other.strings;
+            stringBytes += other.stringBytes;
+        }
+
+        private void clear() {
+            nodes = 0;
+            nodeListCells = 0;
+            valueStackElements = 0;
+            matcherPaths = 0;
+            strings = 0;
+            stringBytes = 0;
+        }
+
+        /**
+         * @param length the number of characters
+         * @return the estimated size of a string with the given length, including its character array
+         */
+        public static long estimateStringSize(int length) {
+            return 24 + ((16 + 2L * length + 7) & ~7L);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d bytes (%d nodes, %d node list cells, %d value stack elements, " +
+                    "%d matcher paths, %d strings)", getEstimatedBytes(), nodes, nodeListCells, valueStackElements,
+                    matcherPaths, strings);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.common.Formatter;
+import org.parboiled.common.Predicate;
+import org.parboiled.common.StringUtils;
+import org.parboiled.matchers.Matcher;
+
+import java.util.List;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * The table printing logic shared by the reports of the {@link ProfilingParseRunner} and the
+ * {@link SamplingProfilingParseRunner}.
+ */
+final class ProfilingReportPrinter {
+
+    private ProfilingReportPrinter() {}
+
+    /**
+     * Prints a table with one row per rule report. The separator line below the header is derived from the header.
+     *
+     * @param ruleReports  the rule reports in the order they are to be printed in
+     * @param count        the maximum number of rows to print
+     * @param filter       the filter selecting the rule reports to print
+     * @param header       the header line, columns separated by '|'
+     * @param rowFormatter the formatter creating a row for a rule report
+     * @return the table
+     */
+    static <R> String printTable(List<R> ruleReports, int count, Predicate<R> filter, String header,
+                                 Formatter<R> rowFormatter) {
+        checkArgNotNull(filter, "filter");
+        StringBuilder sb = new StringBuilder();
+        sb.append(header).append('\n');
+        for (int i = 0; i < header.length(); i++) {
+            sb.append(header.charAt(i) == '|' ? '|' : '-');
+        }
+        sb.append('\n');
+        for (int i = 0; i < Math.min(ruleReports.size(), count); i++) {
+            R rep = ruleReports.get(i);
+            if (!filter.apply(rep)) {
+                count++;
+                continue;
+            }
+            sb.append(rowFormatter.format(rep)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param matcher the matcher
+     * @return the label of the matcher followed by its type, padded or truncated to fit the first table column
+     */
+    static String printRule(Matcher matcher) {
+        return String.format("%-30s", StringUtils.left(
+                matcher.toString() + ": " + matcher.getClass().getSimpleName().replace("Matcher", ""), 30));
+    }
+
+    /**
+     * Compares two sort keys for sorting rule reports in descending order.
+     */
+    static int descending(long a, long b) {
+        return a < b ? 1 : a > b ? -1 : 0;
+    }
+
+    /**
+     * Compares two sort keys for sorting rule reports in descending order.
+     */
+    static int descending(double a, double b) {
+        return a < b ? 1 : a > b ? -1 : 0;
+    }
+}
@@ -28,7 +28,10 @@ import org.parboiled.errors.InvalidInputError;
 import org.parboiled.matchers.*;
 import org.parboiled.matchervisitors.*;
 import org.parboiled.support.Checks;
+import org.parboiled.support.CompactMatcherPath;
 import org.parboiled.support.MatcherPath;
+import org.parboiled.support.ParsingEventListener;
+import org.parboiled.support.ParsingEventListener.RecoveryPhase;
 import org.parboiled.support.ParsingResult;
 
 import java.util.ArrayList;
@@ -36,6 +39,7 @@ import java.util.List;
 
 import static org.parboiled.common.Preconditions.checkArgNotNull;
 import static org.parboiled.common.Preconditions.checkState;
+import static org.parboiled.matchers.MatcherUtils.isTerminalCustomMatcher;
 import static org.parboiled.matchers.MatcherUtils.unwrap;
 import static org.parboiled.support.Chars.*;
 
@@ -117,9 +121,11 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
         checkArgNotNull(inputBuffer, "inputBuffer");
         startTimeStamp = System.currentTimeMillis();
         resetValueStack();
+        startRun(inputBuffer);
 
         // first, run a basic match
         ParseRunner<V> basicRunner = new BasicParseRunner<V>(getRootMatcher())
+                .withMetrics(getMetrics())
                 .withParseErrors(getParseErrors())
                 .withValueStack(getValueStack());
         lastParsingResult = basicRunner.run(inputBuffer);
@@ -129,32 +135,54 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
             rootMatcherWithoutPTB = (Matcher) getRootMatcher().suppressNode();
 
             // locate first error
+            long phaseStart = getEventListener() != null ? System.nanoTime() : 0L;
             performLocatingRun(inputBuffer);
             checkState(errorIndex >= 0); // we failed before so we must fail again
+            phaseStart = phaseFinished(RecoveryPhase.LOCATING, errorIndex, phaseStart);
 
             // in order to be able to apply fixes we need to wrap the input buffer with a mutability wrapper
             buffer = new MutableInputBuffer(inputBuffer);
 
             // report first error
             performReportingRun();
+            phaseStart = phaseFinished(RecoveryPhase.REPORTING, errorIndex, phaseStart);
 
             // fix and report until done
-            while (!fixError(errorIndex)) {
+            while (true) {
+                int fixIndex = errorIndex;
+                boolean done = fixError(fixIndex);
+                phaseStart = phaseFinished(RecoveryPhase.FIXING, fixIndex, phaseStart);
+                if (done) break;
                 performReportingRun();
+                phaseStart = phaseFinished(RecoveryPhase.REPORTING, errorIndex, phaseStart);
             }
 
             // rerun once more with parse tree building enabled to create a parse tree for the fixed input
             if (!getRootMatcher().isNodeSuppressed()) {
                 performFinalRun();
                 checkState(lastParsingResult.matched);
+                phaseFinished(RecoveryPhase.FINAL_RUN, -1, phaseStart);
             }
         }
-        return lastParsingResult;
+        return finishRun(lastParsingResult);
+    }
+
+    // signals the end of a recovery phase to the ParsingEventListener, if any, and returns the start of the next one
+    private long phaseFinished(RecoveryPhase phase, int errorIndex, long phaseStart) {
+        ParsingEventListener listener = getEventListener();
+        if (listener == null) return 0L;
+        long now = System.nanoTime();
+        listener.recoveryPhaseFinished(this, phase, errorIndex, now - phaseStart);
+        return System.nanoTime();
     }
 
     private boolean performLocatingRun(InputBuffer inputBuffer) {
         resetValueStack();
+        if (getMetrics() != null && inputBuffer == buffer) {
+            getMetrics().recoveryAttempts++; // we are trying out a fix
+        }
         ParseRunner<V> locatingRunner = new ErrorLocatingParseRunner<V>(rootMatcherWithoutPTB, getInnerHandler())
+                .withMetrics(getMetrics())
                 .withParseErrors(getParseErrors())
                 .withValueStack(getValueStack());
         lastParsingResult = locatingRunner.run(inputBuffer);
@@ -167,6 +195,7 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
         resetValueStack();
         ParseRunner<V> reportingRunner = new ErrorReportingParseRunner<V>(rootMatcherWithoutPTB, errorIndex,
                 getInnerHandler())
+                .withMetrics(getMetrics())
                 .withParseErrors(getParseErrors())
                 .withValueStack(getValueStack());
         ParsingResult<V> result = reportingRunner.run(buffer);
@@ -297,15 +326,15 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
     private class Handler implements MatchHandler {
         private final IsSingleCharMatcherVisitor isSingleCharMatcherVisitor = new IsSingleCharMatcherVisitor();
         private int fringeIndex;
-        private MatcherPath lastMatchPath;
+        private CompactMatcherPath lastMatchPath;
 
         public boolean match(MatcherContext<?> context) {
             Matcher matcher = context.getMatcher();
-            if (matcher.accept(isSingleCharMatcherVisitor)) {
+            if (matcher.accept(isSingleCharMatcherVisitor) || isTerminalCustomMatcher(matcher)) {
                 if (prepareErrorLocation(context) && matcher.match(context)) {
                     if (fringeIndex < context.getCurrentIndex()) {
                         fringeIndex = context.getCurrentIndex();
-                        lastMatchPath = context.getPath();
+                        lastMatchPath = CompactMatcherPath.capture(context);
                     }
                     return true;
                 }
@@ -336,7 +365,8 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
         }
 
         private boolean qualifiesForResync(MatcherContext context) {
-            if (context.getCurrentIndex() == context.getStartIndex() || !context.getPath().isPrefixOf(lastMatchPath)) {
+            if (context.getCurrentIndex() == context.getStartIndex() || lastMatchPath == null ||
+                    !lastMatchPath.startsWith(context)) {
                 // if we have a sequence that hasn't match anything yet or is not a prefix we might still have to
                 // resync on it if there is no other sequence parent anymore
                 MatcherContext parent = context.getParent();
@@ -515,7 +545,7 @@ public class RecoveringParseRunner<V> extends AbstractParseRunner<V> {
 
         @Override
         public List<ActionMatcher> visit(OneOrMoreMatcher matcher) {
-            return matcher.subMatcher.accept(this);
+            return matcher.getChildren().get(0).accept(this);
         }
 
         @Override
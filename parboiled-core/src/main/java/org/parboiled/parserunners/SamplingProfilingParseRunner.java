@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.parserunners;
+
+import org.parboiled.MatchHandler;
+import org.parboiled.MatcherContext;
+import org.parboiled.Rule;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.common.Formatter;
+import org.parboiled.common.Predicate;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.support.MatcherIds;
+import org.parboiled.support.ParsingResult;
+
+import java.util.*;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+import static org.parboiled.common.Utils.copyOf;
+import static org.parboiled.common.Utils.humanize;
+import static org.parboiled.parserunners.ProfilingReportPrinter.*;
+
+/**
+ * <p>A low-overhead alternative to the {@link ProfilingParseRunner}, suitable for being left switched on in
+ * production.</p>
+ * <p>Per-rule counters are kept in flat arrays indexed by matcher id (see {@link MatcherIds}), re-invocations of rules
+ * at identical input locations are detected with a bounded hash set of (rule, location) pairs and only every n-th rule
+ * invocation is timed. The per-run counters are merged into a {@link Profile}, which can be shared by any number of
+ * SamplingProfilingParseRunners, also across threads, and aggregates the data of all their runs.</p>
+ * <p>Note that, in contrast to the {@link ProfilingParseRunner}, the timing figures are gross figures, i.e. the time
+ * spent in a rule includes the time spent in its sub rules, and they are estimated from the sampled invocations.</p>
+ *
+ * @param <V>
+ */
+public class SamplingProfilingParseRunner<V> extends AbstractParseRunner<V> implements MatchHandler {
+    private final Profile profile;
+    private final MatcherIds matcherIds;
+    private final int sampleMask;
+    private int sampleCounter;
+
+    // per run counters, indexed by matcher id
+    private int[] matches = new int[0];
+    private int[] mismatches = new int[0];
+    private int[] rematches = new int[0];
+    private int[] remismatches = new int[0];
+    private int[] samples = new int[0];
+    private long[] sampledNanoTime = new long[0];
+    private final InvocationSet invocations = new InvocationSet(1 << 15);
+
+    /**
+     * Creates a new SamplingProfilingParseRunner instance for the given rule, which times every 64th rule
+     * invocation and collects its data in a new {@link Profile}.
+     *
+     * @param rule the parser rule
+     */
+    public SamplingProfilingParseRunner(Rule rule) {
+        this(rule, new Profile(rule), 64);
+    }
+
+    /**
+     * Creates a new SamplingProfilingParseRunner instance for the given rule.
+     *
+     * @param rule           the parser rule
+     * @param profile        the profile to collect the data in, must have been created for the same root rule
+     * @param samplingPeriod the number of rule invocations per timed invocation, must be a power of two
+     */
+    public SamplingProfilingParseRunner(Rule rule, Profile profile, int samplingPeriod) {
+        super(rule);
+        this.profile = checkArgNotNull(profile, "profile");
+        checkArgument(samplingPeriod > 0 && (samplingPeriod & (samplingPeriod - 1)) == 0,
+                "samplingPeriod must be a positive power of two");
+        this.matcherIds = profile.matcherIds;
+        this.sampleMask = samplingPeriod - 1;
+    }
+
+    public Profile getProfile() {
+        return profile;
+    }
+
+    public ParsingResult<V> run(InputBuffer inputBuffer) {
+        checkArgNotNull(inputBuffer, "inputBuffer");
+        resetValueStack();
+        prepareRun();
+        startRun(inputBuffer);
+
+        MatcherContext<V> rootContext = createRootContext(inputBuffer, this, true);
+        long timeStamp = System.nanoTime();
+        boolean matched = rootContext.runMatcher();
+        long nanoTime = System.nanoTime() - timeStamp;
+
+        profile.merge(this, nanoTime);
+        return finishRun(createParsingResult(matched, rootContext));
+    }
+
+    private void prepareRun() {
+        int ruleCount = matcherIds.size();
+        if (matches.length < ruleCount) {
+            grow(ruleCount);
+        } else {
+            Arrays.fill(matches, 0);
+            Arrays.fill(mismatches, 0);
+            Arrays.fill(rematches, 0);
+            Arrays.fill(remismatches, 0);
+            Arrays.fill(samples, 0);
+            Arrays.fill(sampledNanoTime, 0);
+        }
+        invocations.clear();
+    }
+
+    private void grow(int size) {
+        size = Math.max(size, matches.length * 2);
+        matches = new int[size];
+        mismatches = new int[size];
+        rematches = new int[size];
+        remismatches = new int[size];
+        samples = new int[size];
+        sampledNanoTime = new long[size];
+    }
+
+    public boolean match(MatcherContext<?> context) {
+        Matcher matcher = context.getMatcher();
+        int id = matcherIds.getId(matcher);
+        if (id >= matches.length) growKeepingData(id + 1);
+
+        boolean matched;
+        if ((++sampleCounter & sampleMask) == 0) {
+            long timeStamp = System.nanoTime();
+            matched = matcher.match(context);
+            sampledNanoTime[id] += System.nanoTime() - timeStamp;
+            samples[id]++;
+        } else {
+            matched = matcher.match(context);
+        }
+
+        if (matched) matches[id]++;
+        else mismatches[id]++;
+
+        if (invocations.add(id, context.getStartIndex())) {
+            if (matched) rematches[id]++;
+            else remismatches[id]++;
+        }
+        return matched;
+    }
+
+    // rules created lazily during the run can have ids beyond the arrays size
+    private void growKeepingData(int size) {
+        size = Math.max(size, matches.length * 2);
+        matches = copyOf(matches, size);
+        mismatches = copyOf(mismatches, size);
+        rematches = copyOf(rematches, size);
+        remismatches = copyOf(remismatches, size);
+        samples = copyOf(samples, size);
+        sampledNanoTime = copyOf(sampledNanoTime, size);
+    }
+
+    /**
+     * Aggregates the data of all runs of the {@link SamplingProfilingParseRunner}s it is used with.
+     * Instances are thread-safe.
+     */
+    public static class Profile {
+        private final MatcherIds matcherIds;
+        private int totalRuns;
+        private long totalNanoTime;
+        private long[] matches = new long[0];
+        private long[] mismatches = new long[0];
+        private long[] rematches = new long[0];
+        private long[] remismatches = new long[0];
+        private long[] samples = new long[0];
+        private long[] sampledNanoTime = new long[0];
+
+        /**
+         * Creates a new, empty Profile for the given root rule.
+         *
+         * @param rule the root rule
+         */
+        public Profile(Rule rule) {
+            this.matcherIds = new MatcherIds(rule);
+        }
+
+        public MatcherIds getMatcherIds() {
+            return matcherIds;
+        }
+
+        private synchronized void merge(SamplingProfilingParseRunner<?> runner, long nanoTime) {
+            int size = runner.matches.length;
+            if (matches.length < size) {
+                matches = copyOf(matches, size);
+                mismatches = copyOf(mismatches, size);
+                rematches = copyOf(rematches, size);
+                remismatches = copyOf(remismatches, size);
+                samples = copyOf(samples, size);
+                sampledNanoTime = copyOf(sampledNanoTime, size);
+            }
+            for (int i = 0; i < size; i++) {
+                matches[i] += runner.matches[i];
+                mismatches[i] += runner.mismatches[i];
+                rematches[i] += runner.rematches[i];
+                remismatches[i] += runner.remismatches[i];
+                samples[i] += runner.samples[i];
+                sampledNanoTime[i] += runner.sampledNanoTime[i];
+            }
+            totalRuns++;
+            totalNanoTime += nanoTime;
+        }
+
+        /**
+         * Clears all data collected so far.
+         */
+        public synchronized void reset() {
+            totalRuns = 0;
+            totalNanoTime = 0;
+            Arrays.fill(matches, 0L);
+            Arrays.fill(mismatches, 0L);
+            Arrays.fill(rematches, 0L);
+            Arrays.fill(remismatches, 0L);
+            Arrays.fill(samples, 0L);
+            Arrays.fill(sampledNanoTime, 0L);
+        }
+
+        /**
+         * Creates a report of the data collected so far. The report contains entries for all rules that were invoked
+         * at least once.
+         *
+         * @return the report
+         */
+        public synchronized Report getReport() {
+            List<RuleReport> ruleReports = new ArrayList<RuleReport>();
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] + mismatches[i] == 0) continue;
+                long estimatedNanoTime = samples[i] == 0 ? 0 :
+                        (long) (sampledNanoTime[i] * ((matches[i] + mismatches[i]) / (double) samples[i]));
+                ruleReports.add(new RuleReport(matcherIds.getMatcher(i), matches[i], mismatches[i], rematches[i],
+                        remismatches[i], estimatedNanoTime));
+            }
+            return new Report(totalRuns, totalNanoTime, ruleReports);
+        }
+    }
+
+    public static class Report {
+        public static final Predicate<RuleReport> allRules = new Predicate<RuleReport>() {
+            public boolean apply(RuleReport rep) {
+                return true;
+            }
+        };
+
+        public static final Predicate<RuleReport> namedRules = new Predicate<RuleReport>() {
+            public boolean apply(RuleReport rep) {
+                return rep.getMatcher().hasCustomLabel();
+            }
+        };
+
+        public final int totalRuns;
+        public final long totalNanoTime;
+        public final long totalInvocations;
+        public final long totalMatches;
+        public final long totalMismatches;
+        public final long rematches;
+        public final long remismatches;
+        public final List<RuleReport> ruleReports;
+
+        public Report(int totalRuns, long totalNanoTime, List<RuleReport> ruleReports) {
+            this.totalRuns = totalRuns;
+            this.totalNanoTime = totalNanoTime;
+            this.ruleReports = checkArgNotNull(ruleReports, "ruleReports");
+            long matches = 0, mismatches = 0, rematches = 0, remismatches = 0;
+            for (RuleReport rep : ruleReports) {
+                matches += rep.getMatches();
+                mismatches += rep.getMismatches();
+                rematches += rep.getRematches();
+                remismatches += rep.getRemismatches();
+            }
+            this.totalInvocations = matches + mismatches;
+            this.totalMatches = matches;
+            this.totalMismatches = mismatches;
+            this.rematches = rematches;
+            this.remismatches = remismatches;
+        }
+
+        public String print() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Sampling Profiling Report\n");
+            sb.append("-------------------------\n");
+            sb.append(printBasics());
+            sb.append("\n");
+            sb.append("Top 20 named rules by invocations:\n");
+            sb.append(sortByInvocations().printTopRules(20, namedRules));
+            sb.append("\n");
+            sb.append("Top 20 named rules by estimated time:\n");
+            sb.append(sortByTime().printTopRules(20, namedRules));
+            sb.append("\n");
+            sb.append("Top 20 named rules by re-invocations:\n");
+            sb.append(sortByReinvocations().printTopRules(20, namedRules));
+            return sb.toString();
+        }
+
+        public String printBasics() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Runs                     : %,15d\n", totalRuns));
+            sb.append(String.format("Active rules             : %,15d\n", ruleReports.size()));
+            sb.append(String.format("Total parsing time       : %,15.3f s\n", totalNanoTime / 1000000000.0));
+            sb.append(String.format("Total rule invocations   : %,15d\n", totalInvocations));
+            sb.append(String.format("Total rule matches       : %,15d\n", totalMatches));
+            sb.append(String.format("Total rule mismatches    : %,15d\n", totalMismatches));
+            sb.append(String.format("Rule re-matches          : %,15d\n", rematches));
+            sb.append(String.format("Rule re-mismatches       : %,15d\n", remismatches));
+            return sb.toString();
+        }
+
+        public String printTopRules(int count, Predicate<RuleReport> filter) {
+            return printTable(ruleReports, count, filter,
+                    "Rule                           | Est. Time |   Invocations   |     Matches     |   Mismatches    |   Re-Matches    |  Re-Mismatches  ",
+                    new Formatter<RuleReport>() {
+                        public String format(RuleReport rep) {
+                            return String.format("%s | %6.0f ms | %15s | %15s | %15s | %15s | %15s",
+                                    printRule(rep.getMatcher()),
+                                    rep.getEstimatedNanoTime() / 1000000.0,
+                                    humanize(rep.getInvocations()), humanize(rep.getMatches()),
+                                    humanize(rep.getMismatches()), humanize(rep.getRematches()),
+                                    humanize(rep.getRemismatches()));
+                        }
+                    });
+        }
+
+        public Report sortByInvocations() {
+            Collections.sort(ruleReports, new Comparator<RuleReport>() {
+                public int compare(RuleReport a, RuleReport b) {
+                    return descending(a.getInvocations(), b.getInvocations());
+                }
+            });
+            return this;
+        }
+
+        public Report sortByTime() {
+            Collections.sort(ruleReports, new Comparator<RuleReport>() {
+                public int compare(RuleReport a, RuleReport b) {
+                    return descending(a.getEstimatedNanoTime(), b.getEstimatedNanoTime());
+                }
+            });
+            return this;
+        }
+
+        public Report sortByReinvocations() {
+            Collections.sort(ruleReports, new Comparator<RuleReport>() {
+                public int compare(RuleReport a, RuleReport b) {
+                    return descending(a.getReinvocations(), b.getReinvocations());
+                }
+            });
+            return this;
+        }
+    }
+
+    public static class RuleReport {
+        private final Matcher matcher;
+        private final long matches;
+        private final long mismatches;
+        private final long rematches;
+        private final long remismatches;
+        private final long estimatedNanoTime;
+
+        public RuleReport(Matcher matcher, long matches, long mismatches, long rematches, long remismatches,
+                          long estimatedNanoTime) {
+            this.matcher = matcher;
+            this.matches = matches;
+            this.mismatches = mismatches;
+            this.rematches = rematches;
+            this.remismatches = remismatches;
+            this.estimatedNanoTime = estimatedNanoTime;
+        }
+
+        public Matcher getMatcher() { return matcher; }
+
+        public long getInvocations() { return matches + mismatches; }
+
+        public long getMatches() { return matches; }
+
+        public long getMismatches() { return mismatches; }
+
+        public long getReinvocations() { return rematches + remismatches; }
+
+        public long getRematches() { return rematches; }
+
+        public long getRemismatches() { return remismatches; }
+
+        public long getEstimatedNanoTime() { return estimatedNanoTime; }
+    }
+}
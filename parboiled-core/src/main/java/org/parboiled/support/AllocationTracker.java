@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+/**
+ * <p>Receives notifications about the objects the parsing engine allocates on behalf of the rules being matched,
+ * such as parse tree nodes, value stack elements, {@link MatcherPath}s and match strings.</p>
+ * <p>A tracker can be attached to a root {@link org.parboiled.MatcherContext} (and thereby to all its sub contexts)
+ * as well as to a {@link DefaultValueStack}. Without a tracker the engine does not do any allocation accounting.
+ * The {@link org.parboiled.parserunners.ProfilingParseRunner} uses this interface to attribute allocations to the
+ * rules causing them.</p>
+ */
+public interface AllocationTracker {
+
+    /**
+     * Called when a parse tree node has been created.
+     *
+     * @param listCells the number of {@link org.parboiled.common.ImmutableLinkedList} cells allocated for building
+     *                  the node and attaching it to its parent
+     */
+    void nodeCreated(int listCells);
+
+    /**
+     * Called when value stack elements have been allocated.
+     *
+     * @param count the number of elements
+     */
+    void valueStackElementsCreated(int count);
+
+    /**
+     * Called when a {@link MatcherPath} instance (along with its element) has been created.
+     */
+    void matcherPathCreated();
+
+    /**
+     * Called when a string has been extracted from the input.
+     *
+     * @param length the length of the string
+     */
+    void stringCreated(int length);
+}
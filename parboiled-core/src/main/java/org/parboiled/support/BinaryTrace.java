@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.common.Sink;
+import org.parboiled.common.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.parboiled.common.Preconditions.*;
+
+/**
+ * <p>A compact recording of rule matches, as produced by the
+ * {@link org.parboiled.parserunners.BinaryTracingParseRunner}.</p>
+ * <p>Every match is recorded as a fixed-size event of four ints (matcher id, start index, current index and
+ * the rule level combined with the matched flag) in a ring buffer, which only ever keeps the most recent events.
+ * Recording does not allocate and does not compute any positions, paths or strings, which only happens when the
+ * trace is decoded with {@link #decode(MatcherIds, InputBuffer, Sink)}.</p>
+ * <p>The ring buffer can be backed by a memory mapped file (see {@link #map(File, int)}), so that the trace
+ * survives the process and can be decoded offline with {@link #open(File)}. In this case the {@link MatcherIds}
+ * passed to the decoder must be created for the same grammar as the ones used for recording.</p>
+ * <p>Instances are not thread-safe, a trace must only be recorded to by one parsing run at a time.</p>
+ */
+public class BinaryTrace {
+    private static final int MAGIC = 0x70627472; // "pbtr"
+    private static final int HEADER_SIZE = 16; // magic, capacity, event count (long)
+    private static final int EVENT_SIZE = 16;
+    private static final int RUN_START = -1; // the matcher id marking the start of a new parsing run
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private long eventCount;
+
+    /**
+     * Creates a new BinaryTrace keeping the given number of most recent events in heap memory.
+     *
+     * @param capacity the number of events to keep
+     */
+    public BinaryTrace(int capacity) {
+        this(ByteBuffer.allocate(getSize(capacity)), capacity);
+    }
+
+    private BinaryTrace(ByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, capacity);
+        buffer.putLong(8, 0L);
+    }
+
+    private BinaryTrace(ByteBuffer buffer) {
+        checkArgument(buffer.getInt(0) == MAGIC, "Buffer does not contain a binary trace");
+        this.buffer = buffer;
+        this.capacity = buffer.getInt(4);
+        this.eventCount = buffer.getLong(8);
+        checkArgument(capacity > 0 && buffer.limit() >= getSize(capacity), "Binary trace is truncated");
+    }
+
+    /**
+     * Creates a new BinaryTrace keeping the given number of most recent events in the given file, which is
+     * created or overwritten and mapped into memory.
+     *
+     * @param file     the file to record to
+     * @param capacity the number of events to keep
+     * @return the new trace
+     * @throws IOException if the file cannot be mapped
+     */
+    public static BinaryTrace map(File file, int capacity) throws IOException {
+        checkArgNotNull(file, "file");
+        int size = getSize(capacity);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            return new BinaryTrace(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size), capacity);
+        } finally {
+            raf.close(); // the mapping stays valid after the channel has been closed
+        }
+    }
+
+    /**
+     * Opens a binary trace previously recorded to the given file with a trace created by {@link #map(File, int)}.
+     *
+     * @param file the file
+     * @return the trace
+     * @throws IOException if the file cannot be read
+     */
+    public static BinaryTrace open(File file) throws IOException {
+        checkArgNotNull(file, "file");
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new BinaryTrace(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int getSize(int capacity) {
+        checkArgument(capacity > 0 && capacity <= (Integer.MAX_VALUE - HEADER_SIZE) / EVENT_SIZE,
+                "Illegal trace capacity");
+        return HEADER_SIZE + capacity * EVENT_SIZE;
+    }
+
+    /**
+     * @return the maximum number of events kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of events recorded overall, which can be larger than the capacity
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Discards all recorded events.
+     */
+    public void clear() {
+        eventCount = 0;
+        buffer.putLong(8, 0L);
+    }
+
+    /**
+     * Marks the start of a new parsing run.
+     */
+    public void recordRunStart() {
+        record(RUN_START, 0, 0, 0);
+    }
+
+    /**
+     * Records one rule match.
+     *
+     * @param matcherId    the id of the matcher
+     * @param startIndex   the input index the match started at
+     * @param currentIndex the input index after the match
+     * @param level        the level of the rule in the rule stack
+     * @param matched      whether the rule matched
+     */
+    public void record(int matcherId, int startIndex, int currentIndex, int level, boolean matched) {
+        record(matcherId, startIndex, currentIndex, matched ? level << 1 | 1 : level << 1);
+    }
+
+    private void record(int matcherId, int startIndex, int currentIndex, int levelAndMatched) {
+        int offset = HEADER_SIZE + (int) (eventCount % capacity) * EVENT_SIZE;
+        ByteBuffer buffer = this.buffer;
+        buffer.putInt(offset, matcherId);
+        buffer.putInt(offset + 4, startIndex);
+        buffer.putInt(offset + 8, currentIndex);
+        buffer.putInt(offset + 12, levelAndMatched);
+        buffer.putLong(8, ++eventCount);
+    }
+
+    /**
+     * Decodes the recorded events into the same human readable format the
+     * {@link org.parboiled.parserunners.TracingParseRunner} produces. If the ring buffer has wrapped around, the
+     * output starts with the oldest event still available. Rules whose matches had not yet completed when the trace
+     * ends (e.g. because the parsing run was aborted) are printed as "?".
+     *
+     * @param matcherIds  the matcher ids used during recording
+     * @param inputBuffer the input of the recorded parsing run(s)
+     * @param log         the sink to print to
+     */
+    public void decode(MatcherIds matcherIds, InputBuffer inputBuffer, Sink<String> log) {
+        checkArgNotNull(matcherIds, "matcherIds");
+        checkArgNotNull(inputBuffer, "inputBuffer");
+        checkArgNotNull(log, "log");
+
+        int count = (int) Math.min(eventCount, capacity);
+        long first = eventCount - count;
+        int[] ids = new int[count];
+        int[] currentIndices = new int[count];
+        int[] levels = new int[count];
+        boolean[] matched = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_SIZE + (int) ((first + i) % capacity) * EVENT_SIZE;
+            ids[i] = buffer.getInt(offset);
+            currentIndices[i] = buffer.getInt(offset + 8);
+            int levelAndMatched = buffer.getInt(offset + 12);
+            levels[i] = levelAndMatched >>> 1;
+            matched[i] = (levelAndMatched & 1) != 0;
+        }
+
+        // events are recorded in post-order, so the parent of an event is the next later event on the level above
+        int[] parents = new int[count];
+        int[] lastOnLevel = new int[16];
+        Arrays.fill(lastOnLevel, -1);
+        for (int i = count - 1; i >= 0; i--) {
+            if (ids[i] == RUN_START) {
+                Arrays.fill(lastOnLevel, -1);
+                continue;
+            }
+            int level = levels[i];
+            parents[i] = level > 0 ? lastOnLevel[level - 1] : -1;
+            if (level >= lastOnLevel.length) {
+                int oldLength = lastOnLevel.length;
+                lastOnLevel = Utils.copyOf(lastOnLevel, Math.max(level + 1, oldLength * 2));
+                Arrays.fill(lastOnLevel, oldLength, lastOnLevel.length, -1);
+            }
+            lastOnLevel[level] = i;
+        }
+
+        int[] path = new int[16];
+        int[] lastPath = null;
+        int lastPathLength = 0;
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == RUN_START) {
+                log.receive("Starting new parsing run\n");
+                lastPath = null;
+                continue;
+            }
+
+            // collect the path from the root (-1 for unknown ancestors) to the event
+            int length = levels[i] + 1;
+            if (path.length < length) path = new int[Math.max(length, path.length * 2)];
+            int event = i;
+            for (int level = length - 1; level >= 0; level--) {
+                path[level] = event;
+                event = event >= 0 ? parents[event] : -1;
+            }
+
+            int prefixLength = 0;
+            if (lastPath != null) {
+                int max = Math.min(length, lastPathLength);
+                while (prefixLength < max && path[prefixLength] >= 0 &&
+                        path[prefixLength] == lastPath[prefixLength]) {
+                    prefixLength++;
+                }
+            }
+
+            StringBuilder sb = new StringBuilder();
+            if (prefixLength > 1) sb.append("..(").append(prefixLength - 1).append(")../");
+            for (int level = Math.max(prefixLength - 1, 0); level < length; level++) {
+                if (level > Math.max(prefixLength - 1, 0)) sb.append('/');
+                sb.append(path[level] >= 0 ? matcherIds.getMatcher(ids[path[level]]).toString() : "?");
+            }
+            log.receive(sb.toString());
+
+            Position pos = inputBuffer.getPosition(currentIndices[i]);
+            String line = inputBuffer.extractLine(pos.line);
+            log.receive(", " + (matched[i] ? "matched" : "failed") + ", cursor at " + pos.line + ':' + pos.column +
+                    " after \"" + line.substring(0, Math.min(line.length(), pos.column - 1)) + "\"\n");
+
+            // swap path buffers
+            int[] temp = lastPath != null ? lastPath : new int[path.length];
+            lastPath = path;
+            lastPathLength = length;
+            path = temp;
+        }
+    }
+}
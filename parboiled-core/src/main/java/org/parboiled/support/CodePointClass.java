@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import static org.parboiled.common.Preconditions.*;
+
+import org.parboiled.common.Utils;
+
+import java.util.Arrays;
+
+/**
+ * <p>An immutable set of Unicode code points, e.g. a code point range, a number of Unicode general categories or the
+ * characters allowed in Java identifiers, as used by the {@link org.parboiled.matchers.CodePointMatcher}.</p>
+ * <p>Membership tests are table-driven: all code points of the Basic Multilingual Plane are looked up in a bitmap
+ * (8 KB per instance), supplementary code points via a binary search over the sorted ranges of the set.
+ * Since the tables for category based classes are built by testing every code point, such instances should be
+ * created once and shared (e.g. by caching the rules using them).</p>
+ */
+public final class CodePointClass {
+
+    private static CodePointClass javaIdentifierStart;
+    private static CodePointClass javaIdentifierPart;
+
+    // the sorted, disjoint and non-adjacent ranges of the set as pairs of first and last code point (inclusively)
+    private final int[] ranges;
+    private final long[] bmp = new long[0x10000 >> 6];
+    private final String label;
+
+    private CodePointClass(int[] ranges, String label) {
+        this.ranges = ranges;
+        this.label = label;
+        for (int i = 0; i < ranges.length && ranges[i] <= 0xFFFF; i += 2) {
+            int last = Math.min(ranges[i + 1], 0xFFFF);
+            for (int cp = ranges[i]; cp <= last; cp++) {
+                bmp[cp >> 6] |= 1L << cp;
+            }
+        }
+    }
+
+    /**
+     * Creates a class containing the code points from first to last (both inclusively).
+     *
+     * @param first the first code point
+     * @param last  the last code point
+     * @return a new CodePointClass
+     */
+    public static CodePointClass range(int first, int last) {
+        checkArgument(Character.isValidCodePoint(first), "Illegal code point: " + first);
+        checkArgument(Character.isValidCodePoint(last), "Illegal code point: " + last);
+        checkArgument(first <= last, "first must not be greater than last");
+        return new CodePointClass(new int[] {first, last}, format(first) + ".." + format(last));
+    }
+
+    /**
+     * Creates a class containing all code points of the given Unicode general categories.
+     *
+     * @param categories the categories as defined by the respective constants of {@link Character},
+     *                   e.g. {@link Character#UPPERCASE_LETTER}
+     * @return a new CodePointClass
+     */
+    public static CodePointClass ofCategories(final int... categories) {
+        checkArgNotNull(categories, "categories");
+        checkArgument(categories.length > 0, "categories must not be empty");
+        final boolean[] included = new boolean[32];
+        StringBuilder label = new StringBuilder("Category(");
+        for (int i = 0; i < categories.length; i++) {
+            checkArgument(0 <= categories[i] && categories[i] < 32, "Illegal category: " + categories[i]);
+            included[categories[i]] = true;
+            label.append(i > 0 ? "," : "").append(categories[i]);
+        }
+        return build(new CodePointPredicate() {
+            public boolean accept(int codePoint) {
+                return included[Character.getType(codePoint)];
+            }
+        }, label.append(')').toString());
+    }
+
+    /**
+     * @return the (shared) class of all code points permitted as the first character of a Java identifier
+     * @see Character#isJavaIdentifierStart(int)
+     */
+    public static synchronized CodePointClass javaIdentifierStart() {
+        if (javaIdentifierStart == null) {
+            javaIdentifierStart = build(new CodePointPredicate() {
+                public boolean accept(int codePoint) {
+                    return Character.isJavaIdentifierStart(codePoint);
+                }
+            }, "JavaIdentifierStart");
+        }
+        return javaIdentifierStart;
+    }
+
+    /**
+     * @return the (shared) class of all code points permitted as non-first characters of a Java identifier
+     * @see Character#isJavaIdentifierPart(int)
+     */
+    public static synchronized CodePointClass javaIdentifierPart() {
+        if (javaIdentifierPart == null) {
+            javaIdentifierPart = build(new CodePointPredicate() {
+                public boolean accept(int codePoint) {
+                    return Character.isJavaIdentifierPart(codePoint);
+                }
+            }, "JavaIdentifierPart");
+        }
+        return javaIdentifierPart;
+    }
+
+    /**
+     * Determines whether this class contains the given code point.
+     *
+     * @param codePoint the code point
+     * @return true if the code point is a member of this class
+     */
+    public boolean contains(int codePoint) {
+        if ((codePoint >>> 16) == 0) {
+            return (bmp[codePoint >> 6] & (1L << codePoint)) != 0;
+        }
+        if (codePoint > Character.MAX_CODE_POINT) return false;
+        int low = 0;
+        int high = (ranges.length >> 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (codePoint < ranges[mid << 1]) {
+                high = mid - 1;
+            } else if (codePoint > ranges[(mid << 1) + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a new class containing all code points of this class and all code points of the given one.
+     *
+     * @param other the other class
+     * @return a new CodePointClass
+     */
+    public CodePointClass union(CodePointClass other) {
+        checkArgNotNull(other, "other");
+        int[] merged = new int[ranges.length + other.ranges.length];
+        int count = 0, i = 0, j = 0;
+        while (i < ranges.length || j < other.ranges.length) {
+            int[] source;
+            int k;
+            if (j >= other.ranges.length || i < ranges.length && ranges[i] <= other.ranges[j]) {
+                source = ranges;
+                k = i;
+                i += 2;
+            } else {
+                source = other.ranges;
+                k = j;
+                j += 2;
+            }
+            if (count > 0 && source[k] <= merged[count - 1] + 1) {
+                merged[count - 1] = Math.max(merged[count - 1], source[k + 1]);
+            } else {
+                merged[count++] = source[k];
+                merged[count++] = source[k + 1];
+            }
+        }
+        return new CodePointClass(Utils.copyOf(merged, count), label + " | " + other.label);
+    }
+
+    /**
+     * @return true if this class contains code points outside of the ASCII range
+     */
+    public boolean hasNonAscii() {
+        return ranges.length > 0 && ranges[ranges.length - 1] >= 0x80;
+    }
+
+    /**
+     * @return true if this class contains code points outside of the Basic Multilingual Plane
+     */
+    public boolean hasSupplementary() {
+        return ranges.length > 0 && ranges[ranges.length - 1] > 0xFFFF;
+    }
+
+    /**
+     * @return the smallest code point in this class or -1, if the class is empty
+     */
+    public int getFirst() {
+        return ranges.length > 0 ? ranges[0] : -1;
+    }
+
+    /**
+     * Returns the smallest code point of this class lying within the given range.
+     *
+     * @param first the first code point of the range
+     * @param last  the last code point of the range (inclusively)
+     * @return the smallest member of this class in the given range or -1, if there is none
+     */
+    public int getFirst(int first, int last) {
+        for (int i = 0; i < ranges.length && ranges[i] <= last; i += 2) {
+            if (ranges[i + 1] >= first) return Math.max(ranges[i], first);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of disjoint code point ranges making up this class
+     */
+    public int getRangeCount() {
+        return ranges.length >> 1;
+    }
+
+    // the sorted ranges as pairs of first and last code point, as written to grammar snapshots
+    int[] getRanges() {
+        return ranges.clone();
+    }
+
+    // recreates a class from the ranges and the label of a grammar snapshot
+    static CodePointClass fromRanges(int[] ranges, String label) {
+        checkArgNotNull(ranges, "ranges");
+        checkArgument((ranges.length & 1) == 0, "ranges must consist of pairs of code points");
+        for (int i = 0; i < ranges.length; i++) {
+            checkArgument(Character.isValidCodePoint(ranges[i]) && (i == 0 || ranges[i - 1] <= ranges[i]),
+                    "ranges must be valid code points in ascending order");
+        }
+        return new CodePointClass(ranges.clone(), checkArgNotNull(label, "label"));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof CodePointClass && Arrays.equals(ranges, ((CodePointClass) o).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+    private interface CodePointPredicate {
+        boolean accept(int codePoint);
+    }
+
+    private static CodePointClass build(CodePointPredicate predicate, String label) {
+        int[] ranges = new int[64];
+        int count = 0;
+        int start = -1;
+        for (int cp = 0; cp <= Character.MAX_CODE_POINT + 1; cp++) {
+            boolean member = cp <= Character.MAX_CODE_POINT && predicate.accept(cp);
+            if (member && start < 0) {
+                start = cp;
+            } else if (!member && start >= 0) {
+                if (count == ranges.length) ranges = Utils.copyOf(ranges, count * 2);
+                ranges[count++] = start;
+                ranges[count++] = cp - 1;
+                start = -1;
+            }
+        }
+        return new CodePointClass(Utils.copyOf(ranges, count), label);
+    }
+
+    private static String format(int codePoint) {
+        return 0x20 < codePoint && codePoint < 0x7F ? String.valueOf((char) codePoint) :
+                String.format("U+%04X", codePoint);
+    }
+}
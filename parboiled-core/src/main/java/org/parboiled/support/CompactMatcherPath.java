@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import org.parboiled.Context;
+import org.parboiled.matchers.Matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkElementIndex;
+
+/**
+ * <p>A compact, immutable alternative to the {@link MatcherPath}, holding a snapshot of the current {@link Matcher}
+ * stack in two flat arrays (the matchers and their start indices, root first) rather than a linked list of
+ * path and element objects.</p>
+ * <p>A CompactMatcherPath is captured by copying the context stack in one go (two allocations independently of the
+ * stack depth) and neither relies on nor resets the path caches of the contexts. Prefix checks are simple
+ * array comparisons, {@link #startsWith(Context)} even works directly against a live context stack without
+ * capturing it first. Paths are compared by value: two paths are equal if they consist of the same matchers
+ * started at the same indices.</p>
+ */
+public final class CompactMatcherPath {
+    private final Matcher[] matchers;
+    private final int[] startIndices;
+
+    private CompactMatcherPath(Matcher[] matchers, int[] startIndices) {
+        this.matchers = matchers;
+        this.startIndices = startIndices;
+    }
+
+    /**
+     * Captures the path to the currently running matcher of the given context.
+     *
+     * @param context the context
+     * @return the path
+     */
+    public static CompactMatcherPath capture(Context<?> context) {
+        checkArgNotNull(context, "context");
+        int length = context.getLevel() + 1;
+        Matcher[] matchers = new Matcher[length];
+        int[] startIndices = new int[length];
+        for (Context<?> c = context; c != null; c = c.getParent()) {
+            int level = c.getLevel();
+            matchers[level] = c.getMatcher();
+            startIndices[level] = c.getStartIndex();
+        }
+        return new CompactMatcherPath(matchers, startIndices);
+    }
+
+    /**
+     * @return the length of this path, i.e. the number of matchers contained in it
+     */
+    public int length() {
+        return matchers.length;
+    }
+
+    /**
+     * @param level the level, zero being the root
+     * @return the matcher at the given level
+     */
+    public Matcher getMatcher(int level) {
+        checkElementIndex(level, matchers.length);
+        return matchers[level];
+    }
+
+    /**
+     * @param level the level, zero being the root
+     * @return the start index of the matcher at the given level
+     */
+    public int getStartIndex(int level) {
+        checkElementIndex(level, matchers.length);
+        return startIndices[level];
+    }
+
+    /**
+     * @return the deepest matcher of this path
+     */
+    public Matcher getLeafMatcher() {
+        return matchers[matchers.length - 1];
+    }
+
+    /**
+     * Determines whether this path is a prefix of the given other path.
+     *
+     * @param that the other path
+     * @return true if this path is a prefix of the given other path
+     */
+    public boolean isPrefixOf(CompactMatcherPath that) {
+        checkArgNotNull(that, "that");
+        if (matchers.length > that.matchers.length) return false;
+        for (int i = matchers.length - 1; i >= 0; i--) {
+            if (matchers[i] != that.matchers[i] || startIndices[i] != that.startIndices[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether the path to the currently running matcher of the given context is a prefix of this path,
+     * without capturing the context path.
+     *
+     * @param context the context
+     * @return true if the context path is a prefix of this path
+     */
+    public boolean startsWith(Context<?> context) {
+        checkArgNotNull(context, "context");
+        if (context.getLevel() >= matchers.length) return false;
+        for (Context<?> c = context; c != null; c = c.getParent()) {
+            int level = c.getLevel();
+            if (matchers[level] != c.getMatcher() || startIndices[level] != c.getStartIndex()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Converts this path into its linked {@link MatcherPath} representation.
+     *
+     * @return the MatcherPath
+     */
+    public MatcherPath toMatcherPath() {
+        return toMatcherPath(null);
+    }
+
+    // converts this path reusing the longest common prefix with the given, previously converted path
+    private MatcherPath toMatcherPath(MatcherPath previous) {
+        MatcherPath common = previous;
+        while (common != null && common.length() > matchers.length) common = common.parent;
+        for (MatcherPath p = common; p != null; p = p.parent) {
+            MatcherPath.Element element = p.element;
+            if (element.matcher != matchers[element.level] || element.startIndex != startIndices[element.level]) {
+                common = p.parent;
+            }
+        }
+        MatcherPath path = common;
+        for (int level = common != null ? common.length() : 0; level < matchers.length; level++) {
+            path = new MatcherPath(new MatcherPath.Element(matchers[level], startIndices[level], level), path);
+        }
+        return path;
+    }
+
+    /**
+     * Converts the given paths into their linked {@link MatcherPath} representation.
+     * Common prefixes of consecutive paths are shared, like they are for paths obtained from
+     * {@link Context#getPath()}.
+     *
+     * @param paths the paths
+     * @return a new list of MatcherPaths
+     */
+    public static List<MatcherPath> toMatcherPaths(List<CompactMatcherPath> paths) {
+        checkArgNotNull(paths, "paths");
+        List<MatcherPath> list = new ArrayList<MatcherPath>(paths.size());
+        MatcherPath previous = null;
+        for (CompactMatcherPath path : paths) {
+            previous = path.toMatcherPath(previous);
+            list.add(previous);
+        }
+        return list;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CompactMatcherPath)) return false;
+        CompactMatcherPath that = (CompactMatcherPath) o;
+        return matchers.length == that.matchers.length && isPrefixOf(that);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < matchers.length; i++) {
+            hash = 31 * (31 * hash + System.identityHashCode(matchers[i])) + startIndices[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < matchers.length; i++) {
+            if (i > 0) sb.append('/');
+            sb.append(matchers[i]);
+        }
+        return sb.toString();
+    }
+}
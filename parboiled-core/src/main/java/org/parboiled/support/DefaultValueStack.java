@@ -42,6 +42,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
 
     protected Element head;
     protected V tempValue;
+    protected AllocationTracker allocationTracker;
 
     /**
      * Initializes an empty value stack.
@@ -58,6 +59,19 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         pushAll(values);
     }
 
+    /**
+     * Attaches the given tracker to this stack, which is from then on notified of all element allocations.
+     *
+     * @param allocationTracker the tracker or null, to disable allocation accounting
+     */
+    public void setAllocationTracker(AllocationTracker allocationTracker) {
+        this.allocationTracker = allocationTracker;
+    }
+
+    public AllocationTracker getAllocationTracker() {
+        return allocationTracker;
+    }
+
     public boolean isEmpty() {
         return head == null;
     }
@@ -90,10 +104,12 @@ public class DefaultValueStack<V> implements ValueStack<V> {
 
     public void push(V value) {
         head = new Element(value, head);
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(1);
     }
 
     public void push(int down, V value) {
         head = push(down, value, head);
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(down + 1);
     }
 
     private static Element push(int down, Object value, Element head) {
@@ -119,6 +135,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
 
     public V pop(int down) {
         head = pop(down, head);
+        if (allocationTracker != null && down > 0) allocationTracker.valueStackElementsCreated(down);
         V result = tempValue;
         tempValue = null; // avoid memory leak
         return result;
@@ -158,6 +175,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
 
     public void poke(int down, V value) {
         head = poke(down, value, head);
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(down + 1);
     }
 
     private static Element poke(int down, Object value, Element head) {
@@ -175,6 +193,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Checks.ensure(isSizeGTE(2, head), "Swap not allowed on stack with less than two elements");
         Element down1 = head.tail;
         head = new Element(down1.value, new Element(head.value, down1.tail));
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(2);
     }
 
     public void swap3() {
@@ -182,6 +201,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Element down1 = head.tail;
         Element down2 = down1.tail;
         head = new Element(down2.value, new Element(down1.value, new Element(head.value, down2.tail)));
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(3);
     }
 
     public void swap4() {
@@ -191,6 +211,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Element down3 = down2.tail;
         head = new Element(down3.value, new Element(down2.value, new Element(down1.value, new Element(head.value,
                 down3.tail))));
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(4);
     }
 
     public void swap5() {
@@ -201,6 +222,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Element down4 = down3.tail;
         head = new Element(down4.value, new Element(down3.value, new Element(down2.value, new Element(down1.value,
                 new Element(head.value, down4.tail)))));
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(5);
     }
 
     public void swap6() {
@@ -212,6 +234,7 @@ public class DefaultValueStack<V> implements ValueStack<V> {
         Element down5 = down4.tail;
         head = new Element(down5.value, new Element(down4.value, new Element(down3.value, new Element(down2.value,
                 new Element(down1.value, new Element(head.value, down5.tail))))));
+        if (allocationTracker != null) allocationTracker.valueStackElementsCreated(6);
     }
 
     private static boolean isSizeGTE(int minSize, Element head) {
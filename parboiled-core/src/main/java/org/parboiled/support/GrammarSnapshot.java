@@ -0,0 +1,700 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.Action;
+import org.parboiled.Rule;
+import org.parboiled.errors.GrammarException;
+import org.parboiled.matchers.*;
+import org.parboiled.matchervisitors.MatcherVisitor;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * <p>Serializes a fully built rule graph into a compact binary snapshot and restores it from such a snapshot without
+ * running any rule methods.</p>
+ * <p>A snapshot contains all matchers reachable from the root rule together with their labels, their node flags,
+ * their character classes and strings as well as all recursive references. The matcher graph produced by
+ * {@link #read(InputStream)} is structurally identical to the one written and can be used with all
+ * {@link org.parboiled.parserunners.ParseRunner} implementations.</p>
+ * <p>Since action code and {@link CustomMatcher}s cannot be described declaratively the following restrictions
+ * apply:</p>
+ * <ul>
+ * <li>{@link Action} instances implementing {@link Serializable} are written with standard Java serialization.
+ * All other actions, most importantly the action classes generated for action expressions in parboiled for Java
+ * parsers, are written as their class name together with the values of their instance fields. References to the
+ * parser instance are thereby replaced with a marker, which is bound to the parser instance given to
+ * {@link #read(InputStream, Object)} on loading, all other field values must be serializable. Such actions are
+ * recreated by calling their constructor with default arguments and restoring all fields reflectively. Since these
+ * action classes are generated by the parser class transformation, loading a snapshot of a parboiled for Java
+ * grammar with action expressions still requires the parser class to be created with
+ * <code>Parboiled.createParser(...)</code> first, only the rule methods are not run. Grammars without such actions
+ * can be loaded without the parser class.</li>
+ * <li>{@link CustomMatcher}s must not have sub rules and must provide a no-argument constructor. The exception is the
+ * {@link CodePointMatcher}, whose code point class is included in the snapshot.</li>
+ * <li>Rules using action variables ({@link VarFramingMatcher}s) are not supported.</li>
+ * </ul>
+ * <p>If the grammar violates any of these restrictions a {@link GrammarException} is thrown.</p>
+ */
+public final class GrammarSnapshot {
+
+    private static final int MAGIC = 0x70626773; // "pbgs"
+    private static final int VERSION = 2;
+
+    // record types
+    private static final byte END = 0;
+    private static final byte ACTION = 1;
+    private static final byte ANY = 2;
+    private static final byte CHAR_IGNORE_CASE = 3;
+    private static final byte CHAR = 4;
+    private static final byte CUSTOM = 5;
+    private static final byte CHAR_RANGE = 6;
+    private static final byte ANY_OF = 7;
+    private static final byte EMPTY = 8;
+    private static final byte FIRST_OF = 9;
+    private static final byte FIRST_OF_STRINGS = 10;
+    private static final byte NOTHING = 11;
+    private static final byte ONE_OR_MORE = 12;
+    private static final byte OPTIONAL = 13;
+    private static final byte SEQUENCE = 14;
+    private static final byte STRING = 15;
+    private static final byte TEST = 16;
+    private static final byte TEST_NOT = 17;
+    private static final byte ZERO_OR_MORE = 18;
+    private static final byte MEMO_MISMATCHES = 19;
+    private static final byte CODE_POINTS = 20;
+
+    // action encodings and action field value kinds
+    private static final byte SERIALIZED_ACTION = 0;
+    private static final byte REFLECTED_ACTION = 1;
+    private static final byte VALUE = 0;
+    private static final byte PARSER = 1;
+
+    // flags
+    private static final int NODE_SUPPRESSED = 0x01;
+    private static final int SUBNODES_SUPPRESSED = 0x02;
+    private static final int NODE_SKIPPED = 0x04;
+    private static final int CUSTOM_LABEL = 0x08;
+    private static final int HAS_LABEL = 0x10;
+
+    private GrammarSnapshot() {}
+
+    /**
+     * Writes a snapshot of the rule graph underneath the given root rule to the given stream.
+     * The stream is flushed but not closed.
+     *
+     * @param rule the root rule
+     * @param out  the stream to write to
+     */
+    public static void write(Rule rule, OutputStream out) {
+        write(rule, null, out);
+    }
+
+    /**
+     * Writes a snapshot of the rule graph underneath the given root rule, which was created by the given parser,
+     * to the given stream. All references of actions to the parser instance are written as references to the parser
+     * to be given to {@link #read(InputStream, Object)}. The stream is flushed but not closed.
+     *
+     * @param rule   the root rule
+     * @param parser the parser instance the rule was created by, may be null
+     * @param out    the stream to write to
+     */
+    public static void write(Rule rule, Object parser, OutputStream out) {
+        checkArgNotNull(rule, "rule");
+        checkArgNotNull(out, "out");
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeInt(MAGIC);
+            oos.writeByte(VERSION);
+            int rootId = new Writer(oos, parser).write((Matcher) rule);
+            oos.writeByte(END);
+            writeVarInt(oos, rootId);
+            oos.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write grammar snapshot", e);
+        }
+    }
+
+    /**
+     * Creates a snapshot of the rule graph underneath the given root rule.
+     *
+     * @param rule the root rule
+     * @return the snapshot bytes
+     */
+    public static byte[] toByteArray(Rule rule) {
+        return toByteArray(rule, null);
+    }
+
+    /**
+     * Creates a snapshot of the rule graph underneath the given root rule, which was created by the given parser.
+     *
+     * @param rule   the root rule
+     * @param parser the parser instance the rule was created by, may be null
+     * @return the snapshot bytes
+     */
+    public static byte[] toByteArray(Rule rule, Object parser) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(rule, parser, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Restores a rule graph from a snapshot previously created with {@link #write(Rule, OutputStream)}.
+     * Action and custom matcher classes are loaded with the class loader of this class.
+     *
+     * @param in the stream to read from
+     * @return the root rule
+     */
+    public static Rule read(InputStream in) {
+        return read(in, GrammarSnapshot.class.getClassLoader(), null);
+    }
+
+    /**
+     * Restores a rule graph from a snapshot previously created with {@link #write(Rule, Object, OutputStream)},
+     * binding all actions referring to the parser to the given parser instance.
+     * Action and custom matcher classes are loaded with the class loader of the parser class.
+     *
+     * @param in     the stream to read from
+     * @param parser the parser instance to bind the actions to
+     * @return the root rule
+     */
+    public static Rule read(InputStream in, Object parser) {
+        checkArgNotNull(parser, "parser");
+        return read(in, parser.getClass().getClassLoader(), parser);
+    }
+
+    /**
+     * Restores a rule graph from a snapshot previously created with {@link #write(Rule, OutputStream)}.
+     *
+     * @param in          the stream to read from
+     * @param classLoader the class loader to load action and custom matcher classes with
+     * @return the root rule
+     */
+    public static Rule read(InputStream in, ClassLoader classLoader) {
+        return read(in, classLoader, null);
+    }
+
+    private static Rule read(InputStream in, final ClassLoader classLoader, Object parser) {
+        checkArgNotNull(in, "in");
+        checkArgNotNull(classLoader, "classLoader");
+        try {
+            ObjectInputStream ois = new ObjectInputStream(in) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    try {
+                        return Class.forName(desc.getName(), false, classLoader);
+                    } catch (ClassNotFoundException e) {
+                        return super.resolveClass(desc);
+                    }
+                }
+            };
+            if (ois.readInt() != MAGIC) throw new IOException("Not a parboiled grammar snapshot");
+            int version = ois.readByte();
+            if (version != VERSION) throw new IOException("Unsupported grammar snapshot version " + version);
+            return new Reader(ois, classLoader, parser).read();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read grammar snapshot", e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Could not read grammar snapshot", e);
+        }
+    }
+
+    /**
+     * Restores a rule graph from the given snapshot bytes.
+     *
+     * @param snapshot the snapshot bytes
+     * @return the root rule
+     */
+    public static Rule fromByteArray(byte[] snapshot) {
+        checkArgNotNull(snapshot, "snapshot");
+        return read(new ByteArrayInputStream(snapshot));
+    }
+
+    /**
+     * Restores a rule graph from the given snapshot bytes, binding all actions referring to the parser to the given
+     * parser instance.
+     *
+     * @param snapshot the snapshot bytes
+     * @param parser   the parser instance to bind the actions to
+     * @return the root rule
+     */
+    public static Rule fromByteArray(byte[] snapshot, Object parser) {
+        checkArgNotNull(snapshot, "snapshot");
+        return read(new ByteArrayInputStream(snapshot), parser);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static void writeChars(DataOutput out, char[] chars) throws IOException {
+        writeVarInt(out, chars.length);
+        for (char c : chars) out.writeChar(c);
+    }
+
+    private static char[] readChars(DataInput in) throws IOException {
+        char[] chars = new char[readVarInt(in)];
+        for (int i = 0; i < chars.length; i++) chars[i] = in.readChar();
+        return chars;
+    }
+
+    // returns all instance fields of the given class and its superclasses, made accessible
+    private static List<Field> getInstanceFields(Class<?> type) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Writes the matcher graph depth-first, each matcher record following the records of all its children
+     * (except for recursive references to matchers still being written, which the reader resolves with proxies).
+     */
+    private static class Writer implements MatcherVisitor<Byte> {
+        private final ObjectOutputStream out;
+        private final Object parser;
+        private final Map<Matcher, Integer> ids = new IdentityHashMap<Matcher, Integer>();
+
+        private Writer(ObjectOutputStream out, Object parser) {
+            this.out = out;
+            this.parser = parser;
+        }
+
+        public int write(Matcher matcher) throws IOException {
+            while (matcher instanceof ProxyMatcher || matcher instanceof LazyMatcher) {
+                matcher = ProxyMatcher.unwrap(LazyMatcher.unwrap(matcher));
+            }
+            Integer id = ids.get(matcher);
+            if (id != null) return id;
+            if (matcher instanceof VarFramingMatcher) {
+                throw new GrammarException("Rule '%s' uses action variables, which cannot be included in a " +
+                        "grammar snapshot", matcher);
+            }
+
+            id = ids.size();
+            ids.put(matcher, id);
+
+            if (matcher instanceof MemoMismatchesMatcher) {
+                int innerId = write(MemoMismatchesMatcher.unwrap(matcher));
+                out.writeByte(MEMO_MISMATCHES);
+                writeVarInt(out, id);
+                writeVarInt(out, innerId);
+                return id;
+            }
+
+            List<Matcher> children = matcher.getChildren();
+            int[] childIds = new int[children.size()];
+            for (int i = 0; i < childIds.length; i++) {
+                childIds[i] = write(children.get(i));
+            }
+
+            byte type = matcher.accept(this);
+            if (type == CUSTOM) {
+                if (childIds.length > 0) {
+                    throw new GrammarException("Custom matcher '%s' has sub rules and can therefore not be included " +
+                            "in a grammar snapshot", matcher);
+                }
+                try {
+                    matcher.getClass().getDeclaredConstructor();
+                } catch (NoSuchMethodException e) {
+                    throw new GrammarException("Custom matcher '%s' has no no-argument constructor and can therefore " +
+                            "not be included in a grammar snapshot", matcher);
+                }
+            }
+            out.writeByte(type);
+            writeVarInt(out, id);
+            int flags = (matcher.isNodeSuppressed() ? NODE_SUPPRESSED : 0) |
+                    (matcher.areSubnodesSuppressed() ? SUBNODES_SUPPRESSED : 0) |
+                    (matcher.isNodeSkipped() ? NODE_SKIPPED : 0) |
+                    (matcher.hasCustomLabel() ? CUSTOM_LABEL : 0) |
+                    (matcher.getLabel() != null ? HAS_LABEL : 0);
+            out.writeByte(flags);
+            if (matcher.getLabel() != null) out.writeUTF(matcher.getLabel());
+            writeVarInt(out, childIds.length);
+            for (int childId : childIds) writeVarInt(out, childId);
+            writeData(type, matcher);
+            return id;
+        }
+
+        private void writeData(byte type, Matcher matcher) throws IOException {
+            switch (type) {
+                case ACTION:
+                    writeAction(((ActionMatcher) matcher).action, matcher);
+                    break;
+                case CHAR_IGNORE_CASE:
+                    out.writeChar(((CharIgnoreCaseMatcher) matcher).charLow);
+                    break;
+                case CHAR:
+                    out.writeChar(((CharMatcher) matcher).character);
+                    break;
+                case CUSTOM:
+                    out.writeUTF(matcher.getClass().getName());
+                    break;
+                case CODE_POINTS:
+                    CodePointClass codePoints = ((CodePointMatcher) matcher).getCodePoints();
+                    out.writeUTF(codePoints.toString());
+                    int[] ranges = codePoints.getRanges();
+                    writeVarInt(out, ranges.length);
+                    for (int codePoint : ranges) writeVarInt(out, codePoint);
+                    break;
+                case CHAR_RANGE:
+                    out.writeChar(((CharRangeMatcher) matcher).cLow);
+                    out.writeChar(((CharRangeMatcher) matcher).cHigh);
+                    break;
+                case ANY_OF:
+                    Characters characters = ((AnyOfMatcher) matcher).characters;
+                    out.writeBoolean(characters.isSubtractive());
+                    writeChars(out, characters.getChars());
+                    break;
+                case FIRST_OF_STRINGS:
+                    char[][] strings = ((FirstOfStringsMatcher) matcher).strings;
+                    writeVarInt(out, strings.length);
+                    for (char[] s : strings) writeChars(out, s);
+                    break;
+                case STRING:
+                    writeChars(out, ((StringMatcher) matcher).characters);
+                    break;
+            }
+        }
+
+        private void writeAction(Action action, Matcher matcher) throws IOException {
+            if (action instanceof Serializable) {
+                out.writeByte(SERIALIZED_ACTION);
+                out.writeObject(action);
+                return;
+            }
+            if (parser == null) {
+                throw new GrammarException("Action '%s' is not serializable and can therefore not be " +
+                        "included in a grammar snapshot", matcher);
+            }
+            List<Field> fields = getInstanceFields(action.getClass());
+            out.writeByte(REFLECTED_ACTION);
+            out.writeUTF(action.getClass().getName());
+            writeVarInt(out, fields.size());
+            for (Field field : fields) {
+                Object value;
+                try {
+                    value = field.get(action);
+                } catch (IllegalAccessException e) {
+                    throw new GrammarException(e, "Could not read field '%s' of action '%s'", field.getName(), matcher);
+                }
+                out.writeUTF(field.getDeclaringClass().getName());
+                out.writeUTF(field.getName());
+                if (value == parser) {
+                    out.writeByte(PARSER);
+                } else if (value == null || value instanceof Serializable) {
+                    out.writeByte(VALUE);
+                    out.writeObject(value);
+                } else {
+                    throw new GrammarException("Action '%s' captures the non-serializable value '%s' and can " +
+                            "therefore not be included in a grammar snapshot", matcher, value);
+                }
+            }
+        }
+
+        public Byte visit(ActionMatcher matcher) { return ACTION; }
+        public Byte visit(AnyMatcher matcher) { return ANY; }
+        public Byte visit(CharIgnoreCaseMatcher matcher) { return CHAR_IGNORE_CASE; }
+        public Byte visit(CharMatcher matcher) { return CHAR; }
+        public Byte visit(CustomMatcher matcher) {
+            return matcher.getClass() == CodePointMatcher.class ? CODE_POINTS : CUSTOM;
+        }
+        public Byte visit(CharRangeMatcher matcher) { return CHAR_RANGE; }
+        public Byte visit(AnyOfMatcher matcher) { return ANY_OF; }
+        public Byte visit(EmptyMatcher matcher) { return EMPTY; }
+        public Byte visit(FirstOfMatcher matcher) {
+            return matcher instanceof FirstOfStringsMatcher ? FIRST_OF_STRINGS : FIRST_OF;
+        }
+        public Byte visit(NothingMatcher matcher) { return NOTHING; }
+        public Byte visit(OneOrMoreMatcher matcher) { return ONE_OR_MORE; }
+        public Byte visit(OptionalMatcher matcher) { return OPTIONAL; }
+        public Byte visit(SequenceMatcher matcher) { return matcher instanceof StringMatcher ? STRING : SEQUENCE; }
+        public Byte visit(TestMatcher matcher) { return TEST; }
+        public Byte visit(TestNotMatcher matcher) { return TEST_NOT; }
+        public Byte visit(ZeroOrMoreMatcher matcher) { return ZERO_OR_MORE; }
+    }
+
+    private static class Reader {
+        private final ObjectInputStream in;
+        private final ClassLoader classLoader;
+        private final Object parser;
+        private final Map<Integer, Matcher> matchers = new HashMap<Integer, Matcher>();
+        private final Map<Integer, ProxyMatcher> proxies = new HashMap<Integer, ProxyMatcher>();
+
+        private Reader(ObjectInputStream in, ClassLoader classLoader, Object parser) {
+            this.in = in;
+            this.classLoader = classLoader;
+            this.parser = parser;
+        }
+
+        public Rule read() throws IOException, ClassNotFoundException {
+            byte type;
+            while ((type = in.readByte()) != END) {
+                int id = readVarInt(in);
+                matchers.put(id, type == MEMO_MISMATCHES ? new MemoMismatchesMatcher(getMatcher(readVarInt(in))) :
+                        readMatcher(type));
+            }
+            for (Map.Entry<Integer, ProxyMatcher> entry : proxies.entrySet()) {
+                Matcher target = matchers.get(entry.getKey());
+                if (target == null) throw new IOException("Corrupt grammar snapshot, missing matcher record");
+                entry.getValue().arm(target);
+            }
+            Matcher root = matchers.get(readVarInt(in));
+            if (root == null) throw new IOException("Corrupt grammar snapshot, missing root record");
+            return root;
+        }
+
+        // returns the matcher with the given id, or a proxy for it, if the matcher record has not been read yet
+        private Matcher getMatcher(int id) {
+            Matcher matcher = matchers.get(id);
+            if (matcher == null) {
+                ProxyMatcher proxy = proxies.get(id);
+                if (proxy == null) {
+                    proxy = new ProxyMatcher();
+                    proxies.put(id, proxy);
+                }
+                matcher = proxy;
+            }
+            return matcher;
+        }
+
+        private Matcher readMatcher(byte type) throws IOException, ClassNotFoundException {
+            int flags = in.readUnsignedByte();
+            String label = (flags & HAS_LABEL) != 0 ? in.readUTF() : null;
+            Rule[] children = new Rule[readVarInt(in)];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = getMatcher(readVarInt(in));
+            }
+
+            Matcher matcher;
+            switch (type) {
+                case ACTION:
+                    matcher = new ActionMatcher(readAction());
+                    break;
+                case ANY:
+                    matcher = new AnyMatcher();
+                    break;
+                case CHAR_IGNORE_CASE:
+                    matcher = new CharIgnoreCaseMatcher(in.readChar());
+                    break;
+                case CHAR:
+                    matcher = new CharMatcher(in.readChar());
+                    break;
+                case CUSTOM:
+                    matcher = createCustomMatcher(in.readUTF());
+                    break;
+                case CODE_POINTS:
+                    String codePointsLabel = in.readUTF();
+                    int[] ranges = new int[readVarInt(in)];
+                    for (int i = 0; i < ranges.length; i++) ranges[i] = readVarInt(in);
+                    try {
+                        matcher = new CodePointMatcher(CodePointClass.fromRanges(ranges, codePointsLabel));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Corrupt grammar snapshot, illegal code point class");
+                    }
+                    break;
+                case CHAR_RANGE:
+                    matcher = new CharRangeMatcher(in.readChar(), in.readChar());
+                    break;
+                case ANY_OF:
+                    boolean subtractive = in.readBoolean();
+                    char[] chars = readChars(in);
+                    matcher = new AnyOfMatcher(subtractive ? Characters.allBut(chars) : Characters.of(chars));
+                    break;
+                case EMPTY:
+                    matcher = new EmptyMatcher();
+                    break;
+                case FIRST_OF:
+                    matcher = new FirstOfMatcher(children);
+                    break;
+                case FIRST_OF_STRINGS:
+                    char[][] strings = new char[readVarInt(in)][];
+                    for (int i = 0; i < strings.length; i++) strings[i] = readChars(in);
+                    matcher = new FirstOfStringsMatcher(children, strings);
+                    break;
+                case NOTHING:
+                    matcher = new NothingMatcher();
+                    break;
+                case ONE_OR_MORE:
+                    matcher = new OneOrMoreMatcher(children[0]);
+                    break;
+                case OPTIONAL:
+                    matcher = new OptionalMatcher(children[0]);
+                    break;
+                case SEQUENCE:
+                    matcher = new SequenceMatcher(children);
+                    break;
+                case STRING:
+                    matcher = new StringMatcher(children, readChars(in));
+                    break;
+                case TEST:
+                    matcher = new TestMatcher(children[0]);
+                    break;
+                case TEST_NOT:
+                    matcher = new TestNotMatcher(children[0]);
+                    break;
+                case ZERO_OR_MORE:
+                    matcher = new ZeroOrMoreMatcher(children[0]);
+                    break;
+                default:
+                    throw new IOException("Corrupt grammar snapshot, unknown record type " + type);
+            }
+            return applyFlags(matcher, flags, label);
+        }
+
+        private Action readAction() throws IOException, ClassNotFoundException {
+            if (in.readByte() == SERIALIZED_ACTION) return (Action) in.readObject();
+
+            String className = in.readUTF();
+            Class<?> actionClass = Class.forName(className, true, classLoader);
+            Map<String, Field> fields = new HashMap<String, Field>();
+            for (Field field : getInstanceFields(actionClass)) {
+                fields.put(field.getDeclaringClass().getName() + '.' + field.getName(), field);
+            }
+            Object action = instantiate(actionClass);
+            for (int i = readVarInt(in); i > 0; i--) {
+                String fieldName = in.readUTF() + '.' + in.readUTF();
+                Object value;
+                if (in.readByte() == PARSER) {
+                    if (parser == null) {
+                        throw new GrammarException("Snapshot contains actions referring to the parser, " +
+                                "the parser instance to bind them to must be given when loading");
+                    }
+                    value = parser;
+                } else {
+                    value = in.readObject();
+                }
+                Field field = fields.get(fieldName);
+                if (field == null) throw new IOException("Action class '" + className + "' has no field " + fieldName);
+                try {
+                    field.set(action, value);
+                } catch (Exception e) {
+                    throw new GrammarException(e, "Could not restore field '%s' of action class '%s'", fieldName,
+                            className);
+                }
+            }
+            return (Action) action;
+        }
+
+        // creates an instance of the given class with the constructor taking the fewest arguments,
+        // passing default values for all of them (all fields are restored afterwards)
+        private Object instantiate(Class<?> type) {
+            Constructor<?> constructor = null;
+            for (Constructor<?> c : type.getDeclaredConstructors()) {
+                if (constructor == null || c.getParameterTypes().length < constructor.getParameterTypes().length) {
+                    constructor = c;
+                }
+            }
+            if (constructor == null) {
+                throw new GrammarException("Action class '%s' has no constructor", type.getName());
+            }
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            Object[] args = new Object[parameterTypes.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = getDefaultValue(parameterTypes[i]);
+            }
+            try {
+                constructor.setAccessible(true);
+                return constructor.newInstance(args);
+            } catch (Exception e) {
+                throw new GrammarException(e, "Could not instantiate action class '%s'", type.getName());
+            }
+        }
+
+        private static Object getDefaultValue(Class<?> type) {
+            if (type == String.class) return "";
+            if (type == boolean.class) return Boolean.FALSE;
+            if (type == char.class) return '\0';
+            if (type == byte.class) return (byte) 0;
+            if (type == short.class) return (short) 0;
+            if (type == int.class) return 0;
+            if (type == long.class) return 0L;
+            if (type == float.class) return 0f;
+            if (type == double.class) return 0d;
+            return null;
+        }
+
+        private Matcher createCustomMatcher(String className) throws ClassNotFoundException {
+            try {
+                Constructor<?> constructor = Class.forName(className, true, classLoader).getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return (Matcher) constructor.newInstance();
+            } catch (ClassNotFoundException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new GrammarException(e, "Could not instantiate custom matcher class '%s'", className);
+            }
+        }
+
+        private Matcher applyFlags(Matcher matcher, int flags, String label) {
+            Rule rule = matcher;
+            if (matcher instanceof SequenceMatcher && !(matcher instanceof StringMatcher) ||
+                    matcher instanceof FirstOfMatcher || matcher instanceof OneOrMoreMatcher || matcher instanceof ZeroOrMoreMatcher ||
+                    matcher instanceof OptionalMatcher || matcher instanceof TestMatcher ||
+                    matcher instanceof TestNotMatcher) {
+                // matchers with a default label only carry a label of their own if it was custom
+                if ((flags & CUSTOM_LABEL) != 0) {
+                    rule = rule.label(label);
+                } else {
+                    setDefaultLabel(matcher, label);
+                }
+            } else if (label != null && !label.equals(matcher.getLabel())) {
+                rule = rule.label(label);
+            }
+            if ((flags & NODE_SUPPRESSED) != 0) rule = rule.suppressNode();
+            if ((flags & SUBNODES_SUPPRESSED) != 0) rule = rule.suppressSubnodes();
+            if ((flags & NODE_SKIPPED) != 0) rule = rule.skipNode();
+            return (Matcher) rule;
+        }
+
+        private void setDefaultLabel(Matcher matcher, String label) {
+            if (matcher instanceof SequenceMatcher) ((SequenceMatcher) matcher).defaultLabel(label);
+            else if (matcher instanceof FirstOfMatcher) ((FirstOfMatcher) matcher).defaultLabel(label);
+            else if (matcher instanceof OneOrMoreMatcher) ((OneOrMoreMatcher) matcher).defaultLabel(label);
+            else if (matcher instanceof ZeroOrMoreMatcher) ((ZeroOrMoreMatcher) matcher).defaultLabel(label);
+            else if (matcher instanceof OptionalMatcher) ((OptionalMatcher) matcher).defaultLabel(label);
+            else if (matcher instanceof TestMatcher) ((TestMatcher) matcher).defaultLabel(label);
+            else ((TestNotMatcher) matcher).defaultLabel(label);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.Rule;
+import org.parboiled.common.Utils;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.matchers.MemoMismatchesMatcher;
+import org.parboiled.matchers.VarFramingMatcher;
+import org.parboiled.matchervisitors.DoWithMatcherVisitor;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkElementIndex;
+
+/**
+ * <p>Assigns dense integer ids (starting at zero) to the matchers of a rule graph, so that per-matcher data can be
+ * kept in flat arrays indexed by matcher id rather than in maps or matcher tags.</p>
+ * <p>All matchers reachable from the root rule are assigned an id on construction. Matchers encountered later
+ * (e.g. the rules created on demand by a {@link org.parboiled.matchers.LazyMatcher}) receive their id on their first
+ * {@link #getId(Matcher)} call. Wrapping {@link MemoMismatchesMatcher}s and {@link VarFramingMatcher}s share the id
+ * of the matcher they wrap.</p>
+ * <p>Instances are thread-safe. Lookups of known matchers do not synchronize.</p>
+ */
+public class MatcherIds {
+    private volatile Map<Matcher, Integer> ids;
+    private volatile Matcher[] matchers;
+    private volatile int size; // the number of distinct ids, wrappers do not count
+
+    /**
+     * Creates a new MatcherIds instance for the graph underneath the given root rule.
+     *
+     * @param rule the root rule
+     */
+    public MatcherIds(Rule rule) {
+        checkArgNotNull(rule, "rule");
+        final Map<Matcher, Integer> map = new IdentityHashMap<Matcher, Integer>();
+        final Matcher[][] array = new Matcher[][] {new Matcher[64]};
+        ((Matcher) rule).accept(new DoWithMatcherVisitor(new DoWithMatcherVisitor.Action() {
+            public void process(Matcher matcher) {
+                if (map.containsKey(matcher)) return;
+                int id = map.size();
+                map.put(matcher, id);
+                if (id == array[0].length) array[0] = Utils.copyOf(array[0], id * 2);
+                array[0][id] = matcher;
+            }
+        }));
+        this.matchers = array[0];
+        this.size = map.size();
+        this.ids = map;
+    }
+
+    /**
+     * @return the number of ids assigned so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the id of the given matcher, assigning a new one if the matcher is not yet known.
+     *
+     * @param matcher the matcher
+     * @return the id
+     */
+    public int getId(Matcher matcher) {
+        Integer id = ids.get(matcher);
+        return id != null ? id : assignId(matcher);
+    }
+
+    /**
+     * Returns the matcher with the given id.
+     *
+     * @param id the id
+     * @return the matcher
+     */
+    public Matcher getMatcher(int id) {
+        checkElementIndex(id, size); // read size first, so we see a matchers array containing the id
+        return matchers[id];
+    }
+
+    private synchronized int assignId(Matcher matcher) {
+        checkArgNotNull(matcher, "matcher");
+        Integer id = ids.get(matcher);
+        if (id != null) return id;
+
+        Matcher inner = VarFramingMatcher.unwrap(MemoMismatchesMatcher.unwrap(matcher));
+        if (inner != matcher) {
+            id = getId(inner);
+        } else {
+            id = size;
+            Matcher[] newMatchers = id < matchers.length ? matchers : Utils.copyOf(matchers, id * 2);
+            newMatchers[id] = matcher;
+            matchers = newMatchers;
+            size = id + 1;
+        }
+
+        // copy-on-write, so that unsynchronized readers always see a consistent map
+        Map<Matcher, Integer> newIds = new IdentityHashMap<Matcher, Integer>(ids);
+        newIds.put(matcher, id);
+        ids = newIds;
+        return id;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import org.parboiled.Rule;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.parserunners.ParseRunner;
+
+/**
+ * A {@link ParsingEventListener} implementation ignoring all events, for extension by listeners only interested in
+ * some of them.
+ */
+public class ParsingEventAdapter implements ParsingEventListener {
+
+    public void runStarted(ParseRunner<?> runner, Rule rule, int inputLength) {
+    }
+
+    public void runFinished(ParseRunner<?> runner, Rule rule, int inputLength, boolean matched, int errorCount,
+                            long nanoTime) {
+    }
+
+    public void recoveryPhaseFinished(ParseRunner<?> runner, RecoveryPhase phase, int errorIndex, long nanoTime) {
+    }
+
+    public void slowRuleInvocation(ParseRunner<?> runner, Matcher matcher, int startIndex, int endIndex,
+                                   boolean matched, long nanoTime) {
+    }
+
+    public void parserClassTransformed(Class<?> parserClass, long nanoTime) {
+    }
+}
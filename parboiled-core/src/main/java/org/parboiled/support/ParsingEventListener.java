@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import org.parboiled.Rule;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.parserunners.ParseRunner;
+
+/**
+ * <p>Receives the parsing events of all parse runners (and the parser class transformation) in the JVM, once
+ * registered with {@link ParsingEvents#setListener(ParsingEventListener)}. This allows for forwarding parsing
+ * events to an event based profiling infrastructure, like the JDK Flight Recorder on JVMs supporting it.</p>
+ * <p>Implementations must be thread-safe and should be fast, since they are called synchronously.
+ * Extend the {@link ParsingEventAdapter} to only implement the methods of interest.</p>
+ */
+public interface ParsingEventListener {
+
+    /**
+     * The phases of error recovery in the {@link org.parboiled.parserunners.RecoveringParseRunner}.
+     */
+    enum RecoveryPhase {
+        /** locating the first parse error */
+        LOCATING,
+        /** collecting the error report information for the current parse error */
+        REPORTING,
+        /** trying single character fixes or resynchronization for the current parse error */
+        FIXING,
+        /** the final run on the fixed input, creating the parse tree */
+        FINAL_RUN
+    }
+
+    /**
+     * Called when a parse runner starts a parsing run. The inner runs of parse runners delegating to other runners,
+     * like the {@link org.parboiled.parserunners.RecoveringParseRunner}, are not signalled separately.
+     *
+     * @param runner      the parse runner
+     * @param rule        the root rule
+     * @param inputLength the number of input characters or -1, if not known without reading ahead in the input
+     */
+    void runStarted(ParseRunner<?> runner, Rule rule, int inputLength);
+
+    /**
+     * Called when a parse runner has finished a parsing run.
+     *
+     * @param runner      the parse runner
+     * @param rule        the root rule
+     * @param inputLength the number of input characters or -1, if the run has not reached the end of the input and
+     *                    the length is not known without reading ahead in the input
+     * @param matched     whether the input was matched
+     * @param errorCount  the number of parse errors
+     * @param nanoTime    the duration of the run
+     */
+    void runFinished(ParseRunner<?> runner, Rule rule, int inputLength, boolean matched, int errorCount,
+                     long nanoTime);
+
+    /**
+     * Called when a phase of the error recovery of a {@link org.parboiled.parserunners.RecoveringParseRunner}
+     * has finished.
+     *
+     * @param runner     the parse runner
+     * @param phase      the phase
+     * @param errorIndex the input index of the parse error the phase was concerned with, -1 for the final run
+     * @param nanoTime   the duration of the phase
+     */
+    void recoveryPhaseFinished(ParseRunner<?> runner, RecoveryPhase phase, int errorIndex, long nanoTime);
+
+    /**
+     * Called for every rule invocation taking at least {@link ParsingEvents#getSlowRuleThreshold()} nanoseconds
+     * (including the time spent in its sub rules), if such a threshold is set.
+     *
+     * @param runner     the parse runner
+     * @param matcher    the matcher of the rule
+     * @param startIndex the input index the rule invocation started at
+     * @param endIndex   the input index the rule invocation ended at
+     * @param matched    whether the rule matched
+     * @param nanoTime   the duration of the rule invocation
+     */
+    void slowRuleInvocation(ParseRunner<?> runner, Matcher matcher, int startIndex, int endIndex, boolean matched,
+                            long nanoTime);
+
+    /**
+     * Called when a parser class has been extended by the parboiled-java bytecode transformation.
+     *
+     * @param parserClass the parser class
+     * @param nanoTime    the duration of the transformation
+     */
+    void parserClassTransformed(Class<?> parserClass, long nanoTime);
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>Holds the JVM-wide {@link ParsingEventListener}. Parsing events are disabled by default, in which case the
+ * only overhead is a check of a volatile field per parsing run (and per parser class transformation).</p>
+ * <p>Since parboiled itself must run on JVMs without the JDK Flight Recorder, it does not define JFR events.
+ * To correlate parsing with GC and CPU activity in JFR recordings, define custom <code>jdk.jfr.Event</code>
+ * subclasses and commit them from a ParsingEventListener.</p>
+ */
+public final class ParsingEvents {
+
+    private static volatile ParsingEventListener listener;
+    private static volatile long slowRuleThreshold;
+
+    private ParsingEvents() {}
+
+    /**
+     * @return the currently registered listener or null, if parsing events are disabled
+     */
+    public static ParsingEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Registers the given listener, replacing any previously registered one.
+     * Pass null to disable parsing events.
+     *
+     * @param listener the listener
+     */
+    public static void setListener(ParsingEventListener listener) {
+        ParsingEvents.listener = listener;
+    }
+
+    /**
+     * @return the duration in nanoseconds from which on rule invocations are reported, 0 if disabled
+     */
+    public static long getSlowRuleThreshold() {
+        return slowRuleThreshold;
+    }
+
+    /**
+     * Sets the duration in nanoseconds from which on rule invocations are reported as
+     * {@link ParsingEventListener#slowRuleInvocation} events. Since this requires the timing of every single rule
+     * invocation it is disabled by default (a threshold of 0). It only takes effect for parsing runs started after
+     * the change and only if a listener is registered.
+     *
+     * @param nanos the threshold in nanoseconds, 0 to disable
+     */
+    public static void setSlowRuleThreshold(long nanos) {
+        checkArgument(nanos >= 0, "threshold must not be negative");
+        slowRuleThreshold = nanos;
+    }
+}
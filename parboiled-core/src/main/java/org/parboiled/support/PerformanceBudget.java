@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import org.parboiled.Rule;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.parserunners.ProfilingParseRunner;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkArgument;
+
+/**
+ * <p>A set of upper limits for the work a parser may spend on a given input, for use in regression tests.
+ * Since wall-clock time is too noisy to be checked in continuous integration builds a budget only limits
+ * deterministic counters, i.e. the number of rule invocations, the number of mismatched rule invocations
+ * (backtracks), the number of rule re-invocations at identical input locations and the estimated number of bytes
+ * allocated by the parsing engine. Rising counters are typically the first sign of a grammar change that makes
+ * parsing a lot slower on real-world inputs.</p>
+ * <p>The counters are determined with a {@link ProfilingParseRunner}, see {@link #measure(Rule, InputBuffer)}.</p>
+ */
+public class PerformanceBudget {
+    private long maxInvocations = -1;
+    private long maxBacktracks = -1;
+    private long maxReinvocations = -1;
+    private long maxAllocatedBytes = -1;
+
+    /**
+     * Parses the given input with a {@link ProfilingParseRunner} and returns the resulting report.
+     *
+     * @param rule  the root rule
+     * @param input the input
+     * @return the profiling report of the run
+     */
+    public static ProfilingParseRunner.Report measure(Rule rule, String input) {
+        checkArgNotNull(input, "input");
+        return measure(rule, new DefaultInputBuffer(input.toCharArray()));
+    }
+
+    /**
+     * Parses the given input with a {@link ProfilingParseRunner} and returns the resulting report.
+     *
+     * @param rule        the root rule
+     * @param inputBuffer the input
+     * @return the profiling report of the run
+     */
+    public static ProfilingParseRunner.Report measure(Rule rule, InputBuffer inputBuffer) {
+        ProfilingParseRunner<Object> runner = new ProfilingParseRunner<Object>(rule);
+        runner.run(inputBuffer);
+        return runner.getReport();
+    }
+
+    /**
+     * @param max the maximum number of rule invocations
+     * @return this instance
+     */
+    public PerformanceBudget maxInvocations(long max) {
+        checkArgument(max >= 0, "max must not be negative");
+        this.maxInvocations = max;
+        return this;
+    }
+
+    /**
+     * @param max the maximum number of rule invocations that did not match
+     * @return this instance
+     */
+    public PerformanceBudget maxBacktracks(long max) {
+        checkArgument(max >= 0, "max must not be negative");
+        this.maxBacktracks = max;
+        return this;
+    }
+
+    /**
+     * @param max the maximum number of rule invocations at input locations the rule has already been tried at
+     * @return this instance
+     */
+    public PerformanceBudget maxReinvocations(long max) {
+        checkArgument(max >= 0, "max must not be negative");
+        this.maxReinvocations = max;
+        return this;
+    }
+
+    /**
+     * @param max the maximum number of bytes estimated to be allocated by the parsing engine
+     * @return this instance
+     * @see ProfilingParseRunner.Allocations
+     */
+    public PerformanceBudget maxAllocatedBytes(long max) {
+        checkArgument(max >= 0, "max must not be negative");
+        this.maxAllocatedBytes = max;
+        return this;
+    }
+
+    /**
+     * Checks the given profiling report against this budget.
+     *
+     * @param report the report
+     * @return null if the budget is met, otherwise a message describing the violations along with the most
+     *         expensive rules
+     */
+    public String check(ProfilingParseRunner.Report report) {
+        checkArgNotNull(report, "report");
+        StringBuilder sb = new StringBuilder();
+        check(sb, "rule invocations", report.totalInvocations, maxInvocations);
+        check(sb, "backtracks", report.totalMismatches, maxBacktracks);
+        check(sb, "rule re-invocations", report.reinvocations, maxReinvocations);
+        check(sb, "allocated bytes", report.totalAllocations.getEstimatedBytes(), maxAllocatedBytes);
+        if (sb.length() == 0) return null;
+
+        sb.append('\n').append(report.printBasics()).append(report.printAllocations());
+        sb.append("\nTop 10 rules by invocations:\n");
+        sb.append(report.sortByInvocations().printTopRules(10, ProfilingParseRunner.Report.allRules));
+        if (maxAllocatedBytes >= 0) {
+            sb.append("\nTop 10 rules by allocations:\n");
+            sb.append(report.sortByAllocations().printTopAllocatingRules(10, ProfilingParseRunner.Report.allRules));
+        }
+        return sb.toString();
+    }
+
+    private static void check(StringBuilder sb, String what, long actual, long max) {
+        if (max >= 0 && actual > max) {
+            sb.append(String.format("Performance budget exceeded: %,d %s, budget is %,d\n", actual, what, max));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PerformanceBudget[");
+        if (maxInvocations >= 0) sb.append("invocations <= ").append(maxInvocations).append(", ");
+        if (maxBacktracks >= 0) sb.append("backtracks <= ").append(maxBacktracks).append(", ");
+        if (maxReinvocations >= 0) sb.append("re-invocations <= ").append(maxReinvocations).append(", ");
+        if (maxAllocatedBytes >= 0) sb.append("allocated bytes <= ").append(maxAllocatedBytes).append(", ");
+        if (sb.charAt(sb.length() - 1) == ' ') sb.setLength(sb.length() - 2);
+        return sb.append(']').toString();
+    }
+}
@@ -19,8 +19,6 @@ package org.parboiled.support;
 import org.parboiled.common.Factory;
 import org.parboiled.common.Reference;
 
-import java.util.LinkedList;
-
 import static org.parboiled.common.Preconditions.checkArgNotNull;
 
 /**
@@ -39,7 +37,7 @@ import static org.parboiled.common.Preconditions.checkArgNotNull;
 public class Var<T> extends Reference<T> {
 
     private Factory<T> initialValueFactory;
-    private LinkedList<T> stack;
+    private Object[] stack; // the saved values of all enclosing frames, stack[i] holds the value of level i + 1
     private int level;
     private String name;
 
@@ -110,8 +108,15 @@ public class Var<T> extends Reference<T> {
      */
     public boolean enterFrame() {
         if (level++ > 0) {
-            if (stack == null) stack = new LinkedList<T>();
-            stack.add(get());
+            int ix = level - 2;
+            if (stack == null) {
+                stack = new Object[8];
+            } else if (ix == stack.length) {
+                Object[] newStack = new Object[stack.length * 2];
+                System.arraycopy(stack, 0, newStack, 0, stack.length);
+                stack = newStack;
+            }
+            stack[ix] = get();
         }
         return set(initialValueFactory.create());
     }
@@ -122,9 +127,12 @@ public class Var<T> extends Reference<T> {
      *
      * @return true
      */
+    @SuppressWarnings({"unchecked"})
     public boolean exitFrame() {
         if (--level > 0) {
-            set(stack.removeLast());
+            int ix = level - 1;
+            set((T) stack[ix]);
+            stack[ix] = null; // don't hold on to values of exited frames
         }
         return true;
     }
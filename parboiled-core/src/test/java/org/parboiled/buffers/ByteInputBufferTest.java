@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.support.Chars;
+import org.parboiled.support.Position;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.assertEquals;
+
+public class ByteInputBufferTest {
+
+    @Test
+    public void testByteInputBuffer() {
+        byte[] bytes = new byte[] {'a', (byte) 0xFF, '\r', '\n', 0x00, 'b', '\n', 'c'};
+        InputBuffer buf = new ByteInputBuffer(bytes);
+        assertEquals(buf.charAt(-1), Chars.EOI);
+        assertEquals(buf.charAt(0), 'a');
+        assertEquals(buf.charAt(1), '\u00ff');
+        assertEquals(buf.charAt(4), '\u0000');
+        assertEquals(buf.charAt(8), Chars.EOI);
+        assertEquals(buf.test(4, new char[] {'\u0000', 'b'}), true);
+        assertEquals(buf.test(6, new char[] {'\n', 'c', 'd'}), false);
+        assertEquals(buf.extract(0, 2), "a\u00ff");
+
+        assertEquals(buf.getLineCount(), 3);
+        assertEquals(buf.extractLine(1), "a\u00ff");
+        assertEquals(buf.extractLine(2), "\u0000b");
+        assertEquals(buf.extractLine(3), "c");
+        assertEquals(buf.getPosition(0), new Position(1, 1));
+        assertEquals(buf.getPosition(5), new Position(2, 2));
+        assertEquals(buf.getPosition(7), new Position(3, 1));
+    }
+
+    @Test
+    public void testByteBufferView() {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[] {'x', 'a', 'b', 'c', 'y'});
+        byteBuffer.position(1);
+        byteBuffer.limit(4);
+        ByteInputBuffer buf = new ByteInputBuffer(byteBuffer);
+        assertEquals(buf.charAt(0), 'a');
+        assertEquals(buf.charAt(3), Chars.EOI);
+        assertEquals(buf.extract(-1, 10), "abc");
+        assertEquals(buf.extractBytes(1, 3), new byte[] {'b', 'c'});
+        assertEquals(byteBuffer.position(), 1);
+
+        assertEquals(ByteInputBuffer.toChar(-1), '\u00ff');
+        assertEquals(ByteInputBuffer.toChars(0x41, -128), new char[] {'A', '\u0080'});
+    }
+}
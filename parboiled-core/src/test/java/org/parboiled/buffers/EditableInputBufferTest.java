@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.support.Chars;
+import org.parboiled.support.Position;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class EditableInputBufferTest {
+
+    @Test
+    public void testEdits() {
+        EditableInputBuffer buf = new EditableInputBuffer("abc\ndef\n".toCharArray());
+        buf.replace(1, 2, "XYZ");
+        assertEquals(buf.toString(), "aXYZc\ndef\n");
+        buf.insert(0, ">");
+        buf.insert(buf.getLength(), "ghi");
+        buf.delete(7, 9);
+        assertEquals(buf.toString(), ">aXYZc\nf\nghi");
+        assertEquals(buf.getLength(), 12);
+        assertEquals(buf.charAt(12), Chars.EOI);
+
+        assertEquals(buf.getLineCount(), 3);
+        assertEquals(buf.extractLine(2), "f");
+        assertEquals(buf.getPosition(9), new Position(3, 1));
+        assertEquals(buf.extract(2, 5), "XYZ");
+
+        buf.delete(0, buf.getLength());
+        assertEquals(buf.toString(), "");
+        assertEquals(buf.charAt(0), Chars.EOI);
+        buf.insert(0, "new");
+        assertEquals(buf.getPosition(2), new Position(1, 3));
+    }
+
+    @Test
+    public void testRandomEdits() {
+        StringBuilder model = new StringBuilder("Lorem ipsum dolor sit amet,\nconsectetur adipiscing elit.\n");
+        EditableInputBuffer buf = new EditableInputBuffer(model.toString().toCharArray());
+        Random random = new Random(5);
+        for (int round = 0; round < 500; round++) {
+            int start = random.nextInt(model.length() + 1);
+            int end = Math.min(model.length(), start + random.nextInt(4));
+            String text = random.nextInt(3) == 0 ? "" : "\n+-*/".substring(random.nextInt(5));
+            buf.replace(start, end, text);
+            model.replace(start, end, text);
+
+            assertEquals(buf.getLength(), model.length());
+            for (int i = 0; i < model.length(); i++) {
+                assertEquals(buf.charAt(i), model.charAt(i));
+            }
+            for (int i = model.length() - 1; i >= 0; i -= 3) {
+                assertEquals(buf.charAt(i), model.charAt(i));
+            }
+        }
+        assertEquals(buf.toString(), model.toString());
+    }
+
+}
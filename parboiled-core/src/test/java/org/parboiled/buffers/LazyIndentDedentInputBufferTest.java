@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.common.FileUtils;
+import org.parboiled.errors.IllegalIndentationException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.parboiled.buffers.InputBufferUtils.collectContent;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LazyIndentDedentInputBufferTest {
+
+    @Test
+    public void testSameContentAsIndentDedentInputBuffer() {
+        assertSameAsEager(FileUtils.readAllTextFromResource("IndentDedentBuffer2.test"), 4, "#", true);
+        assertSameAsEager(FileUtils.readAllTextFromResource("IndentDedentBuffer3.test"), 4, "//", true);
+        assertSameAsEager("###\n\nA#X\n  \n  B\n\n  C\nDEF", 2, "#", false);
+        assertSameAsEager("level 1\n  level 2 # comment", 2, "#", true);
+        assertSameAsEager("", 2, "#", true);
+
+        Random random = new Random(17);
+        String[] fragments = {" ", "  ", "\t", "\n", "\n", "\n", "a", "bc", "#x", "d e"};
+        for (int i = 0; i < 200; i++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(60);
+            for (int j = 0; j < count; j++) {
+                sb.append(fragments[random.nextInt(fragments.length)]);
+            }
+            assertSameAsEager(sb.toString(), 2, random.nextBoolean() ? "#" : null, random.nextBoolean());
+        }
+    }
+
+    @Test
+    public void testRunLengthIndex() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("key").append(i).append(":\n  value ").append(i).append('\n');
+        }
+        LazyIndentDedentInputBuffer buf = new LazyIndentDedentInputBuffer(sb.toString().toCharArray(), 2, null,
+                true, true);
+        assertEquals(buf.charAt(0), 'k');
+        assertTrue(buf.getSegmentCount() <= 2); // only the first line has been converted so far
+
+        String content = collectContent(buf);
+        assertEquals(content, collectContent(new IndentDedentInputBuffer(sb.toString().toCharArray(), 2, null,
+                true, true)));
+        assertTrue(buf.getSegmentCount() <= 4 * 1000 + 2); // a few segments per line, independent of line lengths
+    }
+
+    @Test
+    public void testIllegalIndentationIsReportedLazily() {
+        LazyIndentDedentInputBuffer buf = new LazyIndentDedentInputBuffer(("" +
+                "level 1\n" +
+                "  \tlevel 2\n" +
+                "\t    level 3\n" +
+                "     illegal!!\n").toCharArray(), 2, null, true, true);
+        assertEquals(buf.charAt(0), 'l');
+        try {
+            collectContent(buf);
+        } catch (IllegalIndentationException e) {
+            assertEquals(e.getMessage(), "Illegal indentation in line 4:\n" +
+                    "     illegal!!\n" +
+                    "^^^^^\n");
+            return;
+        }
+        Assert.fail("Incorrect or no IllegalIndentationException thrown");
+    }
+
+    private static void assertSameAsEager(String input, int tabStop, String lineCommentStart,
+                                          boolean skipEmptyLines) {
+        char[] chars = input.toCharArray();
+        InputBuffer eager = new IndentDedentInputBuffer(chars, tabStop, lineCommentStart, false, skipEmptyLines);
+        InputBuffer lazy = new LazyIndentDedentInputBuffer(chars, tabStop, lineCommentStart, false, skipEmptyLines);
+
+        // read backwards first to force a conversion of the whole input on the first access
+        String content = collectContent(eager);
+        for (int i = content.length() + 2; i >= 0; i--) {
+            assertEquals(lazy.charAt(i), eager.charAt(i));
+        }
+
+        lazy = new LazyIndentDedentInputBuffer(chars, tabStop, lineCommentStart, false, skipEmptyLines);
+        assertEquals(collectContent(lazy), content);
+        for (int i = -1; i <= content.length() + 1; i++) {
+            // the eager buffer cannot map negative indices without content
+            if (content.length() > 0 || i >= 0) {
+                assertEquals(lazy.getOriginalIndex(i), eager.getOriginalIndex(i), "index " + i);
+            }
+        }
+        for (int i = 0; i < content.length(); i += 3) {
+            assertEquals(lazy.extract(i, i + 5), eager.extract(i, i + 5));
+            assertEquals(lazy.getPosition(i), eager.getPosition(i));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.support.Position;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class LineIndexTest {
+
+    @Test
+    public void testParallelBuildEqualsSequentialBuild() {
+        char[] chars = randomLines(new Random(42), 20000);
+        LineIndex sequential = LineIndex.of(chars, 1);
+        for (int parallelism : new int[] {2, 3, 7, 64}) {
+            LineIndex parallel = LineIndex.of(chars, parallelism);
+            assertEquals(parallel.getLength(), chars.length);
+            assertEquals(parallel.getLineCount(), sequential.getLineCount());
+            for (int line = 1; line <= sequential.getLineCount(); line++) {
+                assertEquals(parallel.getLineStart(line), sequential.getLineStart(line));
+                assertEquals(parallel.getLineEnd(line), sequential.getLineEnd(line));
+            }
+        }
+
+        byte[] bytes = new byte[chars.length];
+        for (int i = 0; i < chars.length; i++) bytes[i] = (byte) chars[i];
+        LineIndex byteIndex = LineIndex.of(ByteBuffer.wrap(bytes), 5);
+        assertEquals(byteIndex.getLineCount(), sequential.getLineCount());
+        assertEquals(byteIndex.getLineStart(byteIndex.getLineCount()),
+                sequential.getLineStart(sequential.getLineCount()));
+    }
+
+    @Test
+    public void testLookupsInAnyOrder() {
+        char[] chars = randomLines(new Random(7), 5000);
+        LineIndex index = LineIndex.of(chars);
+
+        // expected positions by straightforward counting
+        Position[] expected = new Position[chars.length];
+        int line = 1, column = 1;
+        for (int i = 0; i < chars.length; i++) {
+            expected[i] = new Position(line, column++);
+            if (chars[i] == '\n') {
+                line++;
+                column = 1;
+            }
+        }
+
+        for (int i = 0; i < chars.length; i++) {
+            assertEquals(index.getPosition(i), expected[i]);
+        }
+        for (int i = 0; i < chars.length; i += 97) {
+            assertEquals(index.getPosition(i), expected[i]);
+        }
+        for (int i = chars.length - 1; i >= 0; i -= 13) {
+            assertEquals(index.getPosition(i), expected[i]);
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            int ix = random.nextInt(chars.length);
+            assertEquals(index.getPosition(ix), expected[ix]);
+        }
+    }
+
+    @Test
+    public void testEdgeCases() {
+        LineIndex empty = LineIndex.of(new char[0], 4);
+        assertEquals(empty.getLineCount(), 1);
+        assertEquals(empty.getPosition(0), new Position(1, 1));
+
+        LineIndex index = LineIndex.of("ab\n\ncd".toCharArray());
+        assertEquals(index.getPosition(6), new Position(3, 3));
+        assertEquals(index.getPosition(0), new Position(1, 1));
+        assertEquals(index.getPosition(2), new Position(1, 3));
+        assertEquals(index.getPosition(3), new Position(2, 1));
+        assertEquals(index.getLine(4), 3);
+        assertEquals(index.getLineEnd(3), 6);
+    }
+
+    @Test
+    public void testSharedAcrossBuffers() {
+        char[] chars = "abc\ndef\n".toCharArray();
+        LineIndex index = LineIndex.of(chars);
+        DefaultInputBuffer buffer = new DefaultInputBuffer(chars, index);
+        assertSame(buffer.getLineIndex(), index);
+        assertEquals(buffer.getPosition(5), new Position(2, 2));
+        assertEquals(buffer.extractLine(2), "def");
+        assertEquals(new MutableInputBuffer(buffer).getPosition(4), new Position(2, 1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMismatchingIndex() {
+        new DefaultInputBuffer("abc".toCharArray(), LineIndex.of("ab".toCharArray()));
+    }
+
+    private static char[] randomLines(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(20);
+            chars[i] = r == 0 ? '\n' : r == 1 && i > 0 && chars[i - 1] == '\n' ? '\n' : (char) ('a' + r);
+        }
+        return chars;
+    }
+
+}
@@ -19,6 +19,10 @@ package org.parboiled.buffers;
 import org.parboiled.support.Position;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.testng.Assert.assertEquals;
 
 public class MutableInputBufferTest {
@@ -186,4 +190,43 @@ public class MutableInputBufferTest {
         assertEquals(buf.getPosition(15), new Position(5,1));
     }
 
+    @Test
+    public void testManyInsertionsAndUndos() {
+        String text = "The quick brown fox jumps over the lazy dog\n";
+        MutableInputBuffer buf = new MutableInputBuffer(new DefaultInputBuffer(text.toCharArray()));
+
+        // simple model: the buffer content with inserted chars marked by their original index being -1
+        List<Character> chars = new ArrayList<Character>();
+        List<Integer> origIndices = new ArrayList<Integer>();
+        for (int i = 0; i < text.length(); i++) {
+            chars.add(text.charAt(i));
+            origIndices.add(i);
+        }
+
+        Random random = new Random(11);
+        for (int round = 0; round < 2000; round++) {
+            int index = random.nextInt(chars.size());
+            if (origIndices.get(index) == -1 && random.nextBoolean()) {
+                assertEquals(buf.undoCharInsertion(index), chars.remove(index).charValue());
+                origIndices.remove(index);
+            } else {
+                char c = (char) ('A' + random.nextInt(26));
+                buf.insertChar(index, c);
+                chars.add(index, c);
+                origIndices.add(index, -1);
+            }
+            for (int i = 0; i < chars.size(); i += 1 + random.nextInt(5)) {
+                assertEquals(buf.charAt(i), chars.get(i).charValue());
+            }
+        }
+        int inserted = 0;
+        for (int i = 0; i < chars.size(); i++) {
+            assertEquals(buf.charAt(i), chars.get(i).charValue());
+            if (origIndices.get(i) == -1) inserted++;
+            else assertEquals(buf.getOriginalIndex(i), origIndices.get(i).intValue());
+        }
+        assertEquals(buf.getInsertionCount(), inserted);
+        assertEquals(buf.extract(0, chars.size()), text);
+    }
+
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.buffers;
+
+import org.parboiled.common.Factory;
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class StreamingInputBufferTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testAgainstDefaultInputBuffer() throws IOException {
+        final String text = randomText(new Random(3), 50000);
+        final byte[] gzipped = gzip(text);
+        final int[] opened = new int[1];
+        StreamingInputBuffer buffer = new StreamingInputBuffer(new Factory<Reader>() {
+            public Reader create() {
+                opened[0]++;
+                try {
+                    return new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(gzipped)), UTF8);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, 1000, 4);
+        DefaultInputBuffer reference = new DefaultInputBuffer(text.toCharArray());
+
+        // forward scan with backtracking inside of the window
+        for (int i = 0; i < text.length(); i += 97) {
+            for (int j = Math.max(0, i - 2500); j < i; j += 251) {
+                assertEquals(buffer.charAt(j), reference.charAt(j));
+            }
+            assertEquals(buffer.extract(i - 50, i + 50), reference.extract(i - 50, i + 50));
+            assertEquals(buffer.getPosition(i), reference.getPosition(i));
+        }
+        assertEquals(opened[0], 1);
+
+        assertEquals(buffer.charAt(text.length()), Chars.EOI);
+        assertEquals(buffer.getLineCount(), reference.getLineCount());
+        assertEquals(buffer.getDecodedLength(), text.length());
+
+        // random access behind the window reopens the input
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            int index = random.nextInt(text.length());
+            assertEquals(buffer.charAt(index), reference.charAt(index));
+        }
+        for (int line = 1; line <= reference.getLineCount(); line += 37) {
+            assertEquals(buffer.extractLine(line), reference.extractLine(line));
+        }
+        assertEquals(buffer.extractLine(reference.getLineCount()), reference.extractLine(reference.getLineCount()));
+    }
+
+    @Test
+    public void testNonReopenableReader() {
+        String text = randomText(new Random(9), streamLength());
+        StreamingInputBuffer buffer = new StreamingInputBuffer(new StringReader(text));
+        assertEquals(buffer.charAt(10), text.charAt(10));
+        assertEquals(buffer.extract(0, 20), text.substring(0, 20));
+        assertEquals(buffer.getLineCount(), new DefaultInputBuffer(text.toCharArray()).getLineCount());
+        try {
+            buffer.charAt(StreamingInputBuffer.DEFAULT_CHUNK_SIZE + 1); // the second chunk has been evicted by now
+            fail();
+        } catch (ParserRuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGzipFile() throws IOException {
+        String text = "first line\r\nsecond line\nthird";
+        File file = File.createTempFile("parboiled", ".gz");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(gzip(text));
+            out.close();
+            StreamingInputBuffer buffer = StreamingInputBuffer.forGzipFile(file, UTF8);
+            assertEquals(buffer.extract(0, 100), text);
+            assertEquals(buffer.getLineCount(), 3);
+            assertEquals(buffer.extractLine(1), "first line");
+            assertEquals(buffer.extractLine(3), "third");
+            assertEquals(buffer.getPosition(13).line, 2);
+            assertEquals(buffer.getPosition(13).column, 2);
+            buffer.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidGzipFile() throws IOException {
+        File file = File.createTempFile("parboiled", ".gz");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("not gzipped".getBytes("UTF-8"));
+            out.close();
+            try {
+                StreamingInputBuffer.forGzipFile(file, UTF8).charAt(0);
+                fail();
+            } catch (ParserRuntimeException e) {
+                assertEquals(e.getMessage(), "Could not open gzip file '" + file + '\'');
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static int streamLength() {
+        return StreamingInputBuffer.DEFAULT_CHUNK_SIZE * (StreamingInputBuffer.DEFAULT_MAX_CHUNKS + 2);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            int r = random.nextInt(40);
+            sb.append(r == 0 ? '\n' : r == 1 ? '\u00e4' : (char) ('a' + r % 26));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(text.getBytes(UTF8));
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.buffers;
+
+import org.parboiled.errors.ParserRuntimeException;
+import org.parboiled.support.Chars;
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class SubInputBufferTest {
+
+    @Test
+    public void testRange() {
+        SubInputBuffer buf = new SubInputBuffer(new DefaultInputBuffer("abc\ndef".toCharArray()), 2, 5);
+        assertEquals(buf.getLength(), 3);
+        assertEquals(buf.charAt(0), 'c');
+        assertEquals(buf.charAt(2), 'd');
+        assertEquals(buf.charAt(3), Chars.EOI);
+        assertEquals(buf.charAt(-1), Chars.EOI);
+        assertEquals(buf.extract(0, 10), "c\nd");
+        assertEquals(buf.getPosition(2).line, 2);
+        assertEquals(InputBufferUtils.getKnownLength(buf), 3);
+        try {
+            buf.charAt(100004);
+            fail();
+        } catch (ParserRuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOpenRange() {
+        SubInputBuffer buf = new SubInputBuffer(new DefaultInputBuffer("abc\ndef".toCharArray()), 2);
+        assertEquals(buf.getLength(), -1);
+        assertEquals(buf.charAt(3), 'e');
+        assertEquals(buf.charAt(4), 'f');
+        assertEquals(buf.charAt(5), Chars.EOI);
+        assertEquals(buf.extract(2, 100), "def");
+        assertEquals(InputBufferUtils.getKnownLength(buf), 5);
+
+        // the length of a range of a streaming input is only known once its end has been reached
+        buf = new SubInputBuffer(new StreamingInputBuffer(new StringReader("abc\ndef")), 2);
+        assertEquals(InputBufferUtils.getKnownLength(buf), -1);
+        assertEquals(buf.charAt(5), Chars.EOI);
+        assertEquals(InputBufferUtils.getKnownLength(buf), 5);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class InvocationSetTest {
+
+    @Test
+    public void testExactBelowCapacity() {
+        InvocationSet invocations = new InvocationSet(1 << 16);
+        Random random = new Random(11);
+        for (int run = 0; run < 3; run++) {
+            Set<Long> expected = new HashSet<Long>();
+            for (int i = 0; i < 20000; i++) {
+                int id = random.nextInt(50);
+                int index = random.nextInt(2000) + run * 1000000;
+                assertEquals(invocations.add(id, index), !expected.add(((long) id << 32) | index));
+            }
+            invocations.clear();
+        }
+        assertFalse(invocations.add(1, 1));
+        assertTrue(invocations.add(1, 1));
+    }
+
+    @Test
+    public void testBoundedCapacityNeverOverreports() {
+        InvocationSet invocations = new InvocationSet(64);
+        Set<Long> seen = new HashSet<Long>();
+        Random random = new Random(13);
+        for (int i = 0; i < 100000; i++) {
+            int id = random.nextInt(10);
+            int index = random.nextInt(100000);
+            boolean isNew = seen.add(((long) id << 32) | index);
+            if (invocations.add(id, index)) {
+                assertFalse(isNew);
+            }
+        }
+        // recent re-invocations are still detected
+        assertFalse(invocations.add(3, 123456789));
+        assertTrue(invocations.add(3, 123456789));
+    }
+}
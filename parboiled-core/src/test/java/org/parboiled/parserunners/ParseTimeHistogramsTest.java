@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ParseTimeHistogramsTest {
+
+    @Test
+    public void testBucketIndices() {
+        for (long value : new long[] {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.lowestValueInBucket(index) <= value, "value " + value);
+            assertTrue(LatencyHistogram.highestValueInBucket(index) >= value, "value " + value);
+            long bucketWidth = LatencyHistogram.highestValueInBucket(index) -
+                    LatencyHistogram.lowestValueInBucket(index) + 1;
+            assertTrue(bucketWidth <= Math.max(1, value / 32), "value " + value);
+        }
+        assertEquals(LatencyHistogram.bucketIndex(Long.MAX_VALUE), 59 * 32 - 1);
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        assertEquals(snapshot.getCount(), 1000);
+        assertEquals(snapshot.getMin(), 1000);
+        assertEquals(snapshot.getMax(), 1000000);
+        assertEquals(snapshot.getMean(), 500500.0);
+        assertWithinPrecision(snapshot.getValueAtPercentile(50), 500000);
+        assertWithinPrecision(snapshot.getValueAtPercentile(99), 990000);
+        assertEquals(snapshot.getValueAtPercentile(100), 1000000);
+        assertEquals(histogram.snapshot().getCount(), 0);
+        assertEquals(histogram.snapshot().getValueAtPercentile(50), 0);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final ParseTimeHistograms histograms = new ParseTimeHistograms();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histograms.record(i % 2 == 0 ? "A" : "B", i % 5000, i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        ParseTimeHistograms.Snapshot snapshot = histograms.snapshotAndReset();
+        assertEquals(snapshot.entries.size(), 6);
+        long total = 0;
+        for (ParseTimeHistograms.Entry entry : snapshot.entries) total += entry.histogram.getCount();
+        assertEquals(total, 40000);
+        ParseTimeHistograms.Entry first = snapshot.entries.get(0);
+        assertEquals(first.rule, "A");
+        assertEquals(first.getSizeClass(), "0-255");
+        assertEquals(first.histogram.getCount(), 1024);
+        assertEquals(snapshot.entries.get(2).getSizeClass(), "4096-65535");
+        assertEquals(histograms.snapshot().entries.size(), 0);
+    }
+
+    @Test
+    public void testDumps() {
+        ParseTimeHistograms histograms = new ParseTimeHistograms(100);
+        histograms.record("Expr\"1\"", 10, 1500);
+        histograms.record("Expr\"1\"", 10, 2500);
+        histograms.record("Expr\"1\"", 1000, 100000);
+        histograms.record("Expr\"1\"", -1, 3000);
+        ParseTimeHistograms.Snapshot snapshot = histograms.snapshot();
+        assertEquals(snapshot.toJson(), "{\"histograms\":[" +
+                "{\"rule\":\"Expr\\\"1\\\"\",\"minLength\":0,\"maxLength\":99,\"count\":2,\"min\":1500,\"p50\":1503," +
+                "\"p90\":2500,\"p99\":2500,\"p999\":2500,\"max\":2500,\"mean\":2000}," +
+                "{\"rule\":\"Expr\\\"1\\\"\",\"minLength\":100,\"count\":1,\"min\":100000,\"p50\":100000," +
+                "\"p90\":100000,\"p99\":100000,\"p999\":100000,\"max\":100000,\"mean\":100000}," +
+                "{\"rule\":\"Expr\\\"1\\\"\",\"count\":1,\"min\":3000,\"p50\":3000,\"p90\":3000,\"p99\":3000," +
+                "\"p999\":3000,\"max\":3000,\"mean\":3000}]}");
+        assertEquals(snapshot.print(), "" +
+                "Rule                           Input size            Count     Min us     p50 us     p90 us     p99 us   p99.9 us     Max us    Mean us\n" +
+                "Expr\"1\"                        0-99                      2        1.5        1.5        2.5        2.5        2.5        2.5        2.0\n" +
+                "Expr\"1\"                        100+                      1      100.0      100.0      100.0      100.0      100.0      100.0      100.0\n" +
+                "Expr\"1\"                        unknown                   1        3.0        3.0        3.0        3.0        3.0        3.0        3.0\n");
+    }
+
+    private static void assertWithinPrecision(long actual, long expected) {
+        assertTrue(Math.abs(actual - expected) <= expected / 32, actual + " vs. " + expected);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CodePointClassTest {
+
+    @Test
+    public void testJavaIdentifierClasses() {
+        CodePointClass start = CodePointClass.javaIdentifierStart();
+        CodePointClass part = CodePointClass.javaIdentifierPart();
+        for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp++) {
+            if (start.contains(cp) != Character.isJavaIdentifierStart(cp) ||
+                    part.contains(cp) != Character.isJavaIdentifierPart(cp)) {
+                throw new AssertionError("Mismatch at code point " + Integer.toHexString(cp));
+            }
+        }
+        assertFalse(start.contains(-1));
+        assertFalse(start.contains(Character.MAX_CODE_POINT + 1));
+        assertTrue(start.hasSupplementary());
+        assertEquals(start.getFirst(), '$');
+        assertEquals(CodePointClass.javaIdentifierStart(), start);
+    }
+
+    @Test
+    public void testRangesAndUnion() {
+        CodePointClass digits = CodePointClass.range('0', '9');
+        CodePointClass emoji = CodePointClass.range(0x1F600, 0x1F64F);
+        assertEquals(digits.toString(), "0..9");
+        assertEquals(emoji.toString(), "U+1F600..U+1F64F");
+        assertFalse(digits.hasNonAscii());
+        assertTrue(emoji.hasSupplementary());
+
+        CodePointClass union = digits.union(emoji).union(CodePointClass.range('5', 'A'));
+        assertEquals(union.getRangeCount(), 2);
+        assertEquals(union, CodePointClass.range('0', 'A').union(emoji));
+        assertTrue(union.contains('0'));
+        assertTrue(union.contains('A'));
+        assertFalse(union.contains('B'));
+        assertTrue(union.contains(0x1F600));
+        assertTrue(union.contains(0x1F64F));
+        assertFalse(union.contains(0x1F650));
+        assertFalse(union.contains(0xF600));
+        assertEquals(union.getFirst('6', 'Z'), '6');
+        assertEquals(union.getFirst('B', 0xFFFF), -1);
+        assertEquals(union.getFirst('B', 0x1FFFF), 0x1F600);
+    }
+
+    @Test
+    public void testCategories() {
+        CodePointClass letters = CodePointClass.ofCategories(Character.UPPERCASE_LETTER, Character.LOWERCASE_LETTER);
+        assertEquals(letters.toString(), "Category(1,2)");
+        assertTrue(letters.contains('a'));
+        assertTrue(letters.contains('\u00c4'));
+        assertTrue(letters.contains(0x1D400)); // MATHEMATICAL BOLD CAPITAL A
+        assertFalse(letters.contains('1'));
+        assertFalse(letters.contains(0x1F600));
+    }
+}
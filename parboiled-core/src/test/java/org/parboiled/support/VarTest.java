@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class VarTest {
+
+    @Test
+    public void testVarFraming() {
+        Var<Integer> var = new Var<Integer>(-1);
+        for (int i = 0; i < 20; i++) {
+            var.enterFrame();
+            assertEquals(var.get(), Integer.valueOf(-1));
+            var.set(i);
+        }
+        assertEquals(var.getLevel(), 20);
+        for (int i = 19; i >= 0; i--) {
+            assertEquals(var.get(), Integer.valueOf(i));
+            var.exitFrame();
+        }
+        assertEquals(var.getLevel(), 0);
+    }
+
+}
@@ -17,12 +17,14 @@
 package org.parboiled;
 
 import org.parboiled.annotations.*;
+import org.parboiled.buffers.ByteInputBuffer;
 import org.parboiled.common.Utils;
 import org.parboiled.errors.GrammarException;
 import org.parboiled.matchers.*;
 import org.parboiled.support.Characters;
 import org.parboiled.support.Chars;
 import org.parboiled.support.Checks;
+import org.parboiled.support.CodePointClass;
 
 import java.util.Arrays;
 
@@ -128,6 +130,54 @@ public abstract class BaseParser<V> extends BaseActions<V> {
         return cLow == cHigh ? Ch(cLow) : new CharRangeMatcher(cLow, cHigh);
     }
 
+    /**
+     * Creates a rule matching a single Unicode code point from first to last (both inclusively), including
+     * supplementary code points beyond the range of {@link #CharRange(char, char)}. On a
+     * {@link org.parboiled.buffers.ByteInputBuffer} the input is matched as UTF-8.
+     * <p>Note: This methods carries a {@link Cached} annotation, which means that multiple invocations with the same
+     * arguments will yield the same rule instance.</p>
+     *
+     * @param first the first code point of the range (inclusively)
+     * @param last  the last code point of the range (inclusively)
+     * @return a new rule
+     */
+    @Cached
+    @DontLabel
+    public Rule CodePointRange(int first, int last) {
+        return CodePoints(CodePointClass.range(first, last));
+    }
+
+    /**
+     * Creates a rule matching a single Unicode code point of the given general category, e.g.
+     * {@link Character#UPPERCASE_LETTER}. On a {@link org.parboiled.buffers.ByteInputBuffer} the input is matched
+     * as UTF-8.
+     * <p>Note: This methods carries a {@link Cached} annotation, which means that multiple invocations with the same
+     * argument will yield the same rule instance.</p>
+     *
+     * @param category the category as defined by the respective constant of {@link Character}
+     * @return a new rule
+     */
+    @Cached
+    @DontLabel
+    public Rule UnicodeCategory(int category) {
+        return CodePoints(CodePointClass.ofCategories(category));
+    }
+
+    /**
+     * Creates a rule matching a single Unicode code point out of the given {@link CodePointClass}.
+     * On a {@link org.parboiled.buffers.ByteInputBuffer} the input is matched as UTF-8.
+     * <p>Note: This methods carries a {@link Cached} annotation, which means that multiple invocations with the same
+     * argument will yield the same rule instance.</p>
+     *
+     * @param codePoints the code points
+     * @return a new rule
+     */
+    @Cached
+    @DontLabel
+    public Rule CodePoints(CodePointClass codePoints) {
+        return new CodePointMatcher(codePoints);
+    }
+
     /**
      * Creates a new rule that matches any of the characters in the given string.
      * <p>Note: This methods provides caching, which means that multiple invocations with the same
@@ -288,6 +338,90 @@ public abstract class BaseParser<V> extends BaseActions<V> {
         return ((SequenceMatcher) Sequence(matchers)).label('"' + String.valueOf(characters) + '"');
     }
 
+    /**
+     * Creates a rule matching the given byte value. Use with a {@link org.parboiled.buffers.ByteInputBuffer},
+     * which presents each input byte as one character with the (unsigned) byte value.
+     * <p>Note: This methods carries a {@link Cached} annotation, which means that multiple invocations with the same
+     * argument will yield the same rule instance.</p>
+     *
+     * @param b the byte value to match, either signed (-128 to 127) or unsigned (0 to 255)
+     * @return a new rule
+     */
+    @Cached
+    @DontLabel
+    public Rule Byte(int b) {
+        return new CharMatcher(ByteInputBuffer.toChar(b)).label(String.format("0x%02X", b & 0xFF));
+    }
+
+    /**
+     * Creates a rule matching a range of byte values from bLow to bHigh (both inclusively, unsigned).
+     * Use with a {@link org.parboiled.buffers.ByteInputBuffer}.
+     * <p>Note: This methods carries a {@link Cached} annotation, which means that multiple invocations with the same
+     * arguments will yield the same rule instance.</p>
+     *
+     * @param bLow  the lowest byte value of the range (inclusively)
+     * @param bHigh the highest byte value of the range (inclusively)
+     * @return a new rule
+     */
+    @Cached
+    @DontLabel
+    public Rule ByteRange(int bLow, int bHigh) {
+        char cLow = ByteInputBuffer.toChar(bLow);
+        char cHigh = ByteInputBuffer.toChar(bHigh);
+        checkArgument(cLow <= cHigh, "bLow must not be greater than bHigh (as unsigned byte values)");
+        return cLow == cHigh ? Byte(bLow) :
+                new CharRangeMatcher(cLow, cHigh).label(String.format("0x%02X..0x%02X", bLow & 0xFF, bHigh & 0xFF));
+    }
+
+    /**
+     * Creates a rule matching the given sequence of byte values. Use with a
+     * {@link org.parboiled.buffers.ByteInputBuffer}. Note that ASCII strings can also be matched with plain string
+     * literals, since each of their characters matches its single-byte encoding.
+     * <p>Note: This methods provides caching, which means that multiple invocations with the same
+     * argument will yield the same rule instance.</p>
+     *
+     * @param bytes the byte values to match, either signed (-128 to 127) or unsigned (0 to 255)
+     * @return a new rule
+     */
+    @DontLabel
+    public Rule Bytes(int... bytes) {
+        checkArgNotNull(bytes, "bytes");
+        checkArgument(bytes.length > 0);
+        return bytes.length == 1 ? Byte(bytes[0]) : String(ByteInputBuffer.toChars(bytes));
+    }
+
+    /**
+     * Creates a new rule that matches any of the given byte values. Use with a
+     * {@link org.parboiled.buffers.ByteInputBuffer}.
+     * <p>Note: This methods provides caching, which means that multiple invocations with the same
+     * argument will yield the same rule instance.</p>
+     *
+     * @param bytes the byte values, either signed (-128 to 127) or unsigned (0 to 255)
+     * @return a new rule
+     */
+    @DontLabel
+    public Rule AnyOfBytes(int... bytes) {
+        checkArgNotNull(bytes, "bytes");
+        checkArgument(bytes.length > 0);
+        return bytes.length == 1 ? Byte(bytes[0]) : AnyOf(ByteInputBuffer.toChars(bytes));
+    }
+
+    /**
+     * Creates a new rule that matches all bytes except the given byte values and EOI. Use with a
+     * {@link org.parboiled.buffers.ByteInputBuffer}.
+     * <p>Note: This methods provides caching, which means that multiple invocations with the same
+     * argument will yield the same rule instance.</p>
+     *
+     * @param bytes the byte values, either signed (-128 to 127) or unsigned (0 to 255)
+     * @return a new rule
+     */
+    @DontLabel
+    public Rule NoneOfBytes(int... bytes) {
+        checkArgNotNull(bytes, "bytes");
+        checkArgument(bytes.length > 0);
+        return NoneOf(ByteInputBuffer.toChars(bytes));
+    }
+
     /**
      * Creates a new rule that successively tries all of the given subrules and succeeds when the first one of
      * its subrules matches. If all subrules fail this rule fails as well.
@@ -334,6 +468,44 @@ public abstract class BaseParser<V> extends BaseActions<V> {
         return new FirstOfStringsMatcher(convertedRules, chars);
     }
 
+    /**
+     * Creates a new rule that behaves like a {@link #FirstOf(Object, Object, Object...)} rule but, where at least
+     * the given number of input characters remain, concurrently probes its side-effect free alternatives in order to
+     * skip the failing ones. Only worthwhile for alternatives that are expensive to try and rarely share prefixes.
+     * See {@link SpeculativeFirstOfMatcher} for details.
+     * <p>Note: This methods provides caching, which means that multiple invocations with the same
+     * arguments will yield the same rule instance.</p>
+     *
+     * @param minRemainingInput the minimum number of remaining input characters for probing the alternatives
+     * @param rule              the first subrule
+     * @param rule2             the second subrule
+     * @param moreRules         the other subrules
+     * @return a new rule
+     */
+    @DontLabel
+    public Rule SpeculativeFirstOf(int minRemainingInput, Object rule, Object rule2, Object... moreRules) {
+        checkArgNotNull(moreRules, "moreRules");
+        return SpeculativeFirstOf(minRemainingInput, Utils.arrayOf(rule, rule2, moreRules));
+    }
+
+    /**
+     * Creates a new rule that behaves like a {@link #FirstOf(Object[])} rule but, where at least the given number of
+     * input characters remain, concurrently probes its side-effect free alternatives in order to skip the failing
+     * ones. See {@link SpeculativeFirstOfMatcher} for details.
+     * <p>Note: This methods carries a {@link Cached} annotation, which means that multiple invocations with the same
+     * arguments will yield the same rule instance.</p>
+     *
+     * @param minRemainingInput the minimum number of remaining input characters for probing the alternatives
+     * @param rules             the subrules
+     * @return a new rule
+     */
+    @Cached
+    @DontLabel
+    public Rule SpeculativeFirstOf(int minRemainingInput, Object[] rules) {
+        checkArgNotNull(rules, "rules");
+        return new SpeculativeFirstOfMatcher(toRules(rules), minRemainingInput);
+    }
+
     /**
      * Creates a new rule that tries repeated matches of its subrule and succeeds if the subrule matches at least once.
      * If the subrule does not match at least once this rule fails.
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Annotation that can be used on the parser class itself.
+ * Instructs parboiled to not generate one separate class per action expression but rather compile all action
+ * expressions of the parser into methods of one single generated action class, which dispatches to the respective
+ * action method with a switch on an action id.</p>
+ * <p>For large grammars this considerably reduces the number of classes that have to be generated and loaded and
+ * keeps the action invocation call site in the {@link org.parboiled.matchers.ActionMatcher} monomorphic.
+ * Var initializers as well as explicitly created {@link org.parboiled.Action} instances are not affected.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface ConsolidateActions {
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Annotation that can be used on the parser class itself.
+ * Instructs parboiled to not construct the rules referenced by a rule method together with the rule itself but
+ * rather on their first match attempt. Calls to parameterless rule methods from within rule methods are replaced with
+ * {@link org.parboiled.matchers.LazyMatcher}s, so that obtaining a root rule only builds the root itself and the
+ * matcher graph grows with the parts of the grammar actually exercised by the parsed inputs.</p>
+ * <p>For very large grammars, of which each input only uses a small slice, this reduces startup time and memory.
+ * Rule construction triggered during parsing is synchronized on the parser instance, so rules of a lazily built
+ * parser can be run from several threads concurrently. Calls to rule methods taking parameters are not deferred.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface LazyRules {
+}
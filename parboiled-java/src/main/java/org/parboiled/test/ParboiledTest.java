@@ -18,11 +18,14 @@ package org.parboiled.test;
 
 import org.parboiled.Node;
 import org.parboiled.Rule;
+import org.parboiled.buffers.DefaultInputBuffer;
 import org.parboiled.buffers.InputBuffer;
 import org.parboiled.common.Predicate;
+import org.parboiled.parserunners.ProfilingParseRunner;
 import org.parboiled.parserunners.RecoveringParseRunner;
 import org.parboiled.parserunners.ReportingParseRunner;
 import org.parboiled.support.ParsingResult;
+import org.parboiled.support.PerformanceBudget;
 
 import java.util.*;
 
@@ -78,6 +81,46 @@ public abstract class ParboiledTest<V> {
         }
     }
 
+    /**
+     * The result of a {@link #testPerformance(Rule, String)} call. Note that the parsing run is performed by a
+     * {@link ProfilingParseRunner}, which does not report parse errors.
+     */
+    public class PerformanceResult extends TestResult<V> {
+        public final ProfilingParseRunner.Report report;
+
+        public PerformanceResult(ParsingResult<V> result, ProfilingParseRunner.Report report) {
+            super(result);
+            this.report = report;
+        }
+
+        public PerformanceResult matched() {
+            if (!result.matched) fail("Input did not match");
+            return this;
+        }
+
+        public PerformanceResult isWithinBudget(PerformanceBudget budget) {
+            String violations = budget.check(report);
+            if (violations != null) fail(violations);
+            return this;
+        }
+
+        public PerformanceResult hasAtMostInvocations(long max) {
+            return isWithinBudget(new PerformanceBudget().maxInvocations(max));
+        }
+
+        public PerformanceResult hasAtMostBacktracks(long max) {
+            return isWithinBudget(new PerformanceBudget().maxBacktracks(max));
+        }
+
+        public PerformanceResult hasAtMostReinvocations(long max) {
+            return isWithinBudget(new PerformanceBudget().maxReinvocations(max));
+        }
+
+        public PerformanceResult allocatesAtMost(long bytes) {
+            return isWithinBudget(new PerformanceBudget().maxAllocatedBytes(bytes));
+        }
+    }
+
     public TestResult<V> test(Rule rule, String input) {
         return new TestResult<V>(new ReportingParseRunner<V>(rule).run(input));
     }
@@ -94,6 +137,16 @@ public abstract class ParboiledTest<V> {
         return new TestResult<V>(new RecoveringParseRunner<V>(rule).run(inputBuffer));
     }
 
+    public PerformanceResult testPerformance(Rule rule, String input) {
+        return testPerformance(rule, new DefaultInputBuffer(input.toCharArray()));
+    }
+
+    public PerformanceResult testPerformance(Rule rule, InputBuffer inputBuffer) {
+        ProfilingParseRunner<V> runner = new ProfilingParseRunner<V>(rule);
+        ParsingResult<V> result = runner.run(inputBuffer);
+        return new PerformanceResult(result, runner.getReport());
+    }
+
     protected abstract void fail(String message);
 
     protected abstract void assertEquals(Object actual, Object expected);
@@ -33,6 +33,23 @@ class ActionClassGenerator extends GroupClassGenerator {
         return method.containsExplicitActions();
     }
 
+    @Override
+    public void process(ParserClassNode classNode, RuleMethod method) {
+        ConsolidatedActionsGenerator actionsClassGenerator = classNode.getActionsClassGenerator();
+        if (actionsClassGenerator == null) {
+            super.process(classNode, method);
+            return;
+        }
+
+        // the parser is marked with @ConsolidateActions, so we only collect the action groups here,
+        // the one action class for all of them is generated once all rule methods have been processed
+        for (InstructionGroup group : method.getGroups()) {
+            if (appliesTo(group.getRoot())) {
+                actionsClassGenerator.addAction(group);
+            }
+        }
+    }
+
     @Override
     protected boolean appliesTo(InstructionGraphNode node) {
         return node.isActionRoot();
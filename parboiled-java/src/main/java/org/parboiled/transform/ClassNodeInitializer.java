@@ -41,6 +41,8 @@ class ClassNodeInitializer extends ClassVisitor {
     private ParserClassNode classNode;
     private Class<?> ownerClass;
     private boolean hasBuildParseTree;
+    private boolean hasConsolidateActions;
+    private boolean hasLazyRules;
     private boolean hasExplicitActionOnlyAnnotation;
     private boolean hasDontLabelAnnotation;
     private boolean hasSkipActionsInPredicates;
@@ -64,6 +66,11 @@ class ClassNodeInitializer extends ClassVisitor {
             ownerClass = ownerClass.getSuperclass();
         }
 
+        if (hasConsolidateActions) {
+            classNode.setActionsClassGenerator(new ConsolidatedActionsGenerator(classNode));
+        }
+        classNode.setLazyRules(hasLazyRules);
+
         for (RuleMethod method : classNode.getRuleMethods().values()) {
             // move all flags from the super methods to their overriding methods
             if (method.isSuperMethod()) {
@@ -115,6 +122,14 @@ class ClassNodeInitializer extends ClassVisitor {
             hasBuildParseTree = true;
             return null;
         }
+        if (Types.CONSOLIDATE_ACTIONS_DESC.equals(desc)) {
+            hasConsolidateActions = true;
+            return null;
+        }
+        if (Types.LAZY_RULES_DESC.equals(desc)) {
+            hasLazyRules = true;
+            return null;
+        }
 
         // only keep visible annotations on the parser class
         return visible && ownerClass == classNode.getParentClass() ? classNode.visitAnnotation(desc, true) : null;
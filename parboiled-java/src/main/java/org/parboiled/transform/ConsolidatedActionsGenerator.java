@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.transform;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+import static org.parboiled.common.Preconditions.checkState;
+import static org.parboiled.transform.AsmUtils.findLoadedClass;
+import static org.parboiled.transform.AsmUtils.loadClass;
+
+/**
+ * Collects all action groups of a parser class marked with @ConsolidateActions and generates one single action class
+ * for them. Each action expression becomes a private method of this class, the "run" method dispatches to the
+ * respective action method with a switch on the action id of the instance.
+ * The fields of all actions are merged, so each instance carries the union of all captured values.
+ */
+class ConsolidatedActionsGenerator {
+
+    private final ParserClassNode classNode;
+    private final Type actionsClassType;
+    private final Map<String, Integer> actionIds = new HashMap<String, Integer>();
+    private final List<InsnList> actionBodies = new ArrayList<InsnList>();
+    private final Map<String, FieldNode> fields = new LinkedHashMap<String, FieldNode>();
+    private byte[] actionsClassCode;
+
+    public ConsolidatedActionsGenerator(ParserClassNode classNode) {
+        this.classNode = checkArgNotNull(classNode, "classNode");
+        this.actionsClassType = Type.getObjectType(classNode.name + "$Actions");
+    }
+
+    public Type getActionsClassType() {
+        return actionsClassType;
+    }
+
+    public byte[] getActionsClassCode() {
+        return actionsClassCode;
+    }
+
+    /**
+     * Registers the given action group with the consolidated action class.
+     * Identical action groups (i.e. groups with the same name) share the same action id and method.
+     *
+     * @param group the action group
+     */
+    public void addAction(InstructionGroup group) {
+        checkArgNotNull(group, "group");
+        checkState(actionsClassCode == null, "Actions class has already been generated");
+        group.setGroupClassType(actionsClassType);
+        mapFields(group);
+
+        Integer actionId = actionIds.get(group.getName());
+        if (actionId == null) {
+            actionId = actionBodies.size();
+            actionIds.put(group.getName(), actionId);
+
+            GroupClassGenerator.insertSetContextCalls(group, 1);
+            GroupClassGenerator.convertXLoads(group);
+            actionBodies.add(group.getInstructions());
+        }
+        group.setActionId(actionId);
+    }
+
+    // rename the fields of the group to the respective field of the consolidated class,
+    // creating new class fields for field name / type combinations we haven't seen before
+    private void mapFields(InstructionGroup group) {
+        for (FieldNode field : group.getFields()) {
+            String key = field.name + field.desc;
+            FieldNode classField = fields.get(key);
+            if (classField == null) {
+                classField = new FieldNode(ACC_PUBLIC + ACC_SYNTHETIC, "field$" + fields.size(), field.desc, null,
+                        null);
+                fields.put(key, classField);
+            }
+            field.name = classField.name;
+        }
+    }
+
+    /**
+     * Generates the consolidated action class and loads it with the class loader of the parser class.
+     * Does nothing if no actions have been registered.
+     */
+    public void loadActionsClass() {
+        if (actionBodies.isEmpty()) return;
+
+        actionsClassCode = generateActionsClassCode();
+        String className = actionsClassType.getClassName();
+        ClassLoader classLoader = classNode.getParentClass().getClassLoader();
+        if (findLoadedClass(className, classLoader) == null) {
+            loadClass(className, actionsClassCode, classLoader);
+        }
+    }
+
+    private byte[] generateActionsClassCode() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_FINAL + ACC_SYNTHETIC, actionsClassType.getInternalName(), null,
+                Types.BASE_ACTION.getInternalName(), null);
+        cw.visitSource(classNode.sourceFile, null);
+
+        cw.visitField(ACC_PRIVATE + ACC_FINAL + ACC_SYNTHETIC, "actionId", "I", null, null);
+        for (FieldNode field : fields.values()) {
+            field.accept(cw);
+        }
+
+        generateConstructor(cw);
+        generateRunMethod(cw);
+        for (int i = 0; i < actionBodies.size(); i++) {
+            MethodVisitor mv = cw.visitMethod(ACC_PRIVATE, "run$" + i, '(' + Types.CONTEXT_DESC + ")Z", null, null);
+            actionBodies.get(i).accept(mv);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0); // trigger automatic computing
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void generateConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(Ljava/lang/String;I)V", null, null);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKESPECIAL, Types.BASE_ACTION.getInternalName(), "<init>", "(Ljava/lang/String;)V");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, 2);
+        mv.visitFieldInsn(PUTFIELD, actionsClassType.getInternalName(), "actionId", "I");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0); // trigger automatic computing
+    }
+
+    private void generateRunMethod(ClassWriter cw) {
+        String owner = actionsClassType.getInternalName();
+        String runDesc = '(' + Types.CONTEXT_DESC + ")Z";
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "run", runDesc, null, null);
+
+        Label[] labels = new Label[actionBodies.size()];
+        for (int i = 0; i < labels.length; i++) labels[i] = new Label();
+        Label defaultLabel = new Label();
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, owner, "actionId", "I");
+        mv.visitTableSwitchInsn(0, labels.length - 1, defaultLabel, labels);
+        for (int i = 0; i < labels.length; i++) {
+            mv.visitLabel(labels[i]);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKESPECIAL, owner, "run$" + i, runDesc);
+            mv.visitInsn(IRETURN);
+        }
+        mv.visitLabel(defaultLabel);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalStateException");
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "()V");
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0); // trigger automatic computing
+    }
+
+}
@@ -113,7 +113,7 @@ abstract class GroupClassGenerator implements RuleMethodProcessor {
 
     protected abstract void generateMethod(InstructionGroup group, ClassWriter cw);
 
-    protected void insertSetContextCalls(InstructionGroup group, int localVarIx) {
+    static void insertSetContextCalls(InstructionGroup group, int localVarIx) {
         InsnList instructions = group.getInstructions();
         for (InstructionGraphNode node : group.getNodes()) {
             if (node.isCallOnContextAware()) {
@@ -139,7 +139,7 @@ abstract class GroupClassGenerator implements RuleMethodProcessor {
         }
     }
 
-    protected void convertXLoads(InstructionGroup group) {
+    static void convertXLoads(InstructionGroup group) {
         String owner = group.getGroupClassType().getInternalName();
         for (InstructionGraphNode node : group.getNodes()) {
             if (!node.isXLoad()) continue;
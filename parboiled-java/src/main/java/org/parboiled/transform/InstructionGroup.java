@@ -35,6 +35,7 @@ class InstructionGroup {
     private String name;
     private Type groupClassType;
     private byte[] groupClassCode;
+    private int actionId = -1;
 
     public InstructionGroup(InstructionGraphNode root) {
         this.root = root;
@@ -80,6 +81,17 @@ class InstructionGroup {
         this.groupClassCode = groupClassCode;
     }
 
+    /**
+     * @return the id of the action in the consolidated action class of the parser or -1, if the group has its own class
+     */
+    public int getActionId() {
+        return actionId;
+    }
+
+    public void setActionId(int actionId) {
+        this.actionId = actionId;
+    }
+
     @Override
     public String toString() {
         return name != null ? name : super.toString();
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.transform;
+
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import static org.objectweb.asm.Opcodes.*;
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * Replaces all calls to parameterless rule methods with the creation of a lazy rule, if the parser class is
+ * annotated with {@link org.parboiled.annotations.LazyRules}.
+ */
+class LazyRuleCallRewriter implements RuleMethodProcessor {
+
+    private static final String LAZY_RULE_DESC = "(Ljava/lang/Object;Ljava/lang/String;)" + Types.RULE_DESC;
+
+    public boolean appliesTo(ParserClassNode classNode, RuleMethod method) {
+        checkArgNotNull(classNode, "classNode");
+        checkArgNotNull(method, "method");
+        return classNode.hasLazyRules();
+    }
+
+    public void process(ParserClassNode classNode, RuleMethod method) throws Exception {
+        checkArgNotNull(classNode, "classNode");
+        checkArgNotNull(method, "method");
+        InsnList instructions = method.instructions;
+        AbstractInsnNode insn = instructions.getFirst();
+        while (insn != null) {
+            if (insn.getOpcode() == INVOKEVIRTUAL && isRuleMethodCall(classNode, (MethodInsnNode) insn)) {
+                // the parser instance is already on the stack, we only have to add the method name
+                String ruleMethodName = ((MethodInsnNode) insn).name;
+                instructions.insertBefore(insn, new LdcInsnNode(ruleMethodName));
+                MethodInsnNode lazyRuleCall = new MethodInsnNode(INVOKESTATIC,
+                        Types.LAZY_RULE_FACTORY.getInternalName(), "lazyRule", LAZY_RULE_DESC);
+                instructions.set(insn, lazyRuleCall);
+                insn = lazyRuleCall;
+                method.setBodyRewritten();
+            }
+            insn = insn.getNext();
+        }
+    }
+
+    private boolean isRuleMethodCall(ParserClassNode classNode, MethodInsnNode insn) {
+        if (!insn.desc.equals("()" + Types.RULE_DESC)) return false;
+        if (!isParserClass(classNode, insn.owner) || !isCalledOnThis(insn)) return false;
+        RuleMethod calledMethod = classNode.getRuleMethods().get(insn.name.concat(insn.desc));
+        return calledMethod != null && !calledMethod.isSuperMethod();
+    }
+
+    // checks whether the given internal class name denotes the parser class or one of its superclasses
+    private boolean isParserClass(ParserClassNode classNode, String owner) {
+        if (owner.equals(classNode.name)) return true;
+        for (Class<?> c = classNode.getParentClass(); c != null; c = c.getSuperclass()) {
+            if (owner.equals(Type.getInternalName(c))) return true;
+        }
+        return false;
+    }
+
+    // since the called method takes no arguments its receiver is pushed by the directly preceding instruction,
+    // which has to be an ALOAD 0 for calls on the parser instance itself
+    private boolean isCalledOnThis(MethodInsnNode insn) {
+        AbstractInsnNode previous = insn.getPrevious();
+        while (previous != null && previous.getOpcode() == -1) { // skip labels, line numbers and frames
+            previous = previous.getPrevious();
+        }
+        return previous != null && previous.getOpcode() == ALOAD && ((VarInsnNode) previous).var == 0;
+    }
+
+}
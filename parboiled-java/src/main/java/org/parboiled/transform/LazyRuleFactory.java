@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.transform;
+
+import org.parboiled.Rule;
+import org.parboiled.common.Factory;
+import org.parboiled.errors.GrammarException;
+import org.parboiled.matchers.LazyMatcher;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.parboiled.common.Preconditions.checkArgNotNull;
+
+/**
+ * Creates a rule by calling a parameterless rule method on a parser instance.
+ * Used by the code generated for parsers annotated with {@link org.parboiled.annotations.LazyRules}.
+ */
+public class LazyRuleFactory implements Factory<Rule> {
+
+    private final Object parser;
+    private final String ruleMethodName;
+
+    public LazyRuleFactory(Object parser, String ruleMethodName) {
+        this.parser = checkArgNotNull(parser, "parser");
+        this.ruleMethodName = checkArgNotNull(ruleMethodName, "ruleMethodName");
+    }
+
+    public Rule create() {
+        Method method = findRuleMethod(parser.getClass());
+        try {
+            return (Rule) method.invoke(parser);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new GrammarException(e.getCause(), "Could not create rule '%s'", ruleMethodName);
+        } catch (IllegalAccessException e) {
+            throw new GrammarException(e, "Could not create rule '%s'", ruleMethodName);
+        }
+    }
+
+    private Method findRuleMethod(Class<?> clazz) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            try {
+                Method method = c.getDeclaredMethod(ruleMethodName);
+                method.setAccessible(true);
+                return method;
+            } catch (NoSuchMethodException e) {
+                // continue with the superclass
+            }
+        }
+        throw new GrammarException("Rule method '%s' not found in parser class '%s'", ruleMethodName,
+                clazz.getName());
+    }
+
+    /**
+     * Creates a {@link LazyMatcher} for the given rule method, which synchronizes rule creation on the parser.
+     *
+     * @param parser         the parser instance
+     * @param ruleMethodName the name of the parameterless rule method
+     * @return the lazy rule
+     */
+    public static Rule lazyRule(Object parser, String ruleMethodName) {
+        return new LazyMatcher(new LazyRuleFactory(parser, ruleMethodName), parser);
+    }
+
+    @Override
+    public String toString() {
+        return ruleMethodName;
+    }
+}
@@ -38,6 +38,8 @@ class ParserClassNode extends ClassNode {
     private final Map<String, RuleMethod> ruleMethods = new TreeMap<String, RuleMethod>();
     private byte[] classCode;
     private Class<?> extendedClass;
+    private ConsolidatedActionsGenerator actionsClassGenerator;
+    private boolean lazyRules;
 
     public ParserClassNode(Class<?> parentClass) {
         super(Opcodes.ASM4);
@@ -76,4 +78,20 @@ class ParserClassNode extends ClassNode {
     public void setExtendedClass(Class<?> extendedClass) {
         this.extendedClass = extendedClass;
     }
+
+    public ConsolidatedActionsGenerator getActionsClassGenerator() {
+        return actionsClassGenerator;
+    }
+
+    public void setActionsClassGenerator(ConsolidatedActionsGenerator actionsClassGenerator) {
+        this.actionsClassGenerator = actionsClassGenerator;
+    }
+
+    public boolean hasLazyRules() {
+        return lazyRules;
+    }
+
+    public void setLazyRules(boolean lazyRules) {
+        this.lazyRules = lazyRules;
+    }
 }
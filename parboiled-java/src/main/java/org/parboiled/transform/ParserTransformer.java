@@ -19,6 +19,8 @@ package org.parboiled.transform;
 import static org.parboiled.common.Preconditions.*;
 import org.objectweb.asm.ClassWriter;
 import org.parboiled.common.ImmutableList;
+import org.parboiled.support.ParsingEventListener;
+import org.parboiled.support.ParsingEvents;
 
 import java.util.List;
 
@@ -40,11 +42,19 @@ public class ParserTransformer {
     }
 
     static ParserClassNode extendParserClass(Class<?> parserClass) throws Exception {
+        ParsingEventListener listener = ParsingEvents.getListener();
+        long start = listener != null ? System.nanoTime() : 0L;
         ParserClassNode classNode = new ParserClassNode(parserClass);
         new ClassNodeInitializer().process(classNode);
         runMethodTransformers(classNode);
+        if (classNode.getActionsClassGenerator() != null) {
+            classNode.getActionsClassGenerator().loadActionsClass();
+        }
         new ConstructorGenerator().process(classNode);
         defineExtendedParserClass(classNode);
+        if (listener != null) {
+            listener.parserClassTransformed(parserClass, System.nanoTime() - start);
+        }
         return classNode;
     }
 
@@ -84,6 +94,7 @@ public class ParserTransformer {
                 new VarInitClassGenerator(false),
 
                 new RuleMethodRewriter(),
+                new LazyRuleCallRewriter(),
                 new SuperCallRewriter(),
                 new BodyWithSuperCallReplacer(),
                 new VarFramingGenerator(),
@@ -73,7 +73,13 @@ class RuleMethodRewriter implements RuleMethodProcessor {
         insert(new InsnNode(DUP));
         insert(new LdcInsnNode(method.name +
                 (root.isActionRoot() ? "_Action" + ++actionNr : "_VarInit" + ++varInitNr)));
-        insert(new MethodInsnNode(INVOKESPECIAL, internalName, "<init>", "(Ljava/lang/String;)V"));
+        if (group.getActionId() >= 0) {
+            // the group is part of the consolidated action class of the parser, so we need to pass the action id
+            insert(new LdcInsnNode(group.getActionId()));
+            insert(new MethodInsnNode(INVOKESPECIAL, internalName, "<init>", "(Ljava/lang/String;I)V"));
+        } else {
+            insert(new MethodInsnNode(INVOKESPECIAL, internalName, "<init>", "(Ljava/lang/String;)V"));
+        }
 
         if (root.isActionRoot() && method.hasSkipActionsInPredicatesAnnotation()) {
             insert(new InsnNode(DUP));
@@ -32,6 +32,7 @@ interface Types {
     static final Type BASE_PARSER = Type.getType(BaseParser.class);
     static final Type CONTEXT_AWARE = Type.getType(ContextAware.class);
     static final Type LABEL = Type.getType(Label.class);
+    static final Type LAZY_RULE_FACTORY = Type.getType(LazyRuleFactory.class);
     static final Type MATCHER = Type.getType(Matcher.class);
     static final Type PROXY_MATCHER = Type.getType(ProxyMatcher.class);
     static final Type RULE = Type.getType(Rule.class);
@@ -40,11 +41,13 @@ interface Types {
 
     static final String ACTION_DESC = Type.getType(Action.class).getDescriptor();
     static final String CACHED_DESC = Type.getType(Cached.class).getDescriptor();
+    static final String CONSOLIDATE_ACTIONS_DESC = Type.getType(ConsolidateActions.class).getDescriptor();
     static final String CONTEXT_DESC = Type.getType(Context.class).getDescriptor();
     static final String DONT_EXTEND_DESC = Type.getType(DontExtend.class).getDescriptor();
     static final String DONT_LABEL_DESC = Type.getType(DontLabel.class).getDescriptor();
     static final String EXPLICIT_ACTIONS_ONLY_DESC = Type.getType(ExplicitActionsOnly.class).getDescriptor();
     static final String LABEL_DESC = LABEL.getDescriptor();
+    static final String LAZY_RULES_DESC = Type.getType(LazyRules.class).getDescriptor();
     static final String SUPPRESS_NODE_DESC = Type.getType(SuppressNode.class).getDescriptor();
     static final String SUPPRESS_SUBNODES_DESC = Type.getType(SuppressSubnodes.class).getDescriptor();
     static final String SKIP_ACTIONS_IN_PREDICATES_DESC = Type.getType(SkipActionsInPredicates.class).getDescriptor();
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled;
+
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.buffers.ByteInputBuffer;
+import org.parboiled.test.TestNgParboiledTest;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+
+public class ByteParsingTest extends TestNgParboiledTest<Object> {
+
+    @BuildParseTree
+    static class Parser extends BaseParser<Object> {
+
+        public Rule Message() {
+            return Sequence(RequestLine(), Length(), Payload(), EOI);
+        }
+
+        public Rule RequestLine() {
+            return Sequence("GET ", OneOrMore(NoneOfBytes(' ', '\r', '\n')), CrLf());
+        }
+
+        public Rule CrLf() {
+            return Bytes(0x0D, 0x0A);
+        }
+
+        public Rule Length() {
+            return Sequence(Byte(0xFE), ByteRange(0x00, 0x7F));
+        }
+
+        public Rule Payload() {
+            return OneOrMore(FirstOf(ByteRange(0x80, 0xFF), AnyOfBytes(-1, 0, 1)));
+        }
+    }
+
+    private static final byte[] MESSAGE = new byte[] {
+            'G', 'E', 'T', ' ', '/', 'x', '\r', '\n', (byte) 0xFE, 0x05, (byte) 0x80, 0x00, (byte) 0xFF
+    };
+
+    @Test
+    public void testByteParsing() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        test(parser.Message(), new ByteInputBuffer(MESSAGE))
+                .hasNoErrors()
+                .hasParseTree("" +
+                        "[Message] 'GET /x\\n\u00fe\u0005\u0080\u0000\u00ff'\n" +
+                        "  [RequestLine] 'GET /x\\n'\n" +
+                        "    [\"GET \"] 'GET '\n" +
+                        "    [OneOrMore] '/x'\n" +
+                        "      [![ \\r\\nEOI]] '/'\n" +
+                        "      [![ \\r\\nEOI]] 'x'\n" +
+                        "    [CrLf] '\\n'\n" +
+                        "  [Length] '\u00fe\u0005'\n" +
+                        "    [0xFE] '\u00fe'\n" +
+                        "    [0x00..0x7F] '\u0005'\n" +
+                        "  [Payload] '\u0080\u0000\u00ff'\n" +
+                        "    [FirstOf] '\u0080'\n" +
+                        "      [0x80..0xFF] '\u0080'\n" +
+                        "    [FirstOf] '\u0000'\n" +
+                        "      [[\u00ff\u0000\u0001]] '\u0000'\n" +
+                        "    [FirstOf] '\u00ff'\n" +
+                        "      [0x80..0xFF] '\u00ff'\n" +
+                        "  [EOI]\n");
+    }
+
+    @Test
+    public void testByteBufferParsing() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        ByteBuffer direct = ByteBuffer.allocateDirect(MESSAGE.length + 2);
+        direct.put((byte) 'X').put(MESSAGE).put((byte) 0x7F).flip();
+        direct.position(1);
+        direct.limit(MESSAGE.length + 1);
+        test(parser.Message(), new ByteInputBuffer(direct)).hasNoErrors();
+
+        test(parser.Message(), new ByteInputBuffer(MESSAGE, 0, 9)).hasErrors("" +
+                "Unexpected end of input, expected 0x00..0x7F (line 2, pos 2):\n" +
+                "\u00fe\n" +
+                " ^\n");
+    }
+}
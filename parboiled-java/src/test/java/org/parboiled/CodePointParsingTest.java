@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled;
+
+import org.parboiled.buffers.ByteInputBuffer;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.buffers.InputBuffer;
+import org.parboiled.errors.ErrorUtils;
+import org.parboiled.errors.ParseError;
+import org.parboiled.matchers.CodePointMatcher;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.RecoveringParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.Chars;
+import org.parboiled.support.CodePointClass;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CodePointParsingTest {
+
+    static class Parser extends BaseParser<Object> {
+
+        public Rule Identifier() {
+            return Sequence(
+                    CodePoints(CodePointClass.javaIdentifierStart()),
+                    ZeroOrMore(CodePoints(CodePointClass.javaIdentifierPart())),
+                    EOI
+            );
+        }
+
+        public Rule Emojis() {
+            return Sequence(OneOrMore(CodePointRange(0x1F600, 0x1F64F)), EOI);
+        }
+
+        public Rule Capital() {
+            return Sequence(UnicodeCategory(Character.UPPERCASE_LETTER), EOI);
+        }
+
+        public Rule Word() {
+            return Sequence(OneOrMore(UnicodeCategory(Character.LOWERCASE_LETTER)), EOI);
+        }
+    }
+
+    private final Parser parser = Parboiled.createParser(Parser.class);
+
+    @Test
+    public void testUtf16AndUtf8Input() {
+        assertEquals(matches(parser.Identifier(), "caf\u00e9_1"), "UTF-16 UTF-8");
+        assertEquals(matches(parser.Identifier(), "\ud835\udc00x"), "UTF-16 UTF-8"); // MATHEMATICAL BOLD CAPITAL A
+        assertEquals(matches(parser.Identifier(), "1abc"), "");
+        assertEquals(matches(parser.Identifier(), "a\u00a7"), "");
+        assertEquals(matches(parser.Emojis(), "\ud83d\ude00\ud83d\ude4f"), "UTF-16 UTF-8");
+        assertEquals(matches(parser.Emojis(), "\ud83d\ude50"), "");
+        assertEquals(matches(parser.Capital(), "\u00c4"), "UTF-16 UTF-8");
+        assertEquals(matches(parser.Capital(), "\u00e4"), "");
+        assertEquals(matches(parser.Capital(), "\u20ac"), "");
+    }
+
+    @Test
+    public void testInvalidUtf8Input() {
+        Rule rule = parser.Identifier();
+        // truncated sequence, overlong encoding, encoded surrogate and a sequence beyond U+10FFFF
+        byte[][] invalid = {
+                {'a', (byte) 0xC3}, {(byte) 0xC1, (byte) 0x81}, {'a', (byte) 0xE0, (byte) 0x80, (byte) 0xC1},
+                {'a', (byte) 0xED, (byte) 0xA0, (byte) 0x80}, {'a', (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80}
+        };
+        for (byte[] bytes : invalid) {
+            assertEquals(new BasicParseRunner<Object>(rule).run(new ByteInputBuffer(bytes)).matched, false);
+        }
+    }
+
+    @Test
+    public void testErrorRecoveryOnUtf8Input() throws UnsupportedEncodingException {
+        // only the '1' (behind the two byte encoding of the 'e' with acute) is invalid
+        byte[] bytes = "a\u00e91".getBytes("UTF-8");
+        ParsingResult<Object> result = new ReportingParseRunner<Object>(parser.Word()).run(new ByteInputBuffer(bytes));
+        assertEquals(result.parseErrors.size(), 1);
+        assertEquals(result.parseErrors.get(0).getStartIndex(), 3);
+
+        result = new RecoveringParseRunner<Object>(parser.Word()).run(new ByteInputBuffer(bytes));
+        assertTrue(result.matched);
+        assertEquals(result.parseErrors.size(), 1);
+        ParseError error = result.parseErrors.get(0);
+        assertEquals(error.getInputBuffer().getOriginalIndex(error.getStartIndex()), 3);
+    }
+
+    @Test
+    public void testErrorRecoveryOnSurrogateInput() throws UnsupportedEncodingException {
+        // the 'x' between the two emojis is invalid, it sits at index 2 in UTF-16 and at index 4 in UTF-8
+        String input = "\ud83d\ude00x\ud83d\ude4f";
+        assertRecovered(parser.Emojis(), new DefaultInputBuffer(input.toCharArray()), 2);
+        assertRecovered(parser.Emojis(), new ByteInputBuffer(input.getBytes("UTF-8")), 4);
+
+        // an invalid emoji (U+1F650) behind a valid one
+        input = "\ud83d\ude00\ud83d\ude50";
+        assertRecovered(parser.Emojis(), new DefaultInputBuffer(input.toCharArray()), 2);
+        assertRecovered(parser.Emojis(), new ByteInputBuffer(input.getBytes("UTF-8")), 4);
+    }
+
+    @Test
+    public void testSingleCharMatcher() {
+        assertTrue(new CodePointMatcher(CodePointClass.range('a', 'z')).isSingleCharMatcher());
+        assertFalse(new CodePointMatcher(CodePointClass.range(0xC0, 0xFF)).isSingleCharMatcher());
+        assertFalse(new CodePointMatcher(CodePointClass.range(0x1F600, 0x1F64F)).isSingleCharMatcher());
+    }
+
+    @Test
+    public void testStarterChars() {
+        assertEquals(new CodePointMatcher(CodePointClass.ofCategories(Character.LOWERCASE_LETTER)).getStarterChar(),
+                'a');
+        assertEquals(new CodePointMatcher(CodePointClass.range(0xC0, 0x17F)).getStarterChar(), '\u0100');
+        assertEquals(new CodePointMatcher(CodePointClass.range(0xC0, 0xFF)).getStarterChar(), '\u00c0');
+        assertEquals(new CodePointMatcher(CodePointClass.range(0x1F600, 0x1F64F)).getStarterChar(), Chars.EOI);
+    }
+
+    private static void assertRecovered(Rule rule, InputBuffer buffer, int errorIndex) {
+        ParsingResult<Object> result = new RecoveringParseRunner<Object>(rule).run(buffer);
+        assertTrue(result.matched);
+        assertEquals(result.parseErrors.size(), 1);
+        ParseError error = result.parseErrors.get(0);
+        assertEquals(error.getInputBuffer().getOriginalIndex(error.getStartIndex()), errorIndex);
+        // the code point class is reported as expected, even though it is no single char matcher
+        assertTrue(ErrorUtils.printParseError(error).contains(", expected U+1F600..U+1F64F or EOI "));
+    }
+
+    private static String matches(Rule rule, String input) {
+        StringBuilder sb = new StringBuilder();
+        if (match(rule, new DefaultInputBuffer(input.toCharArray()))) sb.append("UTF-16");
+        try {
+            if (match(rule, new ByteInputBuffer(input.getBytes("UTF-8")))) {
+                sb.append(sb.length() > 0 ? " " : "").append("UTF-8");
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    private static boolean match(Rule rule, InputBuffer buffer) {
+        return new BasicParseRunner<Object>(rule).run(buffer).matched;
+    }
+}
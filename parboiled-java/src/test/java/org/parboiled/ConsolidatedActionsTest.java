@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled;
+
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.annotations.ConsolidateActions;
+import org.parboiled.annotations.Label;
+import org.parboiled.test.TestNgParboiledTest;
+import org.testng.annotations.Test;
+
+public class ConsolidatedActionsTest extends TestNgParboiledTest<Integer> {
+
+    public static class Actions extends BaseActions<Integer> {
+
+        public boolean addOne() {
+            Integer i = getContext().getValueStack().pop();
+            getContext().getValueStack().push(i + 1);
+            return true;
+        }
+    }
+
+    @BuildParseTree
+    @ConsolidateActions
+    public static class Parser extends BaseParser<Integer> {
+
+        final Actions actions = new Actions();
+
+        public Rule A() {
+            return Sequence(
+                    'a',
+                    push(42),
+                    B(18),
+                    stringAction("lastText:" + match())
+            );
+        }
+
+        public Rule B(int i) {
+            int j = i + 1;
+            return Sequence(
+                    'b',
+                    push(timesTwo(i + j)),
+                    C(),
+                    push(pop()) // no effect
+            );
+        }
+
+        public Rule C() {
+            return Sequence(
+                    'c',
+                    push(pop()), // no effect
+                    new Action() {
+                        public boolean run(Context context) {
+                            return getContext() == context;
+                        }
+                    },
+                    D(1)
+            );
+        }
+
+        @Label("Last")
+        public Rule D(int i) {
+            return Sequence(
+                    'd', dup(),
+                    push(i),
+                    actions.addOne()
+            );
+        }
+
+        public boolean stringAction(String string) {
+            return "lastText:bcd".equals(string);
+        }
+
+        // ************* ACTIONS **************
+
+        public int timesTwo(int i) {
+            return i * 2;
+        }
+
+    }
+
+    @Test
+    public void test() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        test(parser.A(), "abcd")
+                .hasNoErrors()
+                .hasParseTree("" +
+                        "[A, {2}] 'abcd'\n" +
+                        "  ['a'] 'a'\n" +
+                        "  [B, {2}] 'bcd'\n" +
+                        "    ['b', {42}] 'b'\n" +
+                        "    [C, {2}] 'cd'\n" +
+                        "      ['c', {74}] 'c'\n" +
+                        "      [Last, {2}] 'd'\n" +
+                        "        ['d', {74}] 'd'\n");
+
+        ParserStatistics stats = ParserStatistics.generateFor(parser.A());
+        assertEquals(stats.getActions().size(), 9);
+        assertEquals(stats.getActionClasses().size(), 2); // the consolidated action class and the anonymous one
+
+        assertEquals(stats.printActionClassInstances(), "" +
+                "Action classes and their instances for rule 'A':\n" +
+                "    ConsolidatedActionsTest$Parser$$parboiled$Actions : A_Action1, A_Action2, B_Action1, " +
+                "B_Action2, C_Action1, D_Action1, D_Action2, D_Action3\n" +
+                "    and 1 anonymous instance(s)\n");
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled;
+
+import org.parboiled.GrammarAnalyzer.Hazard;
+import org.parboiled.GrammarAnalyzer.HazardType;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class GrammarAnalyzerTest {
+
+    static class Parser extends BaseParser<Object> {
+
+        Rule Clean() {
+            return Sequence(OneOrMore(Digit()), FirstOf('+', '-'), OneOrMore(Digit()), EOI);
+        }
+
+        Rule Digit() {
+            return CharRange('0', '9');
+        }
+
+        Rule Hazardous() {
+            return Sequence(
+                    FirstOf("for", "foreach", Optional('x'), 'y'),
+                    FirstOf(Sequence("ab", 'c', Digit()), Sequence("ab", 'c', 'd'), Sequence(Digit(), 'e')),
+                    ZeroOrMore(OneOrMore('a')),
+                    TestNot(Sequence("/*", ZeroOrMore(ANY), "*/")),
+                    EOI
+            );
+        }
+
+        Rule Custom() {
+            return Sequence(
+                    FirstOf('a', CodePointRange('a', 'z')),
+                    FirstOf(Sequence('x', 'y'), CodePointRange('a', 'z')),
+                    EOI
+            );
+        }
+
+        Rule Guarded() {
+            return Sequence(
+                    FirstOf(Sequence(Test('a'), Optional('b')), 'c'),
+                    FirstOf(Sequence(ACTION(true), Optional('d')), 'e'),
+                    EOI
+            );
+        }
+    }
+
+    @Test
+    public void testCleanGrammar() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        assertTrue(GrammarAnalyzer.analyze(parser.Clean()).getHazards().isEmpty());
+    }
+
+    @Test
+    public void testHazards() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        GrammarAnalyzer analyzer = GrammarAnalyzer.analyze(parser.Hazardous());
+
+        List<Hazard> shadowed = analyzer.getHazards(HazardType.SHADOWED_ALTERNATIVE);
+        assertEquals(shadowed.size(), 2);
+        assertEquals(shadowed.get(0).description,
+                "alternative 2 (\"foreach\") never matches, since alternative 1 (\"for\") matches a prefix of its input");
+        assertEquals(shadowed.get(1).description,
+                "alternative 3 (Optional) can match empty, so the alternatives after it never match");
+
+        List<Hazard> overlapping = analyzer.getHazards(HazardType.OVERLAPPING_ALTERNATIVES);
+        assertEquals(overlapping.size(), 1);
+        assertEquals(overlapping.get(0).description, "alternatives with overlapping first characters: 1/2 on [a]");
+
+        List<Hazard> leftFactoring = analyzer.getHazards(HazardType.LEFT_FACTORING);
+        assertEquals(leftFactoring.size(), 1);
+        assertEquals(leftFactoring.get(0).description,
+                "alternatives 1 to 2 start with the same 2 sub rule(s) (\"ab\"), which could be factored out");
+
+        assertEquals(analyzer.getHazards(HazardType.NESTED_LOOP).size(), 1);
+        assertEquals(analyzer.getHazards(HazardType.PREDICATE_RESCAN).size(), 1);
+        assertEquals(analyzer.getHazards(HazardType.NULLABLE_LOOP).size(), 0);
+        assertEquals(analyzer.getHazards().size(), 6);
+        assertTrue(analyzer.print().startsWith("Grammar hazards for rule 'Hazardous'\n"));
+    }
+
+    @Test
+    public void testCustomMatcherAlternatives() {
+        // the first chars of custom matchers are all their starter chars, not just the one returned by getStarterChar
+        Parser parser = Parboiled.createParser(Parser.class);
+        GrammarAnalyzer analyzer = GrammarAnalyzer.analyze(parser.Custom());
+        assertTrue(analyzer.getHazards(HazardType.SHADOWED_ALTERNATIVE).isEmpty());
+        List<Hazard> overlapping = analyzer.getHazards(HazardType.OVERLAPPING_ALTERNATIVES);
+        assertEquals(overlapping.size(), 1);
+        assertEquals(overlapping.get(0).description, "alternatives with overlapping first characters: 1/2 on [x]");
+        assertTrue(new BasicParseRunner<Object>(parser.Custom()).run("bx").matched);
+    }
+
+    @Test
+    public void testGuardedNullableAlternatives() {
+        // the nullable first alternatives can still fail on their predicate or action, so they shadow nothing
+        Parser parser = Parboiled.createParser(Parser.class);
+        GrammarAnalyzer analyzer = GrammarAnalyzer.analyze(parser.Guarded());
+        assertTrue(analyzer.getHazards(HazardType.SHADOWED_ALTERNATIVE).isEmpty());
+        assertTrue(new BasicParseRunner<Object>(parser.Guarded()).run("cd").matched);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled;
+
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.annotations.LazyRules;
+import org.parboiled.annotations.SuppressSubnodes;
+import org.parboiled.matchers.CharRangeMatcher;
+import org.parboiled.matchers.LazyMatcher;
+import org.parboiled.matchers.Matcher;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+import org.parboiled.test.TestNgParboiledTest;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class LazyRulesTest extends TestNgParboiledTest<Object> {
+
+    @BuildParseTree
+    @LazyRules
+    public static class Parser extends BaseParser<Object> {
+
+        public Rule Clause() {
+            return Sequence(FirstOf(Addition(), Group()), EOI);
+        }
+
+        public Rule Addition() {
+            return Sequence(Operand(), OneOrMore(Ch('+'), Operand()));
+        }
+
+        public Rule Operand() {
+            return FirstOf(Number().label("Digits"), Group());
+        }
+
+        public Rule Group() {
+            return Sequence('(', Addition(), ')');
+        }
+
+        @SuppressSubnodes
+        public Rule Number() {
+            return OneOrMore(CharRange('0', '9'));
+        }
+    }
+
+    public static class Digits {
+        int calls;
+
+        public Rule Number() {
+            calls++;
+            return new CharRangeMatcher('0', '9');
+        }
+    }
+
+    @LazyRules
+    public static class DelegatingParser extends BaseParser<Object> {
+        final Digits digits = new Digits();
+
+        public Rule Clause() {
+            return Sequence(digits.Number(), Number(), EOI);
+        }
+
+        public Rule Number() {
+            return OneOrMore(CharRange('0', '9'));
+        }
+    }
+
+    @Test
+    public void testLazyConstruction() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Matcher firstOf = ((Matcher) parser.Clause()).getChildren().get(0);
+        LazyMatcher addition = (LazyMatcher) firstOf.getChildren().get(0);
+        LazyMatcher group = (LazyMatcher) firstOf.getChildren().get(1);
+        assertFalse(addition.isResolved());
+        assertFalse(group.isResolved());
+
+        test(parser.Clause(), "1+(2+3)")
+                .hasNoErrors()
+                .hasParseTree("" +
+                        "[Clause] '1+(2+3)'\n" +
+                        "  [FirstOf] '1+(2+3)'\n" +
+                        "    [Addition] '1+(2+3)'\n" +
+                        "      [Operand] '1'\n" +
+                        "        [Digits] '1'\n" +
+                        "      [OneOrMore] '+(2+3)'\n" +
+                        "        [Sequence] '+(2+3)'\n" +
+                        "          ['+'] '+'\n" +
+                        "          [Operand] '(2+3)'\n" +
+                        "            [Group] '(2+3)'\n" +
+                        "              ['('] '('\n" +
+                        "              [Addition] '2+3'\n" +
+                        "                [Operand] '2'\n" +
+                        "                  [Digits] '2'\n" +
+                        "                [OneOrMore] '+3'\n" +
+                        "                  [Sequence] '+3'\n" +
+                        "                    ['+'] '+'\n" +
+                        "                    [Operand] '3'\n" +
+                        "                      [Digits] '3'\n" +
+                        "              [')'] ')'\n" +
+                        "  [EOI]\n");
+        assertTrue(addition.isResolved());
+        assertFalse(group.isResolved());
+    }
+
+    @Test
+    public void testOnlyCallsOnTheParserAreRewritten() {
+        DelegatingParser parser = Parboiled.createParser(DelegatingParser.class);
+        List<Matcher> children = ((Matcher) parser.Clause()).getChildren();
+        assertFalse(children.get(0) instanceof LazyMatcher);
+        assertTrue(children.get(1) instanceof LazyMatcher);
+        assertEquals(parser.digits.calls, 1);
+    }
+
+    @Test
+    public void testConcurrentResolution() throws Exception {
+        final Parser parser = Parboiled.createParser(Parser.class);
+        final Rule rule = parser.Clause();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 16; i++) {
+                final String input = i % 2 == 0 ? "(1+2)+(3+(4+5))" : "((1+2)+3)";
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        ParsingResult<Object> result = new ReportingParseRunner<Object>(rule).run(input);
+                        return result.matched && !result.hasErrors();
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
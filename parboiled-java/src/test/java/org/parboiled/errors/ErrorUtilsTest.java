@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.errors;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.common.Sink;
+import org.parboiled.parserunners.RecoveringParseRunner;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class ErrorUtilsTest {
+
+    public static class Parser extends BaseParser<Object> {
+        Rule Lines() {
+            return Sequence(OneOrMore(Line()), EOI);
+        }
+
+        Rule Line() {
+            return Sequence(FirstOf("abc", "abd", "xyz"), ';', '\n');
+        }
+    }
+
+    @Test
+    public void testBatchRendering() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            input.append(i % 3 == 0 ? "abX;\n" : i % 3 == 1 ? "xyz;\n" : "xy;\n");
+        }
+        ParsingResult<?> result = new RecoveringParseRunner<Object>(parser.Lines()).run(input.toString());
+        List<ParseError> errors = result.parseErrors;
+        assertEquals(errors.size(), 133);
+
+        StringBuilder expected = new StringBuilder();
+        for (ParseError error : errors) {
+            if (expected.length() > 0) expected.append("---\n");
+            expected.append(ErrorUtils.printParseError(error));
+        }
+        assertEquals(ErrorUtils.printParseErrors(errors), expected.toString());
+
+        final List<String> rendered = new ArrayList<String>();
+        ErrorUtils.printParseErrors(errors, new DefaultInvalidInputErrorFormatter(), new Sink<String>() {
+            public void receive(String value) {
+                rendered.add(value);
+            }
+        });
+        assertEquals(rendered.size(), errors.size());
+        assertEquals(rendered.get(1), "" +
+                "Invalid input ';', expected 'z' (line 3, pos 3):\n" +
+                "xy;\n" +
+                "  ^\n");
+    }
+
+}
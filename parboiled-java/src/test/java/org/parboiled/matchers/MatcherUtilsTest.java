@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 Chris Leishman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.matchers;
+
+import org.parboiled.BaseParser;
+import org.parboiled.MatcherContext;
+import org.parboiled.Parboiled;
+import org.parboiled.ParserStatistics;
+import org.parboiled.Rule;
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.buffers.DefaultInputBuffer;
+import org.parboiled.errors.ParseError;
+import org.parboiled.matchervisitors.FollowMatchersVisitor;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.support.DefaultValueStack;
+import org.parboiled.test.TestNgParboiledTest;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+
+public class MatcherUtilsTest extends TestNgParboiledTest<Object> {
+
+    @BuildParseTree
+    static class Parser extends BaseParser<Object> {
+
+        public Rule Expression() {
+            return Sequence(Term(), ZeroOrMore('+', Term()));
+        }
+
+        public Rule Term() {
+            return FirstOf(Number(), Sequence('(', Expression().label("Inner"), ')'));
+        }
+
+        public Rule Number() {
+            return OneOrMore(CharRange('0', '9')).suppressSubnodes();
+        }
+
+        public Rule Nested() {
+            return Sequence('[', ZeroOrMore(Nested()), ']');
+        }
+    }
+
+    @Test
+    public void testRemoveProxies() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule expression = parser.Expression();
+        assertFalse(ParserStatistics.generateFor(expression).getProxyMatchers().isEmpty());
+
+        String parseTree = "" +
+                "[Expression] '(1+2)+3'\n" +
+                "  [Term] '(1+2)'\n" +
+                "    [Sequence] '(1+2)'\n" +
+                "      ['('] '('\n" +
+                "      [Inner] '1+2'\n" +
+                "        [Term] '1'\n" +
+                "          [Number] '1'\n" +
+                "        [ZeroOrMore] '+2'\n" +
+                "          [Sequence] '+2'\n" +
+                "            ['+'] '+'\n" +
+                "            [Term] '2'\n" +
+                "              [Number] '2'\n" +
+                "      [')'] ')'\n" +
+                "  [ZeroOrMore] '+3'\n" +
+                "    [Sequence] '+3'\n" +
+                "      ['+'] '+'\n" +
+                "      [Term] '3'\n" +
+                "        [Number] '3'\n";
+        test(expression, "(1+2)+3").hasNoErrors().hasParseTree(parseTree);
+
+        Rule finalized = MatcherUtils.removeProxies(expression);
+        assertEquals(ParserStatistics.generateFor(finalized).getProxyMatchers().size(), 0);
+        test(finalized, "(1+2)+3").hasNoErrors().hasParseTree(parseTree);
+    }
+
+    @Test
+    public void testVisitorsDoNotSeeRemovedProxies() {
+        // the recursive rule is referenced by a ZeroOrMore, whose subMatcher field keeps pointing to the proxy
+        Matcher nested = (Matcher) MatcherUtils.removeProxies(Parboiled.createParser(Parser.class).Nested());
+        Matcher loop = nested.getChildren().get(1);
+        assertSame(loop.getChildren().get(0), nested);
+
+        MatcherContext<Object> context = new MatcherContext<Object>(new DefaultInputBuffer("[]".toCharArray()),
+                new DefaultValueStack<Object>(), new ArrayList<ParseError>(), new BasicParseRunner<Object>(nested),
+                loop, true);
+        List<Matcher> followers = new FollowMatchersVisitor().getFollowMatchers(context.getSubContext(nested));
+        assertEquals(followers.size(), 1);
+        assertSame(followers.get(0), nested);
+        test(nested, "[[[]]]").hasNoErrors();
+    }
+}
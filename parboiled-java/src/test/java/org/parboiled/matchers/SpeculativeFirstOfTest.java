@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.matchers;
+
+import org.parboiled.BaseParser;
+import org.parboiled.MatcherContext;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.parboiled.errors.ErrorUtils.printParseErrors;
+import static org.parboiled.support.ParseTreeUtils.printNodeTree;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class SpeculativeFirstOfTest {
+
+    @BuildParseTree
+    static class Parser extends BaseParser<Object> {
+
+        public Rule Document() {
+            return Sequence(OneOrMore(Statement()), EOI);
+        }
+
+        public Rule SpeculativeDocument() {
+            return Sequence(OneOrMore(SpeculativeStatement()), EOI);
+        }
+
+        public Rule Statement() {
+            return FirstOf(Select(), Insert(), Delete(), Update());
+        }
+
+        public Rule SpeculativeStatement() {
+            return SpeculativeFirstOf(8, Select(), Insert(), Delete(), Update());
+        }
+
+        Rule Select() {
+            return Sequence("select ", Names(), ';');
+        }
+
+        Rule Insert() {
+            return Sequence("insert ", Names(), " values ", Names(), ';');
+        }
+
+        Rule Delete() {
+            return Sequence("delete ", Names(), push(match()), ';');
+        }
+
+        Rule Update() {
+            return Sequence("update ", Names(), " set ", Names(), ';');
+        }
+
+        Rule Names() {
+            return Sequence(Name(), ZeroOrMore(',', Name()));
+        }
+
+        Rule Name() {
+            return OneOrMore(CharRange('a', 'z'));
+        }
+    }
+
+    @Test
+    public void testSameResultsAsFirstOf() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            input.append("update abc,def set x,y;delete abc,de;insert abc values def;select x;");
+        }
+        assertSameResults(parser, input.toString());
+        assertSameResults(parser, input.toString() + "update x set;");
+        assertSameResults(parser, "delete a;");
+    }
+
+    @Test
+    public void testFailedProbesAreSkipped() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        // run the probes synchronously, so that they have all finished when the alternatives are tried
+        SpeculativeFirstOfMatcher.setExecutor(new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        try {
+            // all alternatives are tried twice, the second time at the end of the input, where less than the
+            // minimum remaining input is left and the alternatives are therefore tried without speculation
+            assertEquals(countInvocations(parser.Document(), "delete abc;", "Insert"), 2);
+
+            // Select is tried regularly, the probe of Insert has failed, Delete cannot be probed due to its action
+            assertEquals(countInvocations(parser.SpeculativeDocument(), "delete abc;", "Select"), 2);
+            assertEquals(countInvocations(parser.SpeculativeDocument(), "delete abc;", "Insert"), 1);
+            assertEquals(countInvocations(parser.SpeculativeDocument(), "delete abc;", "Delete"), 2);
+
+            // the probe of Update has matched, so Update is run regularly
+            assertEquals(countInvocations(parser.SpeculativeDocument(), "update a set b;", "Insert"), 1);
+            assertEquals(countInvocations(parser.SpeculativeDocument(), "update a set b;", "Update"), 2);
+        } finally {
+            SpeculativeFirstOfMatcher.setExecutor(null);
+        }
+    }
+
+    // counts the regular invocations of the rule with the given label, probes use their own match handler
+    private static int countInvocations(Rule rule, String input, final String label) {
+        final int[] count = new int[1];
+        ParsingResult<Object> result = new BasicParseRunner<Object>(rule) {
+            @Override
+            public boolean match(MatcherContext<?> context) {
+                if (label.equals(context.getMatcher().getLabel())) count[0]++;
+                return super.match(context);
+            }
+        }.run(input);
+        assertTrue(result.matched);
+        return count[0];
+    }
+
+    private static void assertSameResults(Parser parser, String input) {
+        ParsingResult<Object> expected = new ReportingParseRunner<Object>(parser.Document()).run(input);
+        ParsingResult<Object> actual = new ReportingParseRunner<Object>(parser.SpeculativeDocument()).run(input);
+        assertEquals(actual.matched, expected.matched);
+        assertEquals(actual.resultValue, expected.resultValue);
+        assertEquals(actual.valueStack.size(), expected.valueStack.size());
+        assertEquals(printParseErrors(actual), printParseErrors(expected));
+        assertEquals(printNodeTree(actual).replace("SpeculativeDocument", "Document")
+                .replace("SpeculativeStatement", "Statement"), printNodeTree(expected));
+
+        ParsingResult<Object> basic = new BasicParseRunner<Object>(parser.SpeculativeDocument()).run(input);
+        assertEquals(basic.matched, expected.matched);
+    }
+
+}
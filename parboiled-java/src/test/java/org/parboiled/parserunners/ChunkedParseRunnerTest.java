@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.parserunners;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.buffers.StreamingInputBuffer;
+import org.parboiled.common.Factory;
+import org.parboiled.common.Sink;
+import org.parboiled.errors.ParseError;
+import org.parboiled.support.ParsingEventAdapter;
+import org.parboiled.support.ParsingEvents;
+import org.parboiled.support.ParsingResult;
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.parboiled.errors.ErrorUtils.printParseErrors;
+import static org.testng.Assert.*;
+
+public class ChunkedParseRunnerTest {
+
+    public static class Parser extends BaseParser<Object> {
+        Rule Number() {
+            return Sequence(OneOrMore(CharRange('0', '9')), push(Integer.parseInt(match())), EOI);
+        }
+
+        Rule Digits() {
+            return Sequence(OneOrMore(CharRange('0', '9')), EOI);
+        }
+
+        Rule Statement() {
+            return Sequence(OneOrMore(CharRange('a', 'z')), push(match()), Optional(';'), EOI);
+        }
+
+        Rule StatementEnd() {
+            return Sequence(ZeroOrMore(NoneOf(";")), Optional(';'));
+        }
+    }
+
+    private static final Factory<ParseRunner<Object>> NUMBER_RUNNERS = new Factory<ParseRunner<Object>>() {
+        public ParseRunner<Object> create() {
+            return new ReportingParseRunner<Object>(Parboiled.createParser(Parser.class).Number());
+        }
+    };
+
+    @Test
+    public void testDelimiterSplitting() {
+        ChunkedParseRunner.Result<Object> result = new ChunkedParseRunner<Object>(NUMBER_RUNNERS, '\n')
+                .withParallelism(2)
+                .run("1\n22\n3x3\n\n444\n");
+        assertFalse(result.matched);
+        assertEquals(result.chunks.size(), 4);
+        assertEquals(result.chunks.get(3).startIndex, 10);
+        assertEquals(result.chunks.get(3).endIndex, 13);
+        assertEquals(result.chunks.get(1).result.resultValue, 22);
+        assertEquals(result.resultValue, 444);
+        assertEquals(printParseErrors(result), "" +
+                "Invalid input 'x', expected 0..9 or EOI (line 3, pos 2):\n" +
+                "3x3\n" +
+                " ^\n");
+        ParseError error = result.parseErrors.get(0);
+        assertSame(error.getInputBuffer(), result.inputBuffer);
+        assertEquals(error.getStartIndex(), 6);
+        assertEquals(result.inputBuffer.extract(error.getStartIndex(), error.getEndIndex()), "x");
+    }
+
+    @Test
+    public void testRecoveredErrorsReferToCompleteInput() {
+        ChunkedParseRunner.Result<Object> result = new ChunkedParseRunner<Object>(new Factory<ParseRunner<Object>>() {
+            public ParseRunner<Object> create() {
+                return new RecoveringParseRunner<Object>(Parboiled.createParser(Parser.class).Digits());
+            }
+        }, '\n').run("1\n22\n3x3\n\n444\n");
+        assertTrue(result.matched);
+        assertEquals(result.parseErrors.size(), 1);
+        ParseError error = result.parseErrors.get(0);
+        assertEquals(error.getStartIndex(), 6);
+        assertEquals(result.inputBuffer.extract(error.getStartIndex(), error.getEndIndex()), "x");
+        assertEquals(printParseErrors(result), "" +
+                "Invalid input 'x', expected 0..9 or EOI (line 3, pos 2):\n" +
+                "3x3\n" +
+                " ^\n");
+    }
+
+    @Test
+    public void testParallelRunKeepsInputOrder() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) input.append(i).append(',');
+        ParsingResult<Object> result = new ChunkedParseRunner<Object>(NUMBER_RUNNERS, ',')
+                .withParallelism(4)
+                .run(input.toString());
+        assertTrue(result.matched);
+        assertEquals(result.valueStack.size(), 1000);
+        int expected = 999;
+        for (Object value : result.valueStack) {
+            assertEquals(value, expected--);
+        }
+    }
+
+    @Test
+    public void testStreamingInputIsParsedOnCallingThread() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100; i++) input.append(i).append(',');
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        ParsingResult<Object> result = new ChunkedParseRunner<Object>(new Factory<ParseRunner<Object>>() {
+            public ParseRunner<Object> create() {
+                threads.add(Thread.currentThread());
+                return NUMBER_RUNNERS.create();
+            }
+        }, ',').withParallelism(4).run(new StreamingInputBuffer(new StringReader(input.toString())));
+        assertTrue(result.matched);
+        assertEquals(result.valueStack.size(), 100);
+        assertEquals(threads, Collections.singleton(Thread.currentThread()));
+    }
+
+    @Test
+    public void testRunIsSignalledAndMeasuredAsAWhole() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100; i++) input.append(i).append(',');
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final List<ParseRunMetrics> metrics = new ArrayList<ParseRunMetrics>();
+        ParsingEvents.setListener(new ParsingEventAdapter() {
+            @Override
+            public void runStarted(ParseRunner<?> runner, Rule rule, int inputLength) {
+                events.add("start " + runner.getClass().getSimpleName() + ' ' + rule + ' ' + inputLength);
+            }
+
+            @Override
+            public void runFinished(ParseRunner<?> runner, Rule rule, int inputLength, boolean matched,
+                                    int errorCount, long nanoTime) {
+                events.add("finish " + runner.getClass().getSimpleName() + ' ' + matched + ' ' + errorCount);
+            }
+        });
+        try {
+            new ChunkedParseRunner<Object>(NUMBER_RUNNERS, ',')
+                    .withParallelism(4)
+                    .withMetricsSink(new Sink<ParseRunMetrics>() {
+                        public void receive(ParseRunMetrics value) {
+                            metrics.add(value);
+                        }
+                    })
+                    .run(input.toString());
+        } finally {
+            ParsingEvents.setListener(null);
+        }
+        assertEquals(events.toString(), "[start ChunkedParseRunner Number 290, finish ChunkedParseRunner true 0]");
+        assertEquals(metrics.size(), 1);
+        ParseRunMetrics runMetrics = metrics.get(0);
+        assertEquals(runMetrics.getRunnerType(), "ChunkedParseRunner");
+        assertEquals(runMetrics.getRuleLabel(), "Number");
+        assertEquals(runMetrics.getInputLength(), 290);
+        assertEquals(runMetrics.getPasses(), 100);
+        assertTrue(runMetrics.getInvocations() > 100);
+    }
+
+    @Test
+    public void testSplitterRule() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        ChunkedParseRunner.Result<Object> result = new ChunkedParseRunner<Object>(new Factory<ParseRunner<Object>>() {
+            public ParseRunner<Object> create() {
+                return new BasicParseRunner<Object>(Parboiled.createParser(Parser.class).Statement());
+            }
+        }, parser.StatementEnd()).run("abc;de;f");
+        assertTrue(result.matched);
+        assertEquals(result.chunks.size(), 3);
+        assertEquals(result.chunks.get(1).startIndex, 4);
+        assertEquals(result.chunks.get(1).result.resultValue, "de");
+        assertEquals(result.resultValue, "f");
+    }
+
+}
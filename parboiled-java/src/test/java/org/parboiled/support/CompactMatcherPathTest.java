@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.parboiled.support;
+
+import org.parboiled.BaseParser;
+import org.parboiled.Parboiled;
+import org.parboiled.Rule;
+import org.parboiled.parserunners.BasicParseRunner;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class CompactMatcherPathTest {
+
+    static class Parser extends BaseParser<Object> {
+        final List<CompactMatcherPath> compactPaths = new ArrayList<CompactMatcherPath>();
+        final List<MatcherPath> paths = new ArrayList<MatcherPath>();
+
+        public Rule Root() {
+            return Sequence('a', OneOrMore(Inner()), EOI);
+        }
+
+        public Rule Inner() {
+            return Sequence('b', record());
+        }
+
+        boolean record() {
+            compactPaths.add(CompactMatcherPath.capture(getContext()));
+            paths.add(getContext().getPath());
+            return true;
+        }
+    }
+
+    @Test
+    public void testCompactMatcherPath() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        assertTrue(new BasicParseRunner<Object>(parser.Root()).run("abb").matched);
+        assertEquals(parser.compactPaths.size(), 2);
+
+        CompactMatcherPath first = parser.compactPaths.get(0);
+        CompactMatcherPath second = parser.compactPaths.get(1);
+        assertEquals(first.toString(), parser.paths.get(0).toString());
+        assertEquals(first.toString(), "Root/OneOrMore/Inner");
+        assertEquals(first.length(), 3);
+        assertEquals(first.getStartIndex(2), 1);
+        assertEquals(second.getStartIndex(2), 2);
+        assertEquals(first.getLeafMatcher(), second.getLeafMatcher());
+        assertFalse(first.equals(second));
+        assertFalse(first.isPrefixOf(second));
+
+        List<MatcherPath> converted = CompactMatcherPath.toMatcherPaths(parser.compactPaths);
+        assertEquals(converted.get(1).toString(), "Root/OneOrMore/Inner");
+        assertEquals(converted.get(1).getElementAtLevel(2).startIndex, 2);
+        assertSame(converted.get(0).getElementAtLevel(1), converted.get(1).getElementAtLevel(1)); // shared prefix
+        assertTrue(converted.get(0).parent.isPrefixOf(converted.get(1)));
+    }
+
+}
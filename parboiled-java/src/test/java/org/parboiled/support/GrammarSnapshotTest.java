@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.support;
+
+import org.parboiled.BaseParser;
+import org.parboiled.MatcherContext;
+import org.parboiled.Parboiled;
+import org.parboiled.ParserStatistics;
+import org.parboiled.Rule;
+import org.parboiled.annotations.BuildParseTree;
+import org.parboiled.annotations.MemoMismatches;
+import org.parboiled.annotations.SuppressSubnodes;
+import org.parboiled.errors.GrammarException;
+import org.parboiled.matchers.CustomMatcher;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.testng.annotations.Test;
+
+import static org.parboiled.errors.ErrorUtils.printParseErrors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class GrammarSnapshotTest {
+
+    @BuildParseTree
+    static class Parser extends BaseParser<Object> {
+
+        public Rule Statement() {
+            return Sequence(FirstOf("if", "int", "import"), Spacing(), Expression(), EOI);
+        }
+
+        public Rule Expression() {
+            return Sequence(Term(), ZeroOrMore(AnyOf("+-"), Spacing(), Term()));
+        }
+
+        public Rule Term() {
+            return FirstOf(Number(), Sequence('(', Spacing(), Expression(), ')', Spacing()), Identifier());
+        }
+
+        @SuppressSubnodes
+        public Rule Number() {
+            return Sequence(OneOrMore(CharRange('0', '9')), Spacing());
+        }
+
+        @MemoMismatches
+        public Rule Identifier() {
+            return Sequence(OneOrMore(IgnoreCase('x')), TestNot(NoneOf(" +-()")), Spacing()).label("Ident");
+        }
+
+        public Rule Spacing() {
+            return ZeroOrMore(' ').suppressNode();
+        }
+
+        public Rule WithAction() {
+            return Sequence('a', push(match()));
+        }
+
+        public Rule Sum() {
+            return Sequence(Value(), ZeroOrMore('+', Value(), push((Integer) pop() + (Integer) pop())), EOI);
+        }
+
+        public Rule Value() {
+            return Sequence(
+                    Sequence(OneOrMore(CharRange('0', '9')), push(Integer.parseInt(match()))),
+                    Optional('*', Scaled(10))
+            );
+        }
+
+        public Rule Scaled(int factor) {
+            return Sequence('*', push((Integer) pop() * factor));
+        }
+
+        public Rule Words() {
+            return Sequence(OneOrMore(Word(), ZeroOrMore(' ')), EOI);
+        }
+
+        public Rule Word() {
+            return OneOrMore(CodePoints(CodePointClass.range(0x1F600, 0x1F64F)
+                    .union(CodePointClass.ofCategories(Character.LOWERCASE_LETTER))));
+        }
+
+        public Rule Question() {
+            return new QuestionMark();
+        }
+    }
+
+    static class QuestionMark extends CustomMatcher {
+        QuestionMark() {
+            this("?");
+        }
+
+        QuestionMark(String label) {
+            super(label);
+        }
+
+        public <V> boolean match(MatcherContext<V> context) {
+            if (context.getCurrentChar() != '?') return false;
+            context.advanceIndex(1);
+            context.createNode();
+            return true;
+        }
+
+        public boolean isSingleCharMatcher() {
+            return true;
+        }
+
+        public boolean canMatchEmpty() {
+            return false;
+        }
+
+        public boolean isStarterChar(char c) {
+            return c == '?';
+        }
+
+        public char getStarterChar() {
+            return '?';
+        }
+    }
+
+    // a custom matcher without no-argument constructor
+    static class Dot extends QuestionMark {
+        Dot(String label) {
+            super(label);
+        }
+    }
+
+    @Test
+    public void testSnapshotRoundtrip() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule original = parser.Statement();
+        Rule restored = GrammarSnapshot.fromByteArray(GrammarSnapshot.toByteArray(original));
+
+        assertEquals(ParserStatistics.generateFor(restored).toString(),
+                ParserStatistics.generateFor(original).toString());
+
+        String input = "import 12 + (xX - 3)+x";
+        assertEquals(ParseTreeUtils.printNodeTree(new ReportingParseRunner<Object>(restored).run(input)),
+                ParseTreeUtils.printNodeTree(new ReportingParseRunner<Object>(original).run(input)));
+    }
+
+    @Test
+    public void testNonSerializableActionsAreRejected() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        try {
+            GrammarSnapshot.toByteArray(parser.WithAction());
+            fail();
+        } catch (GrammarException e) {
+            assertEquals(e.getMessage(), "Action 'WithAction_Action1' is not serializable and can therefore not " +
+                    "be included in a grammar snapshot");
+        }
+    }
+
+    @Test
+    public void testGeneratedActionsAreReboundToNewParser() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        byte[] snapshot = GrammarSnapshot.toByteArray(parser.Sum(), parser);
+
+        Parser newParser = Parboiled.createParser(Parser.class);
+        Rule restored = GrammarSnapshot.fromByteArray(snapshot, newParser);
+        ParsingResult<Object> result = new ReportingParseRunner<Object>(restored).run("1+2**+30");
+        assertEquals(result.resultValue, 51);
+
+        try {
+            GrammarSnapshot.fromByteArray(snapshot);
+            fail();
+        } catch (GrammarException e) {
+            assertEquals(e.getMessage(), "Snapshot contains actions referring to the parser, " +
+                    "the parser instance to bind them to must be given when loading");
+        }
+    }
+
+    @Test
+    public void testCodePointMatchersRoundtrip() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule original = parser.Words();
+        Rule restored = GrammarSnapshot.fromByteArray(GrammarSnapshot.toByteArray(original));
+
+        assertEquals(ParserStatistics.generateFor(restored).toString(),
+                ParserStatistics.generateFor(original).toString());
+
+        String input = "caf\u00e9 \ud83d\ude00x \u00c4";
+        assertEquals(printParseErrors(new ReportingParseRunner<Object>(restored).run(input)),
+                printParseErrors(new ReportingParseRunner<Object>(original).run(input)));
+        assertEquals(new ReportingParseRunner<Object>(restored).run("ab\ud83d\ude4f c").matched, true);
+    }
+
+    @Test
+    public void testCustomMatchers() {
+        Parser parser = Parboiled.createParser(Parser.class);
+        Rule restored = GrammarSnapshot.fromByteArray(GrammarSnapshot.toByteArray(parser.Question()));
+        assertEquals(restored.getClass(), QuestionMark.class);
+        assertEquals(new ReportingParseRunner<Object>(restored).run("?").matched, true);
+
+        try {
+            GrammarSnapshot.toByteArray(new Dot("."));
+            fail();
+        } catch (GrammarException e) {
+            assertEquals(e.getMessage(), "Custom matcher '.' has no no-argument constructor and can therefore " +
+                    "not be included in a grammar snapshot");
+        }
+    }
+
+}
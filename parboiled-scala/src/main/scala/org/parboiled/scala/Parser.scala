@@ -21,6 +21,7 @@ import _root_.scala.collection.mutable
 import org.parboiled.Context
 import rules.Rule._
 import org.parboiled.support.{Chars, ValueStack, Characters}
+import org.parboiled.buffers.ByteInputBuffer
 
 /**
  * The main Parser trait for scala parboiled parsers. Defines the basic rule building methods as well as the
@@ -418,6 +419,41 @@ trait Parser {
     case _ => new Rule0(new SequenceMatcher(chars.map(ignoreCase(_)).map(_.matcher)).defaultLabel("\"" + chars + '"'))
   }
 
+  /**
+   * Creates a rule that matches the given byte value (signed or unsigned), for parsing byte input
+   * (see the byteArray2Input and byteBuffer2Input conversions). ASCII strings can be matched with plain string rules.
+   */
+  def byte(b: Int): Rule0 =
+    new Rule0(new CharMatcher(ByteInputBuffer.toChar(b)).label("0x%02X".format(b & 0xFF)))
+
+  /**
+   * Creates a rule that matches the range of byte values between the given values (both inclusively, unsigned).
+   */
+  def byteRange(low: Int, high: Int): Rule0 = {
+    val (cLow, cHigh) = (ByteInputBuffer.toChar(low), ByteInputBuffer.toChar(high))
+    require(cLow <= cHigh, "low must not be greater than high (as unsigned byte values)")
+    if (cLow == cHigh) byte(low)
+    else new Rule0(new CharRangeMatcher(cLow, cHigh).label("0x%02X..0x%02X".format(low & 0xFF, high & 0xFF)))
+  }
+
+  /**
+   * Creates a rule that matches the given sequence of byte values.
+   * If no values are given the rule is equivalent to the EMPTY rule.
+   */
+  def bytes(bs: Int*): Rule0 = if (bs.length == 1) byte(bs(0)) else str(ByteInputBuffer.toChars(bs: _*))
+
+  /**
+   * Creates a rule that matches any one of the given byte values.
+   * If no values are given the rule is equivalent to the NOTHING rule.
+   */
+  def anyOfBytes(bs: Int*): Rule0 = if (bs.length == 1) byte(bs(0)) else anyOf(ByteInputBuffer.toChars(bs: _*))
+
+  /**
+   * Creates a rule that matches any byte except the given byte values (and EOI).
+   * If no values are given the rule is equivalent to the ANY rule.
+   */
+  def noneOfBytes(bs: Int*): Rule0 = noneOf(ByteInputBuffer.toChars(bs: _*))
+
   /**
    * Creates a simple semantic predicate.
    */
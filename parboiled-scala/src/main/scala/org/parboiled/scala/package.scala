@@ -23,6 +23,8 @@ import rules.Rule._
 import support.Chars
 import io.{Codec, Source}
 import java.io.InputStream
+import java.nio.ByteBuffer
+import buffers.ByteInputBuffer
 import util.DynamicVariable
 
 package object scala {
@@ -157,6 +159,18 @@ package object scala {
   implicit def inputStream2Input(input: InputStream)(implicit codec: Codec): Input =
     new Input(FileUtils.readAllChars(input, codec.charSet))
 
+  /**
+   * Parses the given bytes without decoding them, each byte being presented as one character with the unsigned
+   * byte value. Note that the resulting Input does not support indentation transformation.
+   */
+  implicit def byteArray2Input(input: Array[Byte]): Input = new Input(null, _ => new ByteInputBuffer(input))
+
+  /**
+   * Parses the remaining bytes of the given buffer without decoding them (or changing the buffer position).
+   * Note that the resulting Input does not support indentation transformation.
+   */
+  implicit def byteBuffer2Input(input: ByteBuffer): Input = new Input(null, _ => new ByteInputBuffer(input))
+
   // helper methods
 
   private val currentRuleLabel = new DynamicVariable[String](null)
@@ -21,6 +21,8 @@ import util.DynamicVariable
 import org.parboiled.support.ParseTreeUtils
 import org.parboiled.errors.{ParseError, ErrorUtils}
 import org.parboiled.Node
+import org.parboiled.parserunners.ProfilingParseRunner
+import org.parboiled.support.PerformanceBudget
 
 /**
  * A trait simplifying the creation of tests for "parboiled for scala" parsers.
@@ -67,6 +69,21 @@ trait ParboiledTest {
     }
   }
 
+  /**
+   * Parses the given input with a ProfilingParseRunner and fails the test with a respective error message if the
+   * deterministic work counters of the run exceed the given budget, e.g.
+   * {{{ withinBudget(parser.Expression, "1+2*3", new PerformanceBudget().maxInvocations(100).maxBacktracks(50)) }}}
+   * Returns the profiling report for further inspection.
+   */
+  def withinBudget(rule: Rule, input: Input, budget: PerformanceBudget): ProfilingParseRunner.Report = {
+    val report = PerformanceBudget.measure(rule.matcher, input.inputBuffer)
+    val violations = budget.check(report)
+    if (violations != null) {
+      fail(violations)
+    }
+    report
+  }
+
   def parsingResult: ParsingResult[Result] = pResult.value
 
   def matched: Boolean = parsingResult.matched
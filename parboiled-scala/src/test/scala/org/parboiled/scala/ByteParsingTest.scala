@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.scala
+
+import org.testng.annotations.Test
+import org.scalatest.testng.TestNGSuiteLike
+import org.testng.Assert.assertEquals
+import java.nio.ByteBuffer
+import testing.ParboiledTest
+
+class ByteParsingTest extends ParboiledTest with TestNGSuiteLike {
+  type Result = Int
+
+  class FrameParser extends Parser {
+    def Frame = rule {"V1" ~ bytes(0x0D, 0x0A) ~ Length ~ zeroOrMore(noneOfBytes(0x00)) ~ byte(0x00) ~ EOI}
+
+    def Length = rule {byteRange(0x80, 0xFF) ~> (s => s.charAt(0) - 0x80)}
+  }
+
+  val parser = new FrameParser
+
+  @Test
+  def testByteArrayInput() {
+    parse(ReportingParseRunner(parser.Frame), Array[Byte]('V', '1', 0x0D, 0x0A, 0x83.toByte, 'a', 'b', 'c', 0)) {
+      assertEquals(result, Some(3))
+    }
+  }
+
+  @Test
+  def testByteBufferInput() {
+    val buffer = ByteBuffer.wrap(Array[Byte]('V', '1', 0x0D, 0x0A, 0x80.toByte, 0x00))
+    parse(ReportingParseRunner(parser.Frame), buffer) {
+      assertEquals(result, Some(0))
+    }
+    failParse(ReportingParseRunner(parser.Frame), Array[Byte]('V', '1', 0x0D, 0x0A, 0x7F, 0x00)) {
+      assertEquals(errors.split("\n")(0), "Invalid input '\u007f', expected Length (line 2, pos 1):")
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2009-2011 Mathias Doenitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.parboiled.scala
+
+import org.testng.annotations.Test
+import org.scalatest.testng.TestNGSuiteLike
+import org.testng.Assert.assertEquals
+import org.parboiled.support.PerformanceBudget
+import testing.ParboiledTest
+
+class PerformanceBudgetTest extends ParboiledTest with TestNGSuiteLike {
+
+  class BacktrackingParser extends Parser {
+    def Expression = rule {Digit ~ "+" ~ Digit ~ EOI | Digit ~ "-" ~ Digit ~ EOI}
+
+    def Digit = rule {"0" - "9"}
+  }
+
+  val parser = new BacktrackingParser
+
+  @Test
+  def testWithinBudget() {
+    val report = withinBudget(parser.Expression, "1-2", new PerformanceBudget().maxInvocations(9).maxBacktracks(2))
+    assertEquals(report.totalInvocations, 9)
+    assertEquals(report.totalMismatches, 2)
+  }
+
+  @Test
+  def testBudgetExceeded() {
+    val message = try {
+      withinBudget(parser.Expression, "1-2", new PerformanceBudget().maxBacktracks(1))
+      "no failure"
+    } catch {
+      case e: Exception => e.getMessage
+    }
+    assertEquals(message.split("\n")(0), "Performance budget exceeded: 2 backtracks, budget is 1")
+  }
+}